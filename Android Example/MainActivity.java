@@ -32,9 +32,11 @@ public class MainActivity extends AppCompatActivity {
     };
 
     private Button btnApplyTransition;
+    private Button btnCancel;
     private ProgressBar progressBar;
     private TextView statusText;
     private ExecutorService executorService;
+    private TransitionJob currentJob;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,12 +44,17 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         btnApplyTransition = findViewById(R.id.btn_apply_transition);
+        btnCancel = findViewById(R.id.btn_cancel);
         progressBar = findViewById(R.id.progress_bar);
         statusText = findViewById(R.id.status_text);
         
         executorService = Executors.newSingleThreadExecutor();
 
+        // Phones have far less memory than the desktops the engine defaults to
+        JavaTransitionEngine.setExecutionProfile(ExecutionProfile.constrained());
+
         btnApplyTransition.setOnClickListener(v -> checkPermissionsAndApplyTransition());
+        btnCancel.setOnClickListener(v -> cancelTransition());
     }
 
     private void checkPermissionsAndApplyTransition() {
@@ -94,48 +101,81 @@ public class MainActivity extends AppCompatActivity {
 
     private void applyTransition() {
         btnApplyTransition.setEnabled(false);
+        btnCancel.setVisibility(View.VISIBLE);
+        progressBar.setProgress(0);
         progressBar.setVisibility(View.VISIBLE);
         statusText.setText("Processing transition...");
 
-        executorService.execute(() -> {
-            try {
-                // Define input and output paths
-                File moviesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MOVIES);
-                String input1 = new File(moviesDir, "clip_a.mp4").getAbsolutePath();
-                String input2 = new File(moviesDir, "clip_b.mp4").getAbsolutePath();
-                String output = new File(moviesDir, "transition_output.mp4").getAbsolutePath();
-
-                // Apply the transition
-                boolean success = TransitionEngine.applyFadeTransition(input1, input2, output, 1.0);
-
-                // Update UI on the main thread
-                runOnUiThread(() -> {
-                    progressBar.setVisibility(View.GONE);
-                    btnApplyTransition.setEnabled(true);
-                    
-                    if (success) {
-                        statusText.setText("Transition completed successfully!");
-                        Toast.makeText(this, "Output saved to: " + output, Toast.LENGTH_LONG).show();
-                    } else {
-                        statusText.setText("Failed to apply transition");
-                        Toast.makeText(this, "Error processing videos", Toast.LENGTH_SHORT).show();
+        // Define input and output paths
+        File moviesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MOVIES);
+        String input1 = new File(moviesDir, "clip_a.mp4").getAbsolutePath();
+        String input2 = new File(moviesDir, "clip_b.mp4").getAbsolutePath();
+        String output = new File(moviesDir, "transition_output.mp4").getAbsolutePath();
+
+        // Apply the transition on the worker thread; callbacks are posted back to the main thread
+        currentJob = TransitionEngine.applyFadeTransitionAsync(executorService, input1, input2, output, 1.0,
+                new TransitionProgressListener() {
+                    @Override
+                    public void onProgress(TransitionJob job, double progress, long remainingMillis) {
+                        runOnUiThread(() -> {
+                            progressBar.setProgress((int) (progress * 100));
+                            if (remainingMillis >= 0) {
+                                statusText.setText(String.format("Processing transition... %d%%, about %ds left",
+                                        (int) (progress * 100), (remainingMillis + 999) / 1000));
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onComplete(TransitionJob job) {
+                        runOnUiThread(() -> {
+                            finishTransition("Transition completed successfully!");
+                            Toast.makeText(MainActivity.this, "Output saved to: " + output, Toast.LENGTH_LONG).show();
+                        });
+                    }
+
+                    @Override
+                    public void onError(TransitionJob job, Exception error) {
+                        error.printStackTrace();
+                        runOnUiThread(() -> {
+                            finishTransition("Error: " + error.getMessage());
+                            Toast.makeText(MainActivity.this, "Error processing videos", Toast.LENGTH_SHORT).show();
+                        });
+                    }
+
+                    @Override
+                    public void onCancelled(TransitionJob job) {
+                        runOnUiThread(() -> finishTransition("Transition cancelled"));
                     }
                 });
-            } catch (Exception e) {
-                e.printStackTrace();
-                runOnUiThread(() -> {
-                    progressBar.setVisibility(View.GONE);
-                    btnApplyTransition.setEnabled(true);
-                    statusText.setText("Error: " + e.getMessage());
-                    Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                });
-            }
-        });
+    }
+
+    private void cancelTransition() {
+        if (currentJob != null) {
+            // Stops after the current frame and frees the worker for the next job
+            currentJob.cancel();
+            btnCancel.setEnabled(false);
+            statusText.setText("Cancelling...");
+        }
+    }
+
+    private void finishTransition(String status) {
+        if (isDestroyed()) return;
+        currentJob = null;
+        progressBar.setVisibility(View.GONE);
+        btnCancel.setVisibility(View.GONE);
+        btnCancel.setEnabled(true);
+        btnApplyTransition.setEnabled(true);
+        statusText.setText(status);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        // Don't keep encoding for a screen the user has left
+        if (currentJob != null && isFinishing()) {
+            currentJob.cancel();
+        }
         if (executorService != null) {
             executorService.shutdown();
         }
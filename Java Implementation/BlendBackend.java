@@ -0,0 +1,106 @@
+import org.bytedeco.opencv.opencv_core.Mat;
+
+/**
+ * BlendBackend - The per-pixel blends the transitions are built on
+ *
+ * Crossfades, dips to a colour and masked blends are the final pass over the
+ * frame of most effects. Two implementations exist:
+ *
+ *   opencv  addWeighted, convertTo and blendLinear (the default)
+ *   vector  a pure Java kernel on the Vector API with 8-bit fixed-point alpha,
+ *           working directly on the frames' native buffers
+ *
+ * The vector backend lives in vector/VectorBlendBackend.java and is compiled
+ * separately, because jdk.incubator.vector needs JDK 17 or 18 and
+ * --add-modules jdk.incubator.vector at compile and run time (see README).
+ * Its results are within +/-1 of the OpenCV backend, which TestTransition
+ * checks on the bundled clips.
+ *
+ * The engine's backend is picked with -Dtransition.blend=opencv|vector or
+ * replaced through JavaTransitionEngine.setBlendBackend. Backends keep no
+ * per-job state and are shared by all jobs.
+ */
+public interface BlendBackend {
+
+    /**
+     * @return Name of the backend, as accepted by forName
+     */
+    String name();
+
+    /**
+     * Crossfade: output = frame1 * (1 - progress) + frame2 * progress
+     *
+     * @param frame1 First frame, 8-bit
+     * @param frame2 Second frame, same size and type as the first
+     * @param output Destination, (re)allocated to the size and type of the frames
+     * @param progress Weight of the second frame from 0.0 to 1.0
+     */
+    void crossfade(Mat frame1, Mat frame2, Mat output, double progress);
+
+    /**
+     * Dip to colour: output = source * (1 - amount) + color * amount
+     *
+     * @param source Source frame, 8-bit
+     * @param output Destination, (re)allocated to the size and type of the source
+     * @param amount Weight of the colour from 0.0 to 1.0
+     * @param color Colour value per channel of the source (0-255)
+     */
+    void dipToColor(Mat source, Mat output, double amount, double... color);
+
+    /**
+     * Masked blend: output = frame1 + (frame2 - frame1) * mask / 255 per pixel
+     *
+     * @param frame1 First frame, 8-bit
+     * @param frame2 Second frame, same size and type as the first
+     * @param mask CV_8UC1 weights of the second frame, with the rows and columns of the frames;
+     *             each weight applies to all channels of its pixel
+     * @param output Destination, (re)allocated to the size and type of the frames
+     */
+    void maskedBlend(Mat frame1, Mat frame2, Mat mask, Mat output);
+
+    /**
+     * @return The OpenCV backend
+     */
+    static BlendBackend opencv() {
+        return OpenCVBlendBackend.INSTANCE;
+    }
+
+    /**
+     * Looks up a backend by name
+     *
+     * @param name "opencv" or "vector"
+     * @return The backend
+     * @throws IllegalArgumentException If the name is unknown or the backend is not available in this JVM
+     */
+    static BlendBackend forName(String name) {
+        switch (name) {
+            case "opencv":
+                return opencv();
+            case "vector":
+                try {
+                    // Loaded by name, the engine itself compiles and runs without jdk.incubator.vector
+                    return (BlendBackend) Class.forName("VectorBlendBackend").getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    throw new IllegalArgumentException("The vector blend backend is not available: compile "
+                            + "vector/VectorBlendBackend.java and run with --add-modules jdk.incubator.vector", e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown blend backend: " + name);
+        }
+    }
+
+    /**
+     * Creates the backend named by the transition.blend system property
+     *
+     * @return The configured backend, the OpenCV backend if none is configured or it is not available
+     */
+    static BlendBackend fromSystemProperties() {
+        String name = System.getProperty("transition.blend", "opencv");
+        try {
+            return forName(name);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ", using the opencv backend");
+            return opencv();
+        }
+    }
+}
@@ -0,0 +1,492 @@
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ChunkedTransitionEncoder - Encodes a transition's output in parallel chunks
+ *
+ * JavaTransitionEngine writes the whole output through one encoder, so for
+ * long videos the encoder rather than the effect sets the wall time. This
+ * encoder cuts the output timeline into chunks of whole GOPs. Each chunk is
+ * decoded, rendered and encoded by its own worker with its own grabbers and
+ * recorder into a temporary file, starting on a keyframe. The chunk files
+ * are then joined by copying their packets, without re-encoding, through
+ * FFmpeg's concat demuxer.
+ *
+ * The output has the same frames as JavaTransitionEngine.applyTransition
+ * writes. Its keyframes fall on every GOP boundary, since every chunk
+ * starts a new GOP. No chunk boundary is placed inside the transition, so
+ * the effect renders all of its frames in order in one worker, exactly as
+ * in the frame loop. Every chunk is encoded with the same settings, so
+ * they share the stream parameters written in the output's header.
+ *
+ * Chunks seek their inputs to their first frame, so the inputs are decoded
+ * from the keyframe before every chunk start. This overhead matters little
+ * for long outputs split into long chunks. A job shorter than one chunk is
+ * handed to JavaTransitionEngine as is, and so is a job whose input turns
+ * out to have fewer frames than its header says: the chunk that runs out
+ * stops all the others, and the frame loop, which stops where the input
+ * does, renders the job in one pass.
+ */
+public class ChunkedTransitionEncoder {
+
+    /** Chunk length used when none is given, in seconds */
+    public static final double DEFAULT_CHUNK_SECONDS = 10.0;
+
+    // Length of a GOP in the chunks, in seconds; chunks are whole GOPs
+    private static final double GOP_SECONDS = 2.0;
+
+    /**
+     * Creates a transition with one worker per available processor and the default chunk length
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param effect Effect rendering the overlapping frames
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyTransition(String input1, String input2, String outputPath, double duration,
+                                       FrameEffect effect) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            applyTransition(executor, input1, input2, outputPath, duration, effect, DEFAULT_CHUNK_SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Creates a transition, encoding chunks of the output on an executor
+     *
+     * The calling thread waits for the chunks and joins them, so it must
+     * not be one of the executor's threads if the executor is bounded.
+     *
+     * @param executor Executor running the chunks, e.g. a fixed pool with one thread per core
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param effect Effect rendering the overlapping frames
+     * @param chunkSeconds Length of a chunk in seconds, rounded up to whole GOPs
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyTransition(Executor executor, String input1, String input2, String outputPath,
+                                       double duration, FrameEffect effect, double chunkSeconds) throws Exception {
+        applyTransition(executor, input1, input2, outputPath, duration, JavaTransitionEngine.AT_END, effect, chunkSeconds);
+    }
+
+    /**
+     * Creates a transition starting at a given time of the first video, encoding chunks of the output on an executor
+     *
+     * @param executor Executor running the chunks, e.g. a fixed pool with one thread per core
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param effect Effect rendering the overlapping frames
+     * @param chunkSeconds Length of a chunk in seconds, rounded up to whole GOPs
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyTransition(Executor executor, String input1, String input2, String outputPath,
+                                       double duration, double offset, FrameEffect effect, double chunkSeconds)
+            throws Exception {
+        if (JavaTransitionEngine.getExecutionProfile().isStreamingOnly()) {
+            // Parallel chunks hold one pipeline each, more than a constrained host can spare
+            JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, offset, effect);
+            return;
+        }
+
+        Timeline timeline = Timeline.probe(input1, input2, duration, offset);
+        List<Chunk> chunks = timeline.split(chunkSeconds);
+        if (chunks.size() < 2) {
+            JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, offset, effect);
+            return;
+        }
+
+        File output = new File(outputPath).getAbsoluteFile();
+        File chunkDir = Files.createTempDirectory(output.getParentFile().toPath(), output.getName() + ".chunks").toFile();
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<FutureTask<Void>> tasks = new ArrayList<>();
+        boolean singlePass = false;
+        try {
+            for (Chunk chunk : chunks) {
+                chunk.file = new File(chunkDir, String.format("chunk%05d.mp4", chunk.index));
+            }
+
+            // The transition chunk is the slowest, so it starts first
+            List<Chunk> order = new ArrayList<>(chunks);
+            order.sort((a, b) -> Boolean.compare(b.containsTransition(timeline), a.containsTransition(timeline)));
+            for (Chunk chunk : order) {
+                FutureTask<Void> task = new FutureTask<>(() -> {
+                    renderChunk(timeline, chunk, effect, aborted, null);
+                    return null;
+                });
+                tasks.add(task);
+                executor.execute(task);
+            }
+
+            Exception failure = null;
+            for (FutureTask<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    // Chunks stopped by another chunk's failure report a CancellationException; keep the cause
+                    if (failure == null || failure instanceof CancellationException) {
+                        aborted.set(true);
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            }
+            if (failure instanceof EOFException) {
+                // The frame loop stops where a short input does, so it renders the job in one pass
+                // instead of chunks cut at frames that do not exist
+                singlePass = true;
+            } else if (failure != null) {
+                throw failure;
+            } else {
+                List<File> files = new ArrayList<>();
+                for (Chunk chunk : chunks) {
+                    files.add(chunk.file);
+                }
+                concatenate(files, new File(chunkDir, "chunks.txt"), outputPath);
+            }
+        } catch (InterruptedException e) {
+            aborted.set(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } finally {
+            if (!singlePass) {
+                effect.release();
+            }
+            for (FutureTask<Void> task : tasks) {
+                // Chunks that have not started yet are dropped
+                task.cancel(false);
+            }
+            File[] files = chunkDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            chunkDir.delete();
+        }
+
+        if (singlePass) {
+            JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, offset, effect);
+        }
+    }
+
+    /**
+     * Renders the output frames of one chunk into its file, counting them in 'framesDone' if it is not null
+     */
+    static void renderChunk(Timeline timeline, Chunk chunk, FrameEffect effect, AtomicBoolean aborted,
+                            AtomicInteger framesDone) throws Exception {
+        boolean transition = chunk.containsTransition(timeline);
+        // Chunks without the transition only copy frames, which needs no BGR conversion
+        int pixelFormat = transition ? effect.pixelFormat() : AV_PIX_FMT_YUV420P;
+        int transitionEnd = timeline.firstVideoFramesToKeep + timeline.transitionFrames;
+
+        NativeMemoryBudget budget = JavaTransitionEngine.getMemoryBudget();
+        long reservedBytes = 0;
+        FFmpegFrameGrabber grabber1 = null;
+        FFmpegFrameGrabber grabber2 = null;
+        FFmpegFrameRecorder recorder = null;
+        Mat outputMat = new Mat();
+        OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        // Padded YUV420P frames are packed into these instead of a new Mat per frame
+        Mat packed1 = new Mat();
+        Mat packed2 = new Mat();
+
+        try {
+            long bytes = JavaTransitionEngine.pipelineBytes(timeline.width, timeline.height, pixelFormat);
+            reservedBytes = JavaTransitionEngine.reserveMemory(budget, bytes, chunk.file.getPath(), null);
+
+            if (chunk.start < transitionEnd) {
+                grabber1 = openGrabber(timeline.input1, pixelFormat, timeline.width, timeline.height, chunk.start);
+            }
+            if (chunk.end > timeline.firstVideoFramesToKeep) {
+                grabber2 = openGrabber(timeline.input2, pixelFormat, timeline.width, timeline.height,
+                        Math.max(0, chunk.start - timeline.firstVideoFramesToKeep));
+            }
+
+            recorder = openRecorder(timeline, chunk.file);
+
+            for (int f = chunk.start; f < chunk.end; f++) {
+                if (framesDone != null) {
+                    framesDone.set(f - chunk.start);
+                }
+                if (aborted.get()) {
+                    throw new CancellationException("Another chunk of the transition failed");
+                }
+
+                if (f < timeline.firstVideoFramesToKeep) {
+                    Frame frame = grabber1.grabImage();
+                    if (frame == null) throw shortRead(timeline.input1, f);
+                    JavaTransitionEngine.recordFrame(recorder, frame, pixelFormat, packed1);
+                } else if (f < transitionEnd) {
+                    int i = f - timeline.firstVideoFramesToKeep;
+                    if (i == 0) {
+                        effect.prepare(timeline.frameRate, timeline.transitionFrames);
+                    }
+                    Frame frame1 = grabber1.grabImage();
+                    Frame frame2 = grabber2.grabImage();
+                    if (frame1 == null || frame2 == null) {
+                        throw shortRead(frame1 == null ? timeline.input1 : timeline.input2, f);
+                    }
+
+                    try (PointerScope scope = new PointerScope()) {
+                        Mat mat1 = JavaTransitionEngine.toMat(frame1, pixelFormat, packed1);
+                        Mat mat2 = JavaTransitionEngine.toMat(frame2, pixelFormat, packed2);
+                        outputMat.create(mat1.rows(), mat1.cols(), mat1.type());
+                        effect.apply(mat1, mat2, outputMat, (double) i / timeline.transitionFrames);
+                    }
+                    JavaTransitionEngine.recordMat(recorder, converter, outputMat, pixelFormat);
+                } else {
+                    Frame frame = grabber2.grabImage();
+                    if (frame == null) break;
+                    JavaTransitionEngine.recordFrame(recorder, frame, pixelFormat, packed2);
+                }
+            }
+        } catch (Exception e) {
+            // Stop the other chunks after their current frame rather than when this one is collected
+            aborted.set(true);
+            throw e;
+        } finally {
+            budget.release(reservedBytes);
+            outputMat.release();
+            packed1.release();
+            packed2.release();
+            converter.close();
+            if (grabber1 != null) {
+                grabber1.release();
+            }
+            if (grabber2 != null) {
+                grabber2.release();
+            }
+            if (recorder != null && aborted.get()) {
+                // The chunk is discarded, so skip flushing the encoder
+                recorder.release();
+            } else if (recorder != null) {
+                recorder.stop();
+                recorder.release();
+            }
+        }
+    }
+
+    /**
+     * An input ran out before a frame the timeline expects from it, so its header overstates its length
+     */
+    static EOFException shortRead(String input, int frame) {
+        return new EOFException(input + " ended before output frame " + frame);
+    }
+
+    /**
+     * Starts a recorder for a part of the timeline. Every part is encoded with
+     * the same settings, so the parts can be joined by copying their packets.
+     */
+    static FFmpegFrameRecorder openRecorder(Timeline timeline, File file) throws Exception {
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(file, timeline.width, timeline.height);
+        recorder.setVideoCodec(timeline.videoCodec);
+        recorder.setFormat("mp4");
+        recorder.setFrameRate(timeline.frameRate);
+        recorder.setVideoBitrate(timeline.videoBitrate);
+        recorder.setGopSize(timeline.gopFrames);
+        int threads = JavaTransitionEngine.getExecutionProfile().getCodecThreads();
+        if (threads > 0) {
+            recorder.setVideoOption("threads", String.valueOf(threads));
+        }
+        recorder.setPixelFormat(AV_PIX_FMT_YUV420P);
+        try {
+            recorder.start();
+        } catch (Exception e) {
+            recorder.release();
+            throw e;
+        }
+        return recorder;
+    }
+
+    /**
+     * Opens a video decoding to the given pixel format and size, positioned at a frame
+     */
+    static FFmpegFrameGrabber openGrabber(String input, int pixelFormat, int width, int height,
+                                                  int frameNumber) throws Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(input);
+        grabber.setPixelFormat(pixelFormat);
+        grabber.setImageWidth(width);
+        grabber.setImageHeight(height);
+        int threads = JavaTransitionEngine.getExecutionProfile().getCodecThreads();
+        if (threads > 0) {
+            grabber.setVideoOption("threads", String.valueOf(threads));
+        }
+        grabber.start();
+        if (frameNumber > 0) {
+            // Seeks to the keyframe before the frame and decodes up to it
+            grabber.setVideoFrameNumber(frameNumber);
+        }
+        return grabber;
+    }
+
+    /**
+     * Joins chunk files into the output by copying their packets
+     *
+     * @param files Chunk files in timeline order
+     * @param list Scratch file for the concat demuxer's file list
+     * @param outputPath Path for the output video
+     */
+    static void concatenate(List<File> files, File list, String outputPath) throws Exception {
+        try (PrintWriter writer = new PrintWriter(list, StandardCharsets.UTF_8.name())) {
+            for (File file : files) {
+                // Quotes in the path are closed, escaped and reopened, as the concat format expects
+                writer.println("file '" + file.getAbsolutePath().replace("'", "'\\''") + "'");
+            }
+        }
+
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(list);
+        grabber.setFormat("concat");
+        grabber.setOption("safe", "0");
+        FFmpegFrameRecorder recorder = null;
+        try {
+            grabber.start();
+            recorder = new FFmpegFrameRecorder(outputPath, grabber.getImageWidth(), grabber.getImageHeight());
+            recorder.setFormat("mp4");
+            recorder.start(grabber.getFormatContext());
+
+            AVPacket packet;
+            while ((packet = grabber.grabPacket()) != null) {
+                recorder.recordPacket(packet);
+            }
+        } finally {
+            if (recorder != null) {
+                recorder.stop();
+                recorder.release();
+            }
+            grabber.release();
+        }
+    }
+
+    /**
+     * The output timeline: frames of both videos and where the transition lies
+     */
+    static final class Timeline {
+        final String input1;
+        final String input2;
+        int width;
+        int height;
+        double frameRate;
+        int videoCodec;
+        int videoBitrate;
+        int gopFrames;
+        int transitionFrames;
+        int firstVideoFramesToKeep;
+        int totalFrames;
+
+        private Timeline(String input1, String input2) {
+            this.input1 = input1;
+            this.input2 = input2;
+        }
+
+        /**
+         * Reads the properties of both videos for a transition at the end of the first one
+         */
+        static Timeline probe(String input1, String input2, double duration) throws Exception {
+            return probe(input1, input2, duration, JavaTransitionEngine.AT_END);
+        }
+
+        /**
+         * Reads the properties of both videos, counting frames as the frame loop does
+         */
+        static Timeline probe(String input1, String input2, double duration, double offset) throws Exception {
+            Timeline timeline = new Timeline(input1, input2);
+            FFmpegFrameGrabber grabber1 = new FFmpegFrameGrabber(input1);
+            FFmpegFrameGrabber grabber2 = new FFmpegFrameGrabber(input2);
+            try {
+                grabber1.start();
+                grabber2.start();
+                // Chunks must agree on the size, so the profile's limit applies but not its pressure step-down
+                int[] size = JavaTransitionEngine.getExecutionProfile().workingSize(
+                        grabber1.getImageWidth(), grabber1.getImageHeight(), false);
+                timeline.width = size[0];
+                timeline.height = size[1];
+                timeline.frameRate = grabber1.getVideoFrameRate();
+                timeline.videoCodec = grabber1.getVideoCodec();
+                timeline.videoBitrate = grabber1.getVideoBitrate();
+                timeline.gopFrames = Math.max(1, (int) Math.round(GOP_SECONDS * timeline.frameRate));
+                timeline.transitionFrames = (int) (duration * timeline.frameRate);
+                timeline.firstVideoFramesToKeep = JavaTransitionEngine.transitionStart(grabber1.getLengthInFrames(),
+                        timeline.transitionFrames, offset, timeline.frameRate);
+                timeline.totalFrames = timeline.firstVideoFramesToKeep + grabber2.getLengthInFrames();
+            } finally {
+                grabber1.release();
+                grabber2.release();
+            }
+            return timeline;
+        }
+
+        /**
+         * Cuts the timeline into chunks of whole GOPs, keeping the transition in one chunk
+         */
+        List<Chunk> split(double chunkSeconds) {
+            int gops = Math.max(1, (int) Math.ceil(chunkSeconds * frameRate / gopFrames));
+            int chunkFrames = gops * gopFrames;
+            int transitionStart = firstVideoFramesToKeep;
+            int transitionEnd = firstVideoFramesToKeep + transitionFrames;
+
+            List<Chunk> chunks = new ArrayList<>();
+            int start = 0;
+            while (start < totalFrames) {
+                int end = Math.min(totalFrames, start + chunkFrames);
+                // A boundary inside the transition moves to the first GOP boundary after it
+                if (end > transitionStart && end < transitionEnd) {
+                    end = Math.min(totalFrames, (transitionEnd + gopFrames - 1) / gopFrames * gopFrames);
+                }
+                chunks.add(new Chunk(chunks.size(), start, end));
+                start = end;
+            }
+            return chunks;
+        }
+    }
+
+    /**
+     * A range of output frames encoded into one file
+     */
+    static final class Chunk {
+        final int index;
+        final int start;
+        final int end;
+        File file;
+
+        Chunk(int index, int start, int end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean containsTransition(Timeline timeline) {
+            return timeline.transitionFrames > 0 && start <= timeline.firstVideoFramesToKeep
+                    && end > timeline.firstVideoFramesToKeep;
+        }
+    }
+}
@@ -0,0 +1,576 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGR24;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+
+/**
+ * DecodedFrameCache - Keeps the decoded transition windows of clips reused across jobs
+ *
+ * Batches use the same clip in many pairs (A to B, A to C, D to A), and
+ * every job decodes the tail of its first clip and the head of its second
+ * one again, although the frames are the same. The frame loop stores the
+ * frames of a transition window here once the window has missed before, so
+ * a clip used only once never pays for copying its frames. When a window is
+ * fully cached, the loop skips decoding it: the first clip's decoder stops
+ * after the frames it copies, and the second clip's decoder seeks past its head.
+ *
+ * Frames are keyed by clip and frame index. A clip is identified by its
+ * canonical path, length and modification time, plus the size and pixel
+ * format it was decoded to. A changed file or a different working size
+ * therefore never hits old frames. Frames are kept exactly as the decoder
+ * delivered them (packed BGR24 or I420, both without row padding, for the
+ * BGR and YUV effects), so cached jobs write the same output as decoded ones.
+ *
+ * There are two tiers:
+ *
+ *   memory  direct buffers in LRU order, bounded by bytes. Their bytes are
+ *           reserved in JavaTransitionEngine's NativeMemoryBudget, and the
+ *           oldest frames move to disk when the budget has no room left.
+ *   spill   frames evicted from memory, appended to one raw file per clip on
+ *           local disk and served as memory-mapped slices of it. Whole clips
+ *           are dropped in LRU order when the tier is full.
+ *
+ * The cache is off unless it is asked for: both tiers default to 0 and are
+ * sized with -Dtransition.cache.memory and -Dtransition.cache.spill (sizes
+ * such as "128m"), with the spill directory in -Dtransition.cache.dir, or
+ * the cache is replaced through JavaTransitionEngine.setFrameCache.
+ *
+ * Spill files live in a directory of their own per process. A dropped file
+ * is deleted once no served slice maps it any more, as mapped files cannot
+ * be deleted on every platform; its bytes count against the tier until then.
+ * Whatever is left is deleted at exit.
+ *
+ * Served buffers stay valid after they are evicted, so jobs can share them.
+ * Effects only read their input frames (see FrameEffect).
+ */
+public class DecodedFrameCache implements AutoCloseable {
+
+    // Windows remembered as missed once
+    private static final int MISSED_WINDOWS = 4096;
+
+    private final long memoryLimitBytes;
+    private final long spillLimitBytes;
+    private final File spillParent;
+
+    private final LinkedHashMap<String, ByteBuffer> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<String, SpillFile> spillFiles = new LinkedHashMap<>(16, 0.75f, true);
+    // Windows that missed once, so a second miss stores them
+    private final LinkedHashMap<String, Boolean> missedWindows = new LinkedHashMap<>(64, 0.75f, true);
+    // Dropped spill files that served slices still map
+    private final List<SpillFile> retired = new ArrayList<>();
+    // Budget the memory tier's bytes are reserved in
+    private NativeMemoryBudget budget;
+    private File spillDir;
+    private long memoryBytes;
+    private long spillBytes;
+    private long memoryHits;
+    private long spillHits;
+    private long misses;
+    private long spilled;
+    private long dropped;
+    private boolean closed;
+
+    /**
+     * @param memoryLimitBytes Bytes of frames kept in memory, 0 for none
+     * @param spillLimitBytes Bytes of frames kept on disk, 0 for none
+     * @param spillParent Directory the spill directory is created in
+     */
+    public DecodedFrameCache(long memoryLimitBytes, long spillLimitBytes, File spillParent) {
+        this.memoryLimitBytes = Math.max(0, memoryLimitBytes);
+        this.spillLimitBytes = Math.max(0, spillLimitBytes);
+        this.spillParent = spillParent;
+    }
+
+    /**
+     * @return A cache that keeps nothing
+     */
+    public static DecodedFrameCache disabled() {
+        return new DecodedFrameCache(0, 0, null);
+    }
+
+    /**
+     * Creates the cache described by the transition.cache.* system properties
+     *
+     * @return The configured cache, disabled where a property is missing
+     */
+    static DecodedFrameCache fromSystemProperties() {
+        long memory = NativeMemoryBudget.parseSize(System.getProperty("transition.cache.memory"), 0);
+        long spill = NativeMemoryBudget.parseSize(System.getProperty("transition.cache.spill"), 0);
+        String dir = System.getProperty("transition.cache.dir", System.getProperty("java.io.tmpdir"));
+        return new DecodedFrameCache(memory, spill, new File(dir));
+    }
+
+    /**
+     * Identifies a clip decoded to a size and pixel format
+     *
+     * @param path Path of the clip
+     * @param width Width the clip is decoded to
+     * @param height Height the clip is decoded to
+     * @param pixelFormat Pixel format the clip is decoded to
+     * @return The key of the clip, or null if it is not a local file and cannot be cached
+     */
+    public String clipKey(String path, int width, int height, int pixelFormat) {
+        if (!isEnabled() || (pixelFormat != AV_PIX_FMT_YUV420P && pixelFormat != AV_PIX_FMT_BGR24)) {
+            return null;
+        }
+        File file = new File(path);
+        if (!file.isFile()) return null;
+        try {
+            return file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified()
+                    + "|" + width + "x" + height + "|" + pixelFormat;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Looks up a run of frames, all or nothing
+     *
+     * @param clip Key of the clip, from clipKey; null never hits
+     * @param first Index of the first frame
+     * @param count Number of frames
+     * @return The frames in order, or null unless every one of them is cached
+     */
+    public synchronized ByteBuffer[] getWindow(String clip, int first, int count) {
+        if (clip == null || count <= 0 || closed) return null;
+
+        SpillFile spill = spillFiles.get(clip);
+        for (int i = first; i < first + count; i++) {
+            if (!memory.containsKey(frameKey(clip, i)) && (spill == null || !spill.slots.containsKey(i))) {
+                misses++;
+                return null;
+            }
+        }
+
+        ByteBuffer[] window = new ByteBuffer[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                ByteBuffer buffer = memory.get(frameKey(clip, first + i));
+                if (buffer != null) {
+                    memoryHits++;
+                    window[i] = buffer.duplicate();
+                } else {
+                    spillHits++;
+                    window[i] = spill.map(first + i);
+                }
+            }
+        } catch (IOException e) {
+            // The spill file is gone or unreadable; the job decodes instead
+            removeSpill(clip);
+            return null;
+        }
+        return window;
+    }
+
+    /**
+     * Decides whether the frames of a window that missed are stored. A window
+     * is stored on its second miss: one-off jobs copy nothing, and clips that
+     * come back are cached from their second job on.
+     *
+     * @param clip Key of the clip, from clipKey; null is never stored
+     * @param first Index of the first frame
+     * @param count Number of frames
+     * @return true if the job should store the window's frames
+     */
+    public synchronized boolean admit(String clip, int first, int count) {
+        if (clip == null || count <= 0 || closed) return false;
+
+        String window = clip + "#" + first + "+" + count;
+        if (missedWindows.containsKey(window)) return true;
+        missedWindows.put(window, Boolean.TRUE);
+        if (missedWindows.size() > MISSED_WINDOWS) {
+            Iterator<String> eldest = missedWindows.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        return false;
+    }
+
+    /**
+     * Looks up a single frame, e.g. one of a window that was not fully cached
+     *
+     * @param clip Key of the clip, from clipKey; null is ignored
+     * @param index Index of the frame in the clip
+     * @return The cached frame, or null
+     */
+    public synchronized ByteBuffer get(String clip, int index) {
+        if (clip == null || closed) return null;
+
+        ByteBuffer buffer = memory.get(frameKey(clip, index));
+        if (buffer != null) {
+            memoryHits++;
+            return buffer.duplicate();
+        }
+        SpillFile spill = spillFiles.get(clip);
+        if (spill == null || !spill.slots.containsKey(index)) return null;
+        try {
+            ByteBuffer mapped = spill.map(index);
+            spillHits++;
+            return mapped;
+        } catch (IOException e) {
+            removeSpill(clip);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a decoded frame unless it is cached already
+     *
+     * @param clip Key of the clip, from clipKey; null is ignored
+     * @param index Index of the frame in the clip
+     * @param frame Frame as the grabber delivered it
+     * @return The stored copy, which stays valid while referenced even if the cache evicts it,
+     *         or null if nothing was stored
+     */
+    public ByteBuffer put(String clip, int index, Frame frame) {
+        if (clip == null || frame == null || frame.image == null) return null;
+
+        String key = frameKey(clip, index);
+        int bytes = frameBytes(frame);
+        NativeMemoryBudget reservedIn;
+        synchronized (this) {
+            SpillFile spill = spillFiles.get(clip);
+            if (closed || memory.containsKey(key) || (spill != null && spill.slots.containsKey(index))) return null;
+            // Frames the memory tier or the budget has no room for go straight to disk
+            reservedIn = bytes <= memoryLimitBytes && reserve(bytes) ? budget : null;
+            if (reservedIn == null && bytes > spillLimitBytes) {
+                dropped++;
+                return null;
+            }
+        }
+
+        // Copy outside the lock; rows lose the grabber's padding
+        ByteBuffer copy = ByteBuffer.allocateDirect(bytes);
+        ByteBuffer source = ((ByteBuffer) frame.image[0]).duplicate();
+        int rowBytes = frame.imageWidth * frame.imageChannels;
+        if (frame.imageChannels == 1 && frame.imageStride != frame.imageWidth) {
+            JavaTransitionEngine.packI420(frame, copy);
+        } else if (frame.imageChannels == 1 || frame.imageStride == rowBytes) {
+            source.limit(copy.capacity()).position(0);
+            copy.put(source);
+        } else {
+            for (int y = 0; y < frame.imageHeight; y++) {
+                source.limit(y * frame.imageStride + rowBytes).position(y * frame.imageStride);
+                copy.put(source);
+            }
+        }
+        copy.flip();
+
+        synchronized (this) {
+            if (reservedIn != null && (closed || memory.containsKey(key) || reservedIn != budget)) {
+                // Stored meanwhile, closed, or the budget was replaced and the tier emptied into it
+                reservedIn.release(bytes);
+                reservedIn = null;
+            }
+            if (closed || memory.containsKey(key)) return null;
+            if (reservedIn == null) {
+                spill(key, clip, index, copy);
+                return copy.duplicate();
+            }
+            memory.put(key, copy);
+            memoryBytes += bytes;
+            evictMemory(memoryLimitBytes);
+        }
+        return copy.duplicate();
+    }
+
+    /**
+     * Moves every frame of the memory tier to the spill tier, e.g. under memory pressure
+     *
+     * @return true if any memory was returned to the budget
+     */
+    public synchronized boolean trimMemory() {
+        long held = memoryBytes;
+        evictMemory(0);
+        return held > 0;
+    }
+
+    /**
+     * Wraps a cached frame as a Mat without copying, like JavaTransitionEngine.toMat does for decoded frames.
+     * The Mat is freed by the enclosing PointerScope.
+     */
+    static Mat toMat(ByteBuffer buffer, int width, int height, int pixelFormat) {
+        BytePointer data = new BytePointer(buffer);
+        if (pixelFormat == AV_PIX_FMT_YUV420P) {
+            return new Mat(height * 3 / 2, width, CV_8UC1, data);
+        }
+        return new Mat(height, width, CV_8UC3, data);
+    }
+
+    /**
+     * Reserves a frame in the engine's memory budget, moving older frames to disk until it fits
+     *
+     * @return false if the budget has no room even with the memory tier empty
+     */
+    private boolean reserve(int bytes) {
+        NativeMemoryBudget current = JavaTransitionEngine.getMemoryBudget();
+        if (current != budget) {
+            // The frames held were reserved in the old budget
+            evictMemory(0);
+            budget = current;
+        }
+        while (!budget.tryReserve(bytes)) {
+            if (memoryBytes == 0) return false;
+            evictMemory(memoryBytes - 1);
+        }
+        return true;
+    }
+
+    private void evictMemory(long limit) {
+        Iterator<Map.Entry<String, ByteBuffer>> entries = memory.entrySet().iterator();
+        while (memoryBytes > limit && entries.hasNext()) {
+            Map.Entry<String, ByteBuffer> entry = entries.next();
+            entries.remove();
+            memoryBytes -= entry.getValue().capacity();
+            budget.release(entry.getValue().capacity());
+
+            String key = entry.getKey();
+            int split = key.lastIndexOf('#');
+            spill(key, key.substring(0, split), Integer.parseInt(key.substring(split + 1)), entry.getValue());
+        }
+    }
+
+    /**
+     * Appends a frame to its clip's spill file, dropping the least recently used clips to make room
+     */
+    private void spill(String key, String clip, int index, ByteBuffer frame) {
+        int bytes = frame.capacity();
+        if (bytes > spillLimitBytes) {
+            dropped++;
+            return;
+        }
+
+        deleteRetired();
+        Iterator<Map.Entry<String, SpillFile>> files = spillFiles.entrySet().iterator();
+        while (spillBytes + bytes > spillLimitBytes && files.hasNext()) {
+            Map.Entry<String, SpillFile> entry = files.next();
+            if (entry.getKey().equals(clip)) continue;
+            files.remove();
+            retire(entry.getValue());
+        }
+        if (spillBytes + bytes > spillLimitBytes) {
+            dropped++;
+            return;
+        }
+
+        try {
+            SpillFile file = spillFiles.get(clip);
+            if (file == null) {
+                file = new SpillFile(spillDirectory(), bytes);
+                spillFiles.put(clip, file);
+            }
+            file.append(index, frame);
+            spillBytes += bytes;
+            spilled++;
+        } catch (IOException e) {
+            System.err.println("Frame cache cannot spill " + key + ": " + e.getMessage());
+            removeSpill(clip);
+            dropped++;
+        }
+    }
+
+    private void removeSpill(String clip) {
+        SpillFile file = spillFiles.remove(clip);
+        if (file != null) {
+            retire(file);
+        }
+    }
+
+    /**
+     * Stops serving a spill file and deletes it, or keeps it until its mapped slices are collected
+     */
+    private void retire(SpillFile file) {
+        file.close();
+        retired.add(file);
+        deleteRetired();
+    }
+
+    private void deleteRetired() {
+        Iterator<SpillFile> files = retired.iterator();
+        while (files.hasNext()) {
+            SpillFile file = files.next();
+            if (!file.isMapped() && file.delete()) {
+                files.remove();
+                spillBytes -= file.bytes();
+            }
+        }
+    }
+
+    private File spillDirectory() throws IOException {
+        if (spillDir == null) {
+            spillDir = Files.createTempDirectory(spillParent.toPath(), "transition-frame-cache").toFile();
+            // Registered before its files, so it is deleted after them
+            spillDir.deleteOnExit();
+        }
+        return spillDir;
+    }
+
+    private static String frameKey(String clip, int index) {
+        return clip + "#" + index;
+    }
+
+    private static int frameBytes(Frame frame) {
+        if (frame.imageChannels == 1) {
+            // I420: the chroma planes follow the luma plane
+            return frame.imageWidth * frame.imageHeight * 3 / 2;
+        }
+        return frame.imageWidth * frame.imageHeight * frame.imageChannels;
+    }
+
+    /**
+     * @return true if either tier can keep frames
+     */
+    public boolean isEnabled() {
+        return memoryLimitBytes > 0 || spillLimitBytes > 0;
+    }
+
+    /**
+     * @return Bytes of frames in memory
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return Bytes of frames on disk
+     */
+    public synchronized long getSpillBytes() {
+        return spillBytes;
+    }
+
+    /**
+     * @return Frames served from memory
+     */
+    public synchronized long getMemoryHits() {
+        return memoryHits;
+    }
+
+    /**
+     * @return Frames served from the spill files
+     */
+    public synchronized long getSpillHits() {
+        return spillHits;
+    }
+
+    /**
+     * @return Windows that were not fully cached
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Forgets every frame, returns the memory tier's reservation and deletes
+     * the spill files no served slice maps any more
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        missedWindows.clear();
+        if (budget != null) {
+            budget.release(memoryBytes);
+        }
+        memory.clear();
+        memoryBytes = 0;
+        for (SpillFile file : spillFiles.values()) {
+            retire(file);
+        }
+        spillFiles.clear();
+        // Files still mapped are deleted at exit
+        if (spillDir != null && retired.isEmpty()) {
+            spillDir.delete();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("DecodedFrameCache[memory=%.1f/%.1f MB, spill=%.1f/%.1f MB, hits=%d+%d, misses=%d, spilled=%d, dropped=%d]",
+                memoryBytes / 1e6, memoryLimitBytes / 1e6, spillBytes / 1e6, spillLimitBytes / 1e6,
+                memoryHits, spillHits, misses, spilled, dropped);
+    }
+
+    /**
+     * The spilled frames of one clip: raw frames of equal size appended to a file
+     */
+    private static final class SpillFile {
+        final File file;
+        final FileChannel channel;
+        final int frameBytes;
+        final Map<Integer, Integer> slots = new HashMap<>();
+        // Slices served from the file; a mapping outlives the channel and keeps the file open
+        final List<WeakReference<ByteBuffer>> mappings = new ArrayList<>();
+
+        SpillFile(File dir, int frameBytes) throws IOException {
+            this.file = File.createTempFile("clip", ".raw", dir);
+            this.file.deleteOnExit();
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.frameBytes = frameBytes;
+        }
+
+        void append(int index, ByteBuffer frame) throws IOException {
+            int slot = slots.size();
+            ByteBuffer source = frame.duplicate();
+            source.rewind();
+            long position = (long) slot * frameBytes;
+            while (source.hasRemaining()) {
+                position += channel.write(source, position);
+            }
+            slots.put(index, slot);
+        }
+
+        ByteBuffer map(int index) throws IOException {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, (long) slots.get(index) * frameBytes, frameBytes);
+            mappings.removeIf(mapping -> mapping.get() == null);
+            mappings.add(new WeakReference<>(mapped));
+            return mapped;
+        }
+
+        /**
+         * @return true while a served slice may still be read
+         */
+        boolean isMapped() {
+            mappings.removeIf(mapping -> mapping.get() == null);
+            return !mappings.isEmpty();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // The file is deleted anyway
+            }
+        }
+
+        /**
+         * @return true if the file is gone
+         */
+        boolean delete() {
+            return file.delete() || !file.exists();
+        }
+
+        /**
+         * @return The bytes the file holds
+         */
+        long bytes() {
+            return (long) slots.size() * frameBytes;
+        }
+    }
+}
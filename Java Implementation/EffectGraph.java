@@ -0,0 +1,523 @@
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGR24;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+/**
+ * EffectGraph - Stacks several effects into one transition rendered in a single pass
+ *
+ * Combinations such as zoom + blur or a glitch over a whip pan used to take
+ * two transition jobs, with a full decode and encode in between. A graph runs
+ * its nodes one after the other on every frame instead:
+ *
+ *   FrameEffect zoomBlur = new EffectGraph()
+ *           .then(JavaTransitionEngine.zoomEffect(1.5))
+ *           .then(JavaTransitionEngine.blurEffect(25));
+ *   JavaTransitionEngine.applyTransition(input1, input2, output, 1.0, zoomBlur);
+ *
+ * Each node reads two of FIRST (the frame of the first video), SECOND (the
+ * frame of the second video) and PREVIOUS (what the node before it rendered).
+ * The first node reads FIRST and SECOND and later nodes read PREVIOUS twice
+ * unless other inputs are given, so each node works over the running image.
+ *
+ * Besides full effects, a node can be a pointwise operation: blend(),
+ * dipToColor() and brightness(), or any PointwiseOp. These compute every
+ * output sample as a weighted sum of the input samples plus an offset, so a
+ * run of adjacent pointwise nodes is folded into one weighted sum per frame
+ * and written in a single traversal (one addWeighted, convertTo or transform)
+ * without intermediate images. Folding skips the clipping to 0-255 between
+ * the folded nodes, which only matters when an intermediate result leaves
+ * that range.
+ *
+ * Intermediate results live in two scratch buffers that the nodes take turns
+ * writing, reused for every frame of the job. The graph works in the pixel
+ * format of its effect nodes, which must all agree; pointwise nodes work in
+ * either format. Like any FrameEffect, a graph belongs to one job, and it
+ * releases its effects when the job releases it.
+ */
+public class EffectGraph implements FrameEffect {
+
+    /**
+     * Where a node takes an input frame from
+     */
+    public enum Input {
+        /** Frame of the first video */
+        FIRST,
+        /** Frame of the second video */
+        SECOND,
+        /** Output of the previous node */
+        PREVIOUS
+    }
+
+    /**
+     * A pointwise operation: out = a * input1 + b * input2 + c for every sample
+     *
+     * The coefficients may change with the progress but not across the frame.
+     * Channels are B, G and R for BGR frames and the Y, U and V planes for
+     * I420 frames; in BGR all three channels must use the same a and b.
+     */
+    public interface PointwiseOp {
+
+        /**
+         * Fills the per-channel coefficients for one frame
+         *
+         * @param progress Transition progress from 0.0 to 1.0
+         * @param planar true for I420 frames, false for BGR frames
+         * @param a Weight of the first input, per channel
+         * @param b Weight of the second input, per channel
+         * @param c Offset added, per channel
+         */
+        void coefficients(double progress, boolean planar, double[] a, double[] b, double[] c);
+
+        /**
+         * @return Short name of the operation
+         */
+        default String name() {
+            return getClass().getSimpleName();
+        }
+    }
+
+    // Images a folded weighted sum can read: the two source frames and the previous node's output
+    private static final int BASIS_FIRST = 0;
+    private static final int BASIS_SECOND = 1;
+    private static final int BASIS_PREVIOUS = 2;
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final Mat[] scratch = {new Mat(), new Mat()};
+    private int pixelFormat;
+    private boolean pixelFormatFixed;
+    private boolean fused = true;
+
+    private static final class Node {
+        final FrameEffect effect;
+        final PointwiseOp op;
+        final Input input1;
+        final Input input2;
+
+        Node(FrameEffect effect, PointwiseOp op, Input input1, Input input2) {
+            this.effect = effect;
+            this.op = op;
+            this.input1 = input1;
+            this.input2 = input2;
+        }
+
+        String name() {
+            return effect != null ? effect.name() : op.name();
+        }
+    }
+
+    /**
+     * Per-channel weighted sum of the basis images plus an offset
+     */
+    private static final class WeightedSum {
+        final double[][] weights = new double[3][3];
+        final double[] offsets = new double[3];
+
+        static WeightedSum of(int basis) {
+            WeightedSum sum = new WeightedSum();
+            for (int ch = 0; ch < 3; ch++) {
+                sum.weights[basis][ch] = 1.0;
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Creates a graph taking its pixel format from its effect nodes, BGR if it has none
+     */
+    public EffectGraph() {
+        this.pixelFormat = AV_PIX_FMT_BGR24;
+    }
+
+    /**
+     * Creates a graph working in the given pixel format
+     *
+     * @param pixelFormat AV_PIX_FMT_BGR24 or AV_PIX_FMT_YUV420P
+     */
+    public EffectGraph(int pixelFormat) {
+        if (pixelFormat != AV_PIX_FMT_BGR24 && pixelFormat != AV_PIX_FMT_YUV420P) {
+            throw new IllegalArgumentException("Unsupported pixel format " + pixelFormat);
+        }
+        this.pixelFormat = pixelFormat;
+        this.pixelFormatFixed = true;
+    }
+
+    /**
+     * Appends an effect over the running image (or over both videos if it is the first node)
+     *
+     * @param effect Effect to append, owned by the graph from now on
+     * @return This graph
+     */
+    public EffectGraph then(FrameEffect effect) {
+        return nodes.isEmpty() ? then(effect, Input.FIRST, Input.SECOND) : then(effect, Input.PREVIOUS, Input.PREVIOUS);
+    }
+
+    /**
+     * Appends an effect reading the given inputs
+     *
+     * @param effect Effect to append, owned by the graph from now on
+     * @param input1 Frame passed as the effect's first frame
+     * @param input2 Frame passed as the effect's second frame
+     * @return This graph
+     */
+    public EffectGraph then(FrameEffect effect, Input input1, Input input2) {
+        if (pixelFormatFixed && effect.pixelFormat() != pixelFormat) {
+            throw new IllegalArgumentException("Effect " + effect.name() + " does not work in the graph's pixel format");
+        }
+        pixelFormat = effect.pixelFormat();
+        pixelFormatFixed = true;
+        return append(new Node(effect, null, input1, input2));
+    }
+
+    /**
+     * Appends a pointwise operation over the running image (or over both videos if it is the first node)
+     *
+     * @param op Operation to append
+     * @return This graph
+     */
+    public EffectGraph then(PointwiseOp op) {
+        return nodes.isEmpty() ? then(op, Input.FIRST, Input.SECOND) : then(op, Input.PREVIOUS, Input.PREVIOUS);
+    }
+
+    /**
+     * Appends a pointwise operation reading the given inputs
+     *
+     * @param op Operation to append
+     * @param input1 Frame weighted by the operation's a coefficients
+     * @param input2 Frame weighted by the operation's b coefficients
+     * @return This graph
+     */
+    public EffectGraph then(PointwiseOp op, Input input1, Input input2) {
+        return append(new Node(null, op, input1, input2));
+    }
+
+    private EffectGraph append(Node node) {
+        if (nodes.isEmpty() && (node.input1 == Input.PREVIOUS || node.input2 == Input.PREVIOUS)) {
+            throw new IllegalArgumentException("The first node has no previous node to read");
+        }
+        nodes.add(node);
+        return this;
+    }
+
+    /**
+     * Turns folding of adjacent pointwise nodes on or off; off runs every node
+     * as its own pass, which is the reference the regression harness compares against
+     *
+     * @param fused false to write every pointwise node separately
+     * @return This graph
+     */
+    EffectGraph fused(boolean fused) {
+        this.fused = fused;
+        return this;
+    }
+
+    /**
+     * Crossfade: out = first * (1 - progress) + second * progress
+     *
+     * @return The blend operation
+     */
+    public static PointwiseOp blend() {
+        return new PointwiseOp() {
+            @Override
+            public void coefficients(double progress, boolean planar, double[] a, double[] b, double[] c) {
+                for (int ch = 0; ch < 3; ch++) {
+                    a[ch] = 1.0 - progress;
+                    b[ch] = progress;
+                    c[ch] = 0.0;
+                }
+            }
+
+            @Override
+            public String name() {
+                return "blend";
+            }
+        };
+    }
+
+    /**
+     * Dip to colour: the first input fades into a solid colour during the
+     * first half, which fades into the second input during the second half
+     *
+     * @param red Red component of the colour (0-255)
+     * @param green Green component of the colour (0-255)
+     * @param blue Blue component of the colour (0-255)
+     * @return The dip operation
+     */
+    public static PointwiseOp dipToColor(int red, int green, int blue) {
+        double[] bgr = {blue, green, red};
+        double[] yuv = YuvTransitionEngine.rgbToYuv(red, green, blue);
+
+        return new PointwiseOp() {
+            @Override
+            public void coefficients(double progress, boolean planar, double[] a, double[] b, double[] c) {
+                double amount = progress < 0.5 ? progress * 2.0 : 2.0 - progress * 2.0;
+                double[] color = planar ? yuv : bgr;
+                for (int ch = 0; ch < 3; ch++) {
+                    a[ch] = progress < 0.5 ? 1.0 - amount : 0.0;
+                    b[ch] = progress < 0.5 ? 0.0 : 1.0 - amount;
+                    c[ch] = color[ch] * amount;
+                }
+            }
+
+            @Override
+            public String name() {
+                return "dip";
+            }
+        };
+    }
+
+    /**
+     * Gain and brightness on the first input: out = first * gain + offset in RGB
+     *
+     * On I420 frames the same change is made to the limited range planes, so
+     * both pixel formats give the same picture.
+     *
+     * @param gain Contrast multiplier, 1.0 keeps the contrast
+     * @param offset Brightness added to each RGB channel (-255 to 255)
+     * @return The brightness operation
+     */
+    public static PointwiseOp brightness(double gain, double offset) {
+        return new PointwiseOp() {
+            @Override
+            public void coefficients(double progress, boolean planar, double[] a, double[] b, double[] c) {
+                for (int ch = 0; ch < 3; ch++) {
+                    a[ch] = gain;
+                    b[ch] = 0.0;
+                    c[ch] = offset;
+                }
+                if (planar) {
+                    // Luma scales around black and takes the offset in its 219 step range, chroma scales around neutral
+                    c[0] = 16.0 * (1.0 - gain) + offset * 219.0 / 255.0;
+                    c[1] = 128.0 * (1.0 - gain);
+                    c[2] = 128.0 * (1.0 - gain);
+                }
+            }
+
+            @Override
+            public String name() {
+                return "brightness";
+            }
+        };
+    }
+
+    @Override
+    public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+        if (nodes.isEmpty()) {
+            throw new IllegalStateException("The effect graph has no nodes");
+        }
+        boolean planar = pixelFormat == AV_PIX_FMT_YUV420P;
+        double[] a = new double[3];
+        double[] b = new double[3];
+        double[] c = new double[3];
+
+        Mat previous = null;
+        WeightedSum pending = null;
+        for (int n = 0; n < nodes.size(); n++) {
+            Node node = nodes.get(n);
+            boolean last = n == nodes.size() - 1;
+
+            if (node.op != null) {
+                // Fold the operation into the weighted sum of the nodes before it
+                node.op.coefficients(progress, planar, a, b, c);
+                WeightedSum in1 = input(node.input1, pending);
+                WeightedSum in2 = input(node.input2, pending);
+                WeightedSum sum = new WeightedSum();
+                for (int ch = 0; ch < 3; ch++) {
+                    for (int basis = 0; basis < 3; basis++) {
+                        sum.weights[basis][ch] = a[ch] * in1.weights[basis][ch] + b[ch] * in2.weights[basis][ch];
+                    }
+                    sum.offsets[ch] = a[ch] * in1.offsets[ch] + b[ch] * in2.offsets[ch] + c[ch];
+                }
+                pending = sum;
+
+                if (!fused && !last) {
+                    Mat target = freeScratch(previous);
+                    write(pending, frame1, frame2, previous, target, planar);
+                    previous = target;
+                    pending = null;
+                }
+                continue;
+            }
+
+            // A full effect needs its inputs as images, so write out what has been folded so far
+            if (pending != null && (node.input1 == Input.PREVIOUS || node.input2 == Input.PREVIOUS)) {
+                Mat target = freeScratch(previous);
+                write(pending, frame1, frame2, previous, target, planar);
+                previous = target;
+            }
+            pending = null;
+
+            Mat target = last ? output : freeScratch(previous);
+            target.create(frame1.rows(), frame1.cols(), frame1.type());
+            node.effect.apply(resolve(node.input1, frame1, frame2, previous),
+                    resolve(node.input2, frame1, frame2, previous), target, progress);
+            previous = target;
+        }
+
+        if (pending != null) {
+            write(pending, frame1, frame2, previous, output, planar);
+        }
+    }
+
+    /**
+     * Weighted sum standing for a node input
+     */
+    private static WeightedSum input(Input input, WeightedSum pending) {
+        switch (input) {
+            case FIRST: return WeightedSum.of(BASIS_FIRST);
+            case SECOND: return WeightedSum.of(BASIS_SECOND);
+            default: return pending != null ? pending : WeightedSum.of(BASIS_PREVIOUS);
+        }
+    }
+
+    private static Mat resolve(Input input, Mat frame1, Mat frame2, Mat previous) {
+        switch (input) {
+            case FIRST: return frame1;
+            case SECOND: return frame2;
+            default: return previous;
+        }
+    }
+
+    /**
+     * @return The scratch buffer not holding the previous node's output
+     */
+    private Mat freeScratch(Mat previous) {
+        return previous == scratch[0] ? scratch[1] : scratch[0];
+    }
+
+    /**
+     * Writes a weighted sum in one traversal, per plane for I420 frames
+     */
+    private static void write(WeightedSum sum, Mat frame1, Mat frame2, Mat previous, Mat target, boolean planar) {
+        target.create(frame1.rows(), frame1.cols(), frame1.type());
+        Mat[] basis = {frame1, frame2, previous};
+        if (!planar) {
+            writeRegion(basis, sum.weights, 0, sum.offsets, target);
+            return;
+        }
+
+        // The planes do not overlap, so writing them one after the other still reads every sample once
+        for (int p = 0; p < 3; p++) {
+            Mat[] planes = new Mat[3];
+            for (int i = 0; i < 3; i++) {
+                planes[i] = basis[i] != null ? YuvTransitionEngine.plane(basis[i], p) : null;
+            }
+            writeRegion(planes, sum.weights, p, new double[] {sum.offsets[p], sum.offsets[p], sum.offsets[p]},
+                    YuvTransitionEngine.plane(target, p));
+        }
+    }
+
+    /**
+     * Writes one region using the weights of the given channel
+     */
+    private static void writeRegion(Mat[] basis, double[][] weights, int channel, double[] offsets, Mat target) {
+        int[] terms = new int[3];
+        int count = 0;
+        for (int i = 0; i < 3; i++) {
+            if (weights[i][channel] != 0.0 && basis[i] != null) {
+                terms[count++] = i;
+            }
+        }
+
+        // A shared offset rides along as addWeighted's gamma, per-channel offsets need a colour transform
+        boolean uniform = offsets[0] == offsets[1] && offsets[1] == offsets[2];
+        double gamma = uniform ? offsets[0] : 0.0;
+
+        switch (count) {
+            case 0:
+                target.put(new Scalar(offsets[0], offsets[1], offsets[2], 0));
+                return;
+            case 1:
+                if (uniform) {
+                    basis[terms[0]].convertTo(target, -1, weights[terms[0]][channel], gamma);
+                } else {
+                    transform(basis[terms[0]], target, colorMatrix(weights[terms[0]][channel], offsets));
+                }
+                return;
+            case 2:
+                double weight1 = weights[terms[0]][channel];
+                double weight2 = weights[terms[1]][channel];
+                if (uniform && gamma == 0.0 && weight1 >= 0.0 && weight2 >= 0.0 && Math.abs(weight1 + weight2 - 1.0) < 1e-9) {
+                    // A plain crossfade goes to the configured blend backend
+                    JavaTransitionEngine.getBlendBackend().crossfade(basis[terms[0]], basis[terms[1]], target, weight2);
+                    return;
+                }
+                addWeighted(basis[terms[0]], weight1, basis[terms[1]], weight2, gamma, target);
+                break;
+            default:
+                addWeighted(basis[terms[0]], weights[terms[0]][channel], basis[terms[1]], weights[terms[1]][channel], 0.0, target);
+                addWeighted(basis[terms[2]], weights[terms[2]][channel], target, 1.0, gamma, target);
+                break;
+        }
+        if (!uniform) {
+            transform(target, target, colorMatrix(1.0, offsets));
+        }
+    }
+
+    /**
+     * 3x4 matrix for transform() that scales every channel and adds its own offset
+     */
+    private static Mat colorMatrix(double scale, double[] offsets) {
+        Mat matrix = new Mat(3, 4, CV_64F, Scalar.all(0));
+        try (DoubleIndexer indexer = matrix.createIndexer()) {
+            for (int ch = 0; ch < 3; ch++) {
+                indexer.put(ch, ch, scale);
+                indexer.put(ch, 3, offsets[ch]);
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public String name() {
+        StringBuilder name = new StringBuilder();
+        for (Node node : nodes) {
+            if (name.length() > 0) name.append('+');
+            name.append(node.name());
+        }
+        return name.toString();
+    }
+
+    @Override
+    public int pixelFormat() {
+        return pixelFormat;
+    }
+
+    @Override
+    public void prepare(double frameRate, int frames) {
+        for (Node node : nodes) {
+            if (node.effect != null) {
+                node.effect.prepare(frameRate, frames);
+            }
+        }
+    }
+
+    @Override
+    public long nativeBytes() {
+        long bytes = JavaTransitionEngine.matBytes(scratch);
+        for (Node node : nodes) {
+            if (node.effect != null) {
+                bytes += node.effect.nativeBytes();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void release() {
+        for (Mat mat : scratch) {
+            mat.release();
+        }
+        for (Node node : nodes) {
+            if (node.effect != null) {
+                node.effect.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+import org.bytedeco.javacpp.Pointer;
+
+/**
+ * ExecutionProfile - How much of the host the engine may use
+ *
+ * The engine's defaults assume a desktop or server: output at the input's
+ * resolution, codecs picking their own thread counts (each decoder thread
+ * holds pictures of its own), a pool of warm output buffers and unbounded job
+ * queues. On a phone, or in a small container, those add up to more memory
+ * than the device has. Two profiles exist:
+ *
+ *   standard     no limits, the engine's behaviour without a profile (the default)
+ *   constrained  works at no more than 1280x720 (either orientation), decodes
+ *                and encodes on one thread, pools one output buffer, queues at
+ *                most 2 daemon jobs and renders long outputs in one streaming
+ *                pass instead of parallel chunks
+ *
+ * Both adapt to memory pressure: a job starting while the heap, JavaCPP's
+ * native allocations (against its maxBytes), the process's physical memory
+ * (against JavaCPP's maxPhysicalBytes) or the native memory budget is above
+ * the profile's threshold works at half the resolution it would otherwise
+ * use, and the session's pooled buffers and the memory tier of the decoded
+ * frame cache are released first. The standard profile's
+ * threshold is 1.0, so it only steps down when something is already full.
+ *
+ * The profile is picked with -Dtransition.profile=standard|constrained;
+ * its limits can be overridden with transition.profile.maxWidth, .maxHeight,
+ * .pooledBuffers, .codecThreads, .queueDepth and .pressure. It can also be
+ * replaced through JavaTransitionEngine.setExecutionProfile. A constrained
+ * device can be simulated on a desktop JVM with a small -Xmx,
+ * -Dorg.bytedeco.javacpp.maxBytes, -Dorg.bytedeco.javacpp.maxPhysicalBytes
+ * and -Dtransition.memory.limit (see README).
+ */
+public final class ExecutionProfile {
+
+    private final String name;
+    private final int maxWidth;
+    private final int maxHeight;
+    private final int pooledBuffers;
+    private final int codecThreads;
+    private final int queueDepth;
+    private final boolean streamingOnly;
+    private final double pressureThreshold;
+
+    /**
+     * @param name Name of the profile, for logs and metrics
+     * @param maxWidth Largest working width (the longer side), 0 with maxHeight for no limit
+     * @param maxHeight Largest working height (the shorter side), 0 with maxWidth for no limit
+     * @param pooledBuffers Output buffers a session keeps between jobs
+     * @param codecThreads Threads per decoder and encoder, 0 to let FFmpeg choose
+     * @param queueDepth Jobs the daemon queues behind the running ones before refusing more
+     * @param streamingOnly true to render every job in a single pass through the frame loop
+     * @param pressureThreshold Fraction of a memory limit above which jobs step down their resolution
+     */
+    public ExecutionProfile(String name, int maxWidth, int maxHeight, int pooledBuffers, int codecThreads,
+                            int queueDepth, boolean streamingOnly, double pressureThreshold) {
+        if (maxWidth < 0 || maxHeight < 0 || pooledBuffers < 0 || codecThreads < 0 || queueDepth <= 0) {
+            throw new IllegalArgumentException("Invalid execution profile limits");
+        }
+        this.name = name;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.pooledBuffers = pooledBuffers;
+        this.codecThreads = codecThreads;
+        this.queueDepth = queueDepth;
+        this.streamingOnly = streamingOnly;
+        this.pressureThreshold = pressureThreshold;
+    }
+
+    /**
+     * @return The profile without limits
+     */
+    public static ExecutionProfile standard() {
+        return new ExecutionProfile("standard", 0, 0, 4, 0, Integer.MAX_VALUE, false, 1.0);
+    }
+
+    /**
+     * @return The profile for phones and other low-memory hosts
+     */
+    public static ExecutionProfile constrained() {
+        return new ExecutionProfile("constrained", 1280, 720, 1, 1, 2, true, 0.8);
+    }
+
+    /**
+     * Creates the profile described by the transition.profile* system properties
+     *
+     * @return The configured profile, standard if none is set
+     */
+    static ExecutionProfile fromSystemProperties() {
+        String name = System.getProperty("transition.profile", "standard");
+        ExecutionProfile base;
+        if (name.equals("constrained")) {
+            base = constrained();
+        } else {
+            if (!name.equals("standard")) {
+                System.err.println("Unknown execution profile: " + name + ", using the standard profile");
+            }
+            base = standard();
+        }
+        return new ExecutionProfile(base.name,
+                Integer.getInteger("transition.profile.maxWidth", base.maxWidth),
+                Integer.getInteger("transition.profile.maxHeight", base.maxHeight),
+                Integer.getInteger("transition.profile.pooledBuffers", base.pooledBuffers),
+                Integer.getInteger("transition.profile.codecThreads", base.codecThreads),
+                Integer.getInteger("transition.profile.queueDepth", base.queueDepth),
+                base.streamingOnly,
+                Double.parseDouble(System.getProperty("transition.profile.pressure", String.valueOf(base.pressureThreshold))));
+    }
+
+    /**
+     * Picks the resolution a job works at: the input's, scaled down to fit the
+     * profile's limits, and halved again if memory is under pressure
+     *
+     * @param width Width of the input
+     * @param height Height of the input
+     * @param underPressure true if memory is under pressure, see isUnderPressure
+     * @return Working width and height, both even
+     */
+    int[] workingSize(int width, int height, boolean underPressure) {
+        double scale = 1.0;
+        if (maxWidth > 0 && maxHeight > 0) {
+            // The limits apply in either orientation, so portrait videos are not squeezed into a landscape box
+            scale = Math.min(scale, (double) Math.max(maxWidth, maxHeight) / Math.max(width, height));
+            scale = Math.min(scale, (double) Math.min(maxWidth, maxHeight) / Math.min(width, height));
+        }
+        if (underPressure) {
+            scale *= 0.5;
+        }
+        if (scale >= 1.0) {
+            return new int[] {width, height};
+        }
+        // Encoders need even sizes for 4:2:0 chroma
+        return new int[] {Math.max(2, (int) Math.round(width * scale) & ~1),
+                          Math.max(2, (int) Math.round(height * scale) & ~1)};
+    }
+
+    /**
+     * @param budget Native memory budget the jobs reserve from
+     * @return true if memory use is above the profile's threshold
+     */
+    public boolean isUnderPressure(NativeMemoryBudget budget) {
+        return memoryPressure(budget) >= pressureThreshold;
+    }
+
+    /**
+     * Measures how close the process is to its memory limits
+     *
+     * @param budget Native memory budget the jobs reserve from
+     * @return The highest used fraction of the heap, JavaCPP's allocations, physical memory and the budget
+     */
+    public static double memoryPressure(NativeMemoryBudget budget) {
+        // The heap as the last collection left it, as garbage would count as pressure before every collection
+        long liveHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                liveHeap += usage.getUsed();
+            }
+        }
+        double pressure = (double) liveHeap / Runtime.getRuntime().maxMemory();
+
+        if (Pointer.maxBytes() > 0) {
+            pressure = Math.max(pressure, (double) Pointer.totalBytes() / Pointer.maxBytes());
+        }
+        if (Pointer.maxPhysicalBytes() > 0) {
+            pressure = Math.max(pressure, (double) Pointer.physicalBytes() / Pointer.maxPhysicalBytes());
+        }
+        if (budget.getLimitBytes() != Long.MAX_VALUE) {
+            pressure = Math.max(pressure, (double) budget.getReservedBytes() / budget.getLimitBytes());
+        }
+        return pressure;
+    }
+
+    /**
+     * @return Name of the profile
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Largest working width (the longer side), 0 for no limit
+     */
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * @return Largest working height (the shorter side), 0 for no limit
+     */
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * @return Output buffers a session keeps between jobs
+     */
+    public int getPooledBuffers() {
+        return pooledBuffers;
+    }
+
+    /**
+     * @return Threads per decoder and encoder, 0 to let FFmpeg choose
+     */
+    public int getCodecThreads() {
+        return codecThreads;
+    }
+
+    /**
+     * @return Jobs the daemon queues behind the running ones before refusing more
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return true if every job renders in a single pass through the frame loop
+     */
+    public boolean isStreamingOnly() {
+        return streamingOnly;
+    }
+
+    /**
+     * @return Fraction of a memory limit above which jobs step down their resolution
+     */
+    public double getPressureThreshold() {
+        return pressureThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ExecutionProfile[%s, max=%s, pooledBuffers=%d, codecThreads=%s, queueDepth=%s, streamingOnly=%b, pressure=%.2f]",
+                name, maxWidth > 0 || maxHeight > 0 ? maxWidth + "x" + maxHeight : "unlimited", pooledBuffers,
+                codecThreads > 0 ? String.valueOf(codecThreads) : "auto",
+                queueDepth == Integer.MAX_VALUE ? "unlimited" : String.valueOf(queueDepth), streamingOnly, pressureThreshold);
+    }
+}
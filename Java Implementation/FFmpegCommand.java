@@ -0,0 +1,250 @@
+import org.bytedeco.ffmpeg.avutil.AVRational;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * FFmpegCommand - An ffmpeg command line as a list of arguments
+ *
+ * The arguments are passed to the ffmpeg process as they are, so paths and
+ * filter graphs need no quoting. The factory methods build the transitions of
+ * TransitionEngine as a single ffmpeg run: the first video up to its last
+ * 'duration' seconds, the transition rendered by the FilterGraphEngine filter
+ * graph, and the rest of the second video, cut at the same frames as
+ * JavaTransitionEngine. Like the engine, the second video is scaled to the
+ * size of the first one and only video is written.
+ *
+ * Commands are run with FFmpegExecutor.execute or, many at a time, with an
+ * FFmpegWorkerPool.
+ */
+public class FFmpegCommand {
+
+    private final List<String> arguments;
+    private final String outputPath;
+    private final double outputSeconds;
+
+    /**
+     * @param arguments Arguments passed to ffmpeg, without the program name
+     * @param outputPath Path of the file the command writes, deleted if the command is cancelled; null if none
+     * @param outputSeconds Expected duration of the output in seconds for progress reporting, 0 if unknown
+     */
+    public FFmpegCommand(List<String> arguments, String outputPath, double outputSeconds) {
+        this.arguments = Collections.unmodifiableList(new ArrayList<>(arguments));
+        this.outputPath = outputPath;
+        this.outputSeconds = outputSeconds;
+    }
+
+    /**
+     * Creates a simple fade transition command
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @return The command
+     * @throws Exception If the inputs cannot be read
+     */
+    public static FFmpegCommand fade(String input1, String input2, String outputPath, double duration) throws Exception {
+        return transition(input1, input2, outputPath, duration, FilterGraphEngine.fadeEffect());
+    }
+
+    /**
+     * Creates a glitch transition command
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param glitchStrength Intensity of the glitch effect (1-100)
+     * @return The command
+     * @throws Exception If the inputs cannot be read
+     */
+    public static FFmpegCommand glitch(String input1, String input2, String outputPath, double duration, int glitchStrength) throws Exception {
+        return transition(input1, input2, outputPath, duration, FilterGraphEngine.glitchEffect(glitchStrength));
+    }
+
+    /**
+     * Creates a zoom transition command
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param zoomFactor Maximum zoom factor (1.0-2.0 recommended)
+     * @return The command
+     * @throws Exception If the inputs cannot be read
+     */
+    public static FFmpegCommand zoom(String input1, String input2, String outputPath, double duration, double zoomFactor) throws Exception {
+        return transition(input1, input2, outputPath, duration, FilterGraphEngine.zoomEffect(zoomFactor));
+    }
+
+    /**
+     * Creates a blur transition command
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param maxBlur Maximum blur amount (5-50 recommended)
+     * @return The command
+     * @throws Exception If the inputs cannot be read
+     */
+    public static FFmpegCommand blur(String input1, String input2, String outputPath, double duration, int maxBlur) throws Exception {
+        return transition(input1, input2, outputPath, duration, FilterGraphEngine.blurEffect(maxBlur));
+    }
+
+    /**
+     * Creates a whip pan transition command
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction of the whip ("left", "right", "up", "down")
+     * @param blurStrength Strength of the motion blur (10-100 recommended)
+     * @return The command
+     * @throws Exception If the inputs cannot be read
+     */
+    public static FFmpegCommand whipPan(String input1, String input2, String outputPath, double duration,
+                                        String direction, int blurStrength) throws Exception {
+        return transition(input1, input2, outputPath, duration, FilterGraphEngine.whipPanEffect(direction, blurStrength));
+    }
+
+    /**
+     * Creates a spin transition command
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @return The command
+     * @throws Exception If the inputs cannot be read
+     */
+    public static FFmpegCommand spin(String input1, String input2, String outputPath, double duration) throws Exception {
+        return transition(input1, input2, outputPath, duration, FilterGraphEngine.spinEffect());
+    }
+
+    /**
+     * Creates a light flash transition command
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @return The command
+     * @throws Exception If the inputs cannot be read
+     */
+    public static FFmpegCommand lightFlash(String input1, String input2, String outputPath, double duration) throws Exception {
+        return transition(input1, input2, outputPath, duration, FilterGraphEngine.lightFlashEffect());
+    }
+
+    /**
+     * Creates a transition command rendering the overlap with a filter graph effect
+     *
+     * Both inputs are opened briefly to read the size, frame rate, length
+     * and codec the command is built from.
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param effect An effect created by FilterGraphEngine
+     * @return The command
+     * @throws Exception If the inputs cannot be read
+     * @throws IllegalArgumentException If the effect was not created by FilterGraphEngine
+     */
+    public static FFmpegCommand transition(String input1, String input2, String outputPath, double duration,
+                                           FrameEffect effect) throws Exception {
+        FFmpegFrameGrabber grabber1 = new FFmpegFrameGrabber(input1);
+        FFmpegFrameGrabber grabber2 = new FFmpegFrameGrabber(input2);
+        try {
+            grabber1.start();
+            grabber2.start();
+
+            int width = grabber1.getImageWidth();
+            int height = grabber1.getImageHeight();
+            double frameRate = grabber1.getVideoFrameRate();
+            AVRational rate = grabber1.getFormatContext().streams(grabber1.getVideoStream()).r_frame_rate();
+            String fps = rate.num() > 0 && rate.den() > 0 ? rate.num() + "/" + rate.den() : format("%f", frameRate);
+
+            // The same frame counts as the engine's frame loop
+            int transitionFrames = (int) (duration * frameRate);
+            int firstVideoFramesToKeep = grabber1.getLengthInFrames() - transitionFrames;
+            int expectedFrames = grabber1.getLengthInFrames() + grabber2.getLengthInFrames() - transitionFrames;
+            String graph = FilterGraphEngine.graph(effect, width, height, frameRate, transitionFrames)
+                    .replace("[0:v]", "[x0]")
+                    .replace("[1:v]", "[x1]");
+
+            // Both videos at the first one's rate, size and format, split at the transition frames
+            String filterComplex =
+                    format("[0:v]fps=%s,setsar=1,format=yuv420p,split[h0][x0s];", fps)
+                    + format("[h0]trim=end_frame=%d,setpts=PTS-STARTPTS[head];", firstVideoFramesToKeep)
+                    + format("[x0s]trim=start_frame=%d,setpts=PTS-STARTPTS[x0];", firstVideoFramesToKeep)
+                    + format("[1:v]fps=%s,scale=%d:%d,setsar=1,format=yuv420p,split[x1s][t1];", fps, width, height)
+                    + format("[x1s]trim=end_frame=%d,setpts=PTS-STARTPTS[x1];", transitionFrames)
+                    + format("[t1]trim=start_frame=%d,setpts=PTS-STARTPTS[tail];", transitionFrames)
+                    + graph + ",setsar=1,format=yuv420p[mid];"
+                    + "[head][mid][tail]concat=n=3:v=1:a=0[v]";
+
+            List<String> arguments = new ArrayList<>();
+            Collections.addAll(arguments, "-y", "-i", input1, "-i", input2,
+                    "-filter_complex", filterComplex, "-map", "[v]", "-an");
+            Collections.addAll(arguments, "-c:v", grabber1.getVideoCodecName());
+            if (grabber1.getVideoBitrate() > 0) {
+                Collections.addAll(arguments, "-b:v", String.valueOf(grabber1.getVideoBitrate()));
+            }
+            Collections.addAll(arguments, "-pix_fmt", "yuv420p", "-f", "mp4", outputPath);
+            return new FFmpegCommand(arguments, outputPath, expectedFrames / frameRate);
+        } finally {
+            effect.release();
+            grabber1.release();
+            grabber2.release();
+        }
+    }
+
+    private static String format(String format, Object... args) {
+        // Filter options always take a decimal point, whatever the default locale
+        return String.format(Locale.ROOT, format, args);
+    }
+
+    /**
+     * @return Arguments passed to ffmpeg, without the program name
+     */
+    public List<String> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * @return Path of the file the command writes, null if none
+     */
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    /**
+     * @return Expected duration of the output in seconds, 0 if unknown
+     */
+    public double getOutputSeconds() {
+        return outputSeconds;
+    }
+
+    /**
+     * @return The command line for logging, with arguments containing spaces or quotes in double quotes
+     */
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder("ffmpeg");
+        for (String argument : arguments) {
+            line.append(' ');
+            if (argument.isEmpty() || argument.matches(".*[\\s\"'].*")) {
+                line.append('"').append(argument.replace("\"", "\\\"")).append('"');
+            } else {
+                line.append(argument);
+            }
+        }
+        return line.toString();
+    }
+}
@@ -1,5 +1,7 @@
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
@@ -8,9 +10,18 @@ import java.util.List;
  * FFmpegExecutor - A utility class for executing FFmpeg commands
  * 
  * This class provides methods to execute FFmpeg commands and handle their output.
+ * Commands are best passed as argument lists (see FFmpegCommand), which reach
+ * ffmpeg unchanged whatever spaces or quotes the paths and filter graphs
+ * contain. FFmpegWorkerPool runs many of them side by side with progress,
+ * timeouts and cancellation.
+ * 
+ * The ffmpeg binary is taken from -Dffmpeg.path, else from the PATH, else the
+ * one bundled with JavaCV's FFmpeg artifact.
  */
 public class FFmpegExecutor {
     
+    private static volatile String ffmpegPath;
+    
     /**
      * Executes an FFmpeg command and returns the process exit code
      * 
@@ -21,25 +32,51 @@ public class FFmpegExecutor {
      */
     public static int executeCommand(String command) throws IOException, InterruptedException {
         // Convert the command string to a list of arguments
-        List<String> commandList = parseCommand(command);
+        List<String> commandList = resolveBinary(parseCommand(command));
         
         // Create process builder
         ProcessBuilder processBuilder = new ProcessBuilder(commandList);
         processBuilder.redirectErrorStream(true); // Merge stdout and stderr
         
+        return run(processBuilder);
+    }
+    
+    /**
+     * Executes ffmpeg with the given arguments and returns the process exit code
+     * 
+     * @param arguments Arguments passed to ffmpeg as they are, without the program name
+     * @return The process exit code (0 for success)
+     * @throws IOException If an I/O error occurs
+     * @throws InterruptedException If the process is interrupted
+     */
+    public static int execute(List<String> arguments) throws IOException, InterruptedException {
+        return run(processBuilder(arguments).redirectErrorStream(true));
+    }
+    
+    /**
+     * Starts the process, echoes its output and waits for it
+     */
+    private static int run(ProcessBuilder processBuilder) throws IOException, InterruptedException {
         // Start the process
         Process process = processBuilder.start();
         
         // Read the output
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+        echo(process.getInputStream());
+        
+        // Wait for the process to complete and return exit code
+        return process.waitFor();
+    }
+    
+    /**
+     * Copies a process's output to System.out line by line until the process closes it
+     */
+    private static void echo(InputStream output) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(output))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 System.out.println(line);
             }
         }
-        
-        // Wait for the process to complete and return exit code
-        return process.waitFor();
     }
     
     /**
@@ -75,20 +112,97 @@ public class FFmpegExecutor {
         return commandList;
     }
     
+    /**
+     * Replaces a leading "ffmpeg" with the resolved binary
+     */
+    private static List<String> resolveBinary(List<String> commandList) {
+        if (!commandList.isEmpty() && "ffmpeg".equals(commandList.get(0))) {
+            commandList.set(0, ffmpegPath());
+        }
+        return commandList;
+    }
+    
     /**
      * Executes an FFmpeg command asynchronously and returns immediately
      * 
+     * The output is echoed by a daemon thread, so the process never blocks
+     * on a full pipe. Use FFmpegWorkerPool for progress, timeouts and
+     * cancellation.
+     * 
      * @param command The FFmpeg command string to execute
      * @return The Process object
      * @throws IOException If an I/O error occurs
      */
     public static Process executeCommandAsync(String command) throws IOException {
-        List<String> commandList = parseCommand(command);
+        List<String> commandList = resolveBinary(parseCommand(command));
         
         ProcessBuilder processBuilder = new ProcessBuilder(commandList);
         processBuilder.redirectErrorStream(true);
         
-        return processBuilder.start();
+        Process process = processBuilder.start();
+        Thread drain = new Thread(() -> {
+            try {
+                echo(process.getInputStream());
+            } catch (IOException e) {
+                // The stream was closed by the caller or the process is gone
+            }
+        }, "ffmpeg-output");
+        drain.setDaemon(true);
+        drain.start();
+        return process;
+    }
+    
+    /**
+     * A ProcessBuilder for the ffmpeg binary with the given arguments
+     * 
+     * @param arguments Arguments passed to ffmpeg as they are, without the program name
+     * @return The process builder, with the standard streams left as pipes
+     */
+    static ProcessBuilder processBuilder(List<String> arguments) {
+        List<String> commandList = new ArrayList<>(arguments.size() + 1);
+        commandList.add(ffmpegPath());
+        commandList.addAll(arguments);
+        return new ProcessBuilder(commandList);
+    }
+    
+    /**
+     * Finds the ffmpeg binary, see the class comment
+     * 
+     * @return Path of the ffmpeg binary, or "ffmpeg" if none was found
+     */
+    public static String ffmpegPath() {
+        String path = ffmpegPath;
+        if (path == null) {
+            path = findFFmpeg();
+            ffmpegPath = path;
+        }
+        return path;
+    }
+    
+    private static String findFFmpeg() {
+        String configured = System.getProperty("ffmpeg.path");
+        if (configured != null) {
+            return configured;
+        }
+        
+        String searchPath = System.getenv("PATH");
+        if (searchPath != null) {
+            for (String dir : searchPath.split(File.pathSeparator)) {
+                for (String name : new String[] {"ffmpeg", "ffmpeg.exe"}) {
+                    File candidate = new File(dir, name);
+                    if (candidate.isFile() && candidate.canExecute()) {
+                        return candidate.getPath();
+                    }
+                }
+            }
+        }
+        
+        try {
+            // Extracts the binary that ships in the ffmpeg-platform jars
+            return org.bytedeco.javacpp.Loader.load(org.bytedeco.ffmpeg.ffmpeg.class);
+        } catch (Throwable e) {
+            return "ffmpeg";
+        }
     }
     
     /**
@@ -98,7 +212,18 @@ public class FFmpegExecutor {
      */
     public static boolean isFFmpegAvailable() {
         try {
-            Process process = Runtime.getRuntime().exec("ffmpeg -version");
+            List<String> arguments = new ArrayList<>();
+            arguments.add("-version");
+            Process process = processBuilder(arguments)
+                    .redirectErrorStream(true)
+                    .start();
+            // Drain the output so a full pipe cannot stall the process
+            try (InputStream output = process.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                while (output.read(buffer) >= 0) {
+                    // Discard
+                }
+            }
             int exitCode = process.waitFor();
             return exitCode == 0;
         } catch (IOException | InterruptedException e) {
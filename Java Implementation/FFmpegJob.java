@@ -0,0 +1,445 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * FFmpegJob - Handle of an ffmpeg process run by an FFmpegWorkerPool
+ *
+ * The pool thread running the job starts ffmpeg with -progress pipe:1 and
+ * reads the progress blocks it writes to its standard output; the standard
+ * error goes to a temporary file, so neither pipe can fill up and block the
+ * process, and the last lines of it are attached to the error if ffmpeg
+ * fails. A job that runs out of time or is cancelled has its process
+ * terminated, and killed if it is still alive a few seconds later; its
+ * partial output is deleted.
+ */
+public class FFmpegJob implements Runnable, Future<Void> {
+
+    /**
+     * Lifecycle of a job
+     */
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    // Progress is reported to the listener in steps of at least this fraction
+    private static final double PROGRESS_STEP = 0.01;
+    // Time a terminated ffmpeg gets to exit before it is killed
+    private static final long KILL_GRACE_MILLIS = 3000;
+    // Lines of ffmpeg's standard error kept for the error message
+    private static final int LOG_LINES = 20;
+
+    private final FFmpegCommand command;
+    private final long timeoutMillis;
+    private final FFmpegProgressListener listener;
+    private final ScheduledExecutorService watchdog;
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private volatile State state = State.QUEUED;
+    private volatile double progress;
+    private volatile long remainingMillis = -1;
+    private volatile long framesWritten;
+    private volatile double speed;
+    private volatile int exitCode = -1;
+    private Process process;
+    private boolean timedOut;
+    private double reportedProgress;
+    private Exception error;
+
+    /**
+     * @param command Command to run
+     * @param timeoutMillis Time the process may run before it is killed, 0 for no limit
+     * @param listener Listener for progress updates, or null
+     * @param watchdog Scheduler of the timeouts and kills
+     */
+    FFmpegJob(FFmpegCommand command, long timeoutMillis, FFmpegProgressListener listener,
+              ScheduledExecutorService watchdog) {
+        this.command = command;
+        this.timeoutMillis = timeoutMillis;
+        this.listener = listener;
+        this.watchdog = watchdog;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            // Cancelled while queued: no process was started, so the worker is free right away
+            if (state != State.QUEUED) return;
+            state = State.RUNNING;
+        }
+
+        File log = null;
+        ScheduledFuture<?> timer = null;
+        try {
+            log = File.createTempFile("ffmpeg-", ".log");
+            List<String> arguments = new ArrayList<>();
+            Collections.addAll(arguments, "-hide_banner", "-nostdin", "-nostats", "-loglevel", "error",
+                    "-progress", "pipe:1");
+            arguments.addAll(command.getArguments());
+            ProcessBuilder builder = FFmpegExecutor.processBuilder(arguments).redirectError(log);
+
+            long startNanos = System.nanoTime();
+            Process started;
+            synchronized (this) {
+                if (state == State.CANCELLED) {
+                    finish(State.CANCELLED, null);
+                    return;
+                }
+                started = builder.start();
+                process = started;
+            }
+            if (timeoutMillis > 0) {
+                timer = watchdog.schedule(this::timeOut, timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+
+            try {
+                readProgress(started.getInputStream(), startNanos);
+            } catch (IOException e) {
+                // Terminating the process closes its pipes under the reader
+                if (state != State.CANCELLED && !isTimedOut()) throw e;
+            }
+            exitCode = started.waitFor();
+
+            if (state == State.CANCELLED) {
+                finish(State.CANCELLED, null);
+            } else if (isTimedOut()) {
+                finish(State.FAILED, new FFmpegProcessException(describe() + " timed out after "
+                        + timeoutMillis + " ms", -1, tail(log), true));
+            } else if (exitCode != 0) {
+                String lines = tail(log);
+                finish(State.FAILED, new FFmpegProcessException(describeExit(exitCode) + ": "
+                        + lastLine(lines), exitCode, lines, false));
+            } else {
+                finish(State.COMPLETED, null);
+            }
+        } catch (InterruptedException e) {
+            // The pool is shutting down; do not leave the process behind
+            kill();
+            Thread.currentThread().interrupt();
+            finish(State.FAILED, e);
+        } catch (IOException e) {
+            // ffmpeg could not be started or its output could not be read
+            kill();
+            finish(State.FAILED, e);
+        } finally {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            if (log != null) {
+                log.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads ffmpeg's progress blocks, key=value lines each ending with progress=continue|end
+     */
+    private void readProgress(InputStream output, long startNanos) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(output, StandardCharsets.UTF_8))) {
+            long outTimeMicros = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('=');
+                if (separator < 0) continue;
+                String key = line.substring(0, separator).trim();
+                String value = line.substring(separator + 1).trim();
+
+                switch (key) {
+                    case "frame":
+                        framesWritten = parseLong(value, framesWritten);
+                        break;
+                    case "out_time_us":
+                        outTimeMicros = parseLong(value, outTimeMicros);
+                        break;
+                    case "speed":
+                        speed = parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value, speed);
+                        break;
+                    case "progress":
+                        reportProgress(outTimeMicros, System.nanoTime() - startNanos);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    private void reportProgress(long outTimeMicros, long elapsedNanos) {
+        double outputSeconds = command.getOutputSeconds();
+        if (outputSeconds <= 0 || outTimeMicros <= 0) return;
+
+        // The expected duration comes from the container, so never report completion early
+        double fraction = Math.min(0.99, outTimeMicros / (outputSeconds * 1e6));
+        progress = fraction;
+        remainingMillis = (long) (elapsedNanos / 1e6 * (1.0 - fraction) / fraction);
+
+        if (listener != null && fraction - reportedProgress >= PROGRESS_STEP) {
+            reportedProgress = fraction;
+            listener.onProgress(this, fraction, remainingMillis);
+        }
+    }
+
+    private static long parseLong(String value, long fallback) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            // N/A until the first frame is written
+            return fallback;
+        }
+    }
+
+    private static double parseDouble(String value, double fallback) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Called by the watchdog when the job has run out of time
+     */
+    private void timeOut() {
+        synchronized (this) {
+            if (state != State.RUNNING) return;
+            timedOut = true;
+        }
+        kill();
+    }
+
+    private synchronized boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Terminates the process, and kills it if it has not exited after the grace period
+     */
+    private void kill() {
+        Process running;
+        synchronized (this) {
+            running = process;
+        }
+        if (running == null || !running.isAlive()) return;
+
+        running.destroy();
+        try {
+            watchdog.schedule(() -> {
+                if (running.isAlive()) {
+                    running.destroyForcibly();
+                }
+            }, KILL_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The pool is closed, there is no one left to wait for the grace period
+            running.destroyForcibly();
+        }
+    }
+
+    private String describe() {
+        return command.getOutputPath() != null ? "ffmpeg writing " + command.getOutputPath() : "ffmpeg";
+    }
+
+    private static String describeExit(int exitCode) {
+        // A shell-style code above 128 means the process died from a signal, e.g. 139 for SIGSEGV
+        if (exitCode > 128 && exitCode < 160) {
+            return "ffmpeg was killed by signal " + (exitCode - 128);
+        }
+        return "ffmpeg exited with code " + exitCode;
+    }
+
+    /**
+     * The last lines ffmpeg wrote to its standard error
+     */
+    private static String tail(File log) {
+        try {
+            List<String> lines = Files.readAllLines(log.toPath(), StandardCharsets.UTF_8);
+            return String.join(System.lineSeparator(), lines.subList(Math.max(0, lines.size() - LOG_LINES), lines.size()));
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String lastLine(String lines) {
+        String trimmed = lines.trim();
+        return trimmed.isEmpty() ? "no error output" : trimmed.substring(trimmed.lastIndexOf('\n') + 1).trim();
+    }
+
+    private void finish(State finalState, Exception failure) {
+        State result;
+        boolean discardOutput;
+        synchronized (this) {
+            if (state == State.RUNNING) {
+                state = finalState;
+            }
+            result = state;
+            error = failure;
+            discardOutput = result == State.CANCELLED || timedOut;
+            if (result == State.COMPLETED) {
+                progress = 1.0;
+                remainingMillis = 0;
+            }
+        }
+        if (discardOutput && command.getOutputPath() != null) {
+            // A terminated ffmpeg leaves an unusable file behind
+            new File(command.getOutputPath()).delete();
+        }
+        terminated.countDown();
+
+        if (listener == null) return;
+        switch (result) {
+            case COMPLETED:
+                listener.onProgress(this, 1.0, 0);
+                listener.onComplete(this);
+                break;
+            case FAILED:
+                listener.onError(this, failure);
+                break;
+            default:
+                listener.onCancelled(this);
+                break;
+        }
+    }
+
+    /**
+     * Cancels the job
+     *
+     * A queued job will not start. A running job has its process
+     * terminated; onCancelled is called once the process has exited.
+     *
+     * @param mayInterruptIfRunning Ignored, running processes are always terminated
+     * @return false if the job had already finished
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean wasQueued;
+        synchronized (this) {
+            if (state != State.QUEUED && state != State.RUNNING) return false;
+            wasQueued = state == State.QUEUED;
+            state = State.CANCELLED;
+        }
+
+        if (wasQueued) {
+            terminated.countDown();
+            if (listener != null) {
+                listener.onCancelled(this);
+            }
+        } else {
+            kill();
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the job, see cancel(boolean)
+     *
+     * @return false if the job had already finished
+     */
+    public boolean cancel() {
+        return cancel(false);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state == State.CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        State current = state;
+        return current != State.QUEUED && current != State.RUNNING;
+    }
+
+    /**
+     * Waits until the job has finished and, if it was cancelled, its process has exited
+     *
+     * @throws CancellationException If the job was cancelled
+     * @throws ExecutionException If the job failed, with an FFmpegProcessException if ffmpeg did
+     */
+    @Override
+    public Void get() throws InterruptedException, ExecutionException {
+        terminated.await();
+        return result();
+    }
+
+    @Override
+    public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!terminated.await(timeout, unit)) {
+            throw new TimeoutException(describe() + " is still running");
+        }
+        return result();
+    }
+
+    private synchronized Void result() throws ExecutionException {
+        if (state == State.CANCELLED) {
+            throw new CancellationException(describe() + " was cancelled");
+        }
+        if (state == State.FAILED) {
+            throw new ExecutionException(error);
+        }
+        return null;
+    }
+
+    /**
+     * @return Current state of the job
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return Fraction of the output written, from 0.0 to 1.0; stays 0 until done if the output duration is unknown
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return Estimated time left in milliseconds, -1 while unknown
+     */
+    public long getRemainingMillis() {
+        return remainingMillis;
+    }
+
+    /**
+     * @return Frames ffmpeg has written so far
+     */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * @return Encoding speed last reported by ffmpeg, as a multiple of real time
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return Exit code of the process, -1 until it has exited
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return The command the job runs
+     */
+    public FFmpegCommand getCommand() {
+        return command;
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * FFmpegProcessException - An ffmpeg process run by an FFmpegWorkerPool failed, crashed or timed out
+ */
+public class FFmpegProcessException extends Exception {
+
+    private final int exitCode;
+    private final String log;
+    private final boolean timedOut;
+
+    /**
+     * @param message Description of the failure
+     * @param exitCode Exit code of the process, -1 if it was killed after timing out
+     * @param log Last lines ffmpeg wrote to its standard error
+     * @param timedOut true if the process was killed because it ran out of time
+     */
+    public FFmpegProcessException(String message, int exitCode, String log, boolean timedOut) {
+        super(message);
+        this.exitCode = exitCode;
+        this.log = log;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * @return Exit code of the process, -1 if it was killed after timing out
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return Last lines ffmpeg wrote to its standard error
+     */
+    public String getLog() {
+        return log;
+    }
+
+    /**
+     * @return true if the process was killed because it ran out of time
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+}
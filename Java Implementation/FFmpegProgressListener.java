@@ -0,0 +1,44 @@
+/**
+ * FFmpegProgressListener - Receives progress updates of an ffmpeg process run by an FFmpegWorkerPool
+ *
+ * Callbacks run on the pool thread supervising the process (or, for a job
+ * cancelled before it started, on the thread calling cancel), so UI code must
+ * post them to its own thread. Exactly one of onComplete, onError and
+ * onCancelled is called per job.
+ */
+public interface FFmpegProgressListener {
+
+    /**
+     * Called whenever the job advances by at least one percent
+     *
+     * @param job The job reporting progress
+     * @param progress Fraction of the output written, from 0.0 to 1.0
+     * @param remainingMillis Estimated time left in milliseconds, -1 while unknown
+     */
+    void onProgress(FFmpegJob job, double progress, long remainingMillis);
+
+    /**
+     * Called when ffmpeg has exited with code 0
+     *
+     * @param job The finished job
+     */
+    default void onComplete(FFmpegJob job) {
+    }
+
+    /**
+     * Called when ffmpeg could not be started, exited with an error, crashed or timed out
+     *
+     * @param job The failed job
+     * @param error The error, an FFmpegProcessException unless the process could not be started
+     */
+    default void onError(FFmpegJob job, Exception error) {
+    }
+
+    /**
+     * Called once a cancelled job's process has exited
+     *
+     * @param job The cancelled job
+     */
+    default void onCancelled(FFmpegJob job) {
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FFmpegWorkerPool - Runs ffmpeg processes with a bound on how many run at once
+ *
+ * Each job runs in its own ffmpeg process, supervised by one of the pool's
+ * threads, so the renders share no native heap, codec state or locks with
+ * the JVM or with each other: a crashing, hanging or leaking ffmpeg fails
+ * only its own job, and on a machine with many cores the processes scale
+ * past what the in-process frame loops can do side by side. Jobs beyond
+ * maxProcesses wait in a queue.
+ *
+ * Every job reports progress from ffmpeg's -progress output, can be given
+ * a timeout and can be cancelled, see FFmpegJob. Closing the pool, or
+ * shutting down the JVM, terminates the processes still running.
+ *
+ *   try (FFmpegWorkerPool pool = new FFmpegWorkerPool(4)) {
+ *       FFmpegJob job = pool.submit(FFmpegCommand.fade(input1, input2, output, 1.0), 60_000, listener);
+ *       job.get();
+ *   }
+ */
+public class FFmpegWorkerPool implements AutoCloseable {
+
+    // Time close waits for terminated processes to exit
+    private static final long CLOSE_WAIT_MILLIS = 5000;
+
+    private final int maxProcesses;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledThreadPoolExecutor watchdog;
+    private final Set<FFmpegJob> jobs = ConcurrentHashMap.newKeySet();
+    private final Thread shutdownHook;
+
+    /**
+     * Creates a pool running one process per available processor
+     */
+    public FFmpegWorkerPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param maxProcesses Number of ffmpeg processes running at the same time
+     */
+    public FFmpegWorkerPool(int maxProcesses) {
+        if (maxProcesses < 1) {
+            throw new IllegalArgumentException("maxProcesses must be at least 1, got " + maxProcesses);
+        }
+        this.maxProcesses = maxProcesses;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(maxProcesses, maxProcesses, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), runnable -> {
+                    Thread thread = new Thread(runnable, "ffmpeg-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "ffmpeg-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.setRemoveOnCancelPolicy(true);
+
+        // Child processes outlive the JVM unless they are stopped
+        this.shutdownHook = new Thread(this::cancelAll, "ffmpeg-pool-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Queues a command
+     *
+     * @param command Command to run
+     * @param timeoutMillis Time the process may run once started before it is killed, 0 for no limit
+     * @param listener Listener for progress updates, or null
+     * @return The queued job
+     * @throws IllegalStateException If the pool has been closed
+     */
+    public FFmpegJob submit(FFmpegCommand command, long timeoutMillis, FFmpegProgressListener listener) {
+        FFmpegJob job = new FFmpegJob(command, timeoutMillis, listener, watchdog);
+        jobs.add(job);
+        try {
+            workers.execute(() -> {
+                try {
+                    job.run();
+                } finally {
+                    jobs.remove(job);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job);
+            throw new IllegalStateException("The ffmpeg worker pool is closed", e);
+        }
+        return job;
+    }
+
+    /**
+     * Queues a command without a timeout or listener
+     *
+     * @param command Command to run
+     * @return The queued job
+     * @throws IllegalStateException If the pool has been closed
+     */
+    public FFmpegJob submit(FFmpegCommand command) {
+        return submit(command, 0, null);
+    }
+
+    /**
+     * @return Number of ffmpeg processes running at the same time
+     */
+    public int getMaxProcesses() {
+        return maxProcesses;
+    }
+
+    /**
+     * @return Number of jobs whose process is running
+     */
+    public int getRunningCount() {
+        return (int) jobs.stream().filter(job -> job.getState() == FFmpegJob.State.RUNNING).count();
+    }
+
+    /**
+     * @return Number of jobs waiting for a free process slot
+     */
+    public int getQueuedCount() {
+        return (int) jobs.stream().filter(job -> job.getState() == FFmpegJob.State.QUEUED).count();
+    }
+
+    private void cancelAll() {
+        for (FFmpegJob job : jobs) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * Cancels the queued and running jobs and waits for their processes to exit
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+        cancelAll();
+        try {
+            workers.awaitTermination(CLOSE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        watchdog.shutdownNow();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // The JVM is already shutting down and runs the hook itself
+        }
+    }
+}
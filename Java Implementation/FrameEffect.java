@@ -0,0 +1,75 @@
+import org.bytedeco.opencv.opencv_core.Mat;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGR24;
+
+/**
+ * FrameEffect - A per-frame transition effect
+ *
+ * An effect receives the overlapping frames of both videos and writes the
+ * result into the output Mat, which has the size and type of the input frames.
+ * Effects may keep scratch buffers between frames, so an instance belongs to
+ * a single job and must not be shared between threads. The input frames may
+ * come from the DecodedFrameCache and be read by later jobs as well, so
+ * effects must never write to them.
+ *
+ * The frame loop runs apply inside a PointerScope, so temporary Rects, Sizes,
+ * Scalars and Mat views created there are freed when the frame is done.
+ * Buffers kept between frames must be allocated outside apply, e.g. in the
+ * constructor, and reused with Mat.create.
+ */
+public interface FrameEffect {
+
+    /**
+     * Renders one transition frame
+     *
+     * @param frame1 Frame from the first video
+     * @param frame2 Frame from the second video
+     * @param output Destination for the rendered frame
+     * @param progress Transition progress from 0.0 (first video) to 1.0 (second video)
+     */
+    void apply(Mat frame1, Mat frame2, Mat output, double progress);
+
+    /**
+     * Short name of the effect, used in metrics and events
+     *
+     * @return The effect name
+     */
+    default String name() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Pixel format the effect works in: packed BGR24 or planar YUV420P (I420)
+     *
+     * @return An FFmpeg AV_PIX_FMT_* constant
+     */
+    default int pixelFormat() {
+        return AV_PIX_FMT_BGR24;
+    }
+
+    /**
+     * Called once before the first transition frame with the timing of the
+     * transition, for effects that need to know it up front (e.g. filter
+     * graphs that schedule their parameters by frame number). An effect that
+     * renders the same transition again is prepared again first.
+     *
+     * @param frameRate Frame rate of the videos
+     * @param frames Number of transition frames
+     */
+    default void prepare(double frameRate, int frames) {
+    }
+
+    /**
+     * Native memory held by the effect's scratch buffers, used for memory accounting
+     *
+     * @return Bytes currently allocated by the effect
+     */
+    default long nativeBytes() {
+        return 0;
+    }
+
+    /**
+     * Releases any scratch buffers held by the effect
+     */
+    default void release() {
+    }
+}
@@ -0,0 +1,526 @@
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avutil.AVRational;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import static org.bytedeco.ffmpeg.global.avcodec.*;
+import static org.bytedeco.ffmpeg.global.avformat.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * HlsTransition - A transition published as an HLS playlist, rendered segment by segment on demand
+ *
+ * Writing a transition as an MP4 decodes and encodes both videos completely,
+ * although only the transition itself is new. For on-demand delivery the
+ * transition is published as a media playlist instead, whose segments are
+ * only produced when a player first asks for them and are then kept:
+ *
+ *   copied    whole GOPs of either video, copied packet by packet from the
+ *             input without decoding; used where the input already has the
+ *             working size and frame rate and is H.264
+ *   rendered  frames between the last keyframe of the first video and the
+ *             transition, the transition itself, and frames of the second
+ *             video up to its next keyframe (or all of it, if it cannot be
+ *             copied); encoded like ChunkedTransitionEncoder encodes chunks
+ *
+ * A new transition between inputs with regular keyframes therefore costs the
+ * render of a few seconds around the transition. The playlist has the frames
+ * JavaTransitionEngine.applyTransition writes, at the same times; copied
+ * frames keep the inputs' encoding. Segments are MPEG-TS
+ * files with timestamps continuing across the playlist, and a discontinuity
+ * tag marks where the encoder changes between copied and rendered segments.
+ * Only video is published.
+ *
+ * A transition's files live in a directory named after the effect, its
+ * parameters, the duration, the frame the transition starts at, the working
+ * size and the identity (path, length and modification time) of both
+ * inputs, so opening the same transition again, also in a later process,
+ * reuses the segments already produced.
+ * TransitionDaemon serves these playlists over HTTP.
+ */
+public class HlsTransition {
+
+    /** Length a segment is cut to where there is a choice, in seconds */
+    public static final double TARGET_SEGMENT_SECONDS = 4.0;
+
+    /** Name of the playlist in a transition's directory */
+    public static final String PLAYLIST = "playlist.m3u8";
+
+    private final String id;
+    private final File dir;
+    private final String effect;
+    private final String[] parameters;
+    private final ChunkedTransitionEncoder.Timeline timeline;
+    private final List<Segment> segments;
+    // Segments being produced, so concurrent requests for one segment wait for a single render
+    private final ConcurrentHashMap<String, FutureTask<File>> pending = new ConcurrentHashMap<>();
+
+    private HlsTransition(String id, File dir, String effect, String[] parameters,
+                          ChunkedTransitionEncoder.Timeline timeline, List<Segment> segments) {
+        this.id = id;
+        this.dir = dir;
+        this.effect = effect;
+        this.parameters = parameters;
+        this.timeline = timeline;
+        this.segments = segments;
+    }
+
+    /**
+     * Plans a transition's segments and writes its playlist, without rendering anything
+     *
+     * @param root Directory holding the directories of all published transitions
+     * @param effect Effect name as reported by FrameEffect.name()
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param duration Duration of the transition in seconds
+     * @param parameters Effect parameters in the order of the TransitionEngine methods
+     * @return The published transition
+     * @throws IllegalArgumentException If the effect or its parameters are invalid, or the first video is too short
+     * @throws Exception If the inputs cannot be read or the playlist cannot be written
+     */
+    public static HlsTransition open(File root, String effect, String input1, String input2, double duration,
+                                     String... parameters) throws Exception {
+        return open(root, effect, input1, input2, duration, JavaTransitionEngine.AT_END, parameters);
+    }
+
+    /**
+     * Plans the segments of a transition starting at a given time of the first video and writes its playlist
+     *
+     * @param root Directory holding the directories of all published transitions
+     * @param effect Effect name as reported by FrameEffect.name()
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param parameters Effect parameters in the order of the TransitionEngine methods
+     * @return The published transition
+     * @throws IllegalArgumentException If the effect or its parameters are invalid, or the first video is too short
+     * @throws Exception If the inputs cannot be read or the playlist cannot be written
+     */
+    public static HlsTransition open(File root, String effect, String input1, String input2, double duration,
+                                     double offset, String... parameters) throws Exception {
+        // Fails on an unknown effect before anything is written
+        TransitionDaemon.createEffect(effect, parameters).release();
+
+        ChunkedTransitionEncoder.Timeline timeline = ChunkedTransitionEncoder.Timeline.probe(input1, input2, duration, offset);
+        if (timeline.firstVideoFramesToKeep < 0 || timeline.transitionFrames <= 0) {
+            throw new IllegalArgumentException("The first video is shorter than the transition, or the transition is empty");
+        }
+        Source source1 = Source.scan(input1);
+        Source source2 = Source.scan(input2);
+
+        StringBuilder key = new StringBuilder(effect);
+        for (String parameter : parameters) {
+            key.append('\t').append(parameter);
+        }
+        key.append('\t').append(duration).append('\t').append(timeline.firstVideoFramesToKeep)
+                .append('\t').append(timeline.width).append('x').append(timeline.height)
+                .append('\t').append(identity(input1)).append('\t').append(identity(input2));
+        String id = hash(key.toString());
+
+        File dir = new File(root, id);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        HlsTransition transition = new HlsTransition(id, dir, effect, parameters.clone(), timeline,
+                plan(timeline, source1, source2));
+        transition.writePlaylist();
+        return transition;
+    }
+
+    /**
+     * Returns a segment's file, copying or rendering it first if no earlier request did
+     *
+     * The calling thread waits for the segment, so it must not be one of
+     * the executor's threads if the executor is bounded.
+     *
+     * @param name File name of the segment as listed in the playlist
+     * @param executor Executor producing the segment
+     * @return The segment's file
+     * @throws IllegalArgumentException If the playlist has no such segment
+     * @throws RejectedExecutionException If the executor does not take the work
+     * @throws Exception If the segment cannot be produced
+     */
+    public File segment(String name, Executor executor) throws Exception {
+        Segment segment = null;
+        for (Segment candidate : segments) {
+            if (candidate.name().equals(name)) {
+                segment = candidate;
+            }
+        }
+        if (segment == null) {
+            throw new IllegalArgumentException("No segment " + name + " in transition " + id);
+        }
+        File file = new File(dir, name);
+        if (file.isFile()) {
+            return file;
+        }
+
+        Segment target = segment;
+        FutureTask<File> created = new FutureTask<>(() -> produce(target, file));
+        FutureTask<File> task = pending.putIfAbsent(name, created);
+        if (task == null) {
+            task = created;
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                pending.remove(name, task);
+                throw e;
+            }
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            // A failed segment is tried again by the next request
+            if (task.isDone()) {
+                pending.remove(name, task);
+            }
+        }
+    }
+
+    /**
+     * Copies or renders a segment into a temporary file and moves it into place
+     */
+    private File produce(Segment segment, File file) throws Exception {
+        File part = new File(dir, segment.name() + ".part");
+        File rendered = new File(dir, segment.name() + ".mp4.part");
+        try {
+            double offset = segment.start / timeline.frameRate;
+            if (segment.source != null) {
+                remux(segment.source, segment.startPts, segment.endPts, part, offset);
+            } else {
+                ChunkedTransitionEncoder.Chunk chunk = new ChunkedTransitionEncoder.Chunk(segment.index, segment.start, segment.end);
+                chunk.file = rendered;
+                FrameEffect frameEffect = TransitionDaemon.createEffect(effect, parameters);
+                try {
+                    ChunkedTransitionEncoder.renderChunk(timeline, chunk, frameEffect, new AtomicBoolean(), null);
+                } finally {
+                    frameEffect.release();
+                }
+                remux(rendered.getPath(), Long.MIN_VALUE, Long.MAX_VALUE, part, offset);
+            }
+            Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return file;
+        } finally {
+            part.delete();
+            rendered.delete();
+        }
+    }
+
+    /**
+     * Writes the video packets of a source from the keyframe at 'startPts' up to the
+     * keyframe at 'endPts' into an MPEG-TS file, starting at 'offset' seconds
+     */
+    private static void remux(String source, long startPts, long endPts, File target, double offset) throws Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(source);
+        FFmpegFrameRecorder recorder = null;
+        try {
+            grabber.start();
+            AVFormatContext context = grabber.getFormatContext();
+            int stream = grabber.getVideoStream();
+            AVRational timeBase = context.streams(stream).time_base();
+            if (startPts != Long.MIN_VALUE && av_seek_frame(context, stream, startPts, AVSEEK_FLAG_BACKWARD) < 0) {
+                throw new IOException("Cannot seek " + source + " to " + startPts);
+            }
+
+            recorder = new FFmpegFrameRecorder(target, grabber.getImageWidth(), grabber.getImageHeight());
+            recorder.setFormat("mpegts");
+            recorder.start(context);
+
+            long shift = Long.MIN_VALUE;
+            AVPacket packet;
+            while ((packet = grabber.grabPacket()) != null) {
+                if (packet.stream_index() != stream) continue;
+                boolean key = (packet.flags() & AV_PKT_FLAG_KEY) != 0;
+                if (shift == Long.MIN_VALUE) {
+                    if (startPts != Long.MIN_VALUE && packet.pts() < startPts) continue;
+                    shift = Math.round(offset * timeBase.den() / timeBase.num()) - packet.pts();
+                } else if (key && packet.pts() >= endPts) {
+                    break;
+                }
+                packet.pts(packet.pts() + shift);
+                if (packet.dts() != AV_NOPTS_VALUE) {
+                    packet.dts(packet.dts() + shift);
+                }
+                recorder.recordPacket(packet);
+            }
+        } finally {
+            if (recorder != null) {
+                recorder.stop();
+                recorder.release();
+            }
+            grabber.release();
+        }
+    }
+
+    /**
+     * Cuts the output timeline into copied and rendered segments
+     */
+    private static List<Segment> plan(ChunkedTransitionEncoder.Timeline timeline, Source source1, Source source2) {
+        List<Segment> segments = new ArrayList<>();
+        int target = Math.max(1, (int) Math.round(TARGET_SEGMENT_SECONDS * timeline.frameRate));
+        int transitionStart = timeline.firstVideoFramesToKeep;
+        int transitionEnd = transitionStart + timeline.transitionFrames;
+
+        // Whole GOPs of the first video before the transition are copied
+        int copyEnd1 = source1.isCopyable(timeline) ? source1.keyframeAtOrBefore(transitionStart) : 0;
+        addCopies(segments, source1, 0, copyEnd1, 0, target);
+        addRenders(segments, copyEnd1, transitionStart, target);
+        // The transition is a segment of its own, so it is the only one that differs between effects
+        segments.add(new Segment(segments.size(), transitionStart, transitionEnd));
+
+        // The second video is copied from its first keyframe after the transition
+        int copyStart2 = source2.isCopyable(timeline) ? source2.keyframeAtOrAfter(timeline.transitionFrames) : -1;
+        int renderEnd2 = copyStart2 >= 0 ? transitionStart + copyStart2 : timeline.totalFrames;
+        addRenders(segments, transitionEnd, renderEnd2, target);
+        if (copyStart2 >= 0) {
+            addCopies(segments, source2, copyStart2, source2.frames, transitionStart, target);
+        }
+        return segments;
+    }
+
+    /**
+     * Adds segments copying a source's frames [from, to), grouping GOPs up to about 'target' frames
+     */
+    private static void addCopies(List<Segment> segments, Source source, int from, int to, int outputStart, int target) {
+        int start = from;
+        for (int k = 0; k < source.keyframes.size(); k++) {
+            int keyframe = source.keyframes.get(k);
+            if (keyframe <= start || keyframe >= to) continue;
+            if (keyframe - start >= target) {
+                segments.add(new Segment(segments.size(), source, start, keyframe, outputStart));
+                start = keyframe;
+            }
+        }
+        if (to > start) {
+            segments.add(new Segment(segments.size(), source, start, to, outputStart));
+        }
+    }
+
+    /**
+     * Adds segments rendering output frames [from, to) in pieces of at most about 'target' frames
+     */
+    private static void addRenders(List<Segment> segments, int from, int to, int target) {
+        if (to <= from) return;
+        // Equal pieces, so no segment is left with a few frames
+        int count = (to - from + target - 1) / target;
+        for (int i = 0; i < count; i++) {
+            segments.add(new Segment(segments.size(), from + (int) ((long) (to - from) * i / count),
+                    from + (int) ((long) (to - from) * (i + 1) / count)));
+        }
+    }
+
+    private void writePlaylist() throws IOException {
+        double longest = 0;
+        for (Segment segment : segments) {
+            longest = Math.max(longest, segment.seconds(timeline.frameRate));
+        }
+
+        File part = new File(dir, PLAYLIST + ".part");
+        try (PrintWriter writer = new PrintWriter(part, StandardCharsets.UTF_8.name())) {
+            writer.println("#EXTM3U");
+            writer.println("#EXT-X-VERSION:3");
+            writer.println("#EXT-X-PLAYLIST-TYPE:VOD");
+            writer.println("#EXT-X-TARGETDURATION:" + (int) Math.ceil(longest));
+            writer.println("#EXT-X-MEDIA-SEQUENCE:0");
+            String previous = null;
+            for (Segment segment : segments) {
+                // Copied and rendered segments come from different encoders
+                if (segment.index > 0 && segment.source != previous) {
+                    writer.println("#EXT-X-DISCONTINUITY");
+                }
+                writer.println(String.format("#EXTINF:%.3f,", segment.seconds(timeline.frameRate)));
+                writer.println(segment.name());
+                previous = segment.source;
+            }
+            writer.println("#EXT-X-ENDLIST");
+        }
+        Files.move(part.toPath(), new File(dir, PLAYLIST).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String identity(String path) throws IOException {
+        File file = new File(path);
+        return file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified();
+    }
+
+    private static String hash(String key) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8))) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.substring(0, 16);
+    }
+
+    /**
+     * @return Name of the transition's directory, which identifies it
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return The playlist file
+     */
+    public File getPlaylist() {
+        return new File(dir, PLAYLIST);
+    }
+
+    /**
+     * @return Number of segments in the playlist
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return Number of segments copied from the inputs rather than rendered
+     */
+    public int getCopiedSegmentCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            if (segment.source != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HlsTransition[%s, %s, %d segments, %d copied]", id, effect, segments.size(),
+                getCopiedSegmentCount());
+    }
+
+    /**
+     * A range of output frames, copied from a source or rendered if 'source' is null
+     */
+    private static final class Segment {
+        final int index;
+        final int start;
+        final int end;
+        final String source;
+        final long startPts;
+        final long endPts;
+
+        Segment(int index, int start, int end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.source = null;
+            this.startPts = Long.MIN_VALUE;
+            this.endPts = Long.MAX_VALUE;
+        }
+
+        Segment(int index, Source source, int from, int to, int outputStart) {
+            this.index = index;
+            this.start = outputStart + from;
+            this.end = outputStart + to;
+            this.source = source.path;
+            this.startPts = source.keyframePts(from);
+            this.endPts = to < source.frames ? source.keyframePts(to) : Long.MAX_VALUE;
+        }
+
+        String name() {
+            return String.format("segment%05d.ts", index);
+        }
+
+        double seconds(double frameRate) {
+            return (end - start) / frameRate;
+        }
+    }
+
+    /**
+     * The keyframes of an input, found by reading its packets without decoding them
+     */
+    private static final class Source {
+        final String path;
+        // Frame numbers of the keyframes and their timestamps, in the video stream's time base
+        final List<Integer> keyframes = new ArrayList<>();
+        final List<Long> keyframeTimestamps = new ArrayList<>();
+        int frames;
+        int width;
+        int height;
+        int codec;
+        double frameRate;
+
+        private Source(String path) {
+            this.path = path;
+        }
+
+        static Source scan(String path) throws Exception {
+            Source source = new Source(path);
+            FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(path);
+            try {
+                grabber.start();
+                source.width = grabber.getImageWidth();
+                source.height = grabber.getImageHeight();
+                source.codec = grabber.getVideoCodec();
+                source.frameRate = grabber.getVideoFrameRate();
+                int stream = grabber.getVideoStream();
+                AVPacket packet;
+                while ((packet = grabber.grabPacket()) != null) {
+                    if (packet.stream_index() != stream) continue;
+                    // In a closed GOP every frame before a keyframe in decoding order is also shown before it
+                    if ((packet.flags() & AV_PKT_FLAG_KEY) != 0) {
+                        source.keyframes.add(source.frames);
+                        source.keyframeTimestamps.add(packet.pts());
+                    }
+                    source.frames++;
+                }
+            } finally {
+                grabber.release();
+            }
+            return source;
+        }
+
+        /**
+         * The frames can be copied into the output if the decoder would not scale them and the encoder would not retime them
+         */
+        boolean isCopyable(ChunkedTransitionEncoder.Timeline timeline) {
+            return codec == AV_CODEC_ID_H264 && width == timeline.width && height == timeline.height
+                    && Math.abs(frameRate - timeline.frameRate) < 0.01 && !keyframes.isEmpty() && keyframes.get(0) == 0;
+        }
+
+        int keyframeAtOrBefore(int frame) {
+            int found = 0;
+            for (int keyframe : keyframes) {
+                if (keyframe <= frame) {
+                    found = keyframe;
+                }
+            }
+            return found;
+        }
+
+        int keyframeAtOrAfter(int frame) {
+            for (int keyframe : keyframes) {
+                if (keyframe >= frame && keyframe < frames) {
+                    return keyframe;
+                }
+            }
+            return -1;
+        }
+
+        long keyframePts(int frame) {
+            return keyframeTimestamps.get(keyframes.indexOf(frame));
+        }
+    }
+}
@@ -1,24 +1,63 @@
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.PointerScope;
 import org.bytedeco.javacv.*;
 import org.bytedeco.opencv.opencv_core.*;
 import org.bytedeco.opencv.opencv_imgproc.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
 import static org.bytedeco.opencv.global.opencv_core.*;
 import static org.bytedeco.opencv.global.opencv_imgproc.*;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * JavaTransitionEngine - A Java class for creating video transitions without FFmpeg
- * 
+ *
  * This class provides static methods that implement various video transitions using
  * JavaCV (OpenCV for Java). Each method processes two input videos frame-by-frame
  * and creates a new video with the transition applied.
+ *
+ * The per-frame work of every transition is a FrameEffect, created by the
+ * *Effect factory methods, and all transitions share the frame loop in
+ * applyTransition, which also records per-stage TransitionMetrics and reports
+ * them to registered TransitionListeners.
  */
 public class JavaTransitionEngine {
 
+    // Listeners notified about every transition job
+    private static final List<TransitionListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    // Frame-sized scratch buffers reserved for an effect before its real usage is known
+    private static final int ADMISSION_SCRATCH_FRAMES = 8;
+
+    // Reference pictures a decoder or encoder keeps, a typical H.264 decoded picture buffer
+    private static final int CODEC_REFERENCE_FRAMES = 4;
+
+    private static volatile NativeMemoryBudget memoryBudget = NativeMemoryBudget.fromSystemProperties();
+
+    // Blend kernels used by the effects, picked with -Dtransition.blend
+    private static volatile BlendBackend blendBackend = BlendBackend.fromSystemProperties();
+
+    // Resolution, buffer and queue limits for the host, picked with -Dtransition.profile
+    private static volatile ExecutionProfile executionProfile = ExecutionProfile.fromSystemProperties();
+
+    // Decoded transition windows of clips reused across jobs, off unless -Dtransition.cache.* sizes it
+    private static volatile DecodedFrameCache frameCache = DecodedFrameCache.fromSystemProperties();
+
+    // Transition offset placing the transition at the end of the first video
+    static final double AT_END = -1;
+
+    // Dip colour of the light flash
+    private static final double[] WHITE = {255.0, 255.0, 255.0};
+
     /**
      * Creates a simple fade transition (crossfade) between two videos
-     * 
+     *
      * @param input1 Path to the first video
      * @param input2 Path to the second video
      * @param outputPath Path for the output video
@@ -30,7 +69,7 @@ public class JavaTransitionEngine {
 
     /**
      * Creates a simple fade transition (crossfade) between two videos with specified duration
-     * 
+     *
      * @param input1 Path to the first video
      * @param input2 Path to the second video
      * @param outputPath Path for the output video
@@ -38,90 +77,12 @@ public class JavaTransitionEngine {
      * @throws Exception If an error occurs during processing
      */
     public static void applyFade(String input1, String input2, String outputPath, double duration) throws Exception {
-        // Create frame grabbers for input videos
-        FFmpegFrameGrabber grabber1 = new FFmpegFrameGrabber(input1);
-        FFmpegFrameGrabber grabber2 = new FFmpegFrameGrabber(input2);
-        
-        // Start the grabbers
-        grabber1.start();
-        grabber2.start();
-        
-        // Get video properties
-        int width = grabber1.getImageWidth();
-        int height = grabber1.getImageHeight();
-        double frameRate = grabber1.getVideoFrameRate();
-        
-        // Calculate transition frames
-        int transitionFrames = (int)(duration * frameRate);
-        
-        // Create frame recorder for output video
-        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, width, height);
-        recorder.setVideoCodec(grabber1.getVideoCodec());
-        recorder.setFormat("mp4");
-        recorder.setFrameRate(frameRate);
-        recorder.setVideoBitrate(grabber1.getVideoBitrate());
-        recorder.start();
-        
-        try {
-            // First part: Copy frames from first video (except last 'transitionFrames')
-            int firstVideoTotalFrames = grabber1.getLengthInFrames();
-            int firstVideoFramesToKeep = firstVideoTotalFrames - transitionFrames;
-            
-            // Process first video frames before transition
-            for (int i = 0; i < firstVideoFramesToKeep; i++) {
-                Frame frame = grabber1.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-            
-            // Transition part: Blend frames from both videos
-            for (int i = 0; i < transitionFrames; i++) {
-                Frame frame1 = grabber1.grab();
-                Frame frame2 = grabber2.grab();
-                
-                if (frame1 == null || frame2 == null) break;
-                
-                // Convert frames to OpenCV Mat
-                OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
-                Mat mat1 = converter.convert(frame1);
-                Mat mat2 = converter.convert(frame2);
-                
-                // Calculate alpha for blending
-                double alpha = (double) i / transitionFrames;
-                
-                // Create output Mat
-                Mat outputMat = new Mat();
-                
-                // Blend the two frames
-                addWeighted(mat1, 1.0 - alpha, mat2, alpha, 0.0, outputMat);
-                
-                // Convert back to Frame and record
-                Frame blendedFrame = converter.convert(outputMat);
-                recorder.record(blendedFrame);
-                
-                // Release resources
-                mat1.release();
-                mat2.release();
-                outputMat.release();
-            }
-            
-            // Last part: Copy remaining frames from second video
-            while (true) {
-                Frame frame = grabber2.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-        } finally {
-            // Release resources
-            grabber1.stop();
-            grabber2.stop();
-            recorder.stop();
-        }
+        applyTransition(input1, input2, outputPath, duration, fadeEffect());
     }
 
     /**
      * Creates a glitch transition between two videos
-     * 
+     *
      * @param input1 Path to the first video
      * @param input2 Path to the second video
      * @param outputPath Path for the output video
@@ -130,167 +91,12 @@ public class JavaTransitionEngine {
      * @throws Exception If an error occurs during processing
      */
     public static void applyGlitch(String input1, String input2, String outputPath, double duration, int glitchStrength) throws Exception {
-        // Create frame grabbers for input videos
-        FFmpegFrameGrabber grabber1 = new FFmpegFrameGrabber(input1);
-        FFmpegFrameGrabber grabber2 = new FFmpegFrameGrabber(input2);
-        
-        // Start the grabbers
-        grabber1.start();
-        grabber2.start();
-        
-        // Get video properties
-        int width = grabber1.getImageWidth();
-        int height = grabber1.getImageHeight();
-        double frameRate = grabber1.getVideoFrameRate();
-        
-        // Calculate transition frames
-        int transitionFrames = (int)(duration * frameRate);
-        
-        // Create frame recorder for output video
-        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, width, height);
-        recorder.setVideoCodec(grabber1.getVideoCodec());
-        recorder.setFormat("mp4");
-        recorder.setFrameRate(frameRate);
-        recorder.setVideoBitrate(grabber1.getVideoBitrate());
-        recorder.start();
-        
-        // Scale glitch strength to parameters
-        int maxRowShift = Math.min(width / 4, Math.max(5, glitchStrength));
-        int rgbShift = Math.min(20, Math.max(1, glitchStrength / 5));
-        
-        try {
-            // First part: Copy frames from first video (except last 'transitionFrames')
-            int firstVideoTotalFrames = grabber1.getLengthInFrames();
-            int firstVideoFramesToKeep = firstVideoTotalFrames - transitionFrames;
-            
-            // Process first video frames before transition
-            for (int i = 0; i < firstVideoFramesToKeep; i++) {
-                Frame frame = grabber1.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-            
-            // Transition part: Apply glitch effect and blend
-            Random random = new Random();
-            OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
-            
-            for (int i = 0; i < transitionFrames; i++) {
-                Frame frame1 = grabber1.grab();
-                Frame frame2 = grabber2.grab();
-                
-                if (frame1 == null || frame2 == null) break;
-                
-                // Convert frames to OpenCV Mat
-                Mat mat1 = converter.convert(frame1);
-                Mat mat2 = converter.convert(frame2);
-                
-                // Calculate alpha for blending
-                double alpha = (double) i / transitionFrames;
-                
-                // Apply glitch effects
-                Mat glitchedMat1 = applyGlitchEffect(mat1, maxRowShift, rgbShift, random, alpha);
-                Mat glitchedMat2 = applyGlitchEffect(mat2, maxRowShift, rgbShift, random, 1.0 - alpha);
-                
-                // Create output Mat
-                Mat outputMat = new Mat();
-                
-                // Blend the two glitched frames
-                addWeighted(glitchedMat1, 1.0 - alpha, glitchedMat2, alpha, 0.0, outputMat);
-                
-                // Convert back to Frame and record
-                Frame blendedFrame = converter.convert(outputMat);
-                recorder.record(blendedFrame);
-                
-                // Release resources
-                mat1.release();
-                mat2.release();
-                glitchedMat1.release();
-                glitchedMat2.release();
-                outputMat.release();
-            }
-            
-            // Last part: Copy remaining frames from second video
-            while (true) {
-                Frame frame = grabber2.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-        } finally {
-            // Release resources
-            grabber1.stop();
-            grabber2.stop();
-            recorder.stop();
-        }
-    }
-    
-    /**
-     * Helper method to apply glitch effect to a frame
-     */
-    private static Mat applyGlitchEffect(Mat input, int maxRowShift, int rgbShift, Random random, double intensity) {
-        Mat output = input.clone();
-        
-        // Split the channels
-        java.util.List<Mat> channels = new java.util.ArrayList<>(3);
-        split(output, channels);
-        
-        // Apply RGB shift
-        int actualRgbShift = (int)(rgbShift * intensity);
-        if (actualRgbShift > 0) {
-            // Shift red channel
-            Mat redShifted = new Mat(channels.get(2).size(), channels.get(2).type());
-            Mat translationMatrix = new Mat(2, 3, CV_32F);
-            translationMatrix.put(0, 0, 1, 0, actualRgbShift, 0, 1, 0);
-            warpAffine(channels.get(2), redShifted, translationMatrix, redShifted.size());
-            channels.set(2, redShifted);
-            
-            // Shift blue channel
-            Mat blueShifted = new Mat(channels.get(0).size(), channels.get(0).type());
-            translationMatrix.put(0, 2, -actualRgbShift);
-            warpAffine(channels.get(0), blueShifted, translationMatrix, blueShifted.size());
-            channels.set(0, blueShifted);
-            
-            translationMatrix.release();
-        }
-        
-        // Merge channels back
-        merge(channels, output);
-        
-        // Apply row shifting (random rows are shifted horizontally)
-        int numRowsToShift = (int)(10 * intensity);
-        for (int i = 0; i < numRowsToShift; i++) {
-            int rowToShift = random.nextInt(input.rows());
-            int shiftAmount = random.nextInt(maxRowShift) - maxRowShift/2;
-            
-            Mat row = output.row(rowToShift);
-            Mat shiftedRow = new Mat();
-            
-            // Create translation matrix for the row
-            Mat translationMatrix = new Mat(2, 3, CV_32F);
-            translationMatrix.put(0, 0, 1, 0, shiftAmount, 0, 1, 0);
-            
-            // Apply shift to the row
-            warpAffine(row, shiftedRow, translationMatrix, row.size());
-            
-            // Copy shifted row back to output
-            shiftedRow.copyTo(output.row(rowToShift));
-            
-            // Release resources
-            row.release();
-            shiftedRow.release();
-            translationMatrix.release();
-        }
-        
-        // Release channel resources
-        for (Mat channel : channels) {
-            channel.release();
-        }
-        
-        return output;
+        applyTransition(input1, input2, outputPath, duration, glitchEffect(glitchStrength));
     }
 
     /**
      * Creates a zoom transition between two videos
-     * 
+     *
      * @param input1 Path to the first video
      * @param input2 Path to the second video
      * @param outputPath Path for the output video
@@ -299,131 +105,12 @@ public class JavaTransitionEngine {
      * @throws Exception If an error occurs during processing
      */
     public static void applyZoom(String input1, String input2, String outputPath, double duration, double zoomFactor) throws Exception {
-        // Ensure zoom factor is within reasonable bounds
-        double zoom = Math.min(3.0, Math.max(1.1, zoomFactor));
-        
-        // Create frame grabbers for input videos
-        FFmpegFrameGrabber grabber1 = new FFmpegFrameGrabber(input1);
-        FFmpegFrameGrabber grabber2 = new FFmpegFrameGrabber(input2);
-        
-        // Start the grabbers
-        grabber1.start();
-        grabber2.start();
-        
-        // Get video properties
-        int width = grabber1.getImageWidth();
-        int height = grabber1.getImageHeight();
-        double frameRate = grabber1.getVideoFrameRate();
-        
-        // Calculate transition frames
-        int transitionFrames = (int)(duration * frameRate);
-        
-        // Create frame recorder for output video
-        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, width, height);
-        recorder.setVideoCodec(grabber1.getVideoCodec());
-        recorder.setFormat("mp4");
-        recorder.setFrameRate(frameRate);
-        recorder.setVideoBitrate(grabber1.getVideoBitrate());
-        recorder.start();
-        
-        try {
-            // First part: Copy frames from first video (except last 'transitionFrames')
-            int firstVideoTotalFrames = grabber1.getLengthInFrames();
-            int firstVideoFramesToKeep = firstVideoTotalFrames - transitionFrames;
-            
-            // Process first video frames before transition
-            for (int i = 0; i < firstVideoFramesToKeep; i++) {
-                Frame frame = grabber1.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-            
-            // Transition part: Apply zoom effect
-            OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
-            
-            for (int i = 0; i < transitionFrames; i++) {
-                Frame frame1 = grabber1.grab();
-                Frame frame2 = grabber2.grab();
-                
-                if (frame1 == null || frame2 == null) break;
-                
-                // Convert frames to OpenCV Mat
-                Mat mat1 = converter.convert(frame1);
-                Mat mat2 = converter.convert(frame2);
-                
-                // Calculate alpha for blending and zoom factors
-                double alpha = (double) i / transitionFrames;
-                double zoom1 = 1.0 + (zoom - 1.0) * alpha;
-                double zoom2 = zoom - (zoom - 1.0) * alpha;
-                
-                // Apply zoom to both frames
-                Mat zoomedMat1 = new Mat();
-                Mat zoomedMat2 = new Mat();
-                
-                // Calculate new dimensions for zoom
-                Size zoomSize1 = new Size((int)(width * zoom1), (int)(height * zoom1));
-                Size zoomSize2 = new Size((int)(width * zoom2), (int)(height * zoom2));
-                
-                // Resize images
-                resize(mat1, zoomedMat1, zoomSize1);
-                resize(mat2, zoomedMat2, zoomSize2);
-                
-                // Calculate crop region to get back to original size
-                Rect cropRect1 = new Rect(
-                    (int)((zoomedMat1.cols() - width) / 2),
-                    (int)((zoomedMat1.rows() - height) / 2),
-                    width,
-                    height
-                );
-                
-                Rect cropRect2 = new Rect(
-                    (int)((zoomedMat2.cols() - width) / 2),
-                    (int)((zoomedMat2.rows() - height) / 2),
-                    width,
-                    height
-                );
-                
-                // Crop the zoomed images
-                Mat croppedMat1 = new Mat(zoomedMat1, cropRect1);
-                Mat croppedMat2 = new Mat(zoomedMat2, cropRect2);
-                
-                // Create output Mat
-                Mat outputMat = new Mat();
-                
-                // Blend the two zoomed frames
-                addWeighted(croppedMat1, 1.0 - alpha, croppedMat2, alpha, 0.0, outputMat);
-                
-                // Convert back to Frame and record
-                Frame blendedFrame = converter.convert(outputMat);
-                recorder.record(blendedFrame);
-                
-                // Release resources
-                mat1.release();
-                mat2.release();
-                zoomedMat1.release();
-                zoomedMat2.release();
-                croppedMat1.release();
-                croppedMat2.release();
-                outputMat.release();
-            }
-            
-            // Last part: Copy remaining frames from second video
-            while (true) {
-                Frame frame = grabber2.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-        } finally {
-            // Release resources
-            grabber1.stop();
-            grabber2.stop();
-            recorder.stop();
-        }
+        applyTransition(input1, input2, outputPath, duration, zoomEffect(zoomFactor));
     }
 
     /**
      * Creates a blur transition between two videos
-     * 
+     *
      * @param input1 Path to the first video
      * @param input2 Path to the second video
      * @param outputPath Path for the output video
@@ -432,119 +119,12 @@ public class JavaTransitionEngine {
      * @throws Exception If an error occurs during processing
      */
     public static void applyBlur(String input1, String input2, String outputPath, double duration, int maxBlur) throws Exception {
-        // Ensure blur amount is within reasonable bounds
-        int blur = Math.min(100, Math.max(5, maxBlur));
-        
-        // Create frame grabbers for input videos
-        FFmpegFrameGrabber grabber1 = new FFmpegFrameGrabber(input1);
-        FFmpegFrameGrabber grabber2 = new FFmpegFrameGrabber(input2);
-        
-        // Start the grabbers
-        grabber1.start();
-        grabber2.start();
-        
-        // Get video properties
-        int width = grabber1.getImageWidth();
-        int height = grabber1.getImageHeight();
-        double frameRate = grabber1.getVideoFrameRate();
-        
-        // Calculate transition frames
-        int transitionFrames = (int)(duration * frameRate);
-        
-        // Create frame recorder for output video
-        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, width, height);
-        recorder.setVideoCodec(grabber1.getVideoCodec());
-        recorder.setFormat("mp4");
-        recorder.setFrameRate(frameRate);
-        recorder.setVideoBitrate(grabber1.getVideoBitrate());
-        recorder.start();
-        
-        try {
-            // First part: Copy frames from first video (except last 'transitionFrames')
-            int firstVideoTotalFrames = grabber1.getLengthInFrames();
-            int firstVideoFramesToKeep = firstVideoTotalFrames - transitionFrames;
-            
-            // Process first video frames before transition
-            for (int i = 0; i < firstVideoFramesToKeep; i++) {
-                Frame frame = grabber1.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-            
-            // Transition part: Apply blur effect and blend
-            OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
-            
-            for (int i = 0; i < transitionFrames; i++) {
-                Frame frame1 = grabber1.grab();
-                Frame frame2 = grabber2.grab();
-                
-                if (frame1 == null || frame2 == null) break;
-                
-                // Convert frames to OpenCV Mat
-                Mat mat1 = converter.convert(frame1);
-                Mat mat2 = converter.convert(frame2);
-                
-                // Calculate alpha for blending and blur amounts
-                double alpha = (double) i / transitionFrames;
-                int blurAmount1 = (int)(blur * alpha);
-                int blurAmount2 = (int)(blur * (1.0 - alpha));
-                
-                // Apply blur to both frames
-                Mat blurredMat1 = new Mat();
-                Mat blurredMat2 = new Mat();
-                
-                // Ensure blur kernel size is odd
-                int kernelSize1 = blurAmount1 * 2 + 1;
-                int kernelSize2 = blurAmount2 * 2 + 1;
-                
-                // Apply Gaussian blur
-                if (kernelSize1 > 1) {
-                    GaussianBlur(mat1, blurredMat1, new Size(kernelSize1, kernelSize1), 0);
-                } else {
-                    mat1.copyTo(blurredMat1);
-                }
-                
-                if (kernelSize2 > 1) {
-                    GaussianBlur(mat2, blurredMat2, new Size(kernelSize2, kernelSize2), 0);
-                } else {
-                    mat2.copyTo(blurredMat2);
-                }
-                
-                // Create output Mat
-                Mat outputMat = new Mat();
-                
-                // Blend the two blurred frames
-                addWeighted(blurredMat1, 1.0 - alpha, blurredMat2, alpha, 0.0, outputMat);
-                
-                // Convert back to Frame and record
-                Frame blendedFrame = converter.convert(outputMat);
-                recorder.record(blendedFrame);
-                
-                // Release resources
-                mat1.release();
-                mat2.release();
-                blurredMat1.release();
-                blurredMat2.release();
-                outputMat.release();
-            }
-            
-            // Last part: Copy remaining frames from second video
-            while (true) {
-                Frame frame = grabber2.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-        } finally {
-            // Release resources
-            grabber1.stop();
-            grabber2.stop();
-            recorder.stop();
-        }
+        applyTransition(input1, input2, outputPath, duration, blurEffect(maxBlur));
     }
 
     /**
      * Creates a whip pan transition between two videos
-     * 
+     *
      * @param input1 Path to the first video
      * @param input2 Path to the second video
      * @param outputPath Path for the output video
@@ -554,192 +134,12 @@ public class JavaTransitionEngine {
      * @throws Exception If an error occurs during processing
      */
     public static void applyWhipPan(String input1, String input2, String outputPath, double duration, String direction, int blurStrength) throws Exception {
-        // Validate direction
-        if (!direction.equals("left") && !direction.equals("right") && 
-            !direction.equals("up") && !direction.equals("down")) {
-            direction = "left"; // Default to left if invalid
-        }
-        
-        // Ensure blur strength is within reasonable bounds
-        int blur = Math.min(100, Math.max(10, blurStrength));
-        
-        // Create frame grabbers for input videos
-        FFmpegFrameGrabber grabber1 = new FFmpegFrameGrabber(input1);
-        FFmpegFrameGrabber grabber2 = new FFmpegFrameGrabber(input2);
-        
-        // Start the grabbers
-        grabber1.start();
-        grabber2.start();
-        
-        // Get video properties
-        int width = grabber1.getImageWidth();
-        int height = grabber1.getImageHeight();
-        double frameRate = grabber1.getVideoFrameRate();
-        
-        // Calculate transition frames
-        int transitionFrames = (int)(duration * frameRate);
-        
-        // Create frame recorder for output video
-        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, width, height);
-        recorder.setVideoCodec(grabber1.getVideoCodec());
-        recorder.setFormat("mp4");
-        recorder.setFrameRate(frameRate);
-        recorder.setVideoBitrate(grabber1.getVideoBitrate());
-        recorder.start();
-        
-        try {
-            // First part: Copy frames from first video (except last 'transitionFrames')
-            int firstVideoTotalFrames = grabber1.getLengthInFrames();
-            int firstVideoFramesToKeep = firstVideoTotalFrames - transitionFrames;
-            
-            // Process first video frames before transition
-            for (int i = 0; i < firstVideoFramesToKeep; i++) {
-                Frame frame = grabber1.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-            
-            // Transition part: Apply whip pan effect
-            OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
-            
-            // Create a larger canvas for the whip effect
-            int canvasWidth = width * 2;
-            int canvasHeight = height * 2;
-            
-            for (int i = 0; i < transitionFrames; i++) {
-                Frame frame1 = grabber1.grab();
-                Frame frame2 = grabber2.grab();
-                
-                if (frame1 == null || frame2 == null) break;
-                
-                // Convert frames to OpenCV Mat
-                Mat mat1 = converter.convert(frame1);
-                Mat mat2 = converter.convert(frame2);
-                
-                // Calculate progress for the transition
-                double progress = (double) i / transitionFrames;
-                
-                // Create a canvas for the whip effect
-                Mat canvas = new Mat(canvasHeight, canvasWidth, mat1.type(), new Scalar(0, 0, 0, 0));
-                
-                // Calculate positions for both videos based on direction and progress
-                int x1 = 0, y1 = 0, x2 = 0, y2 = 0;
-                
-                switch (direction) {
-                    case "left":
-                        x1 = (int)(width - width * progress);
-                        y1 = height / 2;
-                        x2 = (int)(width * 2 - width * progress);
-                        y2 = height / 2;
-                        break;
-                    case "right":
-                        x1 = (int)(width * progress);
-                        y1 = height / 2;
-                        x2 = (int)(width * progress - width);
-                        y2 = height / 2;
-                        break;
-                    case "up":
-                        x1 = width / 2;
-                        y1 = (int)(height - height * progress);
-                        x2 = width / 2;
-                        y2 = (int)(height * 2 - height * progress);
-                        break;
-                    case "down":
-                        x1 = width / 2;
-                        y1 = (int)(height * progress);
-                        x2 = width / 2;
-                        y2 = (int)(height * progress - height);
-                        break;
-                }
-                
-                // Create regions of interest for placing the videos
-                Rect roi1 = new Rect(x1, y1, width, height);
-                Rect roi2 = new Rect(x2, y2, width, height);
-                
-                // Place videos on the canvas
-                Mat canvasRoi1 = new Mat(canvas, roi1);
-                Mat canvasRoi2 = new Mat(canvas, roi2);
-                
-                mat1.copyTo(canvasRoi1);
-                mat2.copyTo(canvasRoi2);
-                
-                // Apply motion blur
-                Mat blurredCanvas = new Mat();
-                
-                // Calculate blur kernel size based on progress (max at middle of transition)
-                double blurFactor = 1.0 - Math.abs(progress - 0.5) * 2.0;
-                int kernelSize = (int)(blur * blurFactor) * 2 + 1;
-                
-                // Apply directional motion blur
-                if (kernelSize > 1) {
-                    Point anchor;
-                    Size ksize;
-                    
-                    if (direction.equals("left") || direction.equals("right")) {
-                        ksize = new Size(kernelSize, 1);
-                        anchor = new Point(-1, 0);
-                    } else {
-                        ksize = new Size(1, kernelSize);
-                        anchor = new Point(0, -1);
-                    }
-                    
-                    Mat kernel = getMotionBlurKernel(ksize, anchor);
-                    filter2D(canvas, blurredCanvas, -1, kernel);
-                    kernel.release();
-                } else {
-                    canvas.copyTo(blurredCanvas);
-                }
-                
-                // Crop the result to original size
-                Rect cropRect = new Rect(width / 2, height / 2, width, height);
-                Mat result = new Mat(blurredCanvas, cropRect);
-                
-                // Convert back to Frame and record
-                Frame outputFrame = converter.convert(result);
-                recorder.record(outputFrame);
-                
-                // Release resources
-                mat1.release();
-                mat2.release();
-                canvas.release();
-                canvasRoi1.release();
-                canvasRoi2.release();
-                blurredCanvas.release();
-                result.release();
-            }
-            
-            // Last part: Copy remaining frames from second video
-            while (true) {
-                Frame frame = grabber2.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-        } finally {
-            // Release resources
-            grabber1.stop();
-            grabber2.stop();
-            recorder.stop();
-        }
-    }
-    
-    /**
-     * Helper method to create a motion blur kernel
-     */
-    private static Mat getMotionBlurKernel(Size ksize, Point anchor) {
-        Mat kernel = new Mat(ksize, CV_32F);
-        kernel.put(0, 0, 0);
-        
-        int size = (int)(ksize.width() > ksize.height() ? ksize.width() : ksize.height());
-        for (int i = 0; i < size; i++) {
-            kernel.put(0, i, 1.0f / size);
-        }
-        
-        return kernel;
+        applyTransition(input1, input2, outputPath, duration, whipPanEffect(direction, blurStrength));
     }
 
     /**
      * Creates a spin transition between two videos
-     * 
+     *
      * @param input1 Path to the first video
      * @param input2 Path to the second video
      * @param outputPath Path for the output video
@@ -747,110 +147,12 @@ public class JavaTransitionEngine {
      * @throws Exception If an error occurs during processing
      */
     public static void applySpin(String input1, String input2, String outputPath, double duration) throws Exception {
-        // Create frame grabbers for input videos
-        FFmpegFrameGrabber grabber1 = new FFmpegFrameGrabber(input1);
-        FFmpegFrameGrabber grabber2 = new FFmpegFrameGrabber(input2);
-        
-        // Start the grabbers
-        grabber1.start();
-        grabber2.start();
-        
-        // Get video properties
-        int width = grabber1.getImageWidth();
-        int height = grabber1.getImageHeight();
-        double frameRate = grabber1.getVideoFrameRate();
-        
-        // Calculate transition frames
-        int transitionFrames = (int)(duration * frameRate);
-        
-        // Create frame recorder for output video
-        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, width, height);
-        recorder.setVideoCodec(grabber1.getVideoCodec());
-        recorder.setFormat("mp4");
-        recorder.setFrameRate(frameRate);
-        recorder.setVideoBitrate(grabber1.getVideoBitrate());
-        recorder.start();
-        
-        try {
-            // First part: Copy frames from first video (except last 'transitionFrames')
-            int firstVideoTotalFrames = grabber1.getLengthInFrames();
-            int firstVideoFramesToKeep = firstVideoTotalFrames - transitionFrames;
-            
-            // Process first video frames before transition
-            for (int i = 0; i < firstVideoFramesToKeep; i++) {
-                Frame frame = grabber1.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-            
-            // Transition part: Apply spin effect
-            OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
-            
-            for (int i = 0; i < transitionFrames; i++) {
-                Frame frame1 = grabber1.grab();
-                Frame frame2 = grabber2.grab();
-                
-                if (frame1 == null || frame2 == null) break;
-                
-                // Convert frames to OpenCV Mat
-                Mat mat1 = converter.convert(frame1);
-                Mat mat2 = converter.convert(frame2);
-                
-                // Calculate progress for the transition
-                double progress = (double) i / transitionFrames;
-                
-                // Calculate rotation angles
-                double angle1 = progress * 90.0; // First video rotates 0 to 90 degrees
-                double angle2 = (1.0 - progress) * -90.0; // Second video rotates -90 to 0 degrees
-                
-                // Get rotation matrices
-                Point center = new Point(width / 2, height / 2);
-                Mat rotationMatrix1 = getRotationMatrix2D(center, angle1, 1.0);
-                Mat rotationMatrix2 = getRotationMatrix2D(center, angle2, 1.0);
-                
-                // Apply rotation
-                Mat rotatedMat1 = new Mat();
-                Mat rotatedMat2 = new Mat();
-                warpAffine(mat1, rotatedMat1, rotationMatrix1, new Size(width, height), INTER_LINEAR, BORDER_CONSTANT, new Scalar(0, 0, 0, 0));
-                warpAffine(mat2, rotatedMat2, rotationMatrix2, new Size(width, height), INTER_LINEAR, BORDER_CONSTANT, new Scalar(0, 0, 0, 0));
-                
-                // Create output Mat
-                Mat outputMat = new Mat();
-                
-                // Blend the two rotated frames
-                addWeighted(rotatedMat1, 1.0 - progress, rotatedMat2, progress, 0.0, outputMat);
-                
-                // Convert back to Frame and record
-                Frame blendedFrame = converter.convert(outputMat);
-                recorder.record(blendedFrame);
-                
-                // Release resources
-                mat1.release();
-                mat2.release();
-                rotationMatrix1.release();
-                rotationMatrix2.release();
-                rotatedMat1.release();
-                rotatedMat2.release();
-                outputMat.release();
-            }
-            
-            // Last part: Copy remaining frames from second video
-            while (true) {
-                Frame frame = grabber2.grab();
-                if (frame == null) break;
-                recorder.record(frame);
-            }
-        } finally {
-            // Release resources
-            grabber1.stop();
-            grabber2.stop();
-            recorder.stop();
-        }
+        applyTransition(input1, input2, outputPath, duration, spinEffect());
     }
 
     /**
      * Creates a light flash transition between two videos
-     * 
+     *
      * @param input1 Path to the first video
      * @param input2 Path to the second video
      * @param outputPath Path for the output video
@@ -858,118 +160,1253 @@ public class JavaTransitionEngine {
      * @throws Exception If an error occurs during processing
      */
     public static void applyLightFlash(String input1, String input2, String outputPath, double duration) throws Exception {
-        // Create frame grabbers for input videos
+        applyTransition(input1, input2, outputPath, duration, lightFlashEffect());
+    }
+
+    /**
+     * Creates a wipe transition between two videos: the edge moves over the first
+     * video and reveals the second one in place
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction the edge moves in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @param feather Width in pixels of the blended edge (0 for a hard edge)
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyWipe(String input1, String input2, String outputPath, double duration,
+                                 String direction, int feather) throws Exception {
+        applyTransition(input1, input2, outputPath, duration, wipeEffect(direction, feather));
+    }
+
+    /**
+     * Creates a slide transition between two videos: the second video slides in
+     * over the first one
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction the edge moves in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @param feather Width in pixels of the blended edge (0 for a hard edge)
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applySlide(String input1, String input2, String outputPath, double duration,
+                                  String direction, int feather) throws Exception {
+        applyTransition(input1, input2, outputPath, duration, slideEffect(direction, feather));
+    }
+
+    /**
+     * Creates a push transition between two videos: the second video pushes the
+     * first one out of the frame
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction the frames move in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyPush(String input1, String input2, String outputPath, double duration,
+                                 String direction) throws Exception {
+        applyTransition(input1, input2, outputPath, duration, pushEffect(direction));
+    }
+
+    /**
+     * Creates a transition between two videos using the given per-frame effect
+     *
+     * The first video is copied up to its last 'duration' seconds, the effect
+     * renders the overlap frame by frame, and the rest of the second video is
+     * copied after it. The second video is scaled by the decoder to the size of
+     * the first one. Only video is written. The effect is released when the
+     * transition finishes.
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param effect Effect rendering the overlapping frames
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyTransition(String input1, String input2, String outputPath, double duration, FrameEffect effect) throws Exception {
+        applyTransition(input1, input2, outputPath, duration, AT_END, effect, null, TransitionSession.shared());
+    }
+
+    /**
+     * Creates a transition starting at a given time of the first video
+     *
+     * The first video is copied up to 'offset', the effect renders the next
+     * 'duration' seconds of both videos, and the rest of the second video
+     * follows; the first video's frames after the transition are dropped.
+     * SceneCutAnalyzer.Cut.transitionOffset gives an offset that ends the
+     * transition at a scene cut.
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds; later than the
+     *               last 'duration' seconds or negative means at the end
+     * @param effect Effect rendering the overlapping frames
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyTransition(String input1, String input2, String outputPath, double duration, double offset,
+                                       FrameEffect effect) throws Exception {
+        applyTransition(input1, input2, outputPath, duration, offset, effect, null, TransitionSession.shared());
+    }
+
+    /**
+     * Starts a transition on an executor and returns a handle to follow or cancel it
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param effect Effect rendering the overlapping frames, owned by the job
+     * @param listener Listener for progress updates, or null
+     * @return The queued job
+     */
+    public static TransitionJob submitTransition(Executor executor, String input1, String input2, String outputPath,
+                                                 double duration, FrameEffect effect, TransitionProgressListener listener) {
+        return TransitionSession.shared().submitTransition(executor, input1, input2, outputPath, duration, effect, listener);
+    }
+
+    /**
+     * Starts a transition at a given time of the first video on an executor
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param effect Effect rendering the overlapping frames, owned by the job
+     * @param listener Listener for progress updates, or null
+     * @return The queued job
+     */
+    public static TransitionJob submitTransition(Executor executor, String input1, String input2, String outputPath,
+                                                 double duration, double offset, FrameEffect effect,
+                                                 TransitionProgressListener listener) {
+        return TransitionSession.shared().submitTransition(executor, input1, input2, outputPath, duration, offset, effect, listener);
+    }
+
+    /**
+     * Runs a transition starting at 'offset' seconds of the first video, or at its end if 'offset' is negative,
+     * with the buffers of 'session', reporting every frame to 'job' if it is not null
+     */
+    static void applyTransition(String input1, String input2, String outputPath, double duration, double offset,
+                                FrameEffect effect, TransitionJob job, TransitionSession session) throws Exception {
+        TransitionMetrics metrics = new TransitionMetrics(effect.name(), outputPath);
+
+        try {
+            runTransition(input1, input2, outputPath, duration, offset, effect, metrics, job, session, frameCache, LISTENERS);
+        } catch (Exception e) {
+            for (TransitionListener listener : LISTENERS) {
+                listener.jobFailed(metrics, e);
+            }
+            throw e;
+        }
+
+        for (TransitionListener listener : LISTENERS) {
+            listener.jobFinished(metrics);
+        }
+    }
+
+    /**
+     * Runs a warm-up transition at the end of the first video with the buffers of 'session'.
+     * It bypasses the frame cache and reaches no listener and no Flight Recorder recording,
+     * so warming up neither fills the cache nor shows up in the metrics of real jobs.
+     */
+    static void warmUpTransition(String input1, String input2, String outputPath, double duration,
+                                 FrameEffect effect, TransitionSession session) throws Exception {
+        runTransition(input1, input2, outputPath, duration, AT_END, effect,
+                new TransitionMetrics(effect.name(), outputPath, false), null, session,
+                DecodedFrameCache.disabled(), Collections.<TransitionListener>emptyList());
+    }
+
+    /**
+     * Registers a listener that receives the metrics of every transition job
+     *
+     * @param listener Listener to add
+     */
+    public static void addTransitionListener(TransitionListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with addTransitionListener
+     *
+     * @param listener Listener to remove
+     */
+    public static void removeTransitionListener(TransitionListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * The frame loop shared by all transitions, timing every stage into 'metrics'
+     * and reading and filling 'cache' with the decoded transition windows
+     */
+    private static void runTransition(String input1, String input2, String outputPath, double duration, double offset,
+                                      FrameEffect effect, TransitionMetrics metrics, TransitionJob job,
+                                      TransitionSession session, DecodedFrameCache cache,
+                                      List<TransitionListener> listeners) throws Exception {
+        int pixelFormat = effect.pixelFormat();
+        ExecutionProfile profile = executionProfile;
+
+        // Create frame grabbers for input videos, decoding to the effect's pixel format
         FFmpegFrameGrabber grabber1 = new FFmpegFrameGrabber(input1);
         FFmpegFrameGrabber grabber2 = new FFmpegFrameGrabber(input2);
-        
-        // Start the grabbers
-        grabber1.start();
-        grabber2.start();
-        
-        // Get video properties
-        int width = grabber1.getImageWidth();
-        int height = grabber1.getImageHeight();
-        double frameRate = grabber1.getVideoFrameRate();
-        
-        // Calculate transition frames
-        int transitionFrames = (int)(duration * frameRate);
-        int halfTransitionFrames = transitionFrames / 2;
-        
-        // Create frame recorder for output video
-        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputPath, width, height);
-        recorder.setVideoCodec(grabber1.getVideoCodec());
-        recorder.setFormat("mp4");
-        recorder.setFrameRate(frameRate);
-        recorder.setVideoBitrate(grabber1.getVideoBitrate());
-        recorder.start();
-        
+        grabber1.setPixelFormat(pixelFormat);
+        grabber2.setPixelFormat(pixelFormat);
+        if (profile.getCodecThreads() > 0) {
+            // Every decoder thread holds pictures of its own
+            grabber1.setVideoOption("threads", String.valueOf(profile.getCodecThreads()));
+            grabber2.setVideoOption("threads", String.valueOf(profile.getCodecThreads()));
+        }
+        FFmpegFrameRecorder recorder = null;
+        // The output Mat, its converter and the packing buffers come warm from the session's pool
+        TransitionSession.OutputBuffer output = session.acquireOutput();
+        Mat outputMat = output.mat;
+        NativeMemoryBudget budget = memoryBudget;
+        long reservedBytes = 0;
+        Throwable failure = null;
+
         try {
-            // First part: Copy frames from first video (except last 'transitionFrames')
-            int firstVideoTotalFrames = grabber1.getLengthInFrames();
-            int firstVideoFramesToKeep = firstVideoTotalFrames - transitionFrames;
-            
-            // Process first video frames before transition
-            for (int i = 0; i < firstVideoFramesToKeep; i++) {
-                Frame frame = grabber1.grab();
-                if (frame == null) break;
-                recorder.record(frame);
+            // Start the first grabber
+            grabber1.start();
+
+            // Under memory pressure the pooled buffers go first, and the job works at a lower resolution
+            boolean underPressure = profile.isUnderPressure(budget);
+            if (underPressure) {
+                session.trim();
+                cache.trimMemory();
+            }
+
+            // Get video properties, scaling the first video down to the profile's working size
+            int[] size = profile.workingSize(grabber1.getImageWidth(), grabber1.getImageHeight(), underPressure);
+            int width = size[0];
+            int height = size[1];
+            if (width != grabber1.getImageWidth() || height != grabber1.getImageHeight()) {
+                grabber1.setImageWidth(width);
+                grabber1.setImageHeight(height);
+            }
+            double frameRate = grabber1.getVideoFrameRate();
+
+            // Wait for enough native memory before allocating the rest of the pipeline
+            long baseBytes = pipelineBytes(width, height, pixelFormat);
+            reservedBytes = reserveMemory(budget, baseBytes + ADMISSION_SCRATCH_FRAMES * frameBytes(width, height, pixelFormat),
+                    outputPath, job);
+
+            // Start the second grabber at the size of the first video
+            grabber2.setImageWidth(width);
+            grabber2.setImageHeight(height);
+            grabber2.start();
+
+            // Calculate transition frames
+            int transitionFrames = (int)(duration * frameRate);
+
+            // Create frame recorder for output video
+            recorder = new FFmpegFrameRecorder(outputPath, width, height);
+            recorder.setVideoCodec(grabber1.getVideoCodec());
+            recorder.setFormat("mp4");
+            recorder.setFrameRate(frameRate);
+            recorder.setVideoBitrate(grabber1.getVideoBitrate());
+            if (profile.getCodecThreads() > 0) {
+                recorder.setVideoOption("threads", String.valueOf(profile.getCodecThreads()));
+            }
+            if (pixelFormat == AV_PIX_FMT_YUV420P) {
+                // Planar effects hand the encoder its own pixel format
+                recorder.setPixelFormat(AV_PIX_FMT_YUV420P);
+            }
+            recorder.start();
+
+            // First video up to the transition, the transition, then the rest of the second video
+            int firstVideoFramesToKeep = transitionStart(grabber1.getLengthInFrames(), transitionFrames, offset, frameRate);
+            int expectedFrames = firstVideoFramesToKeep + grabber2.getLengthInFrames();
+
+            // Transition windows decoded by earlier jobs are served from the cache instead of the decoders
+            String clip1 = cache.clipKey(input1, width, height, pixelFormat);
+            String clip2 = cache.clipKey(input2, width, height, pixelFormat);
+            ByteBuffer[] window1 = cache.getWindow(clip1, firstVideoFramesToKeep, transitionFrames);
+            ByteBuffer[] window2 = cache.getWindow(clip2, 0, transitionFrames);
+            // Missed windows are only stored when they missed before, so first runs copy nothing into the cache
+            if (window1 == null && !cache.admit(clip1, firstVideoFramesToKeep, transitionFrames)) {
+                clip1 = null;
             }
-            
-            // Transition part: Apply light flash effect
-            OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
-            
-            // First half: Fade first video to white
-            for (int i = 0; i < halfTransitionFrames; i++) {
-                Frame frame = grabber1.grab();
-                if (frame == null) break;
-                
-                // Convert frame to OpenCV Mat
-                Mat mat = converter.convert(frame);
-                
-                // Calculate progress for the fade to white
-                double progress = (double) i / halfTransitionFrames;
-                
-                // Create white mat
-                Mat whiteMat = new Mat(height, width, mat.type(), new Scalar(255, 255, 255, 255));
-                
-                // Blend with white
-                Mat outputMat = new Mat();
-                addWeighted(mat, 1.0 - progress, whiteMat, progress, 0.0, outputMat);
-                
-                // Convert back to Frame and record
-                Frame outputFrame = converter.convert(outputMat);
-                recorder.record(outputFrame);
-                
-                // Release resources
-                mat.release();
-                whiteMat.release();
-                outputMat.release();
+            if (window2 == null && !cache.admit(clip2, 0, transitionFrames)) {
+                clip2 = null;
             }
-            
-            // Second half: Fade from white to second video
-            // Skip frames from the first video that we won't use
-            for (int i = 0; i < halfTransitionFrames; i++) {
-                grabber1.grab();
+            if (window2 != null) {
+                // Seeks to the keyframe before the rest of the second video and decodes up to it
+                grabber2.setVideoFrameNumber(transitionFrames);
             }
-            
-            for (int i = 0; i < halfTransitionFrames; i++) {
-                Frame frame = grabber2.grab();
-                if (frame == null) break;
-                
-                // Convert frame to OpenCV Mat
-                Mat mat = converter.convert(frame);
-                
-                // Calculate progress for the fade from white
-                double progress = (double) i / halfTransitionFrames;
-                
-                // Create white mat
-                Mat whiteMat = new Mat(height, width, mat.type(), new Scalar(255, 255, 255, 255));
-                
-                // Blend from white
-                Mat outputMat = new Mat();
-                addWeighted(whiteMat, 1.0 - progress, mat, progress, 0.0, outputMat);
-                
-                // Convert back to Frame and record
-                Frame outputFrame = converter.convert(outputMat);
-                recorder.record(outputFrame);
-                
-                // Release resources
-                mat.release();
-                whiteMat.release();
-                outputMat.release();
+
+            metrics.start(width, height, frameRate, transitionFrames, expectedFrames);
+            metrics.recordJobBytes(baseBytes);
+            for (TransitionListener listener : listeners) {
+                listener.jobStarted(metrics);
             }
-            
-            // Last part: Copy remaining frames from second video
-            while (true) {
-                Frame frame = grabber2.grab();
-                if (frame == null) break;
-                recorder.record(frame);
+            if (job != null) {
+                job.started(metrics);
+            }
+
+            // First part: Copy frames from first video (except last 'transitionFrames')
+            if (copyFrames(grabber1, recorder, pixelFormat, firstVideoFramesToKeep, output.packed1, metrics, job)
+                    < firstVideoFramesToKeep) {
+                // The video is shorter than its header says, so its frame indices cannot be trusted
+                window1 = null;
+                clip1 = null;
+            }
+
+            // Transition part: Render the overlapping frames with the effect
+            effect.prepare(frameRate, transitionFrames);
+            for (int i = 0; i < transitionFrames; i++) {
+                metrics.beginFrame();
+                long time = System.nanoTime();
+
+                Frame frame1 = window1 == null ? grabber1.grabImage() : null;
+                Frame frame2 = window2 == null ? grabber2.grabImage() : null;
+                if ((window1 == null && frame1 == null) || (window2 == null && frame2 == null)) break;
+                // Frames in the cache are read from their copy there, so padded frames are not packed again
+                int copies = 0;
+                ByteBuffer buffer1 = window1 != null ? window1[i] : cache.get(clip1, firstVideoFramesToKeep + i);
+                if (buffer1 == null) {
+                    buffer1 = cache.put(clip1, firstVideoFramesToKeep + i, frame1);
+                    copies += buffer1 != null ? 1 : 0;
+                }
+                ByteBuffer buffer2 = window2 != null ? window2[i] : cache.get(clip2, i);
+                if (buffer2 == null) {
+                    buffer2 = cache.put(clip2, i, frame2);
+                    copies += buffer2 != null ? 1 : 0;
+                }
+                time = metrics.stage(TransitionMetrics.Stage.DECODE, time);
+
+                // Everything the frame wraps or allocates temporarily is freed when the scope closes
+                try (PointerScope scope = new PointerScope()) {
+                    // Convert frames to OpenCV Mat
+                    Mat mat1 = buffer1 != null ? DecodedFrameCache.toMat(buffer1, width, height, pixelFormat)
+                            : toMat(frame1, pixelFormat, output.packed1);
+                    Mat mat2 = buffer2 != null ? DecodedFrameCache.toMat(buffer2, width, height, pixelFormat)
+                            : toMat(frame2, pixelFormat, output.packed2);
+                    copies += (buffer1 == null && needsPacking(frame1, pixelFormat) ? 1 : 0)
+                            + (buffer2 == null && needsPacking(frame2, pixelFormat) ? 1 : 0);
+                    metrics.recordFrameCopies(copies);
+                    time = metrics.stage(TransitionMetrics.Stage.CONVERT, time);
+
+                    // Calculate progress of the transition
+                    double progress = (double) i / transitionFrames;
+
+                    // Render into the reused output Mat
+                    outputMat.create(mat1.rows(), mat1.cols(), mat1.type());
+                    effect.apply(mat1, mat2, outputMat, progress);
+                    time = metrics.stage(TransitionMetrics.Stage.EFFECT, time);
+                }
+
+                // Account for the scratch buffers the effect has grown to
+                long jobBytes = baseBytes + effect.nativeBytes();
+                metrics.recordJobBytes(jobBytes);
+                if (jobBytes > reservedBytes) {
+                    reservedBytes += growReservation(budget, reservedBytes, jobBytes, outputPath);
+                } else if (i == 0) {
+                    // Effects allocate their scratch buffers on the first frame, so return what the estimate over-reserved
+                    budget.release(reservedBytes - jobBytes);
+                    reservedBytes = jobBytes;
+                }
+
+                // Hand the rendered Mat to the recorder without copying it
+                recordMat(recorder, output.converter, outputMat, pixelFormat);
+                metrics.stage(TransitionMetrics.Stage.ENCODE, time);
+                metrics.endFrame(true);
+                if (job != null) {
+                    job.frameWritten(metrics);
+                }
             }
+
+            // Last part: Copy remaining frames from second video
+            copyFrames(grabber2, recorder, pixelFormat, Integer.MAX_VALUE, output.packed2, metrics, job);
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
         } finally {
-            // Release resources
-            grabber1.stop();
-            grabber2.stop();
-            recorder.stop();
+            // Release resources, each one even if another fails
+            long reserved = reservedBytes;
+            FFmpegFrameRecorder openRecorder = recorder;
+            releaseAll(failure,
+                    effect::release,
+                    () -> session.recycle(output),
+                    () -> budget.release(reserved),
+                    grabber1::stop,
+                    grabber2::stop,
+                    () -> {
+                        if (openRecorder != null && job != null && job.isCancelled()) {
+                            // The output is discarded, so skip flushing the encoder
+                            openRecorder.release();
+                        } else if (openRecorder != null) {
+                            openRecorder.stop();
+                        }
+                    },
+                    metrics::finish);
+        }
+    }
+
+    /**
+     * A step freeing one resource of a job
+     */
+    private interface Release {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs every step, also after one fails. Failures are added to 'failure', the exception
+     * the job already ends with, so they do not hide it; without one, the first failure is
+     * thrown once all steps have run.
+     */
+    private static void releaseAll(Throwable failure, Release... steps) throws Exception {
+        Exception first = null;
+        for (Release step : steps) {
+            try {
+                step.run();
+            } catch (Exception e) {
+                if (failure != null) {
+                    failure.addSuppressed(e);
+                } else if (first == null) {
+                    first = e;
+                } else {
+                    first.addSuppressed(e);
+                }
+            }
+        }
+        if (first != null) {
+            throw first;
+        }
+    }
+
+    /**
+     * Frames of the first video before a transition starting at 'offset' seconds, or at its end if 'offset' is negative
+     */
+    static int transitionStart(int firstVideoFrames, int transitionFrames, double offset, double frameRate) {
+        int atEnd = firstVideoFrames - transitionFrames;
+        if (offset < 0) return atEnd;
+        return Math.max(0, Math.min(atEnd, (int) Math.round(offset * frameRate)));
+    }
+
+    /**
+     * Reserves a job's native memory, waiting for other jobs to release theirs if needed
+     *
+     * @return The reserved bytes
+     * @throws MemoryBudgetExceededException If the job can never fit or waited too long
+     */
+    static long reserveMemory(NativeMemoryBudget budget, long bytes, String outputPath, TransitionJob job) throws Exception {
+        if (bytes > budget.getJobLimitBytes()) {
+            throw new MemoryBudgetExceededException(String.format("Transition to %s needs about %.1f MB of native memory, more than the job limit",
+                    outputPath, bytes / 1e6), bytes, budget.getJobLimitBytes());
+        }
+
+        long deadline = System.currentTimeMillis() + budget.getMaxWaitMillis();
+        boolean trimmed = false;
+        while (!budget.tryReserve(bytes)) {
+            if (!trimmed) {
+                // Cached frames make room for jobs before anyone waits
+                frameCache.trimMemory();
+                trimmed = true;
+                continue;
+            }
+            if (job != null) {
+                job.checkCancelled();
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new MemoryBudgetExceededException(String.format("Transition to %s waited too long for %.1f MB of native memory (%s)",
+                        outputPath, bytes / 1e6, budget), bytes, budget.getLimitBytes());
+            }
+            // Wake up regularly so a cancelled job stops waiting
+            budget.awaitRelease(Math.min(remaining, 100));
+        }
+        return bytes;
+    }
+
+    /**
+     * Grows a running job's reservation without waiting, as the job already holds memory
+     *
+     * @return The additional reserved bytes
+     * @throws MemoryBudgetExceededException If the job outgrows its limit or the shared budget
+     */
+    private static long growReservation(NativeMemoryBudget budget, long reservedBytes, long jobBytes, String outputPath) throws Exception {
+        if (jobBytes > budget.getJobLimitBytes()) {
+            throw new MemoryBudgetExceededException(String.format("Transition to %s grew to %.1f MB of native memory, more than the job limit",
+                    outputPath, jobBytes / 1e6), jobBytes, budget.getJobLimitBytes());
+        }
+        long extra = jobBytes - reservedBytes;
+        if (!budget.tryReserve(extra) && !(frameCache.trimMemory() && budget.tryReserve(extra))) {
+            throw new MemoryBudgetExceededException(String.format("Transition to %s grew to %.1f MB of native memory, more than is left (%s)",
+                    outputPath, jobBytes / 1e6, budget), jobBytes, budget.getLimitBytes());
+        }
+        return extra;
+    }
+
+    /**
+     * Bytes of one frame in the given pixel format
+     */
+    static long frameBytes(int width, int height, int pixelFormat) {
+        long pixels = (long) width * height;
+        return pixelFormat == AV_PIX_FMT_YUV420P ? pixels * 3 / 2 : pixels * 3;
+    }
+
+    /**
+     * Estimates the native memory of the frame loop itself, without the effect's scratch buffers
+     */
+    static long pipelineBytes(int width, int height, int pixelFormat) {
+        long yuvBytes = frameBytes(width, height, AV_PIX_FMT_YUV420P);
+        // Converted pictures of both grabbers and the output Mat, the encoder's input picture,
+        // and the reference pictures each decoder and the encoder keep
+        long bytes = 3 * frameBytes(width, height, pixelFormat) + yuvBytes + 3 * CODEC_REFERENCE_FRAMES * yuvBytes;
+        // Padded YUV420P frames of both grabbers are packed into buffers of their own
+        return pixelFormat == AV_PIX_FMT_YUV420P ? bytes + 2 * yuvBytes : bytes;
+    }
+
+    /**
+     * Estimates the native memory of one more output in a pipeline: the
+     * rendered Mat, the encoder's input picture and its reference pictures
+     */
+    static long encoderBytes(int width, int height, int pixelFormat) {
+        long yuvBytes = frameBytes(width, height, AV_PIX_FMT_YUV420P);
+        return frameBytes(width, height, pixelFormat) + yuvBytes + CODEC_REFERENCE_FRAMES * yuvBytes;
+    }
+
+    /**
+     * Replaces the native memory budget shared by all transition jobs
+     *
+     * @param budget The new budget; jobs already running keep the one they started with
+     */
+    public static void setMemoryBudget(NativeMemoryBudget budget) {
+        memoryBudget = budget;
+    }
+
+    /**
+     * @return The native memory budget shared by all transition jobs
+     */
+    public static NativeMemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Replaces the blend kernels used by the effects
+     *
+     * @param backend The new backend, used from the next frame of every job
+     */
+    public static void setBlendBackend(BlendBackend backend) {
+        blendBackend = backend;
+    }
+
+    /**
+     * @return The blend kernels used by the effects
+     */
+    public static BlendBackend getBlendBackend() {
+        return blendBackend;
+    }
+
+    /**
+     * Replaces the execution profile limiting resolution, buffers and queues
+     *
+     * @param profile The new profile; jobs already running keep the one they started with
+     */
+    public static void setExecutionProfile(ExecutionProfile profile) {
+        executionProfile = profile;
+    }
+
+    /**
+     * @return The execution profile limiting resolution, buffers and queues
+     */
+    public static ExecutionProfile getExecutionProfile() {
+        return executionProfile;
+    }
+
+    /**
+     * Replaces the cache of decoded transition windows
+     *
+     * @param cache The new cache; jobs already running keep the one they started with
+     */
+    public static void setFrameCache(DecodedFrameCache cache) {
+        frameCache = cache;
+    }
+
+    /**
+     * @return The cache of decoded transition windows
+     */
+    public static DecodedFrameCache getFrameCache() {
+        return frameCache;
+    }
+
+    /**
+     * Copies up to 'count' frames from a grabber to the recorder, stopping early at the end of the video
+     *
+     * @param packed Mat padded YUV420P frames are packed into on their way to the recorder
+     * @return The number of frames copied
+     */
+    private static int copyFrames(FFmpegFrameGrabber grabber, FFmpegFrameRecorder recorder, int pixelFormat,
+                                  int count, Mat packed, TransitionMetrics metrics, TransitionJob job) throws Exception {
+        for (int i = 0; i < count; i++) {
+            metrics.beginFrame();
+            long time = System.nanoTime();
+
+            Frame frame = grabber.grabImage();
+            time = metrics.stage(TransitionMetrics.Stage.DECODE, time);
+            if (frame == null) return i;
+
+            if (needsPacking(frame, pixelFormat)) {
+                metrics.recordFrameCopies(1);
+            }
+            recordFrame(recorder, frame, pixelFormat, packed);
+            metrics.stage(TransitionMetrics.Stage.ENCODE, time);
+            metrics.endFrame(false);
+            if (job != null) {
+                job.frameWritten(metrics);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Wraps a decoded frame as a Mat without copying, packing padded YUV420P frames into a new Mat
+     * freed by the enclosing PointerScope
+     */
+    static Mat toMat(Frame frame, int pixelFormat) {
+        return toMat(frame, pixelFormat, null);
+    }
+
+    /**
+     * Wraps a decoded frame as a Mat without copying. YUV420P frames become a
+     * single channel I420 Mat with the chroma planes below the luma plane;
+     * those are copied if the decoder padded their rows.
+     * The Mat only borrows the frame's buffer and is freed by the enclosing PointerScope.
+     *
+     * @param packed Mat padded YUV420P frames are packed into, allocated as needed; null for a new one
+     */
+    static Mat toMat(Frame frame, int pixelFormat, Mat packed) {
+        if (needsPacking(frame, pixelFormat)) {
+            Mat mat = packed != null ? packed : new Mat();
+            mat.create(frame.imageHeight * 3 / 2, frame.imageWidth, CV_8UC1);
+            packI420(frame, mat.createBuffer());
+            return mat;
+        }
+        BytePointer data = new BytePointer((ByteBuffer) frame.image[0]);
+        if (pixelFormat == AV_PIX_FMT_YUV420P) {
+            return new Mat(frame.imageHeight * 3 / 2, frame.imageWidth, CV_8UC1, data);
+        }
+        return new Mat(frame.imageHeight, frame.imageWidth, CV_8UC(frame.imageChannels), data, frame.imageStride);
+    }
+
+    /**
+     * Copies a decoded frame into 'target', packing padded YUV420P frames straight into it
+     * instead of packing them first and copying the result
+     */
+    static void copyFrame(Frame frame, int pixelFormat, Mat target) {
+        Mat mat = toMat(frame, pixelFormat, target);
+        if (mat != target) {
+            mat.copyTo(target);
+        }
+    }
+
+    /**
+     * @return true if the frame is YUV420P with padded rows, which toMat and recordFrame copy into contiguous I420
+     */
+    static boolean needsPacking(Frame frame, int pixelFormat) {
+        return pixelFormat == AV_PIX_FMT_YUV420P && frame.imageStride != frame.imageWidth;
+    }
+
+    /**
+     * Copies a decoded YUV420P frame into 'target' as contiguous I420, dropping
+     * the padding the decoder adds to each row of every plane
+     */
+    static void packI420(Frame frame, ByteBuffer target) {
+        ByteBuffer source = ((ByteBuffer) frame.image[0]).duplicate();
+        source.clear();
+        int width = frame.imageWidth;
+        int height = frame.imageHeight;
+        int stride = frame.imageStride;
+        // Luma rows, then the two chroma planes at half the size and half the stride
+        int[][] planes = {{0, width, height, stride},
+                          {stride * height, width / 2, height / 2, stride / 2},
+                          {stride * height + (stride / 2) * (height / 2), width / 2, height / 2, stride / 2}};
+        for (int[] plane : planes) {
+            for (int y = 0; y < plane[2]; y++) {
+                int start = plane[0] + y * plane[3];
+                source.limit(start + plane[1]).position(start);
+                target.put(source);
+            }
+        }
+    }
+
+    /**
+     * Bytes of pixel data allocated by the given Mats
+     */
+    static long matBytes(Mat... mats) {
+        long bytes = 0;
+        for (Mat mat : mats) {
+            bytes += mat.total() * mat.elemSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * Records a decoded frame in the given pixel format. The recorder expects
+     * YUV420P chroma planes right after an unpadded luma plane, so padded
+     * frames are packed first.
+     */
+    static void recordFrame(FFmpegFrameRecorder recorder, Frame frame, int pixelFormat) throws Exception {
+        recordFrame(recorder, frame, pixelFormat, null);
+    }
+
+    /**
+     * Records a decoded frame in the given pixel format, packing padded YUV420P frames into 'packed'
+     *
+     * @param packed Mat padded frames are packed into, allocated as needed; null for a temporary one
+     */
+    static void recordFrame(FFmpegFrameRecorder recorder, Frame frame, int pixelFormat, Mat packed) throws Exception {
+        if (needsPacking(frame, pixelFormat)) {
+            try (PointerScope scope = new PointerScope()) {
+                recordMat(recorder, null, toMat(frame, pixelFormat, packed), pixelFormat);
+            }
+            return;
+        }
+        recorder.record(frame, pixelFormat);
+    }
+
+    /**
+     * Records a rendered Mat in the given pixel format. The recorder reads the
+     * Mat's buffer in place: YUV420P Mats go to the encoder as they are, BGR
+     * Mats through the recorder's conversion to YUV420P.
+     */
+    static void recordMat(FFmpegFrameRecorder recorder, OpenCVFrameConverter.ToMat converter, Mat mat, int pixelFormat) throws Exception {
+        if (pixelFormat == AV_PIX_FMT_YUV420P) {
+            recorder.recordImage(mat.cols(), mat.rows() * 2 / 3, Frame.DEPTH_UBYTE, 1, (int) mat.step(),
+                    AV_PIX_FMT_YUV420P, mat.createBuffer());
+        } else {
+            recorder.record(converter.convert(mat), pixelFormat);
+        }
+    }
+
+    /**
+     * Creates the crossfade effect
+     *
+     * @return A new fade effect
+     */
+    public static FrameEffect fadeEffect() {
+        return new FadeEffect();
+    }
+
+    /**
+     * Creates the glitch effect
+     *
+     * @param glitchStrength Intensity of the glitch effect (1-100)
+     * @return A new glitch effect
+     */
+    public static FrameEffect glitchEffect(int glitchStrength) {
+        return new GlitchEffect(glitchStrength);
+    }
+
+    /**
+     * Creates the zoom effect
+     *
+     * @param zoomFactor Maximum zoom factor (1.0-2.0 recommended)
+     * @return A new zoom effect
+     */
+    public static FrameEffect zoomEffect(double zoomFactor) {
+        return new ZoomEffect(zoomFactor);
+    }
+
+    /**
+     * Creates the blur effect
+     *
+     * @param maxBlur Maximum blur amount (5-50 recommended)
+     * @return A new blur effect
+     */
+    public static FrameEffect blurEffect(int maxBlur) {
+        return new BlurEffect(maxBlur);
+    }
+
+    /**
+     * Creates the whip pan effect
+     *
+     * @param direction Direction of the whip ("left", "right", "up", "down")
+     * @param blurStrength Strength of the motion blur (10-100 recommended)
+     * @return A new whip pan effect
+     */
+    public static FrameEffect whipPanEffect(String direction, int blurStrength) {
+        return new WhipPanEffect(direction, blurStrength);
+    }
+
+    /**
+     * Creates the spin effect
+     *
+     * @return A new spin effect
+     */
+    public static FrameEffect spinEffect() {
+        return new SpinEffect();
+    }
+
+    /**
+     * Creates the light flash effect: the first half fades the first video to
+     * white, the second half fades from white to the second video
+     *
+     * @return A new light flash effect
+     */
+    public static FrameEffect lightFlashEffect() {
+        return new LightFlashEffect();
+    }
+
+    /**
+     * Creates the wipe effect, built from region copies of the two frames
+     *
+     * @param direction Direction the edge moves in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @param feather Width in pixels of the blended edge (0 for a hard edge)
+     * @return A new wipe effect
+     */
+    public static FrameEffect wipeEffect(String direction, int feather) {
+        return new RegionTransition(RegionTransition.Kind.WIPE, direction, feather, false);
+    }
+
+    /**
+     * Creates the slide effect, built from region copies of the two frames
+     *
+     * @param direction Direction the edge moves in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @param feather Width in pixels of the blended edge (0 for a hard edge)
+     * @return A new slide effect
+     */
+    public static FrameEffect slideEffect(String direction, int feather) {
+        return new RegionTransition(RegionTransition.Kind.SLIDE, direction, feather, false);
+    }
+
+    /**
+     * Creates the push effect, built from region copies of the two frames
+     *
+     * @param direction Direction the frames move in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @return A new push effect
+     */
+    public static FrameEffect pushEffect(String direction) {
+        return new RegionTransition(RegionTransition.Kind.PUSH, direction, 0, false);
+    }
+
+    /**
+     * Fade effect: a plain crossfade
+     */
+    private static final class FadeEffect implements FrameEffect {
+        @Override
+        public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+            blendBackend.crossfade(frame1, frame2, output, progress);
+        }
+
+        @Override
+        public String name() {
+            return "fade";
+        }
+    }
+
+    /**
+     * Light flash effect: fade to white and back out into the second video
+     */
+    private static final class LightFlashEffect implements FrameEffect {
+        @Override
+        public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+            if (progress < 0.5) {
+                // Fade first video to white: out = frame * (1 - p) + 255 * p
+                double p = progress * 2.0;
+                blendBackend.dipToColor(frame1, output, p, WHITE);
+            } else {
+                // Fade from white to second video
+                double p = (progress - 0.5) * 2.0;
+                blendBackend.dipToColor(frame2, output, 1.0 - p, WHITE);
+            }
+        }
+
+        @Override
+        public String name() {
+            return "flash";
+        }
+    }
+
+    /**
+     * Glitch effect: RGB shift and random row displacement on both videos, then a blend
+     */
+    private static final class GlitchEffect implements FrameEffect {
+        private final int glitchStrength;
+        private final Random random = new Random();
+        private final Mat glitched1 = new Mat();
+        private final Mat glitched2 = new Mat();
+        private final Mat redShifted = new Mat();
+        private final Mat blueShifted = new Mat();
+        private final Mat shiftedRow = new Mat();
+
+        GlitchEffect(int glitchStrength) {
+            this.glitchStrength = glitchStrength;
+        }
+
+        @Override
+        public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+            // Scale glitch strength to parameters
+            int maxRowShift = Math.min(frame1.cols() / 4, Math.max(5, glitchStrength));
+            int rgbShift = Math.min(20, Math.max(1, glitchStrength / 5));
+
+            // Apply glitch effects
+            applyGlitchEffect(frame1, glitched1, maxRowShift, rgbShift, progress);
+            applyGlitchEffect(frame2, glitched2, maxRowShift, rgbShift, 1.0 - progress);
+
+            // Blend the two glitched frames
+            blendBackend.crossfade(glitched1, glitched2, output, progress);
+        }
+
+        /**
+         * Helper method to apply glitch effect to a frame
+         */
+        private void applyGlitchEffect(Mat input, Mat output, int maxRowShift, int rgbShift, double intensity) {
+            // Apply RGB shift
+            int actualRgbShift = (int)(rgbShift * intensity);
+            if (actualRgbShift > 0) {
+                // Split the channels
+                MatVector channels = new MatVector();
+                split(input, channels);
+
+                // Shift red channel right and blue channel left
+                shiftColumns(channels.get(2), redShifted, actualRgbShift);
+                shiftColumns(channels.get(0), blueShifted, -actualRgbShift);
+
+                // Merge channels back
+                merge(new MatVector(blueShifted, channels.get(1), redShifted), output);
+                channels.close();
+            } else {
+                input.copyTo(output);
+            }
+
+            // Apply row shifting (random rows are shifted horizontally)
+            int numRowsToShift = (int)(10 * intensity);
+            for (int i = 0; i < numRowsToShift; i++) {
+                int rowToShift = random.nextInt(input.rows());
+                int shiftAmount = random.nextInt(maxRowShift) - maxRowShift/2;
+
+                Mat row = output.row(rowToShift);
+                shiftColumns(row, shiftedRow, shiftAmount);
+
+                // Copy shifted row back to output
+                shiftedRow.copyTo(row);
+            }
+        }
+
+        @Override
+        public String name() {
+            return "glitch";
+        }
+
+        @Override
+        public long nativeBytes() {
+            return matBytes(glitched1, glitched2, redShifted, blueShifted, shiftedRow);
+        }
+
+        @Override
+        public void release() {
+            glitched1.release();
+            glitched2.release();
+            redShifted.release();
+            blueShifted.release();
+            shiftedRow.release();
+        }
+    }
+
+    /**
+     * Shifts a Mat horizontally by 'shift' columns, filling the uncovered part with black
+     */
+    static void shiftColumns(Mat src, Mat dst, int shift) {
+        dst.create(src.rows(), src.cols(), src.type());
+        dst.put(new Scalar(0.0));
+
+        int width = src.cols() - Math.abs(shift);
+        if (width <= 0) return;
+
+        Rect from = new Rect(Math.max(0, -shift), 0, width, src.rows());
+        Rect to = new Rect(Math.max(0, shift), 0, width, src.rows());
+        new Mat(src, from).copyTo(new Mat(dst, to));
+    }
+
+    /**
+     * Zoom effect: the first video zooms in while the second zooms out, blended together
+     */
+    private static final class ZoomEffect implements FrameEffect {
+        private final double zoom;
+        private final Mat zoomedMat1 = new Mat();
+        private final Mat zoomedMat2 = new Mat();
+
+        ZoomEffect(double zoomFactor) {
+            // Ensure zoom factor is within reasonable bounds
+            this.zoom = Math.min(3.0, Math.max(1.1, zoomFactor));
+        }
+
+        @Override
+        public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+            int width = frame1.cols();
+            int height = frame1.rows();
+
+            // Calculate zoom factors
+            double zoom1 = 1.0 + (zoom - 1.0) * progress;
+            double zoom2 = zoom - (zoom - 1.0) * progress;
+
+            // Resize images
+            resize(frame1, zoomedMat1, new Size((int)(width * zoom1), (int)(height * zoom1)));
+            resize(frame2, zoomedMat2, new Size((int)(width * zoom2), (int)(height * zoom2)));
+
+            // Calculate crop region to get back to original size
+            Rect cropRect1 = new Rect((zoomedMat1.cols() - width) / 2, (zoomedMat1.rows() - height) / 2, width, height);
+            Rect cropRect2 = new Rect((zoomedMat2.cols() - width) / 2, (zoomedMat2.rows() - height) / 2, width, height);
+
+            // Blend the two zoomed frames
+            blendBackend.crossfade(new Mat(zoomedMat1, cropRect1), new Mat(zoomedMat2, cropRect2), output, progress);
+        }
+
+        @Override
+        public String name() {
+            return "zoom";
+        }
+
+        @Override
+        public long nativeBytes() {
+            return matBytes(zoomedMat1, zoomedMat2);
+        }
+
+        @Override
+        public void release() {
+            zoomedMat1.release();
+            zoomedMat2.release();
+        }
+    }
+
+    /**
+     * Blur effect: the first video blurs out while the second one comes into focus
+     */
+    private static final class BlurEffect implements FrameEffect {
+        private final int blur;
+        private final Mat blurredMat1 = new Mat();
+        private final Mat blurredMat2 = new Mat();
+
+        BlurEffect(int maxBlur) {
+            // Ensure blur amount is within reasonable bounds
+            this.blur = Math.min(100, Math.max(5, maxBlur));
+        }
+
+        @Override
+        public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+            // Ensure blur kernel size is odd
+            int kernelSize1 = (int)(blur * progress) * 2 + 1;
+            int kernelSize2 = (int)(blur * (1.0 - progress)) * 2 + 1;
+
+            // Apply Gaussian blur, skipping it (and the copy) when the kernel is a single pixel
+            Mat blurred1 = frame1;
+            Mat blurred2 = frame2;
+            if (kernelSize1 > 1) {
+                GaussianBlur(frame1, blurredMat1, new Size(kernelSize1, kernelSize1), 0);
+                blurred1 = blurredMat1;
+            }
+            if (kernelSize2 > 1) {
+                GaussianBlur(frame2, blurredMat2, new Size(kernelSize2, kernelSize2), 0);
+                blurred2 = blurredMat2;
+            }
+
+            // Blend the two blurred frames
+            blendBackend.crossfade(blurred1, blurred2, output, progress);
+        }
+
+        @Override
+        public String name() {
+            return "blur";
+        }
+
+        @Override
+        public long nativeBytes() {
+            return matBytes(blurredMat1, blurredMat2);
+        }
+
+        @Override
+        public void release() {
+            blurredMat1.release();
+            blurredMat2.release();
+        }
+    }
+
+    /**
+     * Whip pan effect: both videos slide across the frame with a directional
+     * motion blur that peaks in the middle of the transition.
+     *
+     * The videos are placed on a canvas of the visible window plus the blur
+     * radius on both sides along the motion, which is all the blur reads. This
+     * renders the same frames as a canvas twice the frame size in both
+     * directions, with a quarter of its memory or less and no blurred copy:
+     * the blur writes straight into the output.
+     */
+    private static final class WhipPanEffect implements FrameEffect {
+        private final String direction;
+        private final int blur;
+        private final Mat canvas = new Mat();
+
+        WhipPanEffect(String direction, int blurStrength) {
+            // Validate direction
+            if (!"left".equals(direction) && !"right".equals(direction) &&
+                !"up".equals(direction) && !"down".equals(direction)) {
+                direction = "left"; // Default to left if invalid
+            }
+            this.direction = direction;
+
+            // Ensure blur strength is within reasonable bounds
+            this.blur = Math.min(100, Math.max(10, blurStrength));
+        }
+
+        @Override
+        public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+            int width = frame1.cols();
+            int height = frame1.rows();
+            boolean horizontal = direction.equals("left") || direction.equals("right");
+
+            // Calculate blur radius based on progress (max at middle of transition)
+            double blurFactor = 1.0 - Math.abs(progress - 0.5) * 2.0;
+            int radius = (int)(blur * blurFactor);
+
+            // The window plus the pixels the blur reads, up to the full frame on each side
+            int padX = horizontal ? Math.min(radius, width / 2) : 0;
+            int padY = horizontal ? 0 : Math.min(radius, height / 2);
+            canvas.create(height + 2 * padY, width + 2 * padX, frame1.type());
+            canvas.put(new Scalar(0, 0, 0, 0));
+
+            // Calculate positions for both videos based on direction and progress, relative to the window
+            int x1 = 0, y1 = 0, x2 = 0, y2 = 0;
+            int dx = (int)(width * progress);
+            int dy = (int)(height * progress);
+
+            switch (direction) {
+                case "left":
+                    x1 = -dx;
+                    x2 = x1 + width;
+                    break;
+                case "right":
+                    x1 = dx;
+                    x2 = x1 - width;
+                    break;
+                case "up":
+                    y1 = -dy;
+                    y2 = y1 + height;
+                    break;
+                case "down":
+                    y1 = dy;
+                    y2 = y1 - height;
+                    break;
+            }
+
+            // Place videos on the canvas
+            copyClipped(frame1, canvas, x1 + padX, y1 + padY);
+            copyClipped(frame2, canvas, x2 + padX, y2 + padY);
+
+            // Apply directional motion blur to the window; filter2D reads the padding around it
+            Mat window = new Mat(canvas, new Rect(padX, padY, width, height));
+            if (radius > 0) {
+                Mat kernel = getMotionBlurKernel(radius * 2 + 1, horizontal);
+                filter2D(window, output, -1, kernel);
+                kernel.release();
+            } else {
+                window.copyTo(output);
+            }
+        }
+
+        @Override
+        public String name() {
+            return "whip";
+        }
+
+        @Override
+        public long nativeBytes() {
+            return matBytes(canvas);
+        }
+
+        @Override
+        public void release() {
+            canvas.release();
+        }
+    }
+
+    /**
+     * Copies 'src' into 'dst' at (x, y), clipping whatever falls outside 'dst'
+     */
+    static void copyClipped(Mat src, Mat dst, int x, int y) {
+        int left = Math.max(0, x);
+        int top = Math.max(0, y);
+        int right = Math.min(dst.cols(), x + src.cols());
+        int bottom = Math.min(dst.rows(), y + src.rows());
+        if (right <= left || bottom <= top) return;
+
+        Rect from = new Rect(left - x, top - y, right - left, bottom - top);
+        Rect to = new Rect(left, top, right - left, bottom - top);
+        new Mat(src, from).copyTo(new Mat(dst, to));
+    }
+
+    /**
+     * Helper method to create a normalized motion blur kernel along one axis
+     */
+    private static Mat getMotionBlurKernel(int size, boolean horizontal) {
+        return horizontal
+                ? new Mat(1, size, CV_32F, new Scalar(1.0 / size))
+                : new Mat(size, 1, CV_32F, new Scalar(1.0 / size));
+    }
+
+    /**
+     * Spin effect: the first video rotates out while the second rotates in
+     */
+    private static final class SpinEffect implements FrameEffect {
+        private final Mat rotatedMat1 = new Mat();
+        private final Mat rotatedMat2 = new Mat();
+
+        @Override
+        public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+            int width = frame1.cols();
+            int height = frame1.rows();
+
+            // Calculate rotation angles
+            double angle1 = progress * 90.0; // First video rotates 0 to 90 degrees
+            double angle2 = (1.0 - progress) * -90.0; // Second video rotates -90 to 0 degrees
+
+            // Get rotation matrices
+            Point2f center = new Point2f(width / 2, height / 2);
+            Mat rotationMatrix1 = getRotationMatrix2D(center, angle1, 1.0);
+            Mat rotationMatrix2 = getRotationMatrix2D(center, angle2, 1.0);
+
+            // Apply rotation
+            Size size = new Size(width, height);
+            warpAffine(frame1, rotatedMat1, rotationMatrix1, size, INTER_LINEAR, BORDER_CONSTANT, new Scalar(0, 0, 0, 0));
+            warpAffine(frame2, rotatedMat2, rotationMatrix2, size, INTER_LINEAR, BORDER_CONSTANT, new Scalar(0, 0, 0, 0));
+
+            // Blend the two rotated frames
+            blendBackend.crossfade(rotatedMat1, rotatedMat2, output, progress);
+
+            // Release resources
+            rotationMatrix1.release();
+            rotationMatrix2.release();
+        }
+
+        @Override
+        public String name() {
+            return "spin";
+        }
+
+        @Override
+        public long nativeBytes() {
+            return matBytes(rotatedMat1, rotatedMat2);
+        }
+
+        @Override
+        public void release() {
+            rotatedMat1.release();
+            rotatedMat2.release();
         }
     }
-}
\ No newline at end of file
+}
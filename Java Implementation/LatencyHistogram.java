@@ -0,0 +1,116 @@
+/**
+ * LatencyHistogram - A fixed-size histogram of latencies in nanoseconds
+ *
+ * Values are counted in power-of-two buckets, so recording is a couple of
+ * arithmetic operations and the histogram never grows. Percentiles are
+ * reported as the upper bound of the bucket they fall into (within 2x),
+ * clamped to the largest recorded value.
+ */
+public class LatencyHistogram {
+
+    private final long[] buckets = new long[64];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records one latency
+     *
+     * @param nanos Latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets[bucket(value)]++;
+        count++;
+        total += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds all values recorded by another histogram
+     *
+     * @param other Histogram to merge into this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] += other.buckets[i];
+        }
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return Number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Sum of all recorded values in nanoseconds
+     */
+    public long getTotalNanos() {
+        return total;
+    }
+
+    /**
+     * @return Smallest recorded value in nanoseconds, 0 if empty
+     */
+    public long getMinNanos() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * @return Largest recorded value in nanoseconds
+     */
+    public long getMaxNanos() {
+        return max;
+    }
+
+    /**
+     * @return Mean of the recorded values in nanoseconds, 0 if empty
+     */
+    public double getMeanNanos() {
+        return count == 0 ? 0.0 : (double) total / count;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return Latency in nanoseconds that at least 'percentile' percent of the values do not exceed
+     */
+    public long getPercentileNanos(double percentile) {
+        if (count == 0) return 0;
+
+        long rank = (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(max, upperBound(i));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                count, getMeanNanos() / 1e6, getPercentileNanos(50) / 1e6,
+                getPercentileNanos(99) / 1e6, max / 1e6);
+    }
+
+    private static int bucket(long nanos) {
+        // Bucket i holds values in [2^(i-1), 2^i), bucket 0 holds 0
+        return Math.min(63, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,190 @@
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+/**
+ * LiveSource - An open-ended video input for the LiveSwitcher
+ *
+ * A live input cannot be paused while the other one is on air, so every
+ * source decodes on a thread of its own and keeps only its latest frame,
+ * which the switcher copies when it needs a frame. Sources are:
+ *
+ *   open     anything FFmpeg reads, e.g. "pipe:0", a FIFO or a stream URL,
+ *            decoded as fast as it delivers frames; when it ends, its last
+ *            frame stays on
+ *   looping  a file played at its own frame rate and restarted at the end,
+ *            as a local stand-in for a camera
+ *
+ * The decoder scales the frames to the switcher's size and pixel format.
+ */
+public class LiveSource implements AutoCloseable {
+
+    private final String input;
+    private final boolean loop;
+    private final Object lock = new Object();
+    private Mat latest;
+    private long framesDecoded;
+    private boolean hasFrame;
+    private volatile boolean closed;
+    private volatile boolean ended;
+    private volatile Exception error;
+    private Thread thread;
+
+    private LiveSource(String input, boolean loop) {
+        this.input = input;
+        this.loop = loop;
+    }
+
+    /**
+     * @param input Path or URL of the input, e.g. "pipe:0" or a FIFO
+     * @return A source decoding the input as it arrives
+     */
+    public static LiveSource open(String input) {
+        return new LiveSource(input, false);
+    }
+
+    /**
+     * @param file Path of a video file
+     * @return A source playing the file in real time, over and over
+     */
+    public static LiveSource looping(String file) {
+        return new LiveSource(file, true);
+    }
+
+    /**
+     * Starts decoding on a thread of its own
+     */
+    synchronized void start(int width, int height, int pixelFormat) {
+        if (thread != null) {
+            throw new IllegalStateException("Source " + input + " is already started");
+        }
+        thread = new Thread(() -> decode(width, height, pixelFormat), "live-source-" + input);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void decode(int width, int height, int pixelFormat) {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(input);
+        grabber.setPixelFormat(pixelFormat);
+        grabber.setImageWidth(width);
+        grabber.setImageHeight(height);
+        try {
+            // Opening a FIFO or a stream blocks until the other side delivers
+            grabber.start();
+            double frameRate = grabber.getVideoFrameRate() > 0 ? grabber.getVideoFrameRate() : 30.0;
+            long startNanos = System.nanoTime();
+            long played = 0;
+            while (!closed) {
+                Frame frame = grabber.grabImage();
+                if (frame == null) {
+                    if (!loop) break;
+                    grabber.setVideoFrameNumber(0);
+                    continue;
+                }
+                if (loop) {
+                    // A file would decode far faster than real time
+                    long due = startNanos + (long) (played++ * 1e9 / frameRate);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                    }
+                }
+                synchronized (lock) {
+                    // Allocated outside the scope, which frees only the view of the frame
+                    if (latest == null) {
+                        latest = new Mat();
+                    }
+                    try (PointerScope scope = new PointerScope()) {
+                        JavaTransitionEngine.copyFrame(frame, pixelFormat, latest);
+                    }
+                    framesDecoded++;
+                    hasFrame = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (Exception e) {
+            error = e;
+        } finally {
+            ended = true;
+            try {
+                grabber.release();
+            } catch (Exception e) {
+                // Nothing more to read anyway
+            }
+        }
+    }
+
+    /**
+     * Copies the latest frame into 'target'
+     *
+     * @return false if the source has not delivered a frame yet, leaving 'target' as it is
+     */
+    boolean latest(Mat target) {
+        synchronized (lock) {
+            if (!hasFrame) return false;
+            latest.copyTo(target);
+            return true;
+        }
+    }
+
+    /**
+     * @return Path or URL of the input
+     */
+    public String getInput() {
+        return input;
+    }
+
+    /**
+     * @return Frames decoded so far
+     */
+    public long getFramesDecoded() {
+        synchronized (lock) {
+            return framesDecoded;
+        }
+    }
+
+    /**
+     * @return true if the input ended or failed; its last frame stays on
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * @return The error that stopped decoding, or null
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Stops decoding and frees the latest frame
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        Thread decoder;
+        synchronized (this) {
+            decoder = thread;
+        }
+        if (decoder != null) {
+            decoder.interrupt();
+            decoder.join();
+        }
+        synchronized (lock) {
+            if (latest != null) {
+                latest.release();
+                latest = null;
+            }
+            hasFrame = false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LiveSource[%s%s, %d frames%s]", input, loop ? ", looping" : "", getFramesDecoded(),
+                ended ? ", ended" : "");
+    }
+}
@@ -0,0 +1,564 @@
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import static org.bytedeco.ffmpeg.global.avcodec.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * LiveSwitcher - Switches between two live sources with transitions, in real time
+ *
+ * The file-based engine reads both videos as fast as it can and knows their
+ * length up front. Live production has neither: two sources run on without
+ * end, one of them is on air, and a transition starts when someone asks for
+ * it. The switcher writes one output frame per frame period of the wall
+ * clock, from the latest frame of each LiveSource:
+ *
+ *   on air      the program source's frame
+ *   transition  the effect's blend of the program and the other source,
+ *               started by trigger at the next frame; afterwards the other
+ *               source is on air
+ *
+ * Every frame has a deadline, the start of the next frame period. Before
+ * rendering a transition frame, the scheduler compares the time left with
+ * running estimates of the effect's and the encoder's cost, and renders a
+ * crossfade, or just cuts at the halfway point, when the effect would not
+ * fit. The estimate of an effect that was skipped decays, so the effect is
+ * tried again a few frames later. A frame whose period has already passed
+ * when its turn comes is dropped, leaving a gap in the output timestamps
+ * instead of delaying everything after it. Frames finished late and dropped
+ * frames are reported to LiveSwitcherListeners and counted.
+ *
+ * Effects must work in the switcher's pixel format, BGR24 unless another is
+ * given. The output is H.264 in any format FFmpeg can write to the target,
+ * e.g. "mpegts" to a file or pipe, or "flv" to an RTMP server.
+ */
+public class LiveSwitcher implements AutoCloseable {
+
+    /** Quality a transition frame is rendered at */
+    private enum Quality {
+        /** The triggered effect */
+        EFFECT,
+        /** A crossfade, as the effect would have missed the deadline */
+        CROSSFADE,
+        /** The frame of one source, as even a crossfade would have missed it */
+        CUT
+    }
+
+    // Weight of the newest sample in the running cost estimates
+    private static final double ESTIMATE_WEIGHT = 0.25;
+
+    // Decay of a skipped effect's estimate per frame, so it is tried again
+    private static final double SKIPPED_DECAY = 0.8;
+
+    private final LiveSource[] sources;
+    private final String output;
+    private final String format;
+    private final int width;
+    private final int height;
+    private final double frameRate;
+    private final int pixelFormat;
+    private final List<LiveSwitcherListener> listeners = new CopyOnWriteArrayList<>();
+    private final LatencyHistogram frameTimes = new LatencyHistogram();
+
+    private volatile int program;
+    private volatile Pending pending;
+    private volatile boolean closed;
+    private volatile Exception error;
+    private Thread thread;
+    private long reservedBytes;
+
+    // Written by the frame thread only, read by the getters
+    private volatile long framesWritten;
+    private volatile long framesDropped;
+    private volatile long framesLate;
+    private volatile long framesDegraded;
+    private volatile long maxLatenessNanos;
+
+    /**
+     * @param source1 Source on air at the start
+     * @param source2 The other source
+     * @param output Path or URL of the output
+     * @param format Container format of the output, e.g. "mpegts"
+     * @param width Width of the output
+     * @param height Height of the output
+     * @param frameRate Frame rate of the output
+     */
+    public LiveSwitcher(LiveSource source1, LiveSource source2, String output, String format,
+                        int width, int height, double frameRate) {
+        this(source1, source2, output, format, width, height, frameRate, AV_PIX_FMT_BGR24);
+    }
+
+    /**
+     * @param source1 Source on air at the start
+     * @param source2 The other source
+     * @param output Path or URL of the output
+     * @param format Container format of the output, e.g. "mpegts"
+     * @param width Width of the output
+     * @param height Height of the output
+     * @param frameRate Frame rate of the output
+     * @param pixelFormat Pixel format the effects work in, AV_PIX_FMT_BGR24 or AV_PIX_FMT_YUV420P
+     */
+    public LiveSwitcher(LiveSource source1, LiveSource source2, String output, String format,
+                        int width, int height, double frameRate, int pixelFormat) {
+        if (pixelFormat != AV_PIX_FMT_BGR24 && pixelFormat != AV_PIX_FMT_YUV420P) {
+            throw new IllegalArgumentException("Unsupported pixel format: " + pixelFormat);
+        }
+        this.sources = new LiveSource[] {source1, source2};
+        this.output = output;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.pixelFormat = pixelFormat;
+    }
+
+    /**
+     * Starts the sources and the output; the first source goes on air
+     *
+     * @throws Exception If the output cannot be opened or there is not enough native memory
+     */
+    public synchronized void start() throws Exception {
+        if (thread != null) {
+            throw new IllegalStateException("The switcher is already started");
+        }
+        NativeMemoryBudget budget = JavaTransitionEngine.getMemoryBudget();
+        reservedBytes = JavaTransitionEngine.reserveMemory(budget,
+                JavaTransitionEngine.pipelineBytes(width, height, pixelFormat), output, null);
+
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(output, width, height);
+        recorder.setVideoCodec(AV_CODEC_ID_H264);
+        recorder.setFormat(format);
+        recorder.setFrameRate(frameRate);
+        recorder.setGopSize(Math.max(1, (int) Math.round(2 * frameRate)));
+        recorder.setPixelFormat(AV_PIX_FMT_YUV420P);
+        int threads = JavaTransitionEngine.getExecutionProfile().getCodecThreads();
+        if (threads > 0) {
+            recorder.setVideoOption("threads", String.valueOf(threads));
+        }
+        try {
+            recorder.start();
+        } catch (Exception e) {
+            recorder.release();
+            budget.release(reservedBytes);
+            reservedBytes = 0;
+            throw e;
+        }
+
+        for (LiveSource source : sources) {
+            source.start(width, height, pixelFormat);
+        }
+        thread = new Thread(() -> run(recorder), "live-switcher");
+        thread.start();
+    }
+
+    /**
+     * Starts a transition to the source that is not on air at the next frame
+     *
+     * @param effect Effect rendering the transition, owned by the switcher from now on
+     * @param duration Duration of the transition in seconds
+     * @throws IllegalStateException If a transition is already running or waiting to start
+     */
+    public void trigger(FrameEffect effect, double duration) {
+        if (effect.pixelFormat() != pixelFormat) {
+            effect.release();
+            throw new IllegalArgumentException("Effect " + effect.name() + " does not work in the switcher's pixel format");
+        }
+        synchronized (this) {
+            if (error != null || closed) {
+                effect.release();
+                throw new IllegalStateException("The switcher is stopped");
+            }
+            if (pending != null) {
+                effect.release();
+                throw new IllegalStateException("A transition is already running");
+            }
+            pending = new Pending(effect, Math.max(1, (int) Math.round(duration * frameRate)));
+        }
+    }
+
+    /**
+     * Puts the other source on air at the next frame, without a transition
+     *
+     * @throws IllegalStateException If a transition is already running or waiting to start
+     */
+    public void cut() {
+        synchronized (this) {
+            if (error != null || closed) {
+                throw new IllegalStateException("The switcher is stopped");
+            }
+            if (pending != null) {
+                throw new IllegalStateException("A transition is already running");
+            }
+            pending = new Pending(null, 0);
+        }
+    }
+
+    /**
+     * The frame loop, one iteration per frame period of the wall clock
+     */
+    private void run(FFmpegFrameRecorder recorder) {
+        long periodNanos = (long) (1e9 / frameRate);
+        Mat[] frames = {new Mat(), new Mat()};
+        Mat outputMat = new Mat();
+        OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        int rows = pixelFormat == AV_PIX_FMT_YUV420P ? height * 3 / 2 : height;
+        int type = pixelFormat == AV_PIX_FMT_YUV420P ? CV_8UC1 : CV_8UC3;
+        for (Mat frame : frames) {
+            // Black until a source delivers; in I420 black has grey chroma
+            frame.create(rows, width, type);
+            frame.put(new Scalar(0.0));
+            if (pixelFormat == AV_PIX_FMT_YUV420P) {
+                frame.rowRange(height, rows).put(new Scalar(128.0));
+            }
+        }
+
+        double effectEstimate = 0;
+        double blendEstimate = 0;
+        double encodeEstimate = 0;
+        Pending transition = null;
+        int transitionFrame = 0;
+        int degraded = 0;
+
+        long start = System.nanoTime();
+        try {
+            for (long n = 0; !closed; n++) {
+                long due = start + n * periodNanos;
+                long deadline = due + periodNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                }
+
+                long now = System.nanoTime();
+                Pending request = pending;
+                if (transition == null && request != null) {
+                    if (request.effect == null) {
+                        program = 1 - program;
+                        pending = null;
+                    } else {
+                        transition = request;
+                        transitionFrame = 0;
+                        degraded = 0;
+                        // The first frame measures the new effect
+                        effectEstimate = 0;
+                        transition.effect.prepare(frameRate, transition.frames);
+                        for (LiveSwitcherListener listener : listeners) {
+                            listener.transitionStarted(transition.effect.name(), n);
+                        }
+                    }
+                }
+
+                if (now > deadline) {
+                    // The period of this frame is over, rendering it would only delay the next ones
+                    framesDropped++;
+                    report(n, now - deadline, true);
+                    if (transition != null && ++transitionFrame >= transition.frames) {
+                        finish(transition, transitionFrame, degraded);
+                        transition = null;
+                    }
+                    continue;
+                }
+
+                // Temporaries of the effect, the blend and the encoder are freed with the frame
+                try (PointerScope scope = new PointerScope()) {
+                    int next = 1 - program;
+                    sources[program].latest(frames[program]);
+                    Mat result = frames[program];
+                    if (transition != null) {
+                        sources[next].latest(frames[next]);
+                        double progress = (double) transitionFrame / transition.frames;
+                        long budget = deadline - System.nanoTime() - (long) encodeEstimate;
+                        Quality quality = budget >= effectEstimate ? Quality.EFFECT
+                                : budget >= blendEstimate ? Quality.CROSSFADE : Quality.CUT;
+
+                        long time = System.nanoTime();
+                        switch (quality) {
+                            case EFFECT:
+                                outputMat.create(result.rows(), result.cols(), result.type());
+                                transition.effect.apply(frames[program], frames[next], outputMat, progress);
+                                effectEstimate = estimate(effectEstimate, System.nanoTime() - time);
+                                result = outputMat;
+                                break;
+                            case CROSSFADE:
+                                outputMat.create(result.rows(), result.cols(), result.type());
+                                JavaTransitionEngine.getBlendBackend().crossfade(frames[program], frames[next], outputMat, progress);
+                                blendEstimate = estimate(blendEstimate, System.nanoTime() - time);
+                                result = outputMat;
+                                break;
+                            default:
+                                result = progress < 0.5 ? frames[program] : frames[next];
+                                break;
+                        }
+                        if (quality != Quality.EFFECT) {
+                            degraded++;
+                            framesDegraded++;
+                            effectEstimate *= SKIPPED_DECAY;
+                        }
+                    }
+
+                    long time = System.nanoTime();
+                    recorder.setFrameNumber((int) n);
+                    JavaTransitionEngine.recordMat(recorder, converter, result, pixelFormat);
+                    long finished = System.nanoTime();
+                    encodeEstimate = estimate(encodeEstimate, finished - time);
+                    frameTimes.record(finished - now);
+                    framesWritten++;
+                    if (finished > deadline) {
+                        framesLate++;
+                        report(n, finished - deadline, false);
+                    }
+                }
+
+                if (transition != null && ++transitionFrame >= transition.frames) {
+                    finish(transition, transitionFrame, degraded);
+                    transition = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (Exception e) {
+            error = e;
+            System.err.println("Live switcher stopped: " + e);
+        } finally {
+            if (transition != null) {
+                transition.effect.release();
+            }
+            Pending request = pending;
+            if (request != null && request.effect != null && request != transition) {
+                request.effect.release();
+            }
+            try {
+                recorder.stop();
+                recorder.release();
+            } catch (Exception e) {
+                System.err.println("Error closing the live output: " + e);
+            }
+            for (Mat frame : frames) {
+                frame.release();
+            }
+            outputMat.release();
+            converter.close();
+        }
+    }
+
+    private void finish(Pending transition, int frames, int degraded) {
+        transition.effect.release();
+        program = 1 - program;
+        pending = null;
+        for (LiveSwitcherListener listener : listeners) {
+            listener.transitionFinished(transition.effect.name(), frames, degraded);
+        }
+    }
+
+    private void report(long frame, long latenessNanos, boolean dropped) {
+        maxLatenessNanos = Math.max(maxLatenessNanos, latenessNanos);
+        for (LiveSwitcherListener listener : listeners) {
+            listener.deadlineMissed(frame, latenessNanos, dropped);
+        }
+    }
+
+    private static double estimate(double estimate, long sample) {
+        // The first sample replaces the initial guess of zero
+        return estimate == 0 ? sample : estimate + ESTIMATE_WEIGHT * (sample - estimate);
+    }
+
+    /**
+     * Registers a listener for late frames and transitions
+     *
+     * @param listener Listener to add
+     */
+    public void addListener(LiveSwitcherListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with addListener
+     *
+     * @param listener Listener to remove
+     */
+    public void removeListener(LiveSwitcherListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Index of the source on air, 0 or 1
+     */
+    public int getProgramSource() {
+        return program;
+    }
+
+    /**
+     * @return true if a transition is running or waiting for the next frame
+     */
+    public boolean isTransitionRunning() {
+        return pending != null;
+    }
+
+    /**
+     * @return Frames written to the output
+     */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * @return Frames skipped because their period was over before they were started
+     */
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * @return Frames written, but finished after their deadline
+     */
+    public long getFramesLate() {
+        return framesLate;
+    }
+
+    /**
+     * @return Transition frames rendered as a crossfade or a cut instead of the effect
+     */
+    public long getFramesDegraded() {
+        return framesDegraded;
+    }
+
+    /**
+     * @return The longest a frame missed its deadline by, in nanoseconds
+     */
+    public long getMaxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    /**
+     * @return Time from the start of a frame period to the frame being encoded
+     */
+    public LatencyHistogram getFrameTimes() {
+        return frameTimes;
+    }
+
+    /**
+     * @return The error that stopped the switcher, or null
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Stops the output and both sources
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        Thread frameThread;
+        synchronized (this) {
+            frameThread = thread;
+        }
+        if (frameThread != null) {
+            frameThread.join();
+        }
+        for (LiveSource source : sources) {
+            source.close();
+        }
+        synchronized (this) {
+            JavaTransitionEngine.getMemoryBudget().release(reservedBytes);
+            reservedBytes = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LiveSwitcher[%s, program=%d, written=%d, dropped=%d, late=%d, degraded=%d, p99=%.1f ms]",
+                output, program, framesWritten, framesDropped, framesLate, framesDegraded,
+                frameTimes.getPercentileNanos(99) / 1e6);
+    }
+
+    /**
+     * A transition waiting for, or running on, the frame thread; a cut if 'effect' is null
+     */
+    private static final class Pending {
+        final FrameEffect effect;
+        final int frames;
+
+        Pending(FrameEffect effect, int frames) {
+            this.effect = effect;
+            this.frames = frames;
+        }
+    }
+
+    /**
+     * Switches between two looping files (or other inputs), reading commands from standard input:
+     * an effect name with its duration and parameters (e.g. "fade 1.0" or "whip 0.5 left 50"),
+     * "cut", or "quit"
+     *
+     * Usage: LiveSwitcher input1 input2 output [format] [loop|live]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: LiveSwitcher <input1> <input2> <output> [format] [loop|live]");
+            System.exit(2);
+        }
+        String format = args.length > 3 ? args[3] : "mpegts";
+        boolean loop = args.length <= 4 || args[4].equals("loop");
+
+        int width;
+        int height;
+        double frameRate;
+        FFmpegFrameGrabber probe = new FFmpegFrameGrabber(args[0]);
+        try {
+            probe.start();
+            int[] size = JavaTransitionEngine.getExecutionProfile().workingSize(probe.getImageWidth(), probe.getImageHeight(), false);
+            width = size[0];
+            height = size[1];
+            frameRate = probe.getVideoFrameRate();
+        } finally {
+            probe.release();
+        }
+
+        LiveSwitcher switcher = new LiveSwitcher(loop ? LiveSource.looping(args[0]) : LiveSource.open(args[0]),
+                loop ? LiveSource.looping(args[1]) : LiveSource.open(args[1]), args[2], format, width, height, frameRate);
+        switcher.addListener(new LiveSwitcherListener() {
+            @Override
+            public void deadlineMissed(long frame, long latenessNanos, boolean dropped) {
+                System.err.printf("Frame %d %s by %.1f ms%n", frame, dropped ? "dropped, late" : "late", latenessNanos / 1e6);
+            }
+
+            @Override
+            public void transitionFinished(String effect, int frames, int degradedFrames) {
+                System.err.printf("Transition %s done, %d frames, %d degraded%n", effect, frames, degradedFrames);
+            }
+        });
+        switcher.start();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null && !line.trim().equals("quit")) {
+            String[] fields = line.trim().split("\\s+");
+            try {
+                if (fields[0].isEmpty()) {
+                    continue;
+                } else if (fields[0].equals("cut")) {
+                    switcher.cut();
+                } else {
+                    double duration = fields.length > 1 ? Double.parseDouble(fields[1]) : 1.0;
+                    String[] parameters = Arrays.copyOfRange(fields, Math.min(2, fields.length), fields.length);
+                    switcher.trigger(TransitionDaemon.createEffect(fields[0], parameters), duration);
+                }
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        switcher.close();
+        System.out.println(switcher);
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * LiveSwitcherListener - Receives what happens on a LiveSwitcher's output
+ *
+ * Register with LiveSwitcher.addListener. Callbacks run on the switcher's
+ * frame thread, so implementations must return quickly or they cause the
+ * very deadline misses they report.
+ */
+public interface LiveSwitcherListener {
+
+    /**
+     * Called when an output frame was finished after its deadline, or dropped
+     *
+     * @param frame Number of the output frame
+     * @param latenessNanos How long after its deadline the frame was finished, or was due to start if dropped
+     * @param dropped true if the frame was skipped to catch up with real time
+     */
+    default void deadlineMissed(long frame, long latenessNanos, boolean dropped) {
+    }
+
+    /**
+     * Called when a triggered transition renders its first frame
+     *
+     * @param effect Name of the effect
+     * @param frame Number of the output frame
+     */
+    default void transitionStarted(String effect, long frame) {
+    }
+
+    /**
+     * Called after the last frame of a transition; the other source is now on air
+     *
+     * @param effect Name of the effect
+     * @param frames Frames of the transition that were written
+     * @param degradedFrames Frames rendered with a cheaper blend than the effect to stay in time
+     */
+    default void transitionFinished(String effect, int frames, int degradedFrames) {
+    }
+}
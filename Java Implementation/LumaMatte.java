@@ -0,0 +1,331 @@
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+import static org.bytedeco.ffmpeg.global.swscale.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LumaMatte - Wipes driven by a grayscale mask (a luma matte)
+ *
+ * Each pixel of the mask holds the point of the transition at which that
+ * pixel switches from the first video to the second: black pixels switch
+ * first, white ones last. Any wipe is a mask: a horizontal gradient is a
+ * linear wipe, distance from the centre an iris, the angle a clock wipe,
+ * and artwork gives custom shapes. Masks come from
+ *
+ *   files      any image FFmpeg reads (PNG, JPEG, ...), or a video or an
+ *              image sequence ("mask_%03d.png") whose frames are spread over
+ *              the transition, each one used for its share of the frames
+ *   shapes     linear, radial, clock and diamond maps drawn in code
+ *
+ * A mask is turned once into 8-bit threshold maps at the output resolution,
+ * and the maps are cached across jobs, so each frame is a single pass over
+ * them: a compare and a masked copy for a hard edge, or a saturating ramp
+ * and BlendBackend.maskedBlend for an edge softened over part of the range.
+ * Maps are shared read-only and reference counted: the cache and every
+ * effect using a map hold a reference, the cache drops the least recently
+ * used maps beyond 64 MB, and a map is freed as soon as the cache has dropped
+ * it and the last effect using it is released or moves to another size.
+ *
+ * The transition is stretched so its last frame has passed every threshold:
+ * the first frame is the first video and the last frame the second one.
+ */
+public class LumaMatte implements FrameEffect {
+
+    // Threshold maps kept between jobs, by mask and size
+    private static final long MAP_CACHE_BYTES = 64L << 20;
+    private static final Map<String, Mat[]> MAPS = new LinkedHashMap<>(16, 0.75f, true);
+    private static long mapBytes;
+
+    /**
+     * Draws or decodes the threshold maps of a mask at a given size
+     */
+    private interface MapSource {
+        Mat[] load(int width, int height) throws Exception;
+    }
+
+    private final String name;
+    private final String key;
+    private final MapSource source;
+    private final double softness;
+    private final Mat weights = new Mat();
+    private Mat[] maps;
+    // Scales the progress of the frame loop, which stops one frame short of 1.0, to end on 1.0
+    private double progressScale = 1;
+
+    private LumaMatte(String name, String key, MapSource source, double softness) {
+        if (softness < 0 || softness > 1) {
+            throw new IllegalArgumentException("Softness must be from 0 to 1: " + softness);
+        }
+        this.name = name;
+        this.key = key;
+        this.source = source;
+        this.softness = softness;
+    }
+
+    /**
+     * Creates a matte from an image, a video or an image sequence
+     *
+     * @param path Path of the mask; a video or a sequence pattern such as "mask_%03d.png" animates it
+     * @param softness Width of the soft edge as a fraction of the mask's range (0 for a hard edge, 0.1 for a soft one)
+     * @return A new matte effect
+     */
+    public static LumaMatte fromFile(String path, double softness) {
+        return new LumaMatte("matte", "file:" + path, (width, height) -> decode(path, width, height), softness);
+    }
+
+    /**
+     * Creates a linear wipe
+     *
+     * @param direction Direction the edge moves in: "left", "right", "up" or "down"; anything else moves left
+     * @param softness Width of the soft edge as a fraction of the mask's range
+     * @return A new matte effect
+     */
+    public static LumaMatte linear(String direction, double softness) {
+        String edgeDirection = direction;
+        if (!"left".equals(edgeDirection) && !"right".equals(edgeDirection) &&
+            !"up".equals(edgeDirection) && !"down".equals(edgeDirection)) {
+            edgeDirection = "left"; // Default to left if invalid
+        }
+        String wipeDirection = edgeDirection;
+        return shape("linear-" + wipeDirection, softness, (x, y, width, height) -> {
+            switch (wipeDirection) {
+                case "left": return 1.0 - x / (width - 1);
+                case "up": return 1.0 - y / (height - 1);
+                case "down": return y / (height - 1);
+                default: return x / (width - 1);
+            }
+        });
+    }
+
+    /**
+     * Creates an iris opening from the centre
+     *
+     * @param softness Width of the soft edge as a fraction of the mask's range
+     * @return A new matte effect
+     */
+    public static LumaMatte radial(double softness) {
+        return shape("radial", softness, (x, y, width, height) -> {
+            double dx = x - (width - 1) / 2.0;
+            double dy = y - (height - 1) / 2.0;
+            return Math.sqrt(dx * dx + dy * dy) / Math.hypot((width - 1) / 2.0, (height - 1) / 2.0);
+        });
+    }
+
+    /**
+     * Creates a clock wipe sweeping clockwise from twelve o'clock
+     *
+     * @param softness Width of the soft edge as a fraction of the mask's range
+     * @return A new matte effect
+     */
+    public static LumaMatte clock(double softness) {
+        return shape("clock", softness, (x, y, width, height) -> {
+            double angle = Math.atan2(x - (width - 1) / 2.0, (height - 1) / 2.0 - y);
+            return (angle < 0 ? angle + 2 * Math.PI : angle) / (2 * Math.PI);
+        });
+    }
+
+    /**
+     * Creates a diamond opening from the centre
+     *
+     * @param softness Width of the soft edge as a fraction of the mask's range
+     * @return A new matte effect
+     */
+    public static LumaMatte diamond(double softness) {
+        return shape("diamond", softness, (x, y, width, height) ->
+                (Math.abs(x - (width - 1) / 2.0) / ((width - 1) / 2.0)
+                        + Math.abs(y - (height - 1) / 2.0) / ((height - 1) / 2.0)) / 2);
+    }
+
+    /**
+     * Value from 0 to 1 of a drawn mask at a pixel
+     */
+    private interface Shape {
+        double at(double x, double y, int width, int height);
+    }
+
+    private static LumaMatte shape(String shapeName, double softness, Shape shape) {
+        return new LumaMatte("matte-" + shapeName, "shape:" + shapeName, (width, height) -> {
+            byte[] pixels = new byte[width * height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    double value = shape.at(x, y, width, height);
+                    pixels[y * width + x] = (byte) Math.round(Math.max(0, Math.min(1, value)) * 255);
+                }
+            }
+            Mat map = new Mat(height, width, CV_8UC1);
+            map.data().put(pixels);
+            return new Mat[] {map};
+        }, softness);
+    }
+
+    @Override
+    public void prepare(double frameRate, int frames) {
+        progressScale = frames > 1 ? frames / (frames - 1.0) : 1;
+    }
+
+    @Override
+    public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+        int width = frame1.cols();
+        int height = frame1.rows();
+        if (maps == null || maps[0].cols() != width || maps[0].rows() != height) {
+            Mat[] resized = thresholdMaps(key, width, height, source);
+            releaseMaps(maps);
+            maps = resized;
+        }
+        progress = Math.min(1, progress * progressScale);
+        Mat map = maps[Math.min(maps.length - 1, (int) (progress * maps.length))];
+
+        if (softness == 0 && progress >= 1) {
+            // Every threshold has been passed, white included
+            frame2.copyTo(output);
+        } else if (softness == 0) {
+            // Pixels whose threshold the transition has passed come from the second video. The maps span
+            // 0 to 255, so the edge moves over them at the same rate as the progress
+            compare(map, new Mat(1, 1, CV_64F, new Scalar(progress * 255)), weights, CMP_LT);
+            frame1.copyTo(output);
+            frame2.copyTo(output, weights);
+        } else {
+            // The edge runs from before black to after white, so the ramp starts and ends off the mask
+            double ramp = softness * 255;
+            double edge = progress * (255 + ramp);
+            map.convertTo(weights, CV_8U, -255 / ramp, edge * 255 / ramp);
+            JavaTransitionEngine.getBlendBackend().maskedBlend(frame1, frame2, weights, output);
+        }
+    }
+
+    /**
+     * Returns the cached threshold maps of a mask at a size, building them on a miss.
+     * The caller owns a reference to the maps and gives it back with releaseMaps.
+     */
+    private static Mat[] thresholdMaps(String key, int width, int height, MapSource source) {
+        String sizedKey = key + "@" + width + "x" + height;
+        synchronized (MAPS) {
+            Mat[] cached = MAPS.get(sizedKey);
+            if (cached != null) return retainMaps(cached);
+        }
+
+        Mat[] maps;
+        // Built during a frame, so the maps are taken out of the scope that would free them with the frame
+        try (PointerScope scope = new PointerScope()) {
+            maps = source.load(width, height);
+            for (Mat map : maps) {
+                // Detaching drops the scope's reference, so the map takes one of its own first
+                map.retainReference();
+                scope.detach(map);
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot load the mask " + key, e);
+        }
+
+        long bytes = mapBytes(maps);
+        synchronized (MAPS) {
+            Mat[] cached = MAPS.get(sizedKey);
+            if (cached != null) {
+                // Another job built the same maps meanwhile, keep the cached ones
+                releaseMaps(maps);
+                return retainMaps(cached);
+            }
+            if (bytes <= MAP_CACHE_BYTES) {
+                MAPS.put(sizedKey, retainMaps(maps));
+                mapBytes += bytes;
+                // Evicted maps lose the cache's reference, and are freed now unless running effects still hold them
+                Iterator<Mat[]> eldest = MAPS.values().iterator();
+                while (mapBytes > MAP_CACHE_BYTES && eldest.hasNext()) {
+                    Mat[] evicted = eldest.next();
+                    eldest.remove();
+                    mapBytes -= mapBytes(evicted);
+                    releaseMaps(evicted);
+                }
+            }
+        }
+        return maps;
+    }
+
+    private static Mat[] retainMaps(Mat[] maps) {
+        for (Mat map : maps) {
+            map.retainReference();
+        }
+        return maps;
+    }
+
+    private static void releaseMaps(Mat[] maps) {
+        if (maps == null) return;
+        for (Mat map : maps) {
+            map.releaseReference();
+        }
+    }
+
+    private static long mapBytes(Mat[] maps) {
+        long bytes = 0;
+        for (Mat map : maps) {
+            bytes += map.total() * map.elemSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * Decodes every frame of a mask file as luma scaled to the output size
+     */
+    private static Mat[] decode(String path, int width, int height) throws Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(path);
+        grabber.setPixelFormat(AV_PIX_FMT_GRAY8);
+        grabber.setImageWidth(width);
+        grabber.setImageHeight(height);
+        grabber.setImageScalingFlags(SWS_AREA);
+        List<Mat> maps = new ArrayList<>();
+        try {
+            grabber.start();
+            Frame frame;
+            while ((frame = grabber.grabImage()) != null) {
+                // Rows of the scaled picture are padded to the scaler's alignment
+                Mat view = new Mat(height, width, CV_8UC1, new BytePointer((ByteBuffer) frame.image[0]), frame.imageStride);
+                Mat map = new Mat();
+                view.copyTo(map);
+                maps.add(map);
+            }
+        } finally {
+            grabber.release();
+        }
+        if (maps.isEmpty()) {
+            throw new IllegalArgumentException("The mask " + path + " has no frames");
+        }
+        return maps.toArray(new Mat[0]);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public long nativeBytes() {
+        // The maps this effect holds count in full, whether or not the cache shares them
+        long bytes = weights.total() * weights.elemSize();
+        if (maps != null) {
+            bytes += mapBytes(maps);
+        }
+        return bytes;
+    }
+
+    @Override
+    public void release() {
+        // Gives back this effect's reference; the cache keeps its own
+        releaseMaps(maps);
+        maps = null;
+        weights.release();
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * MemoryBudgetExceededException - A transition job was refused by its NativeMemoryBudget
+ */
+public class MemoryBudgetExceededException extends Exception {
+
+    private final long requestedBytes;
+    private final long limitBytes;
+
+    /**
+     * @param message Description of the refused job
+     * @param requestedBytes Native memory the job needed, in bytes
+     * @param limitBytes Limit the request ran into, in bytes
+     */
+    public MemoryBudgetExceededException(String message, long requestedBytes, long limitBytes) {
+        super(message);
+        this.requestedBytes = requestedBytes;
+        this.limitBytes = limitBytes;
+    }
+
+    /**
+     * @return Native memory the job needed, in bytes
+     */
+    public long getRequestedBytes() {
+        return requestedBytes;
+    }
+
+    /**
+     * @return Limit the request ran into, in bytes
+     */
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+}
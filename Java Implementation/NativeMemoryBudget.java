@@ -0,0 +1,162 @@
+/**
+ * NativeMemoryBudget - Limits the native memory used by concurrent transition jobs
+ *
+ * Frame buffers, decoder and encoder pictures and effect scratch Mats live
+ * outside the Java heap, so -Xmx does not bound them. Before a job opens its
+ * output it reserves an estimate of what it will need. If the reservation
+ * does not fit next to the running jobs, the job waits for them to release
+ * memory (throttling), up to a timeout. While the job runs, its actual usage
+ * is accounted after every transition frame. A job that would exceed its
+ * per-job limit, or the shared limit, fails with a MemoryBudgetExceededException.
+ *
+ * The default budget is unlimited. It can be configured with the system
+ * properties transition.memory.limit, transition.memory.jobLimit (sizes such
+ * as "512m" or "2g") and transition.memory.waitMillis, or replaced through
+ * JavaTransitionEngine.setMemoryBudget.
+ */
+public class NativeMemoryBudget {
+
+    private final long limitBytes;
+    private final long jobLimitBytes;
+    private final long maxWaitMillis;
+
+    private long reservedBytes;
+    private long reservedHighWater;
+
+    /**
+     * @param limitBytes Native memory shared by all jobs, in bytes
+     * @param jobLimitBytes Native memory a single job may use, in bytes
+     * @param maxWaitMillis How long a job waits for memory before it is refused
+     */
+    public NativeMemoryBudget(long limitBytes, long jobLimitBytes, long maxWaitMillis) {
+        if (limitBytes <= 0 || jobLimitBytes <= 0) {
+            throw new IllegalArgumentException("Memory limits must be positive");
+        }
+        this.limitBytes = limitBytes;
+        this.jobLimitBytes = Math.min(jobLimitBytes, limitBytes);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+    }
+
+    /**
+     * @return A budget that never throttles or refuses a job
+     */
+    public static NativeMemoryBudget unlimited() {
+        return new NativeMemoryBudget(Long.MAX_VALUE, Long.MAX_VALUE, 0);
+    }
+
+    /**
+     * Creates the budget described by the transition.memory.* system properties
+     *
+     * @return The configured budget, unlimited where a property is missing
+     */
+    public static NativeMemoryBudget fromSystemProperties() {
+        long limit = parseSize(System.getProperty("transition.memory.limit"), Long.MAX_VALUE);
+        long jobLimit = parseSize(System.getProperty("transition.memory.jobLimit"), limit);
+        long waitMillis = Long.getLong("transition.memory.waitMillis", 30_000L);
+        return new NativeMemoryBudget(limit, jobLimit, waitMillis);
+    }
+
+    /**
+     * Parses a size such as "1048576", "512k", "256m" or "2g"
+     *
+     * @param value Text to parse, or null
+     * @param defaultBytes Value returned for null or empty text
+     * @return The size in bytes
+     */
+    static long parseSize(String value, long defaultBytes) {
+        if (value == null || value.trim().isEmpty()) return defaultBytes;
+
+        String text = value.trim().toLowerCase();
+        long unit = 1;
+        switch (text.charAt(text.length() - 1)) {
+            case 'k': unit = 1L << 10; break;
+            case 'm': unit = 1L << 20; break;
+            case 'g': unit = 1L << 30; break;
+            default: break;
+        }
+        if (unit != 1) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return Long.parseLong(text.trim()) * unit;
+    }
+
+    /**
+     * Reserves memory if it fits without waiting
+     *
+     * @param bytes Bytes to reserve
+     * @return true if the memory was reserved
+     */
+    synchronized boolean tryReserve(long bytes) {
+        if (bytes > limitBytes - reservedBytes) return false;
+
+        reservedBytes += bytes;
+        reservedHighWater = Math.max(reservedHighWater, reservedBytes);
+        return true;
+    }
+
+    /**
+     * Waits until another job releases memory
+     *
+     * @param millis Longest time to wait
+     */
+    synchronized void awaitRelease(long millis) throws InterruptedException {
+        wait(millis);
+    }
+
+    /**
+     * Returns reserved memory to the budget
+     *
+     * @param bytes Bytes to release
+     */
+    synchronized void release(long bytes) {
+        if (bytes <= 0) return;
+
+        reservedBytes = Math.max(0, reservedBytes - bytes);
+        notifyAll();
+    }
+
+    /**
+     * @return Native memory shared by all jobs, in bytes
+     */
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+
+    /**
+     * @return Native memory a single job may use, in bytes
+     */
+    public long getJobLimitBytes() {
+        return jobLimitBytes;
+    }
+
+    /**
+     * @return How long a job waits for memory before it is refused
+     */
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * @return Bytes currently reserved by running jobs
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * @return Most bytes ever reserved at the same time
+     */
+    public synchronized long getReservedHighWater() {
+        return reservedHighWater;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("NativeMemoryBudget[reserved=%.1f MB, limit=%s, jobLimit=%s]",
+                reservedBytes / 1e6, format(limitBytes), format(jobLimitBytes));
+    }
+
+    private static String format(long bytes) {
+        return bytes == Long.MAX_VALUE ? "unlimited" : String.format("%.1f MB", bytes / 1e6);
+    }
+}
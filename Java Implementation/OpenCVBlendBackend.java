@@ -0,0 +1,64 @@
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.blendLinear;
+
+/**
+ * OpenCVBlendBackend - BlendBackend on OpenCV's saturating arithmetic, the reference implementation
+ */
+final class OpenCVBlendBackend implements BlendBackend {
+
+    static final OpenCVBlendBackend INSTANCE = new OpenCVBlendBackend();
+
+    private OpenCVBlendBackend() {
+    }
+
+    @Override
+    public String name() {
+        return "opencv";
+    }
+
+    @Override
+    public void crossfade(Mat frame1, Mat frame2, Mat output, double progress) {
+        addWeighted(frame1, 1.0 - progress, frame2, progress, 0.0, output);
+    }
+
+    @Override
+    public void dipToColor(Mat source, Mat output, double amount, double... color) {
+        boolean uniform = true;
+        for (int ch = 1; ch < source.channels(); ch++) {
+            uniform &= color[ch] == color[0];
+        }
+        if (uniform) {
+            source.convertTo(output, -1, 1.0 - amount, color[0] * amount);
+            return;
+        }
+
+        // Per-channel offsets: scale every channel and add its own share of the colour
+        Mat matrix = new Mat(source.channels(), source.channels() + 1, CV_64F, Scalar.all(0));
+        try (DoubleIndexer indexer = matrix.createIndexer()) {
+            for (int ch = 0; ch < source.channels(); ch++) {
+                indexer.put(ch, ch, 1.0 - amount);
+                indexer.put(ch, source.channels(), color[ch] * amount);
+            }
+        }
+        transform(source, output, matrix);
+        matrix.release();
+    }
+
+    @Override
+    public void maskedBlend(Mat frame1, Mat frame2, Mat mask, Mat output) {
+        Mat weights2 = new Mat();
+        Mat weights1 = new Mat();
+        try {
+            mask.convertTo(weights2, CV_32F, 1.0 / 255.0, 0.0);
+            weights2.convertTo(weights1, -1, -1.0, 1.0);
+            blendLinear(frame1, frame2, weights1, weights2, output);
+        } finally {
+            weights1.release();
+            weights2.release();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * RegionTransition - Wipe, slide and push transitions built from region copies
+ *
+ * Each output frame is tiled with at most four rectangles, each one a
+ * sub-rectangle of one of the two input frames copied row by row, so the
+ * hard-edge transitions cost one memory copy of the frame and no arithmetic
+ * on the pixels:
+ *
+ *   wipe     the edge moves over the frame and reveals the second video in place
+ *   slide    the second video slides in over the first, which stays still
+ *   push     the second video pushes the first out, both moving together
+ *
+ * The direction is the way the edge and the frames move: "left", "right",
+ * "up", "down" or a diagonal such as "down-left"; any other value moves left,
+ * as it does for the whip pans. A diagonal wipe opens a box
+ * from the corner, and a diagonal push fills the two corners the frames have
+ * not reached with the second video tiled along the motion.
+ *
+ * Wipes and slides can feather their edge: a band of up to the given number
+ * of pixels on the leading edge of the second video is blended over the
+ * first with BlendBackend.maskedBlend, through ramps built once per frame
+ * size. Only that band is blended, and it narrows near the start and end so
+ * the first and last frames are clean copies: the transition is stretched so
+ * its first frame is the first video and its last frame the second. A push
+ * has nothing under its edge to blend with and is always hard-edged.
+ *
+ * The same geometry runs on BGR frames or on each plane of an I420 frame.
+ */
+final class RegionTransition implements FrameEffect {
+
+    enum Kind { WIPE, SLIDE, PUSH }
+
+    // Fields of a segment: where it lands, its length, where it starts in each input and its role
+    private static final int START = 0;
+    private static final int LENGTH = 1;
+    private static final int FIRST = 2;
+    private static final int SECOND = 3;
+    private static final int ROLE = 4;
+
+    // Roles of a segment on an axis: covered by the second video, still the first, or an axis that does not move
+    private static final int IN = 0;
+    private static final int OUT = 1;
+    private static final int ALL = 2;
+
+    private final Kind kind;
+    private final String name;
+    private final int directionX;
+    private final int directionY;
+    private final int feather;
+    private final boolean planar;
+    // Feather ramps for the frame (or luma plane) and for the chroma planes
+    private final Ramps[] ramps;
+    // Scales the progress of the frame loop, which stops one frame short of 1.0, to end on 1.0
+    private double progressScale = 1;
+
+    RegionTransition(Kind kind, String direction, int feather, boolean planar) {
+        int x = direction == null ? 0 : direction.contains("left") ? -1 : direction.contains("right") ? 1 : 0;
+        int y = direction == null ? 0 : direction.startsWith("up") ? -1 : direction.startsWith("down") ? 1 : 0;
+        String expected = (y < 0 ? "up" : y > 0 ? "down" : "") + (x != 0 && y != 0 ? "-" : "")
+                + (x < 0 ? "left" : x > 0 ? "right" : "");
+        if (expected.isEmpty() || !expected.equals(direction)) {
+            // Default to left if invalid, like the whip pans
+            x = -1;
+            y = 0;
+        }
+        if (feather < 0) {
+            throw new IllegalArgumentException("Feather must not be negative: " + feather);
+        }
+        this.kind = kind;
+        this.name = (planar ? "yuv-" : "") + kind.name().toLowerCase(Locale.ROOT);
+        this.directionX = x;
+        this.directionY = y;
+        this.feather = kind == Kind.PUSH ? 0 : feather;
+        this.planar = planar;
+        this.ramps = planar ? new Ramps[] {new Ramps(), new Ramps()} : new Ramps[] {new Ramps()};
+    }
+
+    @Override
+    public void prepare(double frameRate, int frames) {
+        progressScale = frames > 1 ? frames / (frames - 1.0) : 1;
+    }
+
+    @Override
+    public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+        progress = Math.min(1, progress * progressScale);
+        if (!planar) {
+            output.create(frame1.rows(), frame1.cols(), frame1.type());
+            compose(frame1, frame2, output, progress, feather, ramps[0]);
+            return;
+        }
+        output.create(frame1.rows(), frame1.cols(), CV_8UC1);
+        for (int p = 0; p < 3; p++) {
+            // Chroma planes are half resolution, so the feather is halved as well
+            compose(YuvTransitionEngine.plane(frame1, p), YuvTransitionEngine.plane(frame2, p),
+                    YuvTransitionEngine.plane(output, p), progress, p == 0 ? feather : feather / 2, ramps[p == 0 ? 0 : 1]);
+        }
+    }
+
+    /**
+     * Tiles one frame or plane with regions of the inputs, then feathers the edge
+     */
+    private void compose(Mat frame1, Mat frame2, Mat output, double progress, int feather, Ramps ramps) {
+        int width = output.cols();
+        int height = output.rows();
+        int movedX = Math.min(width, (int) (width * progress));
+        int movedY = Math.min(height, (int) (height * progress));
+        int[][] columns = segments(width, directionX, movedX);
+        int[][] rows = segments(height, directionY, movedY);
+
+        for (int[] column : columns) {
+            for (int[] row : rows) {
+                if (column[LENGTH] == 0 || row[LENGTH] == 0) continue;
+                boolean second = column[ROLE] != OUT && row[ROLE] != OUT
+                        || kind == Kind.PUSH && column[ROLE] != row[ROLE] && column[ROLE] != ALL && row[ROLE] != ALL;
+                int field = second ? SECOND : FIRST;
+                region(second ? frame2 : frame1, column[field], row[field], column[LENGTH], row[LENGTH])
+                        .copyTo(region(output, column[START], row[START], column[LENGTH], row[LENGTH]));
+            }
+        }
+
+        if (feather > 0) {
+            // The first segment on each axis is the part the second video covers
+            int[] column = columns[0];
+            int[] row = rows[0];
+            int bandWidth = directionX == 0 ? 0 : Math.min(feather, Math.min(movedX, width - movedX));
+            int bandHeight = directionY == 0 ? 0 : Math.min(feather, Math.min(movedY, height - movedY));
+            if (bandWidth > 0 || bandHeight > 0) {
+                ramps.prepare(width, height, feather, directionX, directionY);
+                featherEdge(frame1, frame2, output, column, row, bandWidth, bandHeight, feather, ramps);
+            }
+        }
+    }
+
+    /**
+     * Splits an axis into the part the second video covers and the part still showing the first
+     */
+    private int[][] segments(int length, int direction, int moved) {
+        if (direction == 0) {
+            return new int[][] {{0, length, 0, 0, ALL}};
+        }
+        int rest = length - moved;
+        boolean shifted = kind != Kind.WIPE;
+        boolean pushed = kind == Kind.PUSH;
+        if (direction < 0) {
+            // Moving towards the start: the second video enters at the end
+            return new int[][] {
+                    {rest, moved, rest, shifted ? 0 : rest, IN},
+                    {0, rest, pushed ? moved : 0, moved, OUT}};
+        }
+        return new int[][] {
+                {0, moved, 0, shifted ? rest : 0, IN},
+                {moved, rest, pushed ? 0 : moved, 0, OUT}};
+    }
+
+    /**
+     * Blends the bands on the leading edges of the second video over the first.
+     * Where a diagonal's two bands meet, the lower of the two weights is used.
+     */
+    private void featherEdge(Mat frame1, Mat frame2, Mat output, int[] column, int[] row,
+                             int bandWidth, int bandHeight, int feather, Ramps ramps) {
+        int left = column[START];
+        int top = row[START];
+        int width = column[LENGTH];
+        int height = row[LENGTH];
+        // Leading edges face the first video: the low side when moving towards the start
+        int bandX = directionX < 0 ? left : left + width - bandWidth;
+        int bandY = directionY < 0 ? top : top + height - bandHeight;
+        int rampX = directionX < 0 ? 0 : feather - bandWidth;
+        int rampY = directionY < 0 ? 0 : feather - bandHeight;
+        // Rows of the vertical band and columns of the horizontal band outside the corner
+        int restY = directionY < 0 ? top + bandHeight : top;
+        int restX = directionX < 0 ? left + bandWidth : left;
+
+        if (bandWidth > 0 && bandHeight > 0) {
+            min(region(ramps.horizontal, rampX, 0, bandWidth, bandHeight),
+                    region(ramps.vertical, 0, rampY, bandWidth, bandHeight), ramps.corner);
+            blend(frame1, frame2, output, column, row, bandX, bandY, bandWidth, bandHeight, ramps.corner);
+        }
+        if (bandWidth > 0 && height > bandHeight) {
+            blend(frame1, frame2, output, column, row, bandX, restY, bandWidth, height - bandHeight,
+                    region(ramps.horizontal, rampX, 0, bandWidth, height - bandHeight));
+        }
+        if (bandHeight > 0 && width > bandWidth) {
+            blend(frame1, frame2, output, column, row, restX, bandY, width - bandWidth, bandHeight,
+                    region(ramps.vertical, 0, rampY, width - bandWidth, bandHeight));
+        }
+    }
+
+    /**
+     * Blends a rectangle of the output from the first video in place and the second video where it came from
+     */
+    private static void blend(Mat frame1, Mat frame2, Mat output, int[] column, int[] row,
+                              int x, int y, int width, int height, Mat weights) {
+        int sourceX = column[SECOND] + x - column[START];
+        int sourceY = row[SECOND] + y - row[START];
+        JavaTransitionEngine.getBlendBackend().maskedBlend(region(frame1, x, y, width, height),
+                region(frame2, sourceX, sourceY, width, height), weights, region(output, x, y, width, height));
+    }
+
+    private static Mat region(Mat mat, int x, int y, int width, int height) {
+        return new Mat(mat, new Rect(x, y, width, height));
+    }
+
+    /**
+     * Weights of the second video across a feathered edge, rising away from the first video
+     */
+    private static final class Ramps {
+        final Mat horizontal = new Mat();
+        final Mat vertical = new Mat();
+        final Mat corner = new Mat();
+
+        void prepare(int width, int height, int feather, int directionX, int directionY) {
+            if (directionX != 0 && (horizontal.rows() != height || horizontal.cols() != feather)) {
+                horizontal.create(height, feather, CV_8UC1);
+                byte[] weights = new byte[height * feather];
+                for (int i = 0; i < feather; i++) {
+                    byte weight = weight(directionX < 0 ? i : feather - 1 - i, feather);
+                    for (int y = 0; y < height; y++) {
+                        weights[y * feather + i] = weight;
+                    }
+                }
+                horizontal.data().put(weights);
+            }
+            if (directionY != 0 && (vertical.rows() != feather || vertical.cols() != width)) {
+                vertical.create(feather, width, CV_8UC1);
+                byte[] weights = new byte[feather * width];
+                for (int i = 0; i < feather; i++) {
+                    Arrays.fill(weights, i * width, (i + 1) * width,
+                            weight(directionY < 0 ? i : feather - 1 - i, feather));
+                }
+                vertical.data().put(weights);
+            }
+        }
+
+        private static byte weight(int distance, int feather) {
+            return (byte) Math.round((distance + 1) * 255.0 / (feather + 1));
+        }
+
+        long bytes() {
+            return horizontal.total() + vertical.total() + corner.total();
+        }
+
+        void release() {
+            horizontal.release();
+            vertical.release();
+            corner.release();
+        }
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int pixelFormat() {
+        return planar ? AV_PIX_FMT_YUV420P : AV_PIX_FMT_BGR24;
+    }
+
+    @Override
+    public long nativeBytes() {
+        long bytes = 0;
+        for (Ramps ramp : ramps) {
+            bytes += ramp.bytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void release() {
+        for (Ramps ramp : ramps) {
+            ramp.release();
+        }
+    }
+}
@@ -0,0 +1,605 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RenderCoordinator - Hands transition jobs out to RenderWorker processes over TCP
+ *
+ * When one host is no longer enough for a batch, the coordinator queues the
+ * jobs and leases them to workers, which can run on any machine that reaches
+ * the coordinator's port and reads the input videos under the same paths
+ * (e.g. a shared volume). A job whose output is at least two chunks long is
+ * split like ChunkedTransitionEncoder does and its chunks are leased
+ * separately, so one long timeline spreads over many workers. Results are
+ * uploaded over the connection and collected in the output directory, where
+ * chunks are joined by packet copy.
+ *
+ * Workers connect to the coordinator, so it needs no list of them and
+ * workers can come and go. Each connection takes one lease at a time.
+ * Both sides send a line at least every heartbeat interval. A connection
+ * silent for three intervals, or closed, counts as a lost worker, and its
+ * lease goes back to the front of the queue. A lease is retried until it
+ * has failed maxAttempts times, lost or reported failures alike, and then
+ * fails its job. A chunk that runs past the end of an input shorter than
+ * its header says is not retried: its job goes back to the front of the
+ * queue as one TRANSITION lease, as ChunkedTransitionEncoder renders such
+ * jobs in one pass, and results of its other chunks are dropped.
+ *
+ * Protocol: lines of tab-separated fields, UTF-8.
+ *
+ *   worker:      HELLO  name
+ *   coordinator: WELCOME  heartbeatMillis
+ *   then, while the worker is idle:
+ *   coordinator: PING                     worker: HEARTBEAT
+ *   or a lease:
+ *   coordinator: TRANSITION  leaseId  effect  input1  input2  duration[@offset]  [effect parameters...]
+ *                CHUNK  leaseId  firstFrame  endFrame  effect  input1  input2  duration[@offset]  [effect parameters...]
+ *   worker:      HEARTBEAT  progress            (while rendering)
+ *                RESULT  bytes, followed by the rendered mp4
+ *                or FAILED  message
+ *                or SHORT  message      (a chunk ran out of input frames)
+ *
+ * A client sending STATUS instead of HELLO gets the queue counters as
+ * "name value" lines. The protocol is not authenticated, so the coordinator
+ * listens on the loopback interface unless -Dtransition.coordinator.bind
+ * names another address; only bind it to a trusted network.
+ */
+public class RenderCoordinator {
+
+    /** Port used when none is configured */
+    public static final int DEFAULT_PORT = 7979;
+
+    private final int port;
+    private final File outputDir;
+    private final long heartbeatMillis;
+    private final int maxAttempts;
+    private final double chunkSeconds;
+    private final LinkedBlockingDeque<Lease> queue = new LinkedBlockingDeque<>();
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private final AtomicInteger leaseIds = new AtomicInteger();
+    private final AtomicInteger workersConnected = new AtomicInteger();
+    private final AtomicInteger leasesRunning = new AtomicInteger();
+    private final AtomicLong leasesRetried = new AtomicLong();
+    private final AtomicLong jobsCompleted = new AtomicLong();
+    private final AtomicLong jobsFailed = new AtomicLong();
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * Creates a coordinator with a 2 s heartbeat, 3 attempts per lease and 10 s chunks
+     *
+     * @param port Port workers connect to
+     * @param outputDir Directory collecting the results, e.g. output_videos
+     */
+    public RenderCoordinator(int port, File outputDir) {
+        this(port, outputDir, 2000, 3, ChunkedTransitionEncoder.DEFAULT_CHUNK_SECONDS);
+    }
+
+    /**
+     * @param port Port workers connect to, 0 for any free port
+     * @param outputDir Directory collecting the results, e.g. output_videos
+     * @param heartbeatMillis Longest time between two lines on a connection; three missed ones lose the worker
+     * @param maxAttempts Number of times a lease is tried before its job fails
+     * @param chunkSeconds Length of a leased chunk of a long job, 0 to lease every job whole
+     */
+    public RenderCoordinator(int port, File outputDir, long heartbeatMillis, int maxAttempts, double chunkSeconds) {
+        this.port = port;
+        this.outputDir = outputDir;
+        this.heartbeatMillis = heartbeatMillis;
+        this.maxAttempts = maxAttempts;
+        this.chunkSeconds = chunkSeconds;
+    }
+
+    /**
+     * Opens the port and accepts workers on a background thread until stop is called
+     *
+     * @throws IOException If the port cannot be opened
+     */
+    public void start() throws IOException {
+        String bind = System.getProperty("transition.coordinator.bind");
+        InetAddress address = bind != null ? InetAddress.getByName(bind) : InetAddress.getLoopbackAddress();
+        ServerSocket server = new ServerSocket(port, 50, address);
+        serverSocket = server;
+        outputDir.mkdirs();
+
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    connections.execute(() -> handle(socket));
+                } catch (IOException e) {
+                    // Closed by stop()
+                    break;
+                }
+            }
+        }, "render-coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("Render coordinator listening on " + server.getLocalSocketAddress()
+                + ", collecting results in " + outputDir.getAbsolutePath());
+    }
+
+    /**
+     * Stops accepting workers and closes the open connections; queued jobs stay unfinished
+     */
+    public void stop() throws IOException {
+        ServerSocket server = serverSocket;
+        if (server != null) {
+            server.close();
+        }
+        connections.shutdownNow();
+    }
+
+    /**
+     * @return The port workers connect to, once started
+     */
+    public int getPort() {
+        ServerSocket server = serverSocket;
+        return server != null ? server.getLocalPort() : port;
+    }
+
+    /**
+     * Queues a transition
+     *
+     * @param effect Effect name as in the TransitionDaemon protocol, e.g. fade, whip or ff-blur
+     * @param input1 Path to the first video, as the workers see it
+     * @param input2 Path to the second video, as the workers see it
+     * @param outputName File name of the result in the output directory
+     * @param duration Duration of the transition in seconds
+     * @param parameters Effect parameters in the order of the TransitionEngine methods
+     * @return A future completed with the collected result
+     * @throws Exception If the inputs cannot be read
+     * @throws IllegalArgumentException If the effect name or parameters are invalid
+     */
+    public CompletableFuture<File> submit(String effect, String input1, String input2, String outputName,
+                                          double duration, String... parameters) throws Exception {
+        return submit(effect, input1, input2, outputName, duration, JavaTransitionEngine.AT_END, parameters);
+    }
+
+    /**
+     * Queues a transition starting at a given time of the first video
+     *
+     * @param effect Effect name as in the TransitionDaemon protocol, e.g. fade, whip or ff-blur
+     * @param input1 Path to the first video, as the workers see it
+     * @param input2 Path to the second video, as the workers see it
+     * @param outputName File name of the result in the output directory
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param parameters Effect parameters in the order of the TransitionEngine methods
+     * @return A future completed with the collected result
+     * @throws Exception If the inputs cannot be read
+     * @throws IllegalArgumentException If the effect name or parameters are invalid
+     */
+    public CompletableFuture<File> submit(String effect, String input1, String input2, String outputName,
+                                          double duration, double offset, String... parameters) throws Exception {
+        // Rejects unknown effects here rather than on every worker
+        TransitionDaemon.createEffect(effect, parameters).release();
+
+        RenderJob job = new RenderJob(new File(outputDir, outputName), effect,
+                new File(input1).getAbsolutePath(), new File(input2).getAbsolutePath(), duration, offset, parameters);
+        ChunkedTransitionEncoder.Timeline timeline = ChunkedTransitionEncoder.Timeline.probe(input1, input2, duration, offset);
+        List<ChunkedTransitionEncoder.Chunk> chunks = chunkSeconds > 0
+                ? timeline.split(chunkSeconds) : new ArrayList<>();
+
+        if (chunks.size() < 2) {
+            job.leases.add(new Lease(leaseIds.incrementAndGet(), job, -1, -1, -1, job.output));
+        } else {
+            job.chunkDir = Files.createTempDirectory(outputDir.toPath(), outputName + ".chunks").toFile();
+            for (ChunkedTransitionEncoder.Chunk chunk : chunks) {
+                File file = new File(job.chunkDir, String.format("chunk%05d.mp4", chunk.index));
+                job.leases.add(new Lease(leaseIds.incrementAndGet(), job, chunk.index, chunk.start, chunk.end, file));
+            }
+        }
+        job.remaining.set(job.leases.size());
+        List<Lease> order = new ArrayList<>(job.leases);
+        if (job.chunkDir != null) {
+            // The transition chunk is the slowest, so it is leased first
+            order.sort((a, b) -> Boolean.compare(chunks.get(b.chunkIndex).containsTransition(timeline),
+                    chunks.get(a.chunkIndex).containsTransition(timeline)));
+        }
+        queue.addAll(order);
+        return job.result;
+    }
+
+    private void handle(Socket socket) {
+        Lease lease = null;
+        boolean worker = false;
+        try (Socket s = socket) {
+            s.setSoTimeout((int) (3 * heartbeatMillis));
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = s.getOutputStream();
+
+            String[] hello = readFields(in);
+            if (hello[0].equals("STATUS")) {
+                writeLine(out, status());
+                return;
+            }
+            if (!hello[0].equals("HELLO")) {
+                writeLine(out, "FAILED\tExpected HELLO or STATUS");
+                return;
+            }
+            String workerName = hello.length > 1 ? hello[1] : s.getRemoteSocketAddress().toString();
+            worker = true;
+            workersConnected.incrementAndGet();
+            writeLine(out, "WELCOME\t" + heartbeatMillis);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                lease = queue.pollFirst(heartbeatMillis, TimeUnit.MILLISECONDS);
+                if (lease == null) {
+                    writeLine(out, "PING");
+                    expect(readFields(in), "HEARTBEAT");
+                    continue;
+                }
+                if (lease.job.result.isDone() || lease.isStale()) {
+                    // Another chunk of the job has already failed it, or turned it into a single lease
+                    lease = null;
+                    continue;
+                }
+
+                leasesRunning.incrementAndGet();
+                try {
+                    writeLine(out, lease.request());
+                    runLease(lease, workerName, in);
+                } finally {
+                    leasesRunning.decrementAndGet();
+                }
+                lease = null;
+            }
+        } catch (IOException e) {
+            if (lease != null) {
+                retry(lease, "worker lost: " + describe(e));
+            }
+        } catch (InterruptedException e) {
+            // Stopping
+            if (lease != null) {
+                queue.addFirst(lease);
+            }
+        } finally {
+            if (worker) {
+                workersConnected.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Follows a leased job until the worker uploads its result or reports a failure
+     */
+    private void runLease(Lease lease, String worker, InputStream in) throws IOException {
+        while (true) {
+            String[] fields = readFields(in);
+            switch (fields[0]) {
+                case "HEARTBEAT":
+                    break;
+                case "RESULT":
+                    receive(in, Long.parseLong(fields[1]), lease.isStale() ? null : lease.file);
+                    leaseDone(lease);
+                    return;
+                case "FAILED":
+                    retry(lease, worker + ": " + (fields.length > 1 ? fields[1] : "unknown error"));
+                    return;
+                case "SHORT":
+                    renderWhole(lease, worker + ": " + (fields.length > 1 ? fields[1] : "input ended early"));
+                    return;
+                default:
+                    throw new IOException("Unexpected line from " + worker + ": " + fields[0]);
+            }
+        }
+    }
+
+    /**
+     * Writes an uploaded result next to its destination, then moves it in place, or reads past it if 'file' is null
+     */
+    private static void receive(InputStream in, long length, File file) throws IOException {
+        if (file == null) {
+            // A chunk of a job that is now leased whole
+            for (long left = length; left > 0; left--) {
+                if (in.read() < 0) {
+                    throw new EOFException("Result ended " + left + " bytes early");
+                }
+            }
+            return;
+        }
+        File partial = new File(file.getPath() + ".part");
+        try (OutputStream out = new FileOutputStream(partial)) {
+            byte[] buffer = new byte[64 * 1024];
+            long left = length;
+            while (left > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                if (read < 0) {
+                    throw new EOFException("Result ended " + left + " bytes early");
+                }
+                out.write(buffer, 0, read);
+                left -= read;
+            }
+        } catch (IOException e) {
+            partial.delete();
+            throw e;
+        }
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void leaseDone(Lease lease) {
+        RenderJob job = lease.job;
+        if (lease.isStale()) return;
+        if (lease.firstFrame < 0) {
+            jobsCompleted.incrementAndGet();
+            job.result.complete(job.output);
+            return;
+        }
+        if (job.remaining.decrementAndGet() > 0) return;
+
+        if (job.chunkDir != null) {
+            try {
+                List<File> files = new ArrayList<>();
+                for (Lease chunk : job.leases) {
+                    files.add(chunk.file);
+                }
+                ChunkedTransitionEncoder.concatenate(files, new File(job.chunkDir, "chunks.txt"), job.output.getPath());
+            } catch (Exception e) {
+                fail(job, e);
+                return;
+            } finally {
+                job.deleteChunks();
+            }
+        }
+        jobsCompleted.incrementAndGet();
+        job.result.complete(job.output);
+    }
+
+    private void retry(Lease lease, String reason) {
+        if (lease.job.result.isDone() || lease.isStale()) return;
+
+        lease.attempts++;
+        if (lease.attempts >= maxAttempts) {
+            fail(lease.job, new IOException(lease.describe() + " failed " + lease.attempts + " times, last: " + reason));
+            return;
+        }
+        leasesRetried.incrementAndGet();
+        System.err.println(lease.describe() + " is retried after attempt " + lease.attempts + " (" + reason + ")");
+        // Retried leases go first, so a job is not held up behind the whole queue
+        queue.addFirst(lease);
+    }
+
+    /**
+     * Replaces the chunks of a job with one lease of the whole job, after a chunk found an input shorter than its header
+     */
+    private void renderWhole(Lease chunk, String reason) {
+        RenderJob job = chunk.job;
+        Lease whole;
+        synchronized (job) {
+            if (job.result.isDone() || chunk.isStale()) return;
+            whole = new Lease(leaseIds.incrementAndGet(), job, -1, -1, -1, job.output);
+            job.whole = whole;
+        }
+        queue.removeAll(job.leases);
+        job.deleteChunks();
+        leasesRetried.incrementAndGet();
+        System.err.println(chunk.describe() + " ran out of input frames, " + job.output.getName()
+                + " is leased whole (" + reason + ")");
+        queue.addFirst(whole);
+    }
+
+    private void fail(RenderJob job, Exception error) {
+        if (job.result.completeExceptionally(error)) {
+            jobsFailed.incrementAndGet();
+            queue.removeAll(job.leases);
+            Lease whole = job.whole;
+            if (whole != null) {
+                queue.remove(whole);
+            }
+            job.deleteChunks();
+        }
+    }
+
+    /**
+     * @return Queue counters as "name value" lines
+     */
+    String status() {
+        return "coordinator_workers " + workersConnected.get() + "\n"
+                + "coordinator_leases_queued " + queue.size() + "\n"
+                + "coordinator_leases_running " + leasesRunning.get() + "\n"
+                + "coordinator_leases_retried " + leasesRetried.get() + "\n"
+                + "coordinator_jobs_completed " + jobsCompleted.get() + "\n"
+                + "coordinator_jobs_failed " + jobsFailed.get();
+    }
+
+    private static String describe(IOException e) {
+        return e instanceof SocketTimeoutException ? "no heartbeat" : String.valueOf(e.getMessage());
+    }
+
+    private static void expect(String[] fields, String verb) throws IOException {
+        if (!fields[0].equals(verb)) {
+            throw new IOException("Expected " + verb + ", got " + fields[0]);
+        }
+    }
+
+    /**
+     * Reads one protocol line and splits it into its fields
+     *
+     * @throws EOFException If the connection was closed
+     */
+    static String[] readFields(InputStream in) throws IOException {
+        // Read byte by byte: the line may be followed by an uploaded file on the same stream
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("Connection closed");
+            }
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8).split("\t", -1);
+    }
+
+    /**
+     * Writes one protocol line and flushes it
+     */
+    static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * A job submitted to the coordinator, made of one lease or one lease per chunk
+     */
+    private static final class RenderJob {
+        final File output;
+        final String effect;
+        final String input1;
+        final String input2;
+        final double duration;
+        final double offset;
+        final String[] parameters;
+        final List<Lease> leases = new ArrayList<>();
+        final AtomicInteger remaining = new AtomicInteger();
+        final CompletableFuture<File> result = new CompletableFuture<>();
+        File chunkDir;
+        // Set when a chunk ran out of input frames; the chunk leases are then stale
+        volatile Lease whole;
+
+        RenderJob(File output, String effect, String input1, String input2, double duration, double offset,
+                  String[] parameters) {
+            this.output = output;
+            this.effect = effect;
+            this.input1 = input1;
+            this.input2 = input2;
+            this.duration = duration;
+            this.offset = offset;
+            this.parameters = parameters;
+        }
+
+        void deleteChunks() {
+            if (chunkDir == null) return;
+            File[] files = chunkDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            chunkDir.delete();
+        }
+    }
+
+    /**
+     * A unit of work leased to one worker at a time: a whole job or one chunk of it
+     */
+    private static final class Lease {
+        final int id;
+        final RenderJob job;
+        final int chunkIndex;
+        final int firstFrame;
+        final int endFrame;
+        final File file;
+        int attempts;
+
+        Lease(int id, RenderJob job, int chunkIndex, int firstFrame, int endFrame, File file) {
+            this.id = id;
+            this.job = job;
+            this.chunkIndex = chunkIndex;
+            this.firstFrame = firstFrame;
+            this.endFrame = endFrame;
+            this.file = file;
+        }
+
+        String request() {
+            List<String> fields = new ArrayList<>();
+            if (firstFrame < 0) {
+                fields.addAll(Arrays.asList("TRANSITION", String.valueOf(id)));
+            } else {
+                fields.addAll(Arrays.asList("CHUNK", String.valueOf(id), String.valueOf(firstFrame), String.valueOf(endFrame)));
+            }
+            fields.addAll(Arrays.asList(job.effect, job.input1, job.input2,
+                    TransitionDaemon.formatDuration(job.duration, job.offset)));
+            fields.addAll(Arrays.asList(job.parameters));
+            return String.join("\t", fields);
+        }
+
+        /**
+         * @return true for a chunk of a job that is now leased whole
+         */
+        boolean isStale() {
+            Lease whole = job.whole;
+            return whole != null && whole != this;
+        }
+
+        String describe() {
+            return firstFrame < 0 ? job.output.getName()
+                    : job.output.getName() + " frames " + firstFrame + "-" + endFrame;
+        }
+    }
+
+    /**
+     * Runs a batch file through the workers that connect
+     *
+     * Usage: RenderCoordinator [port] [output dir] batch-file
+     *
+     * Each line of the batch file is one job, fields separated by tabs or
+     * spaces: effect input1 input2 output duration[@offset] [effect parameters...].
+     * Empty lines and lines starting with # are skipped. Exits with code 1
+     * if any job failed.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: RenderCoordinator [port] [output dir] batch-file");
+            System.exit(2);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        File outputDir = new File(args.length > 2 ? args[1] : "output_videos");
+        String batch = args[args.length - 1];
+
+        RenderCoordinator coordinator = new RenderCoordinator(port, outputDir);
+        List<String> names = new ArrayList<>();
+        List<CompletableFuture<File>> results = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(batch), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("[\t ]+");
+                names.add(fields[3]);
+                double[] timing = TransitionDaemon.parseDuration(fields[4]);
+                results.add(coordinator.submit(fields[0], fields[1], fields[2], fields[3], timing[0], timing[1],
+                        Arrays.copyOfRange(fields, 5, fields.length)));
+            }
+        }
+        coordinator.start();
+
+        boolean failed = false;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                System.out.println("DONE\t" + results.get(i).get());
+            } catch (ExecutionException e) {
+                failed = true;
+                System.out.println("FAILED\t" + names.get(i) + "\t" + e.getCause().getMessage());
+            }
+        }
+        System.out.println(coordinator.status());
+        coordinator.stop();
+        System.exit(failed ? 1 : 0);
+    }
+}
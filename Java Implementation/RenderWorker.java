@@ -0,0 +1,235 @@
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+
+/**
+ * RenderWorker - Renders the jobs a RenderCoordinator leases to it
+ *
+ * A worker process opens one connection to the coordinator per slot and
+ * renders one lease per connection at a time, so a host with spare cores
+ * runs several slots. If the coordinator goes away, the running render is
+ * cancelled and the slot reconnects with a growing backoff; the coordinator
+ * hands the lease to another worker meanwhile. See RenderCoordinator for
+ * the protocol.
+ */
+public class RenderWorker implements Runnable {
+
+    private static final long MAX_BACKOFF_MILLIS = 10000;
+
+    private final String host;
+    private final int port;
+    private final String name;
+    private final ExecutorService renderer;
+    private volatile boolean stopped;
+
+    /**
+     * @param host Host of the coordinator
+     * @param port Port of the coordinator
+     * @param name Name the coordinator reports this slot by
+     */
+    public RenderWorker(String host, int port, String name) {
+        this.host = host;
+        this.port = port;
+        this.name = name;
+        this.renderer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name + "-render");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Takes leases until stop is called, reconnecting whenever the connection is lost
+     */
+    @Override
+    public void run() {
+        long backoff = 1000;
+        while (!stopped) {
+            try (Socket socket = new Socket(host, port)) {
+                serve(socket);
+                backoff = 1000;
+            } catch (IOException e) {
+                if (stopped) break;
+                System.err.println(name + ": " + e.getMessage() + ", reconnecting in " + backoff + " ms");
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+        }
+        renderer.shutdownNow();
+    }
+
+    /**
+     * Stops taking leases once the current connection ends
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    private void serve(Socket socket) throws IOException, InterruptedException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        RenderCoordinator.writeLine(out, "HELLO\t" + name);
+        String[] welcome = RenderCoordinator.readFields(in);
+        if (!welcome[0].equals("WELCOME")) {
+            throw new IOException("Coordinator refused: " + String.join(" ", welcome));
+        }
+        long heartbeatMillis = Long.parseLong(welcome[1]);
+        // The coordinator pings idle workers, so silence means it is gone
+        socket.setSoTimeout((int) (3 * heartbeatMillis));
+        System.out.println(name + ": connected to " + socket.getRemoteSocketAddress());
+
+        while (!stopped) {
+            String[] request = RenderCoordinator.readFields(in);
+            switch (request[0]) {
+                case "PING":
+                    RenderCoordinator.writeLine(out, "HEARTBEAT");
+                    break;
+                case "TRANSITION":
+                case "CHUNK":
+                    lease(request, heartbeatMillis, out);
+                    break;
+                default:
+                    throw new IOException("Unexpected line from coordinator: " + request[0]);
+            }
+        }
+    }
+
+    /**
+     * Renders a leased job to a temporary file and uploads it, sending heartbeats while it runs
+     */
+    private void lease(String[] request, long heartbeatMillis, OutputStream out)
+            throws IOException, InterruptedException {
+        boolean chunk = request[0].equals("CHUNK");
+        int f = chunk ? 4 : 2;
+        String effectName = request[f];
+        String input1 = request[f + 1];
+        String input2 = request[f + 2];
+        double[] timing = TransitionDaemon.parseDuration(request[f + 3]);
+        double duration = timing[0];
+        double offset = timing[1];
+        String[] parameters = Arrays.copyOfRange(request, f + 4, request.length);
+
+        File output = File.createTempFile("render-lease" + request[1] + "-", ".mp4");
+        Future<?> render = null;
+        AtomicBoolean aborted = new AtomicBoolean();
+        try {
+            DoubleSupplier progress;
+            FrameEffect effect = TransitionDaemon.createEffect(effectName, parameters);
+            if (chunk) {
+                int start = Integer.parseInt(request[2]);
+                int end = Integer.parseInt(request[3]);
+                AtomicInteger framesDone = new AtomicInteger();
+                FutureTask<Void> task = new FutureTask<>(() -> {
+                    try {
+                        ChunkedTransitionEncoder.Timeline timeline =
+                                ChunkedTransitionEncoder.Timeline.probe(input1, input2, duration, offset);
+                        ChunkedTransitionEncoder.Chunk range = new ChunkedTransitionEncoder.Chunk(0, start, end);
+                        range.file = output;
+                        ChunkedTransitionEncoder.renderChunk(timeline, range, effect, aborted, framesDone);
+                    } finally {
+                        effect.release();
+                    }
+                    return null;
+                });
+                renderer.execute(task);
+                render = task;
+                progress = () -> (double) framesDone.get() / Math.max(1, end - start);
+            } else {
+                TransitionJob job = TransitionSession.shared().submitTransition(renderer, input1, input2,
+                        output.getPath(), duration, offset, effect, null);
+                render = job;
+                progress = job::getProgress;
+            }
+
+            while (true) {
+                try {
+                    render.get(heartbeatMillis, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    RenderCoordinator.writeLine(out, String.format("HEARTBEAT\t%.3f", progress.getAsDouble()));
+                } catch (ExecutionException e) {
+                    render = null;
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    // A chunk past the end of a short input fails on every worker; the coordinator leases the job whole
+                    String verb = chunk && cause instanceof EOFException ? "SHORT" : "FAILED";
+                    RenderCoordinator.writeLine(out, verb + "\t" + field(String.valueOf(cause)));
+                    return;
+                }
+            }
+            render = null;
+
+            RenderCoordinator.writeLine(out, "RESULT\t" + output.length());
+            Files.copy(output.toPath(), out);
+            out.flush();
+        } catch (IllegalArgumentException e) {
+            RenderCoordinator.writeLine(out, "FAILED\t" + field(e.getMessage()));
+        } finally {
+            if (render != null) {
+                // The coordinator is gone, it leases the job to someone else
+                aborted.set(true);
+                render.cancel(true);
+                try {
+                    render.get();
+                } catch (Exception e) {
+                    // Cancelled
+                }
+            }
+            output.delete();
+        }
+    }
+
+    /**
+     * Makes a message one protocol field, without the tabs and line breaks that separate fields and lines
+     */
+    private static String field(String message) {
+        return String.valueOf(message).replaceAll("[\t\r\n]+", " ");
+    }
+
+    /**
+     * Starts worker slots connected to a coordinator
+     *
+     * Usage: RenderWorker [host] [port] [slots]
+     */
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : RenderCoordinator.DEFAULT_PORT;
+        int slots = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        TransitionSession session = TransitionSession.shared();
+        session.preload().warmUp();
+
+        // The runtime name is "pid@host" on the JVMs we run on
+        String prefix = "worker-" + ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        Thread[] threads = new Thread[slots];
+        for (int i = 0; i < slots; i++) {
+            threads[i] = new Thread(new RenderWorker(host, port, prefix + "-" + i), prefix + "-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
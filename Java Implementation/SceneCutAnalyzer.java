@@ -0,0 +1,367 @@
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+import static org.bytedeco.ffmpeg.global.swscale.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * SceneCutAnalyzer - Finds scene cuts in a video, e.g. to place a transition on one
+ *
+ * Finding a cut needs no full-resolution colour frames, so the analysis
+ * decodes luma only, scaled down to a thumbnail a few dozen pixels wide,
+ * and without the decoder's loop filter. Every frame is compared with the
+ * one before it by two scores:
+ *
+ *   difference   mean absolute difference of the pixels, which catches cuts
+ *                between shots of similar tones
+ *   histogram    distance between the luma histograms, which ignores motion
+ *                and camera shake within a shot
+ *
+ * A cut is a frame whose average of both scores reaches the threshold and
+ * is the highest within the minimum gap around it. Cuts are returned best
+ * first.
+ *
+ * In keyframes-first mode only the keyframes are decoded at first, which
+ * skips most of the decoding work. Where two keyframes in a row differ by
+ * the threshold, the group of pictures between them is decoded to find
+ * the exact frame. Encoders start a new keyframe at most cuts, but a cut
+ * whose shot returns to the previous one within a GOP is missed.
+ *
+ * To end a transition at the cut nearest to a point of the first video:
+ *
+ *   List<SceneCutAnalyzer.Cut> cuts = new SceneCutAnalyzer().analyze(input1);
+ *   SceneCutAnalyzer.Cut cut = SceneCutAnalyzer.nearest(cuts, 12.0);
+ *   JavaTransitionEngine.applyTransition(input1, input2, output, 1.0, cut.transitionOffset(1.0), effect);
+ */
+public class SceneCutAnalyzer {
+
+    /** Width of the analysed thumbnails when none is given, in pixels */
+    public static final int DEFAULT_ANALYSIS_WIDTH = 96;
+
+    /** Score a cut must reach when none is given */
+    public static final double DEFAULT_THRESHOLD = 0.3;
+
+    /** Shortest time between two cuts when none is given, in seconds */
+    public static final double DEFAULT_MIN_GAP_SECONDS = 0.5;
+
+    private static final int HISTOGRAM_BINS = 32;
+
+    private final int analysisWidth;
+    private final double threshold;
+    private final double minGapSeconds;
+    private final boolean keyframesFirst;
+
+    /**
+     * An analyzer decoding every frame with the default settings
+     */
+    public SceneCutAnalyzer() {
+        this(DEFAULT_ANALYSIS_WIDTH, DEFAULT_THRESHOLD, DEFAULT_MIN_GAP_SECONDS, false);
+    }
+
+    /**
+     * @param analysisWidth Width of the analysed thumbnails in pixels; the height keeps the aspect ratio
+     * @param threshold Score from 0 to 1 a frame must reach to be a cut
+     * @param minGapSeconds Shortest time between two cuts in seconds; the weaker one is dropped
+     * @param keyframesFirst true to decode the keyframes first and only the GOPs around likely cuts
+     */
+    public SceneCutAnalyzer(int analysisWidth, double threshold, double minGapSeconds, boolean keyframesFirst) {
+        if (analysisWidth < 8) {
+            throw new IllegalArgumentException("Analysis width must be at least 8: " + analysisWidth);
+        }
+        if (threshold < 0 || threshold > 1 || minGapSeconds < 0) {
+            throw new IllegalArgumentException("Threshold must be from 0 to 1 and the gap must not be negative");
+        }
+        this.analysisWidth = analysisWidth;
+        this.threshold = threshold;
+        this.minGapSeconds = minGapSeconds;
+        this.keyframesFirst = keyframesFirst;
+    }
+
+    /**
+     * Finds the scene cuts of a video
+     *
+     * @param input Path to the video
+     * @return The cuts, highest score first
+     * @throws Exception If the video cannot be decoded
+     */
+    public List<Cut> analyze(String input) throws Exception {
+        FFmpegFrameGrabber grabber = openGrabber(input, keyframesFirst);
+        double frameRate;
+        List<Cut> scores;
+        try {
+            frameRate = grabber.getVideoFrameRate();
+            scores = scan(grabber, Integer.MAX_VALUE, frameRate);
+        } finally {
+            grabber.release();
+        }
+        if (keyframesFirst) {
+            scores = refine(input, scores, frameRate);
+        }
+        return rank(scores, (int) Math.round(minGapSeconds * frameRate));
+    }
+
+    /**
+     * Scores every frame read from 'grabber' up to frame 'end' against the one before it
+     */
+    private List<Cut> scan(FFmpegFrameGrabber grabber, int end, double frameRate) throws Exception {
+        List<Cut> scores = new ArrayList<>();
+        Thumbnail previous = null;
+        Frame frame;
+        while ((frame = grabber.grabImage()) != null) {
+            int index = grabber.getFrameNumber();
+            Thumbnail current = new Thumbnail(frame, index);
+            if (previous != null) {
+                scores.add(current.compare(previous, frameRate));
+            }
+            previous = current;
+            if (index >= end) break;
+        }
+        return scores;
+    }
+
+    /**
+     * Decodes every frame of the GOPs whose keyframes differ by the threshold, scoring them as scan does
+     */
+    private List<Cut> refine(String input, List<Cut> gops, double frameRate) throws Exception {
+        List<Cut> scores = new ArrayList<>();
+        FFmpegFrameGrabber fine = null;
+        try {
+            for (Cut gop : gops) {
+                if (gop.score < threshold) continue;
+                if (fine == null) {
+                    fine = openGrabber(input, false);
+                }
+                // Seeks to the keyframe that starts the GOP and decodes through the next one
+                fine.setVideoFrameNumber(gop.previousFrame);
+                for (Cut score : scan(fine, gop.frame, frameRate)) {
+                    if (score.frame > gop.previousFrame && score.frame <= gop.frame) {
+                        scores.add(score);
+                    }
+                }
+            }
+        } finally {
+            if (fine != null) {
+                fine.release();
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Keeps the frames reaching the threshold that score highest within 'gapFrames' of each other, best first
+     */
+    private List<Cut> rank(List<Cut> scores, int gapFrames) {
+        List<Cut> candidates = new ArrayList<>();
+        for (Cut score : scores) {
+            if (score.score >= threshold) {
+                candidates.add(score);
+            }
+        }
+        candidates.sort(Comparator.comparingDouble((Cut cut) -> cut.score).reversed());
+
+        List<Cut> cuts = new ArrayList<>();
+        for (Cut candidate : candidates) {
+            boolean separate = true;
+            for (Cut cut : cuts) {
+                if (Math.abs(cut.frame - candidate.frame) < gapFrames) {
+                    separate = false;
+                    break;
+                }
+            }
+            if (separate) {
+                cuts.add(candidate);
+            }
+        }
+        return cuts;
+    }
+
+    private FFmpegFrameGrabber openGrabber(String input, boolean keyframesOnly) throws Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(input);
+        grabber.setPixelFormat(AV_PIX_FMT_GRAY8);
+        grabber.setImageScalingFlags(SWS_AREA);
+        // The thumbnails blur away what the loop filter smooths
+        grabber.setVideoOption("skip_loop_filter", "all");
+        grabber.setVideoOption("threads", "0");
+        if (keyframesOnly) {
+            grabber.setVideoOption("skip_frame", "nokey");
+        }
+        grabber.start();
+        int height = (int) Math.round((double) analysisWidth * grabber.getImageHeight() / grabber.getImageWidth());
+        grabber.setImageWidth(analysisWidth);
+        grabber.setImageHeight(Math.max(2, height));
+        return grabber;
+    }
+
+    /**
+     * Returns the cut closest to a time
+     *
+     * @param cuts Cuts returned by analyze
+     * @param time Time in the video in seconds
+     * @return The nearest cut, or null if there are none
+     */
+    public static Cut nearest(List<Cut> cuts, double time) {
+        Cut nearest = null;
+        for (Cut cut : cuts) {
+            if (nearest == null || Math.abs(cut.time - time) < Math.abs(nearest.time - time)) {
+                nearest = cut;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * The luma thumbnail of one frame and its histogram
+     */
+    private static final class Thumbnail {
+        final int frame;
+        final byte[] pixels;
+        final int[] histogram = new int[HISTOGRAM_BINS];
+
+        Thumbnail(Frame source, int frame) {
+            this.frame = frame;
+            int width = source.imageWidth;
+            int height = source.imageHeight;
+            pixels = new byte[width * height];
+            // Rows of the scaled picture are padded to the scaler's alignment
+            ByteBuffer image = ((ByteBuffer) source.image[0]).duplicate();
+            for (int y = 0; y < height; y++) {
+                image.position(y * source.imageStride);
+                image.get(pixels, y * width, width);
+            }
+            for (byte pixel : pixels) {
+                histogram[(pixel & 0xFF) * HISTOGRAM_BINS / 256]++;
+            }
+        }
+
+        /**
+         * Scores this frame as a cut after 'previous'
+         */
+        Cut compare(Thumbnail previous, double frameRate) {
+            long difference = 0;
+            for (int i = 0; i < pixels.length; i++) {
+                difference += Math.abs((pixels[i] & 0xFF) - (previous.pixels[i] & 0xFF));
+            }
+            long histogramDifference = 0;
+            for (int b = 0; b < HISTOGRAM_BINS; b++) {
+                histogramDifference += Math.abs(histogram[b] - previous.histogram[b]);
+            }
+            return new Cut(frame, previous.frame, frame / frameRate,
+                    difference / (255.0 * pixels.length), histogramDifference / (2.0 * pixels.length));
+        }
+    }
+
+    /**
+     * A frame where a new shot starts
+     */
+    public static final class Cut {
+        private final int frame;
+        private final int previousFrame;
+        private final double time;
+        private final double difference;
+        private final double histogramDistance;
+        private final double score;
+
+        Cut(int frame, int previousFrame, double time, double difference, double histogramDistance) {
+            this.frame = frame;
+            this.previousFrame = previousFrame;
+            this.time = time;
+            this.difference = difference;
+            this.histogramDistance = histogramDistance;
+            this.score = (difference + histogramDistance) / 2;
+        }
+
+        /**
+         * @return Index of the first frame of the new shot
+         */
+        public int getFrame() {
+            return frame;
+        }
+
+        /**
+         * @return Time of the first frame of the new shot in seconds
+         */
+        public double getTime() {
+            return time;
+        }
+
+        /**
+         * @return Mean absolute difference from the frame before, from 0 to 1
+         */
+        public double getDifference() {
+            return difference;
+        }
+
+        /**
+         * @return Distance of the luma histograms from the frame before, from 0 to 1
+         */
+        public double getHistogramDistance() {
+            return histogramDistance;
+        }
+
+        /**
+         * @return Average of the difference and the histogram distance
+         */
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * Returns the transition offset that ends a transition of the first video at this cut,
+         * so none of the new shot is shown
+         *
+         * @param duration Duration of the transition in seconds
+         * @return Start of the transition in seconds
+         * @throws IllegalArgumentException If the cut comes less than 'duration' seconds into the video,
+         *                                  so a transition ending at it would have to start before the video
+         */
+        public double transitionOffset(double duration) {
+            if (time < duration) {
+                throw new IllegalArgumentException(String.format(
+                        "The cut at %.3f s is too early for a transition of %.3f s to end at it", time, duration));
+            }
+            return time - duration;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cut[frame %d at %.3f s, score %.3f (difference %.3f, histogram %.3f)]",
+                    frame, time, score, difference, histogramDistance);
+        }
+    }
+
+    /**
+     * Lists the cuts of a video and how fast the analysis ran
+     *
+     * Usage: SceneCutAnalyzer input [keyframes] [threshold]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SceneCutAnalyzer <input> [keyframes] [threshold]");
+            System.exit(2);
+        }
+        boolean keyframes = args.length > 1 && args[1].equals("keyframes");
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        SceneCutAnalyzer analyzer = new SceneCutAnalyzer(DEFAULT_ANALYSIS_WIDTH, threshold, DEFAULT_MIN_GAP_SECONDS, keyframes);
+
+        long start = System.nanoTime();
+        List<Cut> cuts = analyzer.analyze(args[0]);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double videoSeconds;
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(args[0]);
+        try {
+            grabber.start();
+            videoSeconds = grabber.getLengthInTime() / 1e6;
+        } finally {
+            grabber.release();
+        }
+        for (Cut cut : cuts) {
+            System.out.println(cut);
+        }
+        System.out.printf("%d cuts in %.2f s of analysis, %.1fx real time%n", cuts.size(), seconds, videoSeconds / seconds);
+    }
+}
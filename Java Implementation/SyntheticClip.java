@@ -0,0 +1,262 @@
+import org.bytedeco.ffmpeg.avcodec.AVCodecDescriptor;
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.RNG;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import static org.bytedeco.ffmpeg.global.avcodec.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * SyntheticClip - Deterministic test-pattern videos of any size, rate, codec and length
+ *
+ * The bundled clips are small and short, which says little about how a job
+ * scales with resolution, duration or GOP size. A synthetic clip is drawn
+ * frame by frame and encoded with FFmpegFrameRecorder:
+ *
+ *   top         the frame number as a row of 16 black and white cells
+ *   middle      colour bars, their order set by the seed, with a square
+ *               bouncing across them
+ *   bottom      a band of seeded noise scrolling sideways, so the encoder
+ *               has texture and motion to work on at every size
+ *
+ * The same parameters always produce the same pixels; the encoded bytes may
+ * still differ between encoder versions or thread counts. Clips use the
+ * codec's YUV420P and about 0.1 bits per pixel.
+ */
+public class SyntheticClip {
+
+    // BGR colour bars, as on a test card
+    private static final double[][] BARS = {
+            {192, 192, 192}, {0, 192, 192}, {192, 192, 0}, {0, 192, 0},
+            {192, 0, 192}, {0, 0, 192}, {192, 0, 0}
+    };
+
+    private static final int INDEX_BITS = 16;
+    private static final double BITS_PER_PIXEL = 0.1;
+
+    private final int width;
+    private final int height;
+    private final double frameRate;
+    private final int frames;
+    private final String codec;
+    private final int gopFrames;
+    private final long seed;
+
+    /**
+     * A H.264 clip with a keyframe every two seconds
+     *
+     * @param width Width in pixels, even
+     * @param height Height in pixels, even
+     * @param frameRate Frames per second
+     * @param frames Number of frames
+     * @param seed Seed of the bar order and the noise
+     */
+    public SyntheticClip(int width, int height, double frameRate, int frames, long seed) {
+        this(width, height, frameRate, frames, "h264", (int) Math.round(2 * frameRate), seed);
+    }
+
+    /**
+     * @param width Width in pixels, even
+     * @param height Height in pixels, even
+     * @param frameRate Frames per second
+     * @param frames Number of frames
+     * @param codec FFmpeg name of the video codec, e.g. "h264", "hevc" or "mpeg4"
+     * @param gopFrames Frames from one keyframe to the next
+     * @param seed Seed of the bar order and the noise
+     */
+    public SyntheticClip(int width, int height, double frameRate, int frames, String codec, int gopFrames, long seed) {
+        if (width < 16 || height < 16 || width % 2 != 0 || height % 2 != 0) {
+            throw new IllegalArgumentException("Size must be even and at least 16x16: " + width + "x" + height);
+        }
+        if (frameRate <= 0 || frames <= 0 || gopFrames <= 0) {
+            throw new IllegalArgumentException("Frame rate, frames and GOP size must be positive");
+        }
+        if (codecId(codec) == AV_CODEC_ID_NONE) {
+            throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.frames = frames;
+        this.codec = codec;
+        this.gopFrames = gopFrames;
+        this.seed = seed;
+    }
+
+    /**
+     * Encodes the clip
+     *
+     * @param path Path of the output; the container follows the extension, e.g. ".mp4"
+     * @throws Exception If the codec has no encoder or the file cannot be written
+     */
+    public void write(String path) throws Exception {
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(path, width, height);
+        recorder.setVideoCodec(codecId(codec));
+        recorder.setPixelFormat(AV_PIX_FMT_YUV420P);
+        recorder.setFrameRate(frameRate);
+        recorder.setGopSize(gopFrames);
+        recorder.setVideoBitrate((int) Math.min(Integer.MAX_VALUE, (long) width * height * frameRate * BITS_PER_PIXEL));
+
+        OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        Mat frame = new Mat(height, width, CV_8UC3);
+        int bandHeight = Math.max(2, height / 4);
+        Mat noise = new Mat(bandHeight, width, CV_8UC3);
+        // Unlike setting theRNG()'s state, the constructor turns a seed of 0 into a usable state
+        RNG rng = new RNG(seed);
+        rng._fill(noise, RNG.UNIFORM, new Mat(1, 1, CV_64F, new Scalar(0.0)), new Mat(1, 1, CV_64F, new Scalar(256.0)));
+        recorder.start();
+        try {
+            for (int i = 0; i < frames; i++) {
+                // Frees the views and rectangles of every frame as it is done
+                try (PointerScope scope = new PointerScope()) {
+                    draw(frame, noise, i);
+                    recorder.record(converter.convert(frame));
+                }
+            }
+            recorder.stop();
+        } finally {
+            recorder.release();
+            frame.release();
+            noise.release();
+            converter.close();
+        }
+    }
+
+    /**
+     * Draws frame 'index' into 'frame'
+     */
+    private void draw(Mat frame, Mat noise, int index) {
+        int indexHeight = Math.max(2, height / 32);
+        int bandHeight = noise.rows();
+        int barsTop = indexHeight;
+        int barsHeight = height - indexHeight - bandHeight;
+
+        // The frame number, most significant bit first
+        int cell = width / INDEX_BITS;
+        frame.apply(new Rect(0, 0, width, indexHeight)).put(new Scalar(0.0));
+        for (int bit = 0; bit < INDEX_BITS; bit++) {
+            if ((index >> (INDEX_BITS - 1 - bit) & 1) != 0) {
+                frame.apply(new Rect(bit * cell, 0, cell, indexHeight)).put(new Scalar(255, 255, 255, 0));
+            }
+        }
+
+        // Colour bars in an order picked by the seed
+        int offset = (int) Math.floorMod(seed, (long) BARS.length);
+        for (int b = 0; b < BARS.length; b++) {
+            int x0 = b * width / BARS.length;
+            int x1 = (b + 1) * width / BARS.length;
+            double[] color = BARS[(b + offset) % BARS.length];
+            frame.apply(new Rect(x0, barsTop, x1 - x0, barsHeight)).put(new Scalar(color[0], color[1], color[2], 0));
+        }
+
+        // A square bouncing across the bars at a speed relative to the frame size
+        int size = Math.max(2, Math.min(width, barsHeight) / 6);
+        int x = bounce(index * Math.max(1, width / 90), width - size);
+        int y = barsTop + bounce(index * Math.max(1, barsHeight / 120), barsHeight - size);
+        rectangle(frame, new Point(x, y), new Point(x + size - 1, y + size - 1),
+                new Scalar(255 - index % 256, index % 256, 255, 0), FILLED, LINE_8, 0);
+
+        // The noise band scrolls left and wraps around
+        int shift = (index * Math.max(1, width / 160)) % width;
+        Mat band = frame.apply(new Rect(0, height - bandHeight, width, bandHeight));
+        noise.apply(new Rect(shift, 0, width - shift, bandHeight)).copyTo(band.apply(new Rect(0, 0, width - shift, bandHeight)));
+        if (shift > 0) {
+            noise.apply(new Rect(0, 0, shift, bandHeight)).copyTo(band.apply(new Rect(width - shift, 0, shift, bandHeight)));
+        }
+    }
+
+    /**
+     * Folds a distance travelled back and forth over [0, range]
+     */
+    private static int bounce(int distance, int range) {
+        if (range <= 0) return 0;
+        int position = distance % (2 * range);
+        return position <= range ? position : 2 * range - position;
+    }
+
+    private static int codecId(String codec) {
+        AVCodecDescriptor descriptor = avcodec_descriptor_get_by_name(codec);
+        return descriptor == null ? AV_CODEC_ID_NONE : descriptor.id();
+    }
+
+    /**
+     * @return Width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Frames per second
+     */
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * @return Number of frames
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return FFmpeg name of the video codec
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return Frames from one keyframe to the next
+     */
+    public int getGopFrames() {
+        return gopFrames;
+    }
+
+    /**
+     * @return Seed of the bar order and the noise
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SyntheticClip[%dx%d @ %.2f fps, %d frames, %s, GOP %d, seed %d]",
+                width, height, frameRate, frames, codec, gopFrames, seed);
+    }
+
+    /**
+     * Writes a clip from the command line
+     *
+     * Usage: SyntheticClip output width height frameRate seconds [codec] [gopFrames] [seed]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5) {
+            System.err.println("Usage: SyntheticClip <output> <width> <height> <frameRate> <seconds> [codec] [gopFrames] [seed]");
+            System.exit(2);
+        }
+        double frameRate = Double.parseDouble(args[3]);
+        int frames = (int) Math.round(Double.parseDouble(args[4]) * frameRate);
+        SyntheticClip clip = new SyntheticClip(Integer.parseInt(args[1]), Integer.parseInt(args[2]), frameRate, frames,
+                args.length > 5 ? args[5] : "h264",
+                args.length > 6 ? Integer.parseInt(args[6]) : (int) Math.round(2 * frameRate),
+                args.length > 7 ? Long.parseLong(args[7]) : 0);
+        clip.write(args[0]);
+        System.out.println(clip + " -> " + args[0]);
+    }
+}
@@ -1,53 +1,1637 @@
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
 /**
- * TestTransition - A simple program to test a video transition
+ * TestTransition - Quality and speed regression harness for the transition effects
+ *
+ * Every effect with a fast path is rendered through the reference BGR effect
+ * and through the fast path (the planar YUV effects, fused EffectGraphs and
+ * the FFmpeg filter graphs) over the same transition window of the bundled
+ * clips; luma mattes are checked against the region copy drawing the same
+ * wipe. Both paths start from identical frames: the window is decoded once
+ * as YUV420P and the BGR inputs are converted from it, so only the effects
+ * differ.
+ *
+ * For every frame the fast output is converted to BGR if needed and compared
+ * against the reference output with PSNR and SSIM. A case fails when its
+ * worst frame falls below the case's tolerance, or drops more than a small
+ * margin below the baseline.
+ *
+ * Speed is recorded alongside: the effect time per frame of both paths (best
+ * of several runs) and, unless --kernels-only is given, the frames per second
+ * of a full transition through JavaTransitionEngine. A case fails when either
+ * is more than --speed-tolerance (default 20%) slower than the baseline.
+ * When the vector BlendBackend is available, its crossfade, dip and masked
+ * blends are also checked to stay within +/-1 of the OpenCV backend.
+ *
+ * Unless --kernels-only is given, the pipelines around the effects are
+ * checked for their behaviour as well, on a pair of SyntheticClips written
+ * to a temporary directory: each check runs real jobs and fails with a
+ * message for every expectation its outputs or counters miss.
+ *
+ * The baseline is a properties file written on the first run or with
+ * --update-baseline. It is machine specific and not checked in.
+ *
+ *   java TestTransition [--kernels-only] [--update-baseline] [--only fade,zoom]
+ *                       [--baseline file] [--speed-tolerance 0.2] [--report frames.csv]
+ *                       [input1 input2 [duration]]
+ *
+ * Exits with 0 when every case passes, 1 on a regression and 2 on bad arguments.
  */
 public class TestTransition {
-    public static void main(String[] args) {
-        // Define input and output paths
+
+    // Timed runs per path, the fastest one counts
+    private static final int KERNEL_RUNS = 5;
+
+    // Allowed drop below the baseline quality, to absorb codec and rounding noise
+    private static final double PSNR_DROP_DB = 0.5;
+    private static final double SSIM_DROP = 0.005;
+
+    // Dip colours for the blend backend check, per channel of BGR and of an I420 buffer
+    private static final double[] ORANGE = {40, 120, 250};
+    private static final double[] GREY = {160};
+
+    // Synthetic clips of the behaviour checks: two seconds each, with a one second transition
+    private static final int CHECK_WIDTH = 320;
+    private static final int CHECK_HEIGHT = 180;
+    private static final int CHECK_FRAMES = 60;
+    private static final int CHECK_FPS = 30;
+    private static final int AUDIO_SAMPLE_RATE = 44100;
+    private static final double CHECK_DURATION = 1.0;
+
+    // SSIM constants for 8-bit samples, (0.01 * 255)^2 and (0.03 * 255)^2
+    private static final double SSIM_C1 = 6.5025;
+    private static final double SSIM_C2 = 58.5225;
+
+    /**
+     * A reference effect, its fast path (or null for a speed-only case) and the quality the fast path must keep
+     */
+    static final class Case {
+        final String name;
+        final Supplier<FrameEffect> reference;
+        final Supplier<FrameEffect> fast;
+        final double minPsnr;
+        final double minSsim;
+
+        Case(String name, Supplier<FrameEffect> reference, Supplier<FrameEffect> fast, double minPsnr, double minSsim) {
+            this.name = name;
+            this.reference = reference;
+            this.fast = fast;
+            this.minPsnr = minPsnr;
+            this.minSsim = minSsim;
+        }
+    }
+
+    /**
+     * A behaviour check of a pipeline on the synthetic clips
+     */
+    static final class Check {
+        final String name;
+        final CheckBody body;
+
+        Check(String name, CheckBody body) {
+            this.name = name;
+            this.body = body;
+        }
+    }
+
+    interface CheckBody {
+        /**
+         * @param clip1 Path of the first synthetic clip
+         * @param clip2 Path of the second synthetic clip
+         * @param dir Directory for outputs, deleted after the checks
+         * @param failures Receives a message for every expectation that is not met
+         */
+        void run(String clip1, String clip2, File dir, List<String> failures) throws Exception;
+    }
+
+    /**
+     * What one case measured
+     */
+    static final class Result {
+        final Case testCase;
+        final List<String> failures = new ArrayList<>();
+        double[] psnr = new double[0];
+        double[] ssim = new double[0];
+        double referenceMsPerFrame;
+        double fastMsPerFrame = Double.NaN;
+        double referenceFps = Double.NaN;
+        double fastFps = Double.NaN;
+
+        Result(Case testCase) {
+            this.testCase = testCase;
+        }
+    }
+
+    /**
+     * @return The effects under test, paired with their fast paths
+     */
+    static List<Case> cases() {
+        List<Case> cases = new ArrayList<>();
+        cases.add(new Case("fade", JavaTransitionEngine::fadeEffect, YuvTransitionEngine::fadeEffect, 45.0, 0.99));
+        cases.add(new Case("flash", JavaTransitionEngine::lightFlashEffect, YuvTransitionEngine::lightFlashEffect, 45.0, 0.99));
+        cases.add(new Case("zoom", () -> JavaTransitionEngine.zoomEffect(1.5), () -> YuvTransitionEngine.zoomEffect(1.5), 33.0, 0.94));
+        cases.add(new Case("spin", JavaTransitionEngine::spinEffect, YuvTransitionEngine::spinEffect, 42.0, 0.98));
+        cases.add(new Case("whip", () -> JavaTransitionEngine.whipPanEffect("left", 50),
+                () -> YuvTransitionEngine.whipPanEffect("left", 50), 40.0, 0.98));
+        cases.add(new Case("wipe", () -> JavaTransitionEngine.wipeEffect("down-right", 16),
+                () -> YuvTransitionEngine.wipeEffect("down-right", 16), 40.0, 0.98));
+        cases.add(new Case("slide", () -> JavaTransitionEngine.slideEffect("left", 16),
+                () -> YuvTransitionEngine.slideEffect("left", 16), 40.0, 0.98));
+        // Half resolution chroma moves in two-pixel steps, so on odd offsets the whole pushed frame
+        // carries its colour a pixel off the BGR reference
+        cases.add(new Case("push", () -> JavaTransitionEngine.pushEffect("up-left"),
+                () -> YuvTransitionEngine.pushEffect("up-left"), 32.0, 0.95));
+        // A hard linear matte is a wipe drawn through a threshold map of 256 levels: at 960 pixels a level
+        // spans about 3.75 columns, so its edge can land a few columns away from the region copy's
+        // (34.6 dB, SSIM 0.993 at worst on the bundled clips)
+        cases.add(new Case("matte-linear", () -> JavaTransitionEngine.wipeEffect("right", 0),
+                () -> LumaMatte.linear("right", 0), 33.0, 0.99));
+        // Fused pointwise nodes against the light flash and against the same graph run node by node
+        cases.add(new Case("graph-flash", JavaTransitionEngine::lightFlashEffect,
+                () -> new EffectGraph().then(EffectGraph.dipToColor(255, 255, 255)), 45.0, 0.99));
+        cases.add(new Case("graph-zoom-dip", () -> zoomDipGraph().fused(false), TestTransition::zoomDipGraph, 45.0, 0.99));
+        // FFmpeg filter graphs against the OpenCV effects they stand in for. The geometric ones
+        // resample differently (whole-pixel zoompan windows, Gaussian blurs) and get looser floors
+        cases.add(new Case("ff-fade", JavaTransitionEngine::fadeEffect, FilterGraphEngine::fadeEffect, 44.0, 0.99));
+        cases.add(new Case("ff-flash", JavaTransitionEngine::lightFlashEffect, FilterGraphEngine::lightFlashEffect, 44.0, 0.99));
+        cases.add(new Case("ff-zoom", () -> JavaTransitionEngine.zoomEffect(1.5), () -> FilterGraphEngine.zoomEffect(1.5), 27.0, 0.70));
+        cases.add(new Case("ff-spin", JavaTransitionEngine::spinEffect, FilterGraphEngine::spinEffect, 31.0, 0.94));
+        cases.add(new Case("ff-whip", () -> JavaTransitionEngine.whipPanEffect("left", 50),
+                () -> FilterGraphEngine.whipPanEffect("left", 50), 33.0, 0.94));
+        cases.add(new Case("ff-blur", () -> JavaTransitionEngine.blurEffect(25), () -> FilterGraphEngine.blurEffect(25), 32.0, 0.86));
+        // No fast path yet, only their speed is tracked
+        cases.add(new Case("glitch", () -> JavaTransitionEngine.glitchEffect(25), null, 0, 0));
+        cases.add(new Case("blur", () -> JavaTransitionEngine.blurEffect(25), null, 0, 0));
+        cases.add(new Case("ff-glitch", () -> FilterGraphEngine.glitchEffect(25), null, 0, 0));
+        return cases;
+    }
+
+    /**
+     * @return The pipeline behaviour checks
+     */
+    static List<Check> checks() {
+        List<Check> checks = new ArrayList<>();
+        checks.add(new Check("cache", TestTransition::checkFrameCache));
+        checks.add(new Check("copies", TestTransition::checkFrameCopies));
+        checks.add(new Check("warmup", TestTransition::checkWarmUp));
+        checks.add(new Check("chunked", TestTransition::checkChunkedEncoding));
+        checks.add(new Check("fanout", TestTransition::checkFanOut));
+        checks.add(new Check("hls", TestTransition::checkHlsSegments));
+        checks.add(new Check("live", TestTransition::checkLiveSwitcher));
+        checks.add(new Check("scenecuts", TestTransition::checkSceneCuts));
+        checks.add(new Check("ladder", TestTransition::checkLadder));
+        checks.add(new Check("matte", TestTransition::checkLumaMattes));
+        checks.add(new Check("region", TestTransition::checkRegionTransitions));
+        return checks;
+    }
+
+    /**
+     * Zoom followed by three pointwise nodes that the graph folds into one pass
+     */
+    private static EffectGraph zoomDipGraph() {
+        return new EffectGraph()
+                .then(JavaTransitionEngine.zoomEffect(1.5))
+                .then(EffectGraph.dipToColor(0, 0, 0))
+                .then(EffectGraph.brightness(0.9, 12))
+                .then(EffectGraph.blend(), EffectGraph.Input.PREVIOUS, EffectGraph.Input.SECOND);
+    }
+
+    public static void main(String[] args) throws Exception {
         String input1 = "../input_videos/clip_a.mp4";
         String input2 = "../input_videos/clip_b.mp4";
-        String output = "../output_videos/fade_output.mp4";
+        double duration = 1.0;
+        File baselineFile = new File("regression_baseline.properties");
+        File reportFile = null;
+        double speedTolerance = 0.20;
+        boolean kernelsOnly = false;
+        boolean updateBaseline = false;
+        List<String> only = null;
 
-        // Generate commands for different transitions
-        System.out.println("=== FFmpeg Commands for Video Transitions ===\n");
+        List<String> positional = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--kernels-only": kernelsOnly = true; break;
+                    case "--update-baseline": updateBaseline = true; break;
+                    case "--baseline": baselineFile = new File(args[++i]); break;
+                    case "--report": reportFile = new File(args[++i]); break;
+                    case "--speed-tolerance": speedTolerance = Double.parseDouble(args[++i]); break;
+                    case "--only": only = Arrays.asList(args[++i].split(",")); break;
+                    default: positional.add(args[i]); break;
+                }
+            }
+            if (positional.size() == 1 || positional.size() > 3) {
+                throw new IllegalArgumentException("expected input1 input2 [duration]");
+            }
+            if (positional.size() >= 2) {
+                input1 = positional.get(0);
+                input2 = positional.get(1);
+            }
+            if (positional.size() == 3) {
+                duration = Double.parseDouble(positional.get(2));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Usage: TestTransition [--kernels-only] [--update-baseline] [--only fade,zoom] "
+                    + "[--baseline file] [--speed-tolerance 0.2] [--report frames.csv] [input1 input2 [duration]]");
+            System.exit(2);
+            return;
+        }
 
-        // 1. Fade transition
-        String fadeCommand = TransitionEngine.getFadeCommand(input1, input2, output, 1.0);
-        System.out.println("1. Fade Transition Command:");
-        System.out.println(fadeCommand);
-        System.out.println();
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+        Properties baseline = loadBaseline(baselineFile);
+        boolean writeBaseline = updateBaseline || baseline.isEmpty();
+
+        System.out.println("=== Transition Regression ===");
+        System.out.println("Inputs: " + input1 + ", " + input2 + " (" + duration + " s transition)");
+
+        // Decode the transition window once, both paths render from it
+        List<Mat> yuv1 = new ArrayList<>();
+        List<Mat> yuv2 = new ArrayList<>();
+        double frameRate = decodeWindow(input1, input2, duration, yuv1, yuv2);
+        List<Mat> bgr1 = toBgr(yuv1);
+        List<Mat> bgr2 = toBgr(yuv2);
+        System.out.println("Window: " + yuv1.size() + " frames at " + bgr1.get(0).cols() + "x" + bgr1.get(0).rows());
+
+        if (!kernelsOnly) {
+            // Keep cold-start costs out of the end-to-end numbers
+            TransitionSession.shared().warmUp();
+        }
 
-        // 2. Glitch transition
-        String glitchOutput = "../output_videos/glitch_output.mp4";
-        String glitchCommand = TransitionEngine.getGlitchCommand(input1, input2, glitchOutput, 1.2, 25);
-        System.out.println("2. Glitch Transition Command:");
-        System.out.println(glitchCommand);
+        List<Result> results = new ArrayList<>();
+        for (Case testCase : cases()) {
+            if (only != null && !only.contains(testCase.name)) continue;
+
+            Result result = new Result(testCase);
+            measureKernels(result, yuv1, yuv2, bgr1, bgr2, frameRate);
+            if (!kernelsOnly) {
+                measureEndToEnd(result, input1, input2, duration);
+            }
+            check(result, baseline, speedTolerance);
+            results.add(result);
+            print(result);
+        }
+
+        // The vector blend kernels must stay within +/-1 of OpenCV
+        int blendCases = 0;
+        int blendFailures = 0;
+        if (only == null || only.contains("blend")) {
+            blendCases = 1;
+            blendFailures = checkBlendBackends(yuv1, yuv2, bgr1, bgr2) ? 0 : 1;
+        }
+
+        // Pipeline behaviour on synthetic clips
+        int checkCases = 0;
+        int checkFailures = 0;
+        if (!kernelsOnly) {
+            File dir = Files.createTempDirectory("transition-checks").toFile();
+            try {
+                String clip1 = new File(dir, "synthetic1.mp4").getPath();
+                String clip2 = new File(dir, "synthetic2.mp4").getPath();
+                new SyntheticClip(CHECK_WIDTH, CHECK_HEIGHT, CHECK_FPS, CHECK_FRAMES, 1).write(clip1);
+                new SyntheticClip(CHECK_WIDTH, CHECK_HEIGHT, CHECK_FPS, CHECK_FRAMES, 2).write(clip2);
+                for (Check check : checks()) {
+                    if (only != null && !only.contains(check.name)) continue;
+                    checkCases++;
+                    checkFailures += runCheck(check, clip1, clip2, dir) ? 0 : 1;
+                }
+            } finally {
+                deleteTree(dir);
+            }
+        }
+
+        for (List<Mat> frames : Arrays.asList(yuv1, yuv2, bgr1, bgr2)) {
+            for (Mat mat : frames) {
+                mat.release();
+            }
+        }
+
+        if (reportFile != null) {
+            writeReport(reportFile, results);
+            System.out.println("Per-frame report written to " + reportFile);
+        }
+
+        int failed = blendFailures + checkFailures;
+        for (Result result : results) {
+            if (!result.failures.isEmpty()) failed++;
+        }
+        if (writeBaseline && failed == 0) {
+            saveBaseline(baselineFile, baseline, results);
+            System.out.println("Baseline written to " + baselineFile);
+        }
+
+        int total = results.size() + blendCases + checkCases;
         System.out.println();
+        System.out.println(failed == 0 ? "PASSED: " + total + " cases"
+                : "FAILED: " + failed + " of " + total + " cases");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * Decodes the last transition frames of the first video and the first of
+     * the second, as the engine overlaps them, into I420 Mats
+     *
+     * @return Frame rate of the first video
+     */
+    private static double decodeWindow(String input1, String input2, double duration,
+                                     List<Mat> frames1, List<Mat> frames2) throws Exception {
+        FFmpegFrameGrabber grabber1 = new FFmpegFrameGrabber(input1);
+        FFmpegFrameGrabber grabber2 = new FFmpegFrameGrabber(input2);
+        grabber1.setPixelFormat(AV_PIX_FMT_YUV420P);
+        grabber2.setPixelFormat(AV_PIX_FMT_YUV420P);
+        try {
+            grabber1.start();
+            int transitionFrames = (int) (duration * grabber1.getVideoFrameRate());
+            if (transitionFrames <= 0) {
+                throw new IllegalArgumentException("The transition is shorter than one frame");
+            }
+
+            // The frame count in the header is not exact, so keep a window of the most recent frames
+            Deque<Mat> window = new ArrayDeque<>();
+            Frame frame;
+            while ((frame = grabber1.grabImage()) != null) {
+                window.addLast(copy(frame));
+                if (window.size() > transitionFrames) {
+                    window.removeFirst().release();
+                }
+            }
+            frames1.addAll(window);
 
-        // 3. Zoom transition
-        String zoomOutput = "../output_videos/zoom_output.mp4";
-        String zoomCommand = TransitionEngine.getZoomCommand(input1, input2, zoomOutput, 1.5, 1.5);
-        System.out.println("3. Zoom Transition Command:");
-        System.out.println(zoomCommand);
+            grabber2.setImageWidth(grabber1.getImageWidth());
+            grabber2.setImageHeight(grabber1.getImageHeight());
+            grabber2.start();
+            while (frames2.size() < frames1.size() && (frame = grabber2.grabImage()) != null) {
+                frames2.add(copy(frame));
+            }
+            while (frames1.size() > frames2.size()) {
+                frames1.remove(0).release();
+            }
+            return grabber1.getVideoFrameRate();
+        } finally {
+            grabber1.stop();
+            grabber2.stop();
+        }
+    }
+
+    /**
+     * Copies a decoded frame out of the grabber's reused buffer
+     */
+    private static Mat copy(Frame frame) {
+        try (Mat view = JavaTransitionEngine.toMat(frame, AV_PIX_FMT_YUV420P)) {
+            return view.clone();
+        }
+    }
+
+    private static List<Mat> toBgr(List<Mat> i420) {
+        List<Mat> bgr = new ArrayList<>();
+        for (Mat mat : i420) {
+            Mat converted = new Mat();
+            cvtColor(mat, converted, COLOR_YUV2BGR_I420);
+            bgr.add(converted);
+        }
+        return bgr;
+    }
+
+    /**
+     * Compares the fast path against the reference frame by frame, then times both
+     */
+    private static void measureKernels(Result result, List<Mat> yuv1, List<Mat> yuv2,
+                                       List<Mat> bgr1, List<Mat> bgr2, double frameRate) {
+        Case testCase = result.testCase;
+        int frames = bgr1.size();
+
+        FrameEffect reference = testCase.reference.get();
+        FrameEffect fast = testCase.fast != null ? testCase.fast.get() : null;
+        Mat referenceOut = new Mat();
+        Mat fastOut = new Mat();
+        Mat fastBgr = new Mat();
+        boolean planar = fast != null && fast.pixelFormat() == AV_PIX_FMT_YUV420P;
+        try {
+            if (fast != null) {
+                result.psnr = new double[frames];
+                result.ssim = new double[frames];
+                reference.prepare(frameRate, frames);
+                fast.prepare(frameRate, frames);
+                for (int i = 0; i < frames; i++) {
+                    double progress = (double) i / frames;
+                    render(reference, bgr1.get(i), bgr2.get(i), referenceOut, progress);
+                    if (planar) {
+                        render(fast, yuv1.get(i), yuv2.get(i), fastOut, progress);
+                        cvtColor(fastOut, fastBgr, COLOR_YUV2BGR_I420);
+                    } else {
+                        render(fast, bgr1.get(i), bgr2.get(i), fastBgr, progress);
+                    }
+                    result.psnr[i] = psnr(referenceOut, fastBgr);
+                    result.ssim[i] = ssim(referenceOut, fastBgr);
+                }
+            }
+
+            // Planar references (the filter graph speed-only cases) are timed on the I420 window
+            result.referenceMsPerFrame = reference.pixelFormat() == AV_PIX_FMT_YUV420P
+                    ? timeKernel(reference, yuv1, yuv2, referenceOut, frameRate)
+                    : timeKernel(reference, bgr1, bgr2, referenceOut, frameRate);
+            if (fast != null) {
+                result.fastMsPerFrame = planar ? timeKernel(fast, yuv1, yuv2, fastOut, frameRate)
+                        : timeKernel(fast, bgr1, bgr2, fastOut, frameRate);
+            }
+        } finally {
+            reference.release();
+            if (fast != null) {
+                fast.release();
+            }
+            referenceOut.release();
+            fastOut.release();
+            fastBgr.release();
+        }
+    }
+
+    /**
+     * Renders one frame the way the engine does, with temporaries freed by a PointerScope
+     */
+    private static void render(FrameEffect effect, Mat frame1, Mat frame2, Mat output, double progress) {
+        try (PointerScope scope = new PointerScope()) {
+            output.create(frame1.rows(), frame1.cols(), frame1.type());
+            effect.apply(frame1, frame2, output, progress);
+        }
+    }
+
+    /**
+     * @return Milliseconds per frame of the fastest of KERNEL_RUNS passes over the window, after one untimed pass
+     */
+    private static double timeKernel(FrameEffect effect, List<Mat> frames1, List<Mat> frames2, Mat output, double frameRate) {
+        int frames = frames1.size();
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run <= KERNEL_RUNS; run++) {
+            // Every pass is a new transition for the effect
+            effect.prepare(frameRate, frames);
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                render(effect, frames1.get(i), frames2.get(i), output, (double) i / frames);
+            }
+            long elapsed = System.nanoTime() - start;
+            if (run > 0) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best / 1e6 / frames;
+    }
+
+    /**
+     * Runs full transitions through the engine and records their frames per second
+     */
+    private static void measureEndToEnd(Result result, String input1, String input2, double duration) throws Exception {
+        result.referenceFps = renderFile(result.testCase.reference.get(), input1, input2, duration);
+        if (result.testCase.fast != null) {
+            result.fastFps = renderFile(result.testCase.fast.get(), input1, input2, duration);
+        }
+    }
+
+    private static double renderFile(FrameEffect effect, String input1, String input2, double duration) throws Exception {
+        File output = File.createTempFile("regression_" + effect.name() + "_", ".mp4");
+        try {
+            TransitionJob job = TransitionSession.shared().submitTransition(Runnable::run, input1, input2,
+                    output.getPath(), duration, effect, null);
+            job.get();
+            return job.getMetrics().getFramesPerSecond();
+        } finally {
+            output.delete();
+        }
+    }
+
+    /**
+     * Applies the quality tolerances and compares the speed against the baseline
+     */
+    private static void check(Result result, Properties baseline, double speedTolerance) {
+        Case testCase = result.testCase;
+        String key = testCase.name + ".";
+
+        if (testCase.fast != null) {
+            double minPsnr = min(result.psnr);
+            double minSsim = min(result.ssim);
+            if (minPsnr < testCase.minPsnr) {
+                result.failures.add(String.format("PSNR %.2f dB at frame %d is below %.2f dB",
+                        minPsnr, indexOf(result.psnr, minPsnr), testCase.minPsnr));
+            }
+            if (minSsim < testCase.minSsim) {
+                result.failures.add(String.format("SSIM %.4f at frame %d is below %.4f",
+                        minSsim, indexOf(result.ssim, minSsim), testCase.minSsim));
+            }
+            double basePsnr = baselineValue(baseline, key + "psnr.min");
+            double baseSsim = baselineValue(baseline, key + "ssim.min");
+            if (minPsnr < basePsnr - PSNR_DROP_DB) {
+                result.failures.add(String.format("PSNR dropped from %.2f to %.2f dB", basePsnr, minPsnr));
+            }
+            if (minSsim < baseSsim - SSIM_DROP) {
+                result.failures.add(String.format("SSIM dropped from %.4f to %.4f", baseSsim, minSsim));
+            }
+        }
+
+        checkTime(result, "reference kernel", result.referenceMsPerFrame,
+                baselineValue(baseline, key + "reference.msPerFrame"), speedTolerance);
+        checkTime(result, "fast kernel", result.fastMsPerFrame,
+                baselineValue(baseline, key + "fast.msPerFrame"), speedTolerance);
+        checkRate(result, "reference", result.referenceFps, baselineValue(baseline, key + "reference.fps"), speedTolerance);
+        checkRate(result, "fast", result.fastFps, baselineValue(baseline, key + "fast.fps"), speedTolerance);
+    }
+
+    private static void checkTime(Result result, String what, double msPerFrame, double baseline, double tolerance) {
+        if (!Double.isNaN(msPerFrame) && !Double.isNaN(baseline) && msPerFrame > baseline * (1 + tolerance)) {
+            result.failures.add(String.format("%s slowed from %.2f to %.2f ms/frame", what, baseline, msPerFrame));
+        }
+    }
+
+    private static void checkRate(Result result, String what, double fps, double baseline, double tolerance) {
+        if (!Double.isNaN(fps) && !Double.isNaN(baseline) && fps < baseline * (1 - tolerance)) {
+            result.failures.add(String.format("%s transition slowed from %.1f to %.1f frames/s", what, baseline, fps));
+        }
+    }
+
+    private static void print(Result result) {
+        Case testCase = result.testCase;
         System.out.println();
+        System.out.println(testCase.name + (result.failures.isEmpty() ? ": ok" : ": FAILED"));
+        if (testCase.fast != null) {
+            System.out.printf("  PSNR  min %.2f dB, mean %.2f dB (tolerance %.2f dB)%n",
+                    min(result.psnr), average(result.psnr), testCase.minPsnr);
+            System.out.printf("  SSIM  min %.4f, mean %.4f (tolerance %.4f)%n",
+                    min(result.ssim), average(result.ssim), testCase.minSsim);
+            System.out.printf("  Kernel  reference %.2f ms/frame, fast %.2f ms/frame (%.2fx)%n",
+                    result.referenceMsPerFrame, result.fastMsPerFrame, result.referenceMsPerFrame / result.fastMsPerFrame);
+        } else {
+            System.out.printf("  Kernel  %.2f ms/frame (no fast path)%n", result.referenceMsPerFrame);
+        }
+        if (!Double.isNaN(result.referenceFps)) {
+            System.out.printf(testCase.fast != null ? "  Transition  reference %.1f frames/s, fast %.1f frames/s%n"
+                    : "  Transition  %.1f frames/s%n", result.referenceFps, result.fastFps);
+        }
+        for (String failure : result.failures) {
+            System.out.println("  ! " + failure);
+        }
+    }
 
-        // 4. Blur transition
-        String blurOutput = "../output_videos/blur_output.mp4";
-        String blurCommand = TransitionEngine.getBlurCommand(input1, input2, blurOutput, 1.5, 35);
-        System.out.println("4. Blur Transition Command:");
-        System.out.println(blurCommand);
+    /**
+     * Runs the crossfade, dip and masked blend of the vector backend and the
+     * OpenCV backend over the window and compares them sample by sample
+     *
+     * @return false if any sample differs by more than 1
+     */
+    private static boolean checkBlendBackends(List<Mat> yuv1, List<Mat> yuv2, List<Mat> bgr1, List<Mat> bgr2) {
         System.out.println();
+        BlendBackend vector;
+        try {
+            vector = BlendBackend.forName("vector");
+        } catch (IllegalArgumentException e) {
+            System.out.println("blend: skipped, " + e.getMessage());
+            return true;
+        }
+        BlendBackend opencv = BlendBackend.opencv();
+
+        // Luma of the second video as the mask, as a luma matte would use it
+        List<Mat> bgrMasks = new ArrayList<>();
+        for (Mat frame : bgr2) {
+            Mat mask = new Mat();
+            cvtColor(frame, mask, COLOR_BGR2GRAY);
+            bgrMasks.add(mask);
+        }
+
+        String[] names = {"crossfade bgr", "crossfade i420", "dip bgr", "dip i420", "masked bgr", "masked i420"};
+        boolean passed = true;
+        System.out.println("blend: vector against opencv");
+        for (int op = 0; op < names.length; op++) {
+            boolean planar = op % 2 == 1;
+            List<Mat> frames1 = planar ? yuv1 : bgr1;
+            List<Mat> frames2 = planar ? yuv2 : bgr2;
+            List<Mat> masks = planar ? yuv2 : bgrMasks;
+
+            Mat expected = new Mat();
+            Mat actual = new Mat();
+            Mat difference = new Mat();
+            double maxDifference = 0;
+            long[] nanos = new long[2];
+            // The first pass lets the JIT compile the Java kernels, the second one is timed
+            for (int pass = 0; pass < 2; pass++) {
+                nanos[0] = 0;
+                nanos[1] = 0;
+                for (int i = 0; i < frames1.size(); i++) {
+                    double progress = (double) i / frames1.size();
+                    for (int backend = 0; backend < 2; backend++) {
+                        BlendBackend blend = backend == 0 ? opencv : vector;
+                        Mat target = backend == 0 ? expected : actual;
+                        long start = System.nanoTime();
+                        switch (op / 2) {
+                            case 0: blend.crossfade(frames1.get(i), frames2.get(i), target, progress); break;
+                            case 1: blend.dipToColor(frames1.get(i), target, progress, planar ? GREY : ORANGE); break;
+                            default: blend.maskedBlend(frames1.get(i), frames2.get(i), masks.get(i), target); break;
+                        }
+                        nanos[backend] += System.nanoTime() - start;
+                    }
+                    absdiff(expected, actual, difference);
+                    double[] max = new double[1];
+                    minMaxLoc(difference.reshape(1, 0), null, max, null, null, null);
+                    maxDifference = Math.max(maxDifference, max[0]);
+                }
+            }
+            expected.release();
+            actual.release();
+            difference.release();
 
-        // 5. Whip Pan transition
-        String whipOutput = "../output_videos/whip_output.mp4";
-        String whipCommand = TransitionEngine.getWhipPanCommand(input1, input2, whipOutput, 1.0, "left", 100);
-        System.out.println("5. Whip Pan Transition Command:");
-        System.out.println(whipCommand);
+            boolean ok = maxDifference <= 1.0;
+            passed &= ok;
+            System.out.printf("  %-15s max difference %.0f, opencv %.2f ms/frame, vector %.2f ms/frame%s%n", names[op],
+                    maxDifference, nanos[0] / 1e6 / frames1.size(), nanos[1] / 1e6 / frames1.size(), ok ? "" : "  ! more than 1");
+        }
+
+        for (Mat mask : bgrMasks) {
+            mask.release();
+        }
+        return passed;
+    }
+
+    private static boolean runCheck(Check check, String clip1, String clip2, File dir) {
+        List<String> failures = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            check.body.run(clip1, clip2, dir, failures);
+        } catch (Exception e) {
+            failures.add("threw " + e);
+        }
         System.out.println();
+        System.out.printf("%s: %s (%.1f s)%n", check.name, failures.isEmpty() ? "ok" : "FAILED", (System.nanoTime() - start) / 1e9);
+        for (String failure : failures) {
+            System.out.println("  ! " + failure);
+        }
+        return failures.isEmpty();
+    }
+
+    /**
+     * Jobs served from the frame cache, from memory or from the spill files,
+     * write the same frames as the job that decoded its windows, and the cache
+     * gives its memory back to the budget when it is closed
+     */
+    private static void checkFrameCache(String clip1, String clip2, File dir, List<String> failures) throws Exception {
+        if (DecodedFrameCache.fromSystemProperties().isEnabled() && System.getProperty("transition.cache.memory") == null
+                && System.getProperty("transition.cache.spill") == null) {
+            failures.add("the frame cache is on without -Dtransition.cache.*");
+        }
+        DecodedFrameCache previous = JavaTransitionEngine.getFrameCache();
+        NativeMemoryBudget budget = JavaTransitionEngine.getMemoryBudget();
+        try {
+            String decoded = new File(dir, "cache-decoded.mp4").getPath();
+            JavaTransitionEngine.setFrameCache(DecodedFrameCache.disabled());
+            renderJob(clip1, clip2, decoded, JavaTransitionEngine.fadeEffect());
+            List<Mat> expected = decodeFrames(decoded);
+
+            long reservedBefore = budget.getReservedBytes();
+            for (String tier : new String[] {"memory", "spill"}) {
+                DecodedFrameCache cache = tier.equals("memory") ? new DecodedFrameCache(64L << 20, 0, dir)
+                        : new DecodedFrameCache(0, 64L << 20, dir);
+                JavaTransitionEngine.setFrameCache(cache);
+                try {
+                    // Runs until the windows are served from the cache, every output must match the decoded one
+                    for (int run = 1; run <= 3 && cache.getMemoryHits() + cache.getSpillHits() == 0; run++) {
+                        String output = new File(dir, "cache-" + tier + "-" + run + ".mp4").getPath();
+                        renderJob(clip1, clip2, output, JavaTransitionEngine.fadeEffect());
+                        String difference = compareFrames(expected, decodeFrames(output));
+                        if (difference != null) {
+                            failures.add(tier + " run " + run + ": " + difference);
+                        }
+                    }
+                    long hits = tier.equals("memory") ? cache.getMemoryHits() : cache.getSpillHits();
+                    if (hits == 0) {
+                        failures.add("no frame was served from the " + tier + " tier: " + cache);
+                    }
+                } finally {
+                    cache.close();
+                }
+            }
+            if (budget.getReservedBytes() != reservedBefore) {
+                failures.add(String.format("the closed caches still hold %d bytes of the memory budget",
+                        budget.getReservedBytes() - reservedBefore));
+            }
+            release(expected);
+        } finally {
+            JavaTransitionEngine.setFrameCache(previous);
+        }
+    }
+
+    /**
+     * A job copies at most one frame per output frame on the BGR and the YUV
+     * path, on its first run with the cache on as well as without it, and
+     * once its windows are served from the cache
+     */
+    private static void checkFrameCopies(String clip1, String clip2, File dir, List<String> failures) throws Exception {
+        DecodedFrameCache previous = JavaTransitionEngine.getFrameCache();
+        try {
+            for (boolean planar : new boolean[] {false, true}) {
+                String path = planar ? "yuv" : "bgr";
+                JavaTransitionEngine.setFrameCache(DecodedFrameCache.disabled());
+                expectCopies(failures, path + " without cache", renderJob(clip1, clip2,
+                        new File(dir, "copies-off.mp4").getPath(), copyEffect(planar)), 1, 1);
+
+                DecodedFrameCache cache = new DecodedFrameCache(64L << 20, 0, dir);
+                JavaTransitionEngine.setFrameCache(cache);
+                try {
+                    // A first run must not pay for filling the cache
+                    expectCopies(failures, path + " first run", renderJob(clip1, clip2,
+                            new File(dir, "copies-first.mp4").getPath(), copyEffect(planar)), 1, 1);
+                    renderJob(clip1, clip2, new File(dir, "copies-store.mp4").getPath(), copyEffect(planar));
+                    expectCopies(failures, path + " cached run", renderJob(clip1, clip2,
+                            new File(dir, "copies-hit.mp4").getPath(), copyEffect(planar)), 1, 1);
+                    if (cache.getMemoryHits() == 0) {
+                        failures.add(path + ": the third run was not served from the cache: " + cache);
+                    }
+                } finally {
+                    cache.close();
+                }
+            }
+        } finally {
+            JavaTransitionEngine.setFrameCache(previous);
+        }
+    }
+
+    /**
+     * Warming up a session leaves the frame cache untouched and reports no
+     * job to the registered listeners
+     */
+    private static void checkWarmUp(String clip1, String clip2, File dir, List<String> failures) throws Exception {
+        DecodedFrameCache previous = JavaTransitionEngine.getFrameCache();
+        DecodedFrameCache cache = new DecodedFrameCache(64L << 20, 0, dir);
+        int[] reported = new int[1];
+        TransitionListener listener = new TransitionListener() {
+            @Override
+            public void jobStarted(TransitionMetrics metrics) {
+                reported[0]++;
+            }
+        };
+        JavaTransitionEngine.setFrameCache(cache);
+        JavaTransitionEngine.addTransitionListener(listener);
+        try {
+            TransitionSession.shared().warmUp();
+            if (reported[0] > 0) {
+                failures.add(reported[0] + " warm-up jobs were reported to the listeners");
+            }
+            if (cache.getMisses() > 0 || cache.getMemoryBytes() > 0) {
+                failures.add("warm-up went through the frame cache: " + cache);
+            }
+        } finally {
+            JavaTransitionEngine.removeTransitionListener(listener);
+            JavaTransitionEngine.setFrameCache(previous);
+            cache.close();
+        }
+    }
+
+    /**
+     * Chunked encoding writes the frames of a single pass, also when an input
+     * has fewer video frames than its header says
+     */
+    private static void checkChunkedEncoding(String clip1, String clip2, File dir, List<String> failures) throws Exception {
+        // Audio running past the video makes the container, and so the frame count the timeline plans with, longer
+        String overstated = new File(dir, "chunked-overstated.mp4").getPath();
+        writeWithAudio(clip1, overstated, CHECK_FRAMES * 3.0 / CHECK_FPS);
+
+        // Windows served from the cache would let the single pass seek past a short input
+        DecodedFrameCache previous = JavaTransitionEngine.getFrameCache();
+        JavaTransitionEngine.setFrameCache(DecodedFrameCache.disabled());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (String input1 : new String[] {clip1, overstated}) {
+                String what = input1 == clip1 ? "chunked" : "chunked with an overstated input";
+                String single = new File(dir, "chunked-single.mp4").getPath();
+                String chunked = new File(dir, "chunked-parts.mp4").getPath();
+                JavaTransitionEngine.applyTransition(input1, clip2, single, CHECK_DURATION, JavaTransitionEngine.AT_END,
+                        JavaTransitionEngine.fadeEffect());
+                // Chunks are whole GOPs, so every chunk but the transition's holds one GOP of the clips
+                ChunkedTransitionEncoder.applyTransition(executor, input1, clip2, chunked, CHECK_DURATION,
+                        JavaTransitionEngine.AT_END, JavaTransitionEngine.fadeEffect(), 0.1);
+
+                List<Mat> expected = decodeFrames(single);
+                List<Mat> actual = decodeFrames(chunked);
+                try {
+                    expectAligned(failures, what, expected, actual);
+                } finally {
+                    release(expected);
+                    release(actual);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            JavaTransitionEngine.setFrameCache(previous);
+        }
+    }
+
+    /**
+     * Each output of a fan-out has the frames of a single pass of its own
+     * effect, although all of them are rendered from one decode of the clips,
+     * also when an input has fewer video frames than its header says and when
+     * the transition starts before the end of the first clip
+     */
+    private static void checkFanOut(String clip1, String clip2, File dir, List<String> failures) throws Exception {
+        String overstated = new File(dir, "fanout-overstated.mp4").getPath();
+        writeWithAudio(clip1, overstated, CHECK_FRAMES * 3.0 / CHECK_FPS);
+        String[] names = {"fade", "wipe"};
+        List<Supplier<FrameEffect>> effects = Arrays.asList(JavaTransitionEngine::fadeEffect,
+                () -> JavaTransitionEngine.wipeEffect("left", 0));
+
+        DecodedFrameCache previous = JavaTransitionEngine.getFrameCache();
+        JavaTransitionEngine.setFrameCache(DecodedFrameCache.disabled());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            String[] inputs = {clip1, overstated, clip1};
+            double[] offsets = {JavaTransitionEngine.AT_END, JavaTransitionEngine.AT_END, 0.5};
+            String[] labels = {"fan-out", "fan-out with an overstated input", "fan-out at 0.5 s"};
+            for (int variant = 0; variant < inputs.length; variant++) {
+                String input1 = inputs[variant];
+                double offset = offsets[variant];
+                String what = labels[variant];
+                List<String> outputs = new ArrayList<>();
+                List<FrameEffect> fannedOut = new ArrayList<>();
+                for (int k = 0; k < names.length; k++) {
+                    outputs.add(new File(dir, "fanout-" + names[k] + ".mp4").getPath());
+                    fannedOut.add(effects.get(k).get());
+                }
+                List<List<Mat>> expected = new ArrayList<>();
+                try {
+                    TransitionFanOut.applyTransitions(executor, input1, clip2, CHECK_DURATION, offset, fannedOut, outputs);
+                    for (int k = 0; k < names.length; k++) {
+                        String single = new File(dir, "fanout-single-" + names[k] + ".mp4").getPath();
+                        JavaTransitionEngine.applyTransition(input1, clip2, single, CHECK_DURATION,
+                                offset, effects.get(k).get());
+                        expected.add(decodeFrames(single));
+                    }
+
+                    // Halfway through, a fade and a wipe look nothing alike, so an output given the
+                    // other effect's frames is closer to the other single pass there. The single pass
+                    // of the overstated input runs out of frames before the transition
+                    ChunkedTransitionEncoder.Timeline timeline = ChunkedTransitionEncoder.Timeline.probe(clip1, clip2,
+                            CHECK_DURATION, offset);
+                    int middle = timeline.firstVideoFramesToKeep + timeline.transitionFrames / 2;
+                    for (int k = 0; k < names.length; k++) {
+                        List<Mat> actual = decodeFrames(outputs.get(k));
+                        try {
+                            if (!expectAligned(failures, what + " " + names[k], expected.get(k), actual)
+                                    || input1 != clip1) continue;
+                            List<Mat> other = expected.get(1 - k);
+                            if (psnr(other.get(middle), actual.get(middle))
+                                    >= psnr(expected.get(k).get(middle), actual.get(middle))) {
+                                failures.add(String.format("%s %s: frame %d was rendered by the %s effect",
+                                        what, names[k], middle, names[1 - k]));
+                            }
+                        } finally {
+                            release(actual);
+                        }
+                    }
+                } finally {
+                    for (List<Mat> frames : expected) {
+                        release(frames);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+            JavaTransitionEngine.setFrameCache(previous);
+        }
+    }
+
+    /**
+     * Opening an HLS transition renders nothing; its segments add up to the
+     * frames of a single pass, with whole GOPs of the clips copied, opening
+     * it again reuses the segments already produced, and the same transition
+     * starting earlier in the first clip is a playlist of its own
+     */
+    private static void checkHlsSegments(String clip1, String clip2, File dir, List<String> failures) throws Exception {
+        // The shared clips are a single GOP; with keyframes every half second there are GOPs to copy
+        clip1 = new File(dir, "hls-synthetic1.mp4").getPath();
+        clip2 = new File(dir, "hls-synthetic2.mp4").getPath();
+        new SyntheticClip(CHECK_WIDTH, CHECK_HEIGHT, CHECK_FPS, CHECK_FRAMES, "h264", CHECK_FPS / 2, 1).write(clip1);
+        new SyntheticClip(CHECK_WIDTH, CHECK_HEIGHT, CHECK_FPS, CHECK_FRAMES, "h264", CHECK_FPS / 2, 2).write(clip2);
+
+        File root = new File(dir, "hls");
+        HlsTransition transition = HlsTransition.open(root, "fade", clip1, clip2, CHECK_DURATION);
+        File transitionDir = transition.getPlaylist().getParentFile();
+        String[] produced = transitionDir.list((d, name) -> name.endsWith(".ts"));
+        if (produced.length > 0) {
+            failures.add("opening the playlist produced " + produced.length + " segments");
+        }
+        if (transition.getCopiedSegmentCount() == 0 || transition.getCopiedSegmentCount() == transition.getSegmentCount()) {
+            failures.add("expected copied and rendered segments: " + transition);
+        }
+
+        List<String> names = new ArrayList<>();
+        double seconds = 0;
+        for (String line : Files.readAllLines(transition.getPlaylist().toPath())) {
+            if (line.startsWith("#EXTINF:")) {
+                seconds += Double.parseDouble(line.substring(8, line.indexOf(',')));
+            } else if (!line.startsWith("#") && !line.isEmpty()) {
+                names.add(line);
+            }
+        }
+        if (names.size() != transition.getSegmentCount()) {
+            failures.add(String.format("the playlist lists %d segments, %d planned", names.size(), transition.getSegmentCount()));
+        }
+
+        DecodedFrameCache previous = JavaTransitionEngine.getFrameCache();
+        JavaTransitionEngine.setFrameCache(DecodedFrameCache.disabled());
+        List<Mat> expected = null;
+        List<Mat> actual = new ArrayList<>();
+        try {
+            String single = new File(dir, "hls-single.mp4").getPath();
+            JavaTransitionEngine.applyTransition(clip1, clip2, single, CHECK_DURATION, JavaTransitionEngine.AT_END,
+                    JavaTransitionEngine.fadeEffect());
+            expected = decodeFrames(single);
+            if (Math.abs(seconds * CHECK_FPS - expected.size()) > 0.5) {
+                failures.add(String.format("the playlist lasts %.3f s, a single pass %d frames", seconds, expected.size()));
+            }
+
+            List<Long> modified = new ArrayList<>();
+            for (String name : names) {
+                File segment = transition.segment(name, Runnable::run);
+                modified.add(segment.lastModified());
+                actual.addAll(decodeFrames(segment.getPath()));
+            }
+            expectAligned(failures, "hls", expected, actual);
+
+            HlsTransition reopened = HlsTransition.open(root, "fade", clip1, clip2, CHECK_DURATION);
+            if (!reopened.getId().equals(transition.getId())) {
+                failures.add("reopening the transition gave " + reopened.getId() + " instead of " + transition.getId());
+            } else {
+                for (int i = 0; i < names.size(); i++) {
+                    if (reopened.segment(names.get(i), Runnable::run).lastModified() != modified.get(i)) {
+                        failures.add("reopening the transition produced " + names.get(i) + " again");
+                        break;
+                    }
+                }
+            }
+
+            release(expected);
+            expected = null;
+            release(actual);
+            actual.clear();
+            HlsTransition earlier = HlsTransition.open(root, "fade", clip1, clip2, CHECK_DURATION, 0.5);
+            if (earlier.getId().equals(transition.getId())) {
+                failures.add("the transition at 0.5 s reused the playlist of the one at the end");
+            }
+            JavaTransitionEngine.applyTransition(clip1, clip2, single, CHECK_DURATION, 0.5, JavaTransitionEngine.fadeEffect());
+            expected = decodeFrames(single);
+            for (String line : Files.readAllLines(earlier.getPlaylist().toPath())) {
+                if (!line.startsWith("#") && !line.isEmpty()) {
+                    actual.addAll(decodeFrames(earlier.segment(line, Runnable::run).getPath()));
+                }
+            }
+            expectAligned(failures, "hls at 0.5 s", expected, actual);
+        } finally {
+            JavaTransitionEngine.setFrameCache(previous);
+            if (expected != null) {
+                release(expected);
+            }
+            release(actual);
+        }
+    }
+
+    /**
+     * A live transition too slow for the frame period is degraded to keep the
+     * output in time, its effect is tried again as its estimate decays, and
+     * the transition still ends after its planned frames with the other
+     * source on air
+     */
+    private static void checkLiveSwitcher(String clip1, String clip2, File dir, List<String> failures) throws Exception {
+        long periodMillis = 1000 / CHECK_FPS;
+        FrameEffect fade = JavaTransitionEngine.fadeEffect();
+        int[] applied = new int[1];
+        FrameEffect slow = new FrameEffect() {
+            @Override
+            public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+                applied[0]++;
+                fade.apply(frame1, frame2, output, progress);
+                try {
+                    Thread.sleep(3 * periodMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public String name() {
+                return "slow-fade";
+            }
+
+            @Override
+            public void prepare(double frameRate, int frames) {
+                fade.prepare(frameRate, frames);
+            }
+
+            @Override
+            public void release() {
+                fade.release();
+            }
+        };
+
+        int[] finished = {-1, -1};
+        CountDownLatch done = new CountDownLatch(1);
+        LiveSwitcher switcher = new LiveSwitcher(LiveSource.looping(clip1), LiveSource.looping(clip2),
+                new File(dir, "live.ts").getPath(), "mpegts", CHECK_WIDTH, CHECK_HEIGHT, CHECK_FPS);
+        switcher.addListener(new LiveSwitcherListener() {
+            @Override
+            public void transitionFinished(String effect, int frames, int degradedFrames) {
+                finished[0] = frames;
+                finished[1] = degradedFrames;
+                done.countDown();
+            }
+        });
+        switcher.start();
+        try {
+            switcher.trigger(slow, CHECK_DURATION);
+            if (!done.await(10, TimeUnit.SECONDS)) {
+                failures.add("the transition did not finish: " + switcher);
+                return;
+            }
+            int planned = (int) Math.round(CHECK_DURATION * CHECK_FPS);
+            if (finished[0] != planned) {
+                failures.add(String.format("the transition took %d frames, %d planned", finished[0], planned));
+            }
+            if (finished[1] == 0) {
+                failures.add("no frame of an effect three frame periods slow was degraded");
+            }
+            if (applied[0] < 2) {
+                failures.add("the slow effect was not tried again after it was skipped");
+            }
+            if (switcher.getProgramSource() != 1) {
+                failures.add("the second source is not on air after the transition");
+            }
+            if (switcher.getError() != null) {
+                failures.add("the switcher stopped: " + switcher.getError());
+            }
+        } finally {
+            switcher.close();
+        }
+    }
+
+    /**
+     * Scene-cut analysis finds the cuts of a clip joined from three shots on
+     * their first frames, best first, and finds the same ones decoding the
+     * keyframes first
+     */
+    private static void checkSceneCuts(String clip1, String clip2, File dir, List<String> failures) throws Exception {
+        // Shots of 40 frames from both clips, so the cuts fall inside GOPs of 30 frames
+        int shot = 40;
+        String joined = new File(dir, "scenecuts.mp4").getPath();
+        List<Mat> frames1 = decodeFrames(clip1);
+        List<Mat> frames2 = decodeFrames(clip2);
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(joined, CHECK_WIDTH, CHECK_HEIGHT);
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setPixelFormat(AV_PIX_FMT_YUV420P);
+        recorder.setFrameRate(CHECK_FPS);
+        recorder.setGopSize(CHECK_FPS);
+        OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        Mat dark = new Mat();
+        try {
+            recorder.start();
+            for (int i = 0; i < 3 * shot; i++) {
+                Mat frame;
+                if (i < shot) {
+                    frame = frames1.get(i);
+                } else if (i < 2 * shot) {
+                    frame = frames2.get(i - shot);
+                } else {
+                    frames1.get(i - 2 * shot).convertTo(dark, -1, 0.5, 0);
+                    frame = dark;
+                }
+                JavaTransitionEngine.recordMat(recorder, converter, frame, avutil.AV_PIX_FMT_BGR24);
+            }
+            recorder.stop();
+        } finally {
+            recorder.release();
+            converter.close();
+            dark.release();
+            release(frames1);
+            release(frames2);
+        }
+
+        // The second shot resembles the first, so its cut scores lower than the cut to the darkened third
+        // shot; motion within the shots scores about 0.05
+        int[] expected = {2 * shot, shot};
+        for (boolean keyframesFirst : new boolean[] {false, true}) {
+            String what = keyframesFirst ? "keyframes first" : "every frame";
+            List<SceneCutAnalyzer.Cut> cuts = new SceneCutAnalyzer(SceneCutAnalyzer.DEFAULT_ANALYSIS_WIDTH, 0.1,
+                    SceneCutAnalyzer.DEFAULT_MIN_GAP_SECONDS, keyframesFirst).analyze(joined);
+            int[] found = new int[cuts.size()];
+            for (int i = 0; i < found.length; i++) {
+                found[i] = cuts.get(i).getFrame();
+            }
+            if (!Arrays.equals(found, expected)) {
+                failures.add(String.format("%s: cuts found at frames %s, expected %s", what,
+                        Arrays.toString(found), Arrays.toString(expected)));
+                continue;
+            }
+            SceneCutAnalyzer.Cut nearest = SceneCutAnalyzer.nearest(cuts, 1.0);
+            if (nearest.getFrame() != shot || Math.abs(nearest.transitionOffset(CHECK_DURATION)
+                    - ((double) shot / CHECK_FPS - CHECK_DURATION)) > 1e-9) {
+                failures.add(what + ": the cut nearest to 1 s is " + nearest);
+            }
+            // A transition longer than the video before the cut cannot end at it
+            try {
+                double offset = nearest.transitionOffset(nearest.getTime() + 0.1);
+                failures.add(what + ": a transition ending at " + nearest + " starts at " + offset);
+            } catch (IllegalArgumentException e) {
+                // Refused
+            }
+        }
+    }
+
+    /**
+     * Every rung of a ladder has the frames of a single pass at its own size,
+     * whatever order the rungs are given in, and all of them have their
+     * keyframes at the same frames, one per GOP
+     */
+    private static void checkLadder(String clip1, String clip2, File dir, List<String> failures) throws Exception {
+        // Given out of order; the cascade sorts them from the top rung down
+        int[] heights = {90, CHECK_HEIGHT, 120};
+        List<TransitionLadder.Rung> rungs = new ArrayList<>();
+        List<String> outputs = new ArrayList<>();
+        for (int height : heights) {
+            rungs.add(new TransitionLadder.Rung(height, CHECK_WIDTH * height * CHECK_FPS / 8));
+            outputs.add(new File(dir, "ladder-" + height + ".mp4").getPath());
+        }
+
+        DecodedFrameCache previous = JavaTransitionEngine.getFrameCache();
+        JavaTransitionEngine.setFrameCache(DecodedFrameCache.disabled());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Mat> single = null;
+        try {
+            TransitionLadder.applyTransition(executor, clip1, clip2, CHECK_DURATION, JavaTransitionEngine.AT_END,
+                    JavaTransitionEngine.fadeEffect(), rungs, outputs);
+            String singlePath = new File(dir, "ladder-single.mp4").getPath();
+            JavaTransitionEngine.applyTransition(clip1, clip2, singlePath, CHECK_DURATION, JavaTransitionEngine.AT_END,
+                    JavaTransitionEngine.fadeEffect());
+            single = decodeFrames(singlePath);
+            int gopFrames = ChunkedTransitionEncoder.Timeline.probe(clip1, clip2, CHECK_DURATION).gopFrames;
+
+            List<Integer> expectedKeyframes = new ArrayList<>();
+            for (int f = 0; f < single.size(); f += gopFrames) {
+                expectedKeyframes.add(f);
+            }
+            for (int k = 0; k < heights.length; k++) {
+                int height = heights[k];
+                int width = (int) Math.round(height * (double) CHECK_WIDTH / CHECK_HEIGHT / 2) * 2;
+                List<Mat> actual = decodeFrames(outputs.get(k));
+                List<Mat> expected = new ArrayList<>();
+                try {
+                    if (!actual.isEmpty() && (actual.get(0).cols() != width || actual.get(0).rows() != height)) {
+                        failures.add(String.format("%dp: written at %dx%d, expected %dx%d", height,
+                                actual.get(0).cols(), actual.get(0).rows(), width, height));
+                        continue;
+                    }
+                    for (Mat frame : single) {
+                        Mat scaled = new Mat();
+                        resize(frame, scaled, new Size(width, height), 0, 0, INTER_AREA);
+                        expected.add(scaled);
+                    }
+                    expectAligned(failures, height + "p", expected, actual);
+                } finally {
+                    release(actual);
+                    release(expected);
+                }
+                List<Integer> keyframes = keyframes(outputs.get(k));
+                if (!keyframes.equals(expectedKeyframes)) {
+                    failures.add(String.format("%dp: keyframes at %s, expected %s", height, keyframes, expectedKeyframes));
+                }
+            }
+        } finally {
+            executor.shutdown();
+            JavaTransitionEngine.setFrameCache(previous);
+            if (single != null) {
+                release(single);
+            }
+        }
+    }
+
+    /**
+     * @return The frame numbers of a video's keyframes, read from its packets
+     */
+    private static List<Integer> keyframes(String path) throws Exception {
+        List<Integer> keyframes = new ArrayList<>();
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(path);
+        try {
+            grabber.start();
+            int stream = grabber.getVideoStream();
+            AVPacket packet;
+            for (int frame = 0; (packet = grabber.grabPacket()) != null; ) {
+                if (packet.stream_index() != stream) continue;
+                if ((packet.flags() & avcodec.AV_PKT_FLAG_KEY) != 0) {
+                    keyframes.add(frame);
+                }
+                frame++;
+            }
+        } finally {
+            grabber.release();
+        }
+        return keyframes;
+    }
+
+    /**
+     * Expects a video encoded in parts to hold the frames of a single pass.
+     * The parts restart the encoder, so frames only match up to its losses:
+     * each one has to be closer to the same frame of the single pass than to
+     * its neighbours.
+     *
+     * @return false if a failure was added
+     */
+    private static boolean expectAligned(List<String> failures, String what, List<Mat> expected, List<Mat> actual) {
+        if (expected.size() != actual.size()) {
+            failures.add(String.format("%s: %d frames written, %d in a single pass", what, actual.size(), expected.size()));
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            double quality = psnr(expected.get(i), actual.get(i));
+            for (int j = Math.max(0, i - 1); j <= Math.min(expected.size() - 1, i + 1); j++) {
+                if (j != i && psnr(expected.get(j), actual.get(i)) > quality) {
+                    failures.add(String.format("%s: frame %d looks like frame %d of the single pass", what, i, j));
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the video of a clip and adds a silent audio track of the given length
+     */
+    private static void writeWithAudio(String source, String path, double audioSeconds) throws Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(source);
+        grabber.start();
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(path, grabber.getImageWidth(), grabber.getImageHeight(), 1);
+        recorder.setVideoCodec(grabber.getVideoCodec());
+        recorder.setFrameRate(grabber.getVideoFrameRate());
+        recorder.setGopSize((int) Math.round(grabber.getVideoFrameRate()));
+        recorder.setVideoBitrate(grabber.getVideoBitrate());
+        recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
+        recorder.setSampleRate(AUDIO_SAMPLE_RATE);
+        try {
+            recorder.start();
+            Frame frame;
+            while ((frame = grabber.grabImage()) != null) {
+                recorder.record(frame);
+            }
+            ShortBuffer silence = ShortBuffer.allocate(AUDIO_SAMPLE_RATE / 10);
+            for (int i = 0; i < audioSeconds * 10; i++) {
+                silence.rewind();
+                recorder.recordSamples(AUDIO_SAMPLE_RATE, 1, silence);
+            }
+            recorder.stop();
+        } finally {
+            recorder.release();
+            grabber.release();
+        }
+    }
+
+    private static FrameEffect copyEffect(boolean planar) {
+        return planar ? YuvTransitionEngine.fadeEffect() : JavaTransitionEngine.fadeEffect();
+    }
+
+    private static void expectCopies(List<String> failures, String run, TransitionMetrics metrics,
+                                     double maxPerFrame, int maxInOneFrame) {
+        if (metrics.getFrameCopiesPerFrame() > maxPerFrame || metrics.getMaxFrameCopies() > maxInOneFrame) {
+            failures.add(String.format("%s: %.3f frame copies per frame, up to %d in one frame (at most %.0f and %d expected)",
+                    run, metrics.getFrameCopiesPerFrame(), metrics.getMaxFrameCopies(), maxPerFrame, maxInOneFrame));
+        }
+    }
+
+    /**
+     * Hard and soft luma mattes start on the first video and end on the
+     * second, with both showing in between
+     */
+    private static void checkLumaMattes(String clip1, String clip2, File dir, List<String> failures) throws Exception {
+        List<Mat> frames1 = decodeFrames(clip1);
+        List<Mat> frames2 = decodeFrames(clip2);
+        try {
+            for (double softness : new double[] {0, 0.1}) {
+                String edge = softness == 0 ? "hard" : "soft";
+                for (LumaMatte matte : new LumaMatte[] {LumaMatte.linear("right", softness), LumaMatte.radial(softness),
+                        LumaMatte.clock(softness), LumaMatte.diamond(softness)}) {
+                    expectEndpoints(failures, matte.name() + " " + edge, matte, frames1.get(0), frames2.get(0));
+                }
+            }
+        } finally {
+            release(frames1);
+            release(frames2);
+        }
+    }
+
+    /**
+     * Wipes, slides and pushes start on the first video and end on the second
+     * in every direction, hard-edged and feathered, and an unknown direction
+     * moves left like the whip pans
+     */
+    private static void checkRegionTransitions(String clip1, String clip2, File dir, List<String> failures) throws Exception {
+        List<Mat> frames1 = decodeFrames(clip1);
+        List<Mat> frames2 = decodeFrames(clip2);
+        try {
+            for (String direction : new String[] {"left", "right", "up", "down", "up-left", "up-right", "down-left", "down-right"}) {
+                for (int feather : new int[] {0, 16}) {
+                    String what = direction + (feather > 0 ? " feathered" : "");
+                    expectEndpoints(failures, "wipe " + what, JavaTransitionEngine.wipeEffect(direction, feather),
+                            frames1.get(0), frames2.get(0));
+                    expectEndpoints(failures, "slide " + what, JavaTransitionEngine.slideEffect(direction, feather),
+                            frames1.get(0), frames2.get(0));
+                }
+                expectEndpoints(failures, "push " + direction, JavaTransitionEngine.pushEffect(direction),
+                        frames1.get(0), frames2.get(0));
+            }
+
+            Mat expected = new Mat();
+            Mat actual = new Mat();
+            FrameEffect left = JavaTransitionEngine.wipeEffect("left", 0);
+            FrameEffect unknown = JavaTransitionEngine.wipeEffect("sideways", 0);
+            render(left, frames1.get(0), frames2.get(0), expected, 0.25);
+            render(unknown, frames1.get(0), frames2.get(0), actual, 0.25);
+            if (norm(expected, actual, NORM_INF, null) != 0) {
+                failures.add("a wipe in an unknown direction does not move left");
+            }
+            left.release();
+            unknown.release();
+            expected.release();
+            actual.release();
+        } finally {
+            release(frames1);
+            release(frames2);
+        }
+    }
+
+    /**
+     * Renders the first, middle and last frame of a transition the way the
+     * engine numbers them, and expects the first one to be frame1 and the last
+     * one frame2, within the rounding of a blend
+     */
+    private static void expectEndpoints(List<String> failures, String what, FrameEffect effect, Mat frame1, Mat frame2) {
+        int frames = (int) Math.round(CHECK_DURATION * CHECK_FPS);
+        Mat output = new Mat();
+        try {
+            effect.prepare(CHECK_FPS, frames);
+            render(effect, frame1, frame2, output, 0);
+            double first = norm(output, frame1, NORM_INF, null);
+            render(effect, frame1, frame2, output, (double) (frames / 2) / frames);
+            double middle = Math.min(norm(output, frame1, NORM_INF, null), norm(output, frame2, NORM_INF, null));
+            render(effect, frame1, frame2, output, (double) (frames - 1) / frames);
+            double last = norm(output, frame2, NORM_INF, null);
+            if (first > 1 || last > 1) {
+                failures.add(String.format("%s: first frame differs from the first video by up to %.0f, "
+                        + "last frame from the second by up to %.0f", what, first, last));
+            }
+            if (middle <= 1) {
+                failures.add(what + ": the middle frame shows only one of the videos");
+            }
+        } finally {
+            effect.release();
+            output.release();
+        }
+    }
+
+    /**
+     * Runs one transition on the caller's thread
+     *
+     * @return The job's metrics
+     */
+    static TransitionMetrics renderJob(String input1, String input2, String output, FrameEffect effect) throws Exception {
+        TransitionJob job = TransitionSession.shared().submitTransition(Runnable::run, input1, input2,
+                output, CHECK_DURATION, effect, null);
+        job.get();
+        return job.getMetrics();
+    }
+
+    /**
+     * Decodes every frame of a video as BGR
+     */
+    static List<Mat> decodeFrames(String path) throws Exception {
+        List<Mat> frames = new ArrayList<>();
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(path);
+        grabber.setPixelFormat(avutil.AV_PIX_FMT_BGR24);
+        try {
+            grabber.start();
+            Frame frame;
+            while ((frame = grabber.grabImage()) != null) {
+                try (Mat view = JavaTransitionEngine.toMat(frame, avutil.AV_PIX_FMT_BGR24)) {
+                    frames.add(view.clone());
+                }
+            }
+        } finally {
+            grabber.stop();
+        }
+        return frames;
+    }
+
+    /**
+     * @return null if both lists hold the same frames, or what differs
+     */
+    static String compareFrames(List<Mat> expected, List<Mat> actual) {
+        try {
+            if (expected.size() != actual.size()) {
+                return expected.size() + " frames expected, " + actual.size() + " written";
+            }
+            for (int i = 0; i < expected.size(); i++) {
+                double quality = psnr(expected.get(i), actual.get(i));
+                if (quality < 100) {
+                    return String.format("frame %d differs (PSNR %.2f dB)", i, quality);
+                }
+            }
+            return null;
+        } finally {
+            if (actual != expected) {
+                release(actual);
+            }
+        }
+    }
+
+    static void release(List<Mat> frames) {
+        for (Mat mat : frames) {
+            mat.release();
+        }
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Peak signal-to-noise ratio of two 8-bit images, in dB
+     */
+    static double psnr(Mat a, Mat b) {
+        return PSNR(a, b, 255.0);
+    }
+
+    /**
+     * Structural similarity of two 8-bit images of the same size, averaged over
+     * the channels, with the usual 11x11 Gaussian window (sigma 1.5)
+     */
+    static double ssim(Mat a, Mat b) {
+        try (PointerScope scope = new PointerScope()) {
+            Size window = new Size(11, 11);
+            Mat i1 = new Mat();
+            Mat i2 = new Mat();
+            a.convertTo(i1, CV_32F);
+            b.convertTo(i2, CV_32F);
+
+            Mat mu1 = new Mat();
+            Mat mu2 = new Mat();
+            GaussianBlur(i1, mu1, window, 1.5);
+            GaussianBlur(i2, mu2, window, 1.5);
+            Mat mu1Sq = new Mat();
+            Mat mu2Sq = new Mat();
+            Mat mu1Mu2 = new Mat();
+            multiply(mu1, mu1, mu1Sq);
+            multiply(mu2, mu2, mu2Sq);
+            multiply(mu1, mu2, mu1Mu2);
+
+            // Local variances and covariance
+            Mat product = new Mat();
+            Mat sigma1Sq = new Mat();
+            Mat sigma2Sq = new Mat();
+            Mat sigma12 = new Mat();
+            multiply(i1, i1, product);
+            GaussianBlur(product, sigma1Sq, window, 1.5);
+            subtract(sigma1Sq, mu1Sq, sigma1Sq);
+            multiply(i2, i2, product);
+            GaussianBlur(product, sigma2Sq, window, 1.5);
+            subtract(sigma2Sq, mu2Sq, sigma2Sq);
+            multiply(i1, i2, product);
+            GaussianBlur(product, sigma12, window, 1.5);
+            subtract(sigma12, mu1Mu2, sigma12);
+
+            // ((2 mu1 mu2 + C1) (2 sigma12 + C2)) / ((mu1^2 + mu2^2 + C1) (sigma1^2 + sigma2^2 + C2))
+            Mat t1 = new Mat();
+            Mat t2 = new Mat();
+            Mat numerator = new Mat();
+            Mat denominator = new Mat();
+            mu1Mu2.convertTo(t1, -1, 2, SSIM_C1);
+            sigma12.convertTo(t2, -1, 2, SSIM_C2);
+            multiply(t1, t2, numerator);
+            add(mu1Sq, mu2Sq, t1);
+            t1.convertTo(t1, -1, 1, SSIM_C1);
+            add(sigma1Sq, sigma2Sq, t2);
+            t2.convertTo(t2, -1, 1, SSIM_C2);
+            multiply(t1, t2, denominator);
+            divide(numerator, denominator, t1);
+
+            Scalar channelMeans = mean(t1);
+            double sum = 0;
+            for (int c = 0; c < a.channels(); c++) {
+                sum += channelMeans.get(c);
+            }
+            return sum / a.channels();
+        }
+    }
+
+    private static double min(double[] values) {
+        double min = Double.POSITIVE_INFINITY;
+        for (double value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private static double average(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return values.length == 0 ? Double.NaN : sum / values.length;
+    }
+
+    private static int indexOf(double[] values, double value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) return i;
+        }
+        return -1;
+    }
+
+    private static double baselineValue(Properties baseline, String key) {
+        String value = baseline.getProperty(key);
+        return value == null ? Double.NaN : Double.parseDouble(value);
+    }
+
+    private static Properties loadBaseline(File file) throws IOException {
+        Properties baseline = new Properties();
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                baseline.load(in);
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * Stores the measured values, keeping the entries of cases that did not run
+     */
+    private static void saveBaseline(File file, Properties baseline, List<Result> results) throws IOException {
+        for (Result result : results) {
+            String key = result.testCase.name + ".";
+            if (result.testCase.fast != null) {
+                baseline.setProperty(key + "psnr.min", String.valueOf(min(result.psnr)));
+                baseline.setProperty(key + "ssim.min", String.valueOf(min(result.ssim)));
+                baseline.setProperty(key + "fast.msPerFrame", String.valueOf(result.fastMsPerFrame));
+            }
+            baseline.setProperty(key + "reference.msPerFrame", String.valueOf(result.referenceMsPerFrame));
+            if (!Double.isNaN(result.referenceFps)) {
+                baseline.setProperty(key + "reference.fps", String.valueOf(result.referenceFps));
+            }
+            if (!Double.isNaN(result.fastFps)) {
+                baseline.setProperty(key + "fast.fps", String.valueOf(result.fastFps));
+            }
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            baseline.store(out, "Transition regression baseline");
+        }
+    }
 
-        System.out.println("=== Instructions to Create Transition Videos ===\n");
-        System.out.println("1. Install FFmpeg if not already installed");
-        System.out.println("2. Copy and paste one of the above commands into a command prompt");
-        System.out.println("3. The output video will be saved in the output_videos directory");
+    /**
+     * Writes one CSV line per compared frame
+     */
+    private static void writeReport(File file, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("case,frame,psnr,ssim");
+            for (Result result : results) {
+                for (int i = 0; i < result.psnr.length; i++) {
+                    out.printf("%s,%d,%.4f,%.6f%n", result.testCase.name, i, result.psnr[i], result.ssim[i]);
+                }
+            }
+        }
     }
 }
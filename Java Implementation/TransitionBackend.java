@@ -0,0 +1,77 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * TransitionBackend - Which implementation renders a transition
+ *
+ *   OPENCV        the JavaTransitionEngine effects, OpenCV on BGR frames (the default)
+ *   FILTER_GRAPH  the FilterGraphEngine effects, FFmpeg filter graphs on I420 frames
+ *   AUTO          whichever of the two renders the effect faster
+ *
+ * AUTO is a fixed table per effect, not a probe of the job: whole jobs
+ * (decode, effect, encode) on the bundled clips scaled to 360p, 720p and
+ * 1080p showed the filter graphs faster for whip pans and blurs at all three
+ * sizes and slower or level for every other effect (see README), so the
+ * frame size would not change the choice. Resolving it reads nothing and
+ * costs nothing on the caller's thread.
+ *
+ * TransitionEngine uses the backend set with -Dtransition.backend=opencv|
+ * filtergraph|auto or TransitionEngine.setBackend, and its methods taking a
+ * TransitionBackend override it for a single job.
+ */
+public enum TransitionBackend {
+    OPENCV,
+    FILTER_GRAPH,
+    AUTO;
+
+    // Effects the filter graphs render faster at every measured resolution; the others stay on OpenCV
+    private static final Set<String> FILTER_GRAPH_EFFECTS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("whip", "blur")));
+
+    /**
+     * Picks the concrete backend for a job
+     *
+     * @param effect Effect name as in the daemon protocol: fade, glitch, zoom, blur, whip, spin or flash
+     * @return OPENCV or FILTER_GRAPH; this backend itself unless it is AUTO
+     */
+    public TransitionBackend resolve(String effect) {
+        if (this != AUTO) {
+            return this;
+        }
+        return FILTER_GRAPH_EFFECTS.contains(effect) ? FILTER_GRAPH : OPENCV;
+    }
+
+    /**
+     * Looks up a backend by name
+     *
+     * @param name "opencv", "filtergraph" or "auto", in any case
+     * @return The backend
+     * @throws IllegalArgumentException If the name is unknown
+     */
+    public static TransitionBackend forName(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "opencv": return OPENCV;
+            case "filtergraph": return FILTER_GRAPH;
+            case "auto": return AUTO;
+            default: throw new IllegalArgumentException("Unknown transition backend: " + name);
+        }
+    }
+
+    /**
+     * Reads the backend named by the transition.backend system property
+     *
+     * @return The configured backend, OPENCV if none or an unknown one is configured
+     */
+    public static TransitionBackend fromSystemProperties() {
+        String name = System.getProperty("transition.backend", "opencv");
+        try {
+            return forName(name);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ", using the opencv backend");
+            return OPENCV;
+        }
+    }
+}
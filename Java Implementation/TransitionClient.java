@@ -0,0 +1,328 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * TransitionClient - Sends transitions to a running TransitionDaemon
+ *
+ * The methods mirror TransitionEngine, but the work happens in the daemon's
+ * warm JVM, so a call costs only the render itself. From the command line:
+ *
+ *   java TransitionClient fade input1 input2 output 1.0
+ *   java TransitionClient whip input1 input2 output 1.0 left 50
+ *   java TransitionClient fade input1 input2 output 1.0@12.5
+ *   java TransitionClient hls fade input1 input2 1.0
+ *   java TransitionClient metrics
+ *
+ * A duration written as duration@offset starts the transition 'offset'
+ * seconds into the first video instead of at its end.
+ *
+ * The port defaults to TransitionDaemon.DEFAULT_PORT and can be changed with
+ * -Dtransition.daemon.port.
+ */
+public class TransitionClient {
+
+    private final int port;
+    private boolean verbose;
+
+    /**
+     * @param port Localhost port the daemon listens on
+     */
+    public TransitionClient(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Creates a client for the configured or default port
+     */
+    public TransitionClient() {
+        this(Integer.getInteger("transition.daemon.port", TransitionDaemon.DEFAULT_PORT));
+    }
+
+    /**
+     * Creates a simple fade transition between two videos
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public boolean applyFadeTransition(String input1, String input2, String output, double duration) {
+        return apply("fade", input1, input2, output, duration);
+    }
+
+    /**
+     * Creates a glitch transition between two videos
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param glitchStrength Intensity of the glitch effect (1-100)
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public boolean applyGlitchTransition(String input1, String input2, String output, double duration, int glitchStrength) {
+        return apply("glitch", input1, input2, output, duration, String.valueOf(glitchStrength));
+    }
+
+    /**
+     * Creates a zoom transition between two videos
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param zoomFactor Maximum zoom factor (1.0-2.0 recommended)
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public boolean applyZoomTransition(String input1, String input2, String output, double duration, double zoomFactor) {
+        return apply("zoom", input1, input2, output, duration, String.valueOf(zoomFactor));
+    }
+
+    /**
+     * Creates a blur transition between two videos
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param maxBlur Maximum blur amount (5-50 recommended)
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public boolean applyBlurTransition(String input1, String input2, String output, double duration, int maxBlur) {
+        return apply("blur", input1, input2, output, duration, String.valueOf(maxBlur));
+    }
+
+    /**
+     * Creates a whip pan transition between two videos
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction of the whip ("left", "right", "up", "down")
+     * @param blurStrength Strength of the motion blur (10-100 recommended)
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public boolean applyWhipPanTransition(String input1, String input2, String output, double duration, String direction, int blurStrength) {
+        return apply("whip", input1, input2, output, duration, direction, String.valueOf(blurStrength));
+    }
+
+    /**
+     * Creates a spin transition between two videos
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public boolean applySpinTransition(String input1, String input2, String output, double duration) {
+        return apply("spin", input1, input2, output, duration);
+    }
+
+    /**
+     * Creates a light flash transition between two videos
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public boolean applyLightFlashTransition(String input1, String input2, String output, double duration) {
+        return apply("flash", input1, input2, output, duration);
+    }
+
+    /**
+     * Creates a transition with any effect the daemon knows, e.g. "yuv-fade"
+     *
+     * @param effect Effect name as reported by FrameEffect.name()
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param parameters Effect parameters in the order of the TransitionEngine methods
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public boolean apply(String effect, String input1, String input2, String output, double duration, String... parameters) {
+        return apply(effect, input1, input2, output, duration, JavaTransitionEngine.AT_END, parameters);
+    }
+
+    /**
+     * Creates a transition starting at a given time of the first video with any effect the daemon knows
+     *
+     * @param effect Effect name as reported by FrameEffect.name()
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param parameters Effect parameters in the order of the TransitionEngine methods
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public boolean apply(String effect, String input1, String input2, String output, double duration, double offset,
+                         String... parameters) {
+        // The daemon has its own working directory
+        StringBuilder request = new StringBuilder("APPLY");
+        request.append('\t').append(effect)
+                .append('\t').append(new File(input1).getAbsolutePath())
+                .append('\t').append(new File(input2).getAbsolutePath())
+                .append('\t').append(new File(output).getAbsolutePath())
+                .append('\t').append(TransitionDaemon.formatDuration(duration, offset));
+        for (String parameter : parameters) {
+            request.append('\t').append(parameter);
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.println(request);
+            out.flush();
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields[0].equals("PROGRESS")) {
+                    if (verbose) {
+                        System.out.printf("\r   %3.0f%%", Double.parseDouble(fields[1]) * 100);
+                    }
+                } else if (fields[0].equals("DONE")) {
+                    if (verbose) {
+                        System.out.println("\r   Done in " + fields[1] + " ms, " + fields[2] + " frames");
+                    }
+                    return true;
+                } else {
+                    System.err.println("Error applying " + effect + " transition: " + (fields.length > 1 ? fields[1] : line));
+                    return false;
+                }
+            }
+            System.err.println("Error applying " + effect + " transition: the daemon closed the connection");
+            return false;
+        } catch (IOException e) {
+            System.err.println("Error applying " + effect + " transition: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Publishes a transition as an HLS playlist that the daemon renders as it is played
+     *
+     * @param effect Effect name as reported by FrameEffect.name()
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param duration Duration of the transition in seconds
+     * @param parameters Effect parameters in the order of the TransitionEngine methods
+     * @return URL of the playlist
+     * @throws IOException If the daemon cannot be reached or refuses the transition
+     */
+    public String publishHls(String effect, String input1, String input2, double duration, String... parameters) throws IOException {
+        return publishHls(effect, input1, input2, duration, JavaTransitionEngine.AT_END, parameters);
+    }
+
+    /**
+     * Publishes a transition starting at a given time of the first video as an HLS playlist
+     *
+     * @param effect Effect name as reported by FrameEffect.name()
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param parameters Effect parameters in the order of the TransitionEngine methods
+     * @return URL of the playlist
+     * @throws IOException If the daemon cannot be reached or refuses the transition
+     */
+    public String publishHls(String effect, String input1, String input2, double duration, double offset,
+                             String... parameters) throws IOException {
+        StringBuilder request = new StringBuilder("HLS");
+        request.append('\t').append(effect)
+                .append('\t').append(new File(input1).getAbsolutePath())
+                .append('\t').append(new File(input2).getAbsolutePath())
+                .append('\t').append(TransitionDaemon.formatDuration(duration, offset));
+        for (String parameter : parameters) {
+            request.append('\t').append(parameter);
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.println(request);
+            out.flush();
+
+            String line = in.readLine();
+            String[] fields = line != null ? line.split("\t") : new String[] {"FAILED", "the daemon closed the connection"};
+            if (!fields[0].equals("PLAYLIST")) {
+                throw new IOException("Error publishing " + effect + " transition: " + (fields.length > 1 ? fields[1] : line));
+            }
+            if (verbose) {
+                System.out.println("   " + fields[2] + " segments, " + fields[3] + " copied from the inputs");
+            }
+            return "http://localhost:" + port + fields[1];
+        }
+    }
+
+    /**
+     * Fetches the daemon's plain-text metrics
+     *
+     * @return One "name value" pair per line
+     * @throws IOException If the daemon cannot be reached
+     */
+    public String metrics() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.println("METRICS");
+            out.flush();
+
+            StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                sb.append(line).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].equals("metrics")) {
+            System.out.print(new TransitionClient().metrics());
+            return;
+        }
+        if (args.length >= 5 && args[0].equals("hls")) {
+            TransitionClient client = new TransitionClient();
+            client.verbose = true;
+            try {
+                double[] timing = TransitionDaemon.parseDuration(args[4]);
+                System.out.println(client.publishHls(args[1], args[2], args[3], timing[0], timing[1],
+                        Arrays.copyOfRange(args, 5, args.length)));
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (args.length < 5) {
+            System.err.println("Usage: TransitionClient <effect> <input1> <input2> <output> <duration[@offset]> [parameters...]");
+            System.err.println("       TransitionClient hls <effect> <input1> <input2> <duration[@offset]> [parameters...]");
+            System.err.println("       TransitionClient metrics");
+            System.exit(2);
+        }
+
+        String[] parameters = new String[args.length - 5];
+        System.arraycopy(args, 5, parameters, 0, parameters.length);
+
+        TransitionClient client = new TransitionClient();
+        client.verbose = true;
+        double[] timing = TransitionDaemon.parseDuration(args[4]);
+        boolean success = client.apply(args[0], args[1], args[2], args[3], timing[0], timing[1], parameters);
+        System.exit(success ? 0 : 1);
+    }
+}
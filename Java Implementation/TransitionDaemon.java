@@ -0,0 +1,537 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransitionDaemon - A resident render server keeping a warm engine between jobs
+ *
+ * Starting a JVM for every render pays for loading the natives and warming up
+ * the frame loop each time. The daemon does this once, then accepts jobs from
+ * TransitionClient over a localhost port and runs them on a fixed pool of
+ * workers using the shared TransitionSession.
+ *
+ * Protocol: one request line per connection, fields separated by tabs.
+ *
+ *   APPLY  effect  input1  input2  output  duration[@offset]  [effect parameters...]
+ *       answered by PROGRESS lines (fraction, milliseconds left) and one final
+ *       DONE (milliseconds, frames) or FAILED (message) line. Closing the
+ *       connection cancels the job. A job finding the queue as deep as the
+ *       execution profile allows is answered FAILED Queue full at once.
+ *   METRICS
+ *       answered with the plain-text metrics, also served to HTTP clients
+ *       as GET /metrics, e.g. curl http://localhost:7878/metrics
+ *   HLS  effect  input1  input2  duration[@offset]  [effect parameters...]
+ *       publishes the transition as an HlsTransition and is answered by
+ *       PLAYLIST (path, segments, copied segments) or FAILED (message).
+ *       HTTP clients get the playlist and its segments from GET on that
+ *       path; a segment is rendered on the workers the first time it is
+ *       requested, and a full queue is answered 503.
+ *
+ * A duration such as 1.0@12.5 starts the transition 12.5 s into the first
+ * video, e.g. at a cut found by SceneCutAnalyzer; without an offset it runs
+ * at the end of the first video.
+ *
+ * Effects are named as in createEffect, e.g. "blur" with the maximum blur as
+ * parameter, "wipe", "slide" or "push" with a direction (left, up-right, ...)
+ * and for wipes and slides the feather in pixels, or "matte" with a shape
+ * (radial, clock, diamond, linear-left, ...) or a mask path and the softness.
+ *
+ * The daemon only listens on the loopback interface. Paths are resolved by the
+ * daemon, so clients send absolute paths. HLS segments are kept under
+ * -Dtransition.hls.dir, by default transition-hls in the temporary directory;
+ * deleting a transition's directory there unpublishes it.
+ */
+public class TransitionDaemon {
+
+    /** Port used when none is configured */
+    public static final int DEFAULT_PORT = 7878;
+
+    // How often a connection with a running job checks whether its client has left
+    private static final int CLIENT_POLL_MILLIS = 50;
+
+    private final int port;
+    private final TransitionSession session;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private final DaemonMetrics metrics;
+    private final File hlsRoot;
+    private final ConcurrentHashMap<String, HlsTransition> hlsTransitions = new ConcurrentHashMap<>();
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * @param port Localhost port to listen on
+     * @param workerCount Number of jobs rendered at the same time
+     * @param session Session providing the engine's buffers
+     */
+    public TransitionDaemon(int port, int workerCount, TransitionSession session) {
+        this.port = port;
+        this.session = session;
+        // Jobs beyond the execution profile's queue depth are refused instead of piling up
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(JavaTransitionEngine.getExecutionProfile().getQueueDepth()));
+        this.metrics = new DaemonMetrics(workers);
+        this.hlsRoot = new File(System.getProperty("transition.hls.dir",
+                new File(System.getProperty("java.io.tmpdir"), "transition-hls").getPath()));
+    }
+
+    /**
+     * Accepts connections until stop is called
+     *
+     * @throws IOException If the port cannot be opened
+     */
+    public void serve() throws IOException {
+        JavaTransitionEngine.addTransitionListener(metrics);
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            serverSocket = server;
+            System.out.println("Transition daemon listening on " + server.getLocalSocketAddress()
+                    + " with " + workers.getCorePoolSize() + " workers");
+            while (!server.isClosed()) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException e) {
+                    // Closed by stop()
+                    break;
+                }
+                connections.execute(() -> handle(socket));
+            }
+        } finally {
+            JavaTransitionEngine.removeTransitionListener(metrics);
+            workers.shutdownNow();
+            connections.shutdownNow();
+        }
+    }
+
+    /**
+     * Stops accepting connections; jobs of open connections are cancelled at their next frame
+     */
+    public void stop() throws IOException {
+        ServerSocket server = serverSocket;
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            String request = in.readLine();
+            if (request == null) return;
+
+            if (request.startsWith("GET ")) {
+                serveHttp(request, s, out);
+            } else if (request.equals("METRICS")) {
+                out.print(metrics.render());
+            } else if (request.startsWith("APPLY\t")) {
+                runJob(request.split("\t", -1), s, out);
+            } else if (request.startsWith("HLS\t")) {
+                publishHls(request.split("\t", -1), out);
+            } else {
+                out.println("FAILED\tUnknown request");
+            }
+            out.flush();
+        } catch (IOException e) {
+            // The client went away; nothing to answer
+        }
+    }
+
+    private void serveHttp(String requestLine, Socket socket, PrintWriter out) throws IOException {
+        if (requestLine.startsWith("GET /hls/")) {
+            serveHls(requestLine.split(" ")[1], socket, out);
+            return;
+        }
+        boolean found = requestLine.startsWith("GET /metrics ") || requestLine.startsWith("GET / ");
+        httpText(out, found ? "200 OK" : "404 Not Found", found ? metrics.render() : "Not found\n");
+    }
+
+    /**
+     * Answers GET /hls/id/file with a playlist or a segment, producing the segment first if needed
+     */
+    private void serveHls(String path, Socket socket, PrintWriter out) throws IOException {
+        String[] names = path.substring("/hls/".length()).split("/");
+        HlsTransition transition = names.length == 2 ? hlsTransitions.get(names[0]) : null;
+        if (transition != null && !transition.getPlaylist().getParentFile().isDirectory()) {
+            // Deleted from the HLS directory, so it is no longer published
+            hlsTransitions.remove(names[0], transition);
+            transition = null;
+        }
+        if (transition == null) {
+            httpText(out, "404 Not Found", "Not found\n");
+            return;
+        }
+
+        File file;
+        try {
+            file = names[1].equals(HlsTransition.PLAYLIST) ? transition.getPlaylist() : transition.segment(names[1], workers);
+        } catch (IllegalArgumentException e) {
+            httpText(out, "404 Not Found", "Not found\n");
+            return;
+        } catch (RejectedExecutionException e) {
+            httpText(out, "503 Service Unavailable", "Queue full\n");
+            return;
+        } catch (Exception e) {
+            httpText(out, "500 Internal Server Error", e + "\n");
+            return;
+        }
+
+        boolean playlist = names[1].equals(HlsTransition.PLAYLIST);
+        out.print("HTTP/1.0 200 OK\r\n");
+        out.print("Content-Type: " + (playlist ? "application/vnd.apple.mpegurl" : "video/mp2t") + "\r\n");
+        out.print("Content-Length: " + file.length() + "\r\n");
+        out.print("Connection: close\r\n\r\n");
+        out.flush();
+        Files.copy(file.toPath(), socket.getOutputStream());
+    }
+
+    private static void httpText(PrintWriter out, String status, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        out.print("HTTP/1.0 " + status + "\r\n");
+        out.print("Content-Type: text/plain; charset=utf-8\r\n");
+        out.print("Content-Length: " + bytes.length + "\r\n");
+        out.print("Connection: close\r\n\r\n");
+        out.print(body);
+    }
+
+    private void publishHls(String[] fields, PrintWriter out) {
+        // HLS, effect, input1, input2, duration, parameters...
+        if (fields.length < 5) {
+            out.println("FAILED\tExpected: HLS effect input1 input2 duration[@offset] [parameters]");
+            return;
+        }
+        try {
+            double[] timing = parseDuration(fields[4]);
+            // Transitions whose directories were deleted are forgotten, so the map only holds what is on disk
+            hlsTransitions.values().removeIf(published -> !published.getPlaylist().getParentFile().isDirectory());
+            HlsTransition transition = HlsTransition.open(hlsRoot, fields[1], fields[2], fields[3],
+                    timing[0], timing[1], Arrays.copyOfRange(fields, 5, fields.length));
+            hlsTransitions.put(transition.getId(), transition);
+            out.println("PLAYLIST\t/hls/" + transition.getId() + "/" + HlsTransition.PLAYLIST + "\t"
+                    + transition.getSegmentCount() + "\t" + transition.getCopiedSegmentCount());
+        } catch (IllegalArgumentException e) {
+            out.println("FAILED\t" + e.getMessage());
+        } catch (Exception e) {
+            out.println("FAILED\t" + String.valueOf(e).replaceAll("[\t\r\n]+", " "));
+        }
+    }
+
+    private void runJob(String[] fields, Socket socket, PrintWriter out) throws IOException {
+        // APPLY, effect, input1, input2, output, duration, parameters...
+        if (fields.length < 6) {
+            out.println("FAILED\tExpected: APPLY effect input1 input2 output duration[@offset] [parameters]");
+            return;
+        }
+
+        FrameEffect effect;
+        double[] timing;
+        try {
+            String[] parameters = new String[fields.length - 6];
+            System.arraycopy(fields, 6, parameters, 0, parameters.length);
+            effect = createEffect(fields[1], parameters);
+            timing = parseDuration(fields[5]);
+        } catch (IllegalArgumentException e) {
+            out.println("FAILED\t" + e.getMessage());
+            return;
+        }
+
+        long start = System.nanoTime();
+        TransitionJob job;
+        try {
+            job = session.submitTransition(workers, fields[2], fields[3], fields[4], timing[0], timing[1], effect,
+                    (j, progress, remainingMillis) -> {
+                        synchronized (out) {
+                            out.println("PROGRESS\t" + progress + "\t" + remainingMillis);
+                            out.flush();
+                            // A closed connection shows up as an error here; drop the job with it
+                            if (out.checkError()) {
+                                cancel(j);
+                            }
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            effect.release();
+            out.println("FAILED\tQueue full");
+            return;
+        }
+
+        // The request is a single line, so any further read returning means the client has left.
+        // The socket is polled from this handler thread while the job runs rather than from a thread of its own.
+        try {
+            socket.setSoTimeout(CLIENT_POLL_MILLIS);
+            InputStream client = socket.getInputStream();
+            boolean connected = true;
+            while (connected && !job.isDone()) {
+                try {
+                    connected = client.read() >= 0;
+                    // Ignore anything else the client sends
+                } catch (SocketTimeoutException e) {
+                    // Still connected
+                } catch (IOException e) {
+                    connected = false;
+                }
+            }
+            if (!connected) {
+                // A closed socket answers every read at once, so it is not polled again;
+                // get() waits until the job has stopped and released its resources
+                cancel(job);
+            }
+
+            job.get();
+            TransitionMetrics jobMetrics = job.getMetrics();
+            synchronized (out) {
+                out.println("DONE\t" + (System.nanoTime() - start) / 1_000_000 + "\t"
+                        + (jobMetrics != null ? jobMetrics.getFramesWritten() : 0));
+            }
+        } catch (CancellationException e) {
+            synchronized (out) {
+                out.println("FAILED\tCancelled");
+            }
+        } catch (ExecutionException e) {
+            synchronized (out) {
+                out.println("FAILED\t" + e.getCause());
+            }
+        } catch (InterruptedException e) {
+            cancel(job);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cancels a job and takes it out of the queue if no worker has picked it up yet,
+     * so cancelled jobs do not hold places in the bounded queue
+     */
+    private void cancel(TransitionJob job) {
+        job.cancel();
+        workers.remove(job);
+    }
+
+    /**
+     * Creates the effect named in a request
+     *
+     * @param name Effect name as reported by FrameEffect.name()
+     * @param parameters Effect parameters in the order of the TransitionEngine methods
+     * @return A new effect
+     * @throws IllegalArgumentException If the name or parameters are invalid
+     */
+    static FrameEffect createEffect(String name, String[] parameters) {
+        switch (name) {
+            case "fade": return JavaTransitionEngine.fadeEffect();
+            case "glitch": return JavaTransitionEngine.glitchEffect(intParameter(parameters, 0, 25));
+            case "zoom": return JavaTransitionEngine.zoomEffect(doubleParameter(parameters, 0, 1.5));
+            case "blur": return JavaTransitionEngine.blurEffect(intParameter(parameters, 0, 25));
+            case "whip": return JavaTransitionEngine.whipPanEffect(parameters.length > 0 ? parameters[0] : "right",
+                    intParameter(parameters, 1, 50));
+            case "spin": return JavaTransitionEngine.spinEffect();
+            case "flash": return JavaTransitionEngine.lightFlashEffect();
+            case "wipe": return JavaTransitionEngine.wipeEffect(parameters.length > 0 ? parameters[0] : "right",
+                    intParameter(parameters, 1, 0));
+            case "slide": return JavaTransitionEngine.slideEffect(parameters.length > 0 ? parameters[0] : "left",
+                    intParameter(parameters, 1, 0));
+            case "push": return JavaTransitionEngine.pushEffect(parameters.length > 0 ? parameters[0] : "left");
+            case "yuv-fade": return YuvTransitionEngine.fadeEffect();
+            case "yuv-zoom": return YuvTransitionEngine.zoomEffect(doubleParameter(parameters, 0, 1.5));
+            case "yuv-whip": return YuvTransitionEngine.whipPanEffect(parameters.length > 0 ? parameters[0] : "right",
+                    intParameter(parameters, 1, 50));
+            case "yuv-spin": return YuvTransitionEngine.spinEffect();
+            case "yuv-flash": return YuvTransitionEngine.lightFlashEffect();
+            case "yuv-wipe": return YuvTransitionEngine.wipeEffect(parameters.length > 0 ? parameters[0] : "right",
+                    intParameter(parameters, 1, 0));
+            case "yuv-slide": return YuvTransitionEngine.slideEffect(parameters.length > 0 ? parameters[0] : "left",
+                    intParameter(parameters, 1, 0));
+            case "yuv-push": return YuvTransitionEngine.pushEffect(parameters.length > 0 ? parameters[0] : "left");
+            case "ff-fade": return FilterGraphEngine.fadeEffect();
+            case "ff-glitch": return FilterGraphEngine.glitchEffect(intParameter(parameters, 0, 25));
+            case "ff-zoom": return FilterGraphEngine.zoomEffect(doubleParameter(parameters, 0, 1.5));
+            case "ff-blur": return FilterGraphEngine.blurEffect(intParameter(parameters, 0, 25));
+            case "ff-whip": return FilterGraphEngine.whipPanEffect(parameters.length > 0 ? parameters[0] : "right",
+                    intParameter(parameters, 1, 50));
+            case "ff-spin": return FilterGraphEngine.spinEffect();
+            case "ff-flash": return FilterGraphEngine.lightFlashEffect();
+            case "matte": return matteEffect(parameters.length > 0 ? parameters[0] : "linear-right",
+                    doubleParameter(parameters, 1, 0.1));
+            default: throw new IllegalArgumentException("Unknown effect: " + name);
+        }
+    }
+
+    /**
+     * A luma matte from a shape name (linear-left/right/up/down, radial, clock, diamond) or a mask file
+     */
+    private static FrameEffect matteEffect(String mask, double softness) {
+        switch (mask) {
+            case "radial": return LumaMatte.radial(softness);
+            case "clock": return LumaMatte.clock(softness);
+            case "diamond": return LumaMatte.diamond(softness);
+            default:
+                return mask.startsWith("linear-") ? LumaMatte.linear(mask.substring(7), softness)
+                        : LumaMatte.fromFile(mask, softness);
+        }
+    }
+
+    /**
+     * Formats the duration field of a request, with the offset appended after an @ unless it is negative
+     */
+    static String formatDuration(double duration, double offset) {
+        return offset >= 0 ? duration + "@" + offset : String.valueOf(duration);
+    }
+
+    /**
+     * Parses the duration field of a request into the duration and the offset, AT_END if there is none
+     *
+     * @throws NumberFormatException If either number is invalid
+     */
+    static double[] parseDuration(String field) {
+        int at = field.indexOf('@');
+        if (at < 0) {
+            return new double[] {Double.parseDouble(field), JavaTransitionEngine.AT_END};
+        }
+        return new double[] {Double.parseDouble(field.substring(0, at)), Double.parseDouble(field.substring(at + 1))};
+    }
+
+    private static int intParameter(String[] parameters, int index, int defaultValue) {
+        return parameters.length > index ? Integer.parseInt(parameters[index]) : defaultValue;
+    }
+
+    private static double doubleParameter(String[] parameters, int index, double defaultValue) {
+        return parameters.length > index ? Double.parseDouble(parameters[index]) : defaultValue;
+    }
+
+    /**
+     * Aggregates the metrics of every job the daemon has run
+     */
+    static final class DaemonMetrics implements TransitionListener {
+        private final ThreadPoolExecutor workers;
+        private final long startNanos = System.nanoTime();
+        private final LatencyHistogram jobLatency = new LatencyHistogram();
+        private final LatencyHistogram[] stages = new LatencyHistogram[TransitionMetrics.Stage.values().length];
+        private long jobsCompleted;
+        private long jobsFailed;
+        private long framesWritten;
+        private long frameCopies;
+        private long jobBytesHighWater;
+        private int running;
+        private int maxQueueDepth;
+
+        DaemonMetrics(ThreadPoolExecutor workers) {
+            this.workers = workers;
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public synchronized void jobStarted(TransitionMetrics job) {
+            running++;
+            // Jobs still waiting for a worker behind this one
+            int queueDepth = workers.getQueue().size();
+            job.recordQueueDepth(queueDepth);
+            maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+        }
+
+        @Override
+        public synchronized void jobFinished(TransitionMetrics job) {
+            running--;
+            jobsCompleted++;
+            add(job);
+        }
+
+        @Override
+        public synchronized void jobFailed(TransitionMetrics job, Exception error) {
+            // Jobs failing before their inputs are open were never counted as running
+            if (job.getElapsedNanos() > 0) {
+                running--;
+            }
+            jobsFailed++;
+            add(job);
+        }
+
+        private void add(TransitionMetrics job) {
+            jobLatency.record(job.getElapsedNanos());
+            framesWritten += job.getFramesWritten();
+            frameCopies += job.getFrameCopies();
+            jobBytesHighWater = Math.max(jobBytesHighWater, job.getJobBytesHighWater());
+            for (TransitionMetrics.Stage stage : TransitionMetrics.Stage.values()) {
+                stages[stage.ordinal()].add(job.getHistogram(stage));
+            }
+        }
+
+        /**
+         * Renders the metrics as "name value" lines
+         */
+        synchronized String render() {
+            double uptime = (System.nanoTime() - startNanos) / 1e9;
+            StringBuilder sb = new StringBuilder();
+            line(sb, "uptime_seconds", String.format("%.1f", uptime));
+            line(sb, "workers", workers.getCorePoolSize());
+            line(sb, "jobs_running", running);
+            line(sb, "queue_depth", workers.getQueue().size());
+            line(sb, "queue_depth_max", maxQueueDepth);
+            line(sb, "jobs_completed", jobsCompleted);
+            line(sb, "jobs_failed", jobsFailed);
+            line(sb, "frames_written", framesWritten);
+            line(sb, "frames_per_second", String.format("%.1f", uptime > 0 ? framesWritten / uptime : 0.0));
+            line(sb, "frame_copies", frameCopies);
+            line(sb, "frame_copies_per_frame", String.format("%.3f", framesWritten > 0 ? (double) frameCopies / framesWritten : 0.0));
+            latency(sb, "job_latency", jobLatency);
+            for (TransitionMetrics.Stage stage : TransitionMetrics.Stage.values()) {
+                latency(sb, "frame_" + stage.name().toLowerCase(), stages[stage.ordinal()]);
+            }
+            line(sb, "job_native_bytes_high_water", jobBytesHighWater);
+            line(sb, "native_bytes_reserved", JavaTransitionEngine.getMemoryBudget().getReservedBytes());
+            DecodedFrameCache cache = JavaTransitionEngine.getFrameCache();
+            line(sb, "frame_cache_memory_bytes", cache.getMemoryBytes());
+            line(sb, "frame_cache_spill_bytes", cache.getSpillBytes());
+            line(sb, "frame_cache_memory_hits", cache.getMemoryHits());
+            line(sb, "frame_cache_spill_hits", cache.getSpillHits());
+            line(sb, "frame_cache_misses", cache.getMisses());
+            return sb.toString();
+        }
+
+        private static void latency(StringBuilder sb, String name, LatencyHistogram histogram) {
+            line(sb, name + "_count", histogram.getCount());
+            line(sb, name + "_mean_ms", String.format("%.3f", histogram.getMeanNanos() / 1e6));
+            line(sb, name + "_p50_ms", String.format("%.3f", histogram.getPercentileNanos(50) / 1e6));
+            line(sb, name + "_p99_ms", String.format("%.3f", histogram.getPercentileNanos(99) / 1e6));
+            line(sb, name + "_max_ms", String.format("%.3f", histogram.getMaxNanos() / 1e6));
+        }
+
+        private static void line(StringBuilder sb, String name, Object value) {
+            sb.append("transition_").append(name).append(' ').append(value).append('\n');
+        }
+    }
+
+    /**
+     * Starts the daemon: java TransitionDaemon [port] [workers]
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("transition.daemon.port", DEFAULT_PORT);
+        int workerCount = args.length > 1 ? Integer.parseInt(args[1])
+                : Integer.getInteger("transition.daemon.workers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+        TransitionSession session = TransitionSession.shared();
+        session.preload().warmUp();
+        System.out.println("Engine warmed up in " + (session.getPreloadMillis() + session.getWarmUpMillis()) + " ms");
+
+        new TransitionDaemon(port, workerCount, session).serve();
+    }
+}
@@ -36,6 +36,14 @@ public class TransitionDemo {
             System.exit(1);
         }
         
+        // Print the per-stage timings of every transition
+        JavaTransitionEngine.addTransitionListener(new TransitionListener() {
+            @Override
+            public void jobFinished(TransitionMetrics metrics) {
+                System.out.println(metrics.summary());
+            }
+        });
+
         try {
             // Apply fade transition
             System.out.println("\n=== Applying Fade Transition ===");
@@ -79,6 +87,15 @@ public class TransitionDemo {
             JavaTransitionEngine.applyLightFlash(input1, input2, flashOutput, 1.0);
             System.out.println("Light flash transition completed: " + flashOutput);
             
+            // Apply fade transition on the planar YUV path
+            System.out.println("\n=== Applying YUV Fade Transition ===");
+            String yuvFadeOutput = OUTPUT_DIR + "/java_yuv_fade_output.mp4";
+            YuvTransitionEngine.applyFade(input1, input2, yuvFadeOutput, 1.5);
+            System.out.println("YUV fade transition completed: " + yuvFadeOutput);
+            System.out.println("Estimated bytes moved per 1080p transition frame:");
+            System.out.println("  BGR path: " + YuvTransitionEngine.estimatedBytesMovedPerFrame(1920, 1080, false));
+            System.out.println("  YUV path: " + YuvTransitionEngine.estimatedBytesMovedPerFrame(1920, 1080, true));
+            
             System.out.println("\nAll transitions completed successfully!");
             System.out.println("Output videos are in the '" + OUTPUT_DIR + "' directory.");
             
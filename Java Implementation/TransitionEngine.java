@@ -1,12 +1,31 @@
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
 /**
  * TransitionEngine - A Java class for creating video transitions
  *
  * This class provides static methods for applying various video transitions
  * using a pure Java implementation with JavaCV. Each method processes the input
  * videos and creates a new video with the transition applied.
+ *
+ * The apply*Transition methods block until the output is written. The
+ * apply*TransitionAsync methods run the transition on an executor instead and
+ * return a TransitionJob that reports progress and can be cancelled.
+ *
+ * Every transition renders either with the OpenCV effects or with FFmpeg
+ * filter graphs run in-process (FilterGraphEngine). The backend set with
+ * setBackend or -Dtransition.backend applies by default; the overloads
+ * taking a TransitionBackend pick one per job, and TransitionBackend.AUTO
+ * takes whichever is faster for the effect.
+ *
+ * The transition starts at the end of the first video, or at the offset
+ * given to the overloads taking one, such as a point from SceneCutAnalyzer.
  */
 public class TransitionEngine {
 
+    // Backend of the methods that do not take one
+    private static volatile TransitionBackend backend = TransitionBackend.fromSystemProperties();
+
     /**
      * Creates a simple fade transition between two videos
      *
@@ -17,8 +36,38 @@ public class TransitionEngine {
      * @return true if the transition was applied successfully, false otherwise
      */
     public static boolean applyFadeTransition(String input1, String input2, String output, double duration) {
+        return applyFadeTransition(input1, input2, output, duration, backend);
+    }
+
+    /**
+     * Creates a simple fade transition between two videos with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyFadeTransition(String input1, String input2, String output, double duration, TransitionBackend backend) {
+        return applyFadeTransition(input1, input2, output, duration, JavaTransitionEngine.AT_END, backend);
+    }
+
+    /**
+     * Creates a simple fade transition at a given time of the first video with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyFadeTransition(String input1, String input2, String output, double duration, double offset, TransitionBackend backend) {
         try {
-            JavaTransitionEngine.applyFade(input1, input2, output, duration);
+            JavaTransitionEngine.applyTransition(input1, input2, output, duration, offset,
+                    effect(backend, "fade", JavaTransitionEngine::fadeEffect, FilterGraphEngine::fadeEffect));
             return true;
         } catch (Exception e) {
             System.err.println("Error applying fade transition: " + e.getMessage());
@@ -38,8 +87,40 @@ public class TransitionEngine {
      * @return true if the transition was applied successfully, false otherwise
      */
     public static boolean applyGlitchTransition(String input1, String input2, String output, double duration, int glitchStrength) {
+        return applyGlitchTransition(input1, input2, output, duration, glitchStrength, backend);
+    }
+
+    /**
+     * Creates a glitch transition between two videos with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param glitchStrength Intensity of the glitch effect (1-100)
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyGlitchTransition(String input1, String input2, String output, double duration, int glitchStrength, TransitionBackend backend) {
+        return applyGlitchTransition(input1, input2, output, duration, JavaTransitionEngine.AT_END, glitchStrength, backend);
+    }
+
+    /**
+     * Creates a glitch transition at a given time of the first video with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param glitchStrength Intensity of the glitch effect (1-100)
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyGlitchTransition(String input1, String input2, String output, double duration, double offset, int glitchStrength, TransitionBackend backend) {
         try {
-            JavaTransitionEngine.applyGlitch(input1, input2, output, duration, glitchStrength);
+            JavaTransitionEngine.applyTransition(input1, input2, output, duration, offset,
+                    effect(backend, "glitch", () -> JavaTransitionEngine.glitchEffect(glitchStrength), () -> FilterGraphEngine.glitchEffect(glitchStrength)));
             return true;
         } catch (Exception e) {
             System.err.println("Error applying glitch transition: " + e.getMessage());
@@ -59,8 +140,40 @@ public class TransitionEngine {
      * @return true if the transition was applied successfully, false otherwise
      */
     public static boolean applyZoomTransition(String input1, String input2, String output, double duration, double zoomFactor) {
+        return applyZoomTransition(input1, input2, output, duration, zoomFactor, backend);
+    }
+
+    /**
+     * Creates a zoom transition between two videos with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param zoomFactor Maximum zoom factor (1.0-2.0 recommended)
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyZoomTransition(String input1, String input2, String output, double duration, double zoomFactor, TransitionBackend backend) {
+        return applyZoomTransition(input1, input2, output, duration, JavaTransitionEngine.AT_END, zoomFactor, backend);
+    }
+
+    /**
+     * Creates a zoom transition at a given time of the first video with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param zoomFactor Maximum zoom factor (1.0-2.0 recommended)
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyZoomTransition(String input1, String input2, String output, double duration, double offset, double zoomFactor, TransitionBackend backend) {
         try {
-            JavaTransitionEngine.applyZoom(input1, input2, output, duration, zoomFactor);
+            JavaTransitionEngine.applyTransition(input1, input2, output, duration, offset,
+                    effect(backend, "zoom", () -> JavaTransitionEngine.zoomEffect(zoomFactor), () -> FilterGraphEngine.zoomEffect(zoomFactor)));
             return true;
         } catch (Exception e) {
             System.err.println("Error applying zoom transition: " + e.getMessage());
@@ -80,8 +193,40 @@ public class TransitionEngine {
      * @return true if the transition was applied successfully, false otherwise
      */
     public static boolean applyBlurTransition(String input1, String input2, String output, double duration, int maxBlur) {
+        return applyBlurTransition(input1, input2, output, duration, maxBlur, backend);
+    }
+
+    /**
+     * Creates a blur transition between two videos with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param maxBlur Maximum blur amount (5-50 recommended)
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyBlurTransition(String input1, String input2, String output, double duration, int maxBlur, TransitionBackend backend) {
+        return applyBlurTransition(input1, input2, output, duration, JavaTransitionEngine.AT_END, maxBlur, backend);
+    }
+
+    /**
+     * Creates a blur transition at a given time of the first video with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param maxBlur Maximum blur amount (5-50 recommended)
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyBlurTransition(String input1, String input2, String output, double duration, double offset, int maxBlur, TransitionBackend backend) {
         try {
-            JavaTransitionEngine.applyBlur(input1, input2, output, duration, maxBlur);
+            JavaTransitionEngine.applyTransition(input1, input2, output, duration, offset,
+                    effect(backend, "blur", () -> JavaTransitionEngine.blurEffect(maxBlur), () -> FilterGraphEngine.blurEffect(maxBlur)));
             return true;
         } catch (Exception e) {
             System.err.println("Error applying blur transition: " + e.getMessage());
@@ -102,8 +247,42 @@ public class TransitionEngine {
      * @return true if the transition was applied successfully, false otherwise
      */
     public static boolean applyWhipPanTransition(String input1, String input2, String output, double duration, String direction, int blurStrength) {
+        return applyWhipPanTransition(input1, input2, output, duration, direction, blurStrength, backend);
+    }
+
+    /**
+     * Creates a whip pan transition between two videos with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction of the whip ("left", "right", "up", "down")
+     * @param blurStrength Strength of the motion blur (10-100 recommended)
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyWhipPanTransition(String input1, String input2, String output, double duration, String direction, int blurStrength, TransitionBackend backend) {
+        return applyWhipPanTransition(input1, input2, output, duration, JavaTransitionEngine.AT_END, direction, blurStrength, backend);
+    }
+
+    /**
+     * Creates a whip pan transition at a given time of the first video with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param direction Direction of the whip ("left", "right", "up", "down")
+     * @param blurStrength Strength of the motion blur (10-100 recommended)
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyWhipPanTransition(String input1, String input2, String output, double duration, double offset, String direction, int blurStrength, TransitionBackend backend) {
         try {
-            JavaTransitionEngine.applyWhipPan(input1, input2, output, duration, direction, blurStrength);
+            JavaTransitionEngine.applyTransition(input1, input2, output, duration, offset,
+                    effect(backend, "whip", () -> JavaTransitionEngine.whipPanEffect(direction, blurStrength), () -> FilterGraphEngine.whipPanEffect(direction, blurStrength)));
             return true;
         } catch (Exception e) {
             System.err.println("Error applying whip pan transition: " + e.getMessage());
@@ -122,8 +301,38 @@ public class TransitionEngine {
      * @return true if the transition was applied successfully, false otherwise
      */
     public static boolean applySpinTransition(String input1, String input2, String output, double duration) {
+        return applySpinTransition(input1, input2, output, duration, backend);
+    }
+
+    /**
+     * Creates a spin transition between two videos with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applySpinTransition(String input1, String input2, String output, double duration, TransitionBackend backend) {
+        return applySpinTransition(input1, input2, output, duration, JavaTransitionEngine.AT_END, backend);
+    }
+
+    /**
+     * Creates a spin transition at a given time of the first video with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applySpinTransition(String input1, String input2, String output, double duration, double offset, TransitionBackend backend) {
         try {
-            JavaTransitionEngine.applySpin(input1, input2, output, duration);
+            JavaTransitionEngine.applyTransition(input1, input2, output, duration, offset,
+                    effect(backend, "spin", JavaTransitionEngine::spinEffect, FilterGraphEngine::spinEffect));
             return true;
         } catch (Exception e) {
             System.err.println("Error applying spin transition: " + e.getMessage());
@@ -142,8 +351,38 @@ public class TransitionEngine {
      * @return true if the transition was applied successfully, false otherwise
      */
     public static boolean applyLightFlashTransition(String input1, String input2, String output, double duration) {
+        return applyLightFlashTransition(input1, input2, output, duration, backend);
+    }
+
+    /**
+     * Creates a light flash transition between two videos with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyLightFlashTransition(String input1, String input2, String output, double duration, TransitionBackend backend) {
+        return applyLightFlashTransition(input1, input2, output, duration, JavaTransitionEngine.AT_END, backend);
+    }
+
+    /**
+     * Creates a light flash transition at a given time of the first video with the given backend
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return true if the transition was applied successfully, false otherwise
+     */
+    public static boolean applyLightFlashTransition(String input1, String input2, String output, double duration, double offset, TransitionBackend backend) {
         try {
-            JavaTransitionEngine.applyLightFlash(input1, input2, output, duration);
+            JavaTransitionEngine.applyTransition(input1, input2, output, duration, offset,
+                    effect(backend, "flash", JavaTransitionEngine::lightFlashEffect, FilterGraphEngine::lightFlashEffect));
             return true;
         } catch (Exception e) {
             System.err.println("Error applying light flash transition: " + e.getMessage());
@@ -152,6 +391,388 @@ public class TransitionEngine {
         }
     }
 
+    /**
+     * Starts a fade transition between two videos on an executor
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param listener Listener for progress updates, or null
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyFadeTransitionAsync(Executor executor, String input1, String input2, String output, double duration, TransitionProgressListener listener) {
+        return applyFadeTransitionAsync(executor, input1, input2, output, duration, listener, backend);
+    }
+
+    /**
+     * Starts a fade transition between two videos on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyFadeTransitionAsync(Executor executor, String input1, String input2, String output, double duration, TransitionProgressListener listener, TransitionBackend backend) {
+        return applyFadeTransitionAsync(executor, input1, input2, output, duration, JavaTransitionEngine.AT_END, listener, backend);
+    }
+
+    /**
+     * Starts a fade transition at a given time of the first video on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyFadeTransitionAsync(Executor executor, String input1, String input2, String output, double duration, double offset, TransitionProgressListener listener, TransitionBackend backend) {
+        return JavaTransitionEngine.submitTransition(executor, input1, input2, output, duration, offset,
+                effect(backend, "fade", JavaTransitionEngine::fadeEffect, FilterGraphEngine::fadeEffect), listener);
+    }
+
+    /**
+     * Starts a glitch transition between two videos on an executor
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param glitchStrength Intensity of the glitch effect (1-100)
+     * @param listener Listener for progress updates, or null
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyGlitchTransitionAsync(Executor executor, String input1, String input2, String output, double duration, int glitchStrength, TransitionProgressListener listener) {
+        return applyGlitchTransitionAsync(executor, input1, input2, output, duration, glitchStrength, listener, backend);
+    }
+
+    /**
+     * Starts a glitch transition between two videos on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param glitchStrength Intensity of the glitch effect (1-100)
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyGlitchTransitionAsync(Executor executor, String input1, String input2, String output, double duration, int glitchStrength, TransitionProgressListener listener, TransitionBackend backend) {
+        return applyGlitchTransitionAsync(executor, input1, input2, output, duration, JavaTransitionEngine.AT_END, glitchStrength, listener, backend);
+    }
+
+    /**
+     * Starts a glitch transition at a given time of the first video on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param glitchStrength Intensity of the glitch effect (1-100)
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyGlitchTransitionAsync(Executor executor, String input1, String input2, String output, double duration, double offset, int glitchStrength, TransitionProgressListener listener, TransitionBackend backend) {
+        return JavaTransitionEngine.submitTransition(executor, input1, input2, output, duration, offset,
+                effect(backend, "glitch", () -> JavaTransitionEngine.glitchEffect(glitchStrength), () -> FilterGraphEngine.glitchEffect(glitchStrength)), listener);
+    }
+
+    /**
+     * Starts a zoom transition between two videos on an executor
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param zoomFactor Maximum zoom factor (1.0-2.0 recommended)
+     * @param listener Listener for progress updates, or null
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyZoomTransitionAsync(Executor executor, String input1, String input2, String output, double duration, double zoomFactor, TransitionProgressListener listener) {
+        return applyZoomTransitionAsync(executor, input1, input2, output, duration, zoomFactor, listener, backend);
+    }
+
+    /**
+     * Starts a zoom transition between two videos on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param zoomFactor Maximum zoom factor (1.0-2.0 recommended)
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyZoomTransitionAsync(Executor executor, String input1, String input2, String output, double duration, double zoomFactor, TransitionProgressListener listener, TransitionBackend backend) {
+        return applyZoomTransitionAsync(executor, input1, input2, output, duration, JavaTransitionEngine.AT_END, zoomFactor, listener, backend);
+    }
+
+    /**
+     * Starts a zoom transition at a given time of the first video on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param zoomFactor Maximum zoom factor (1.0-2.0 recommended)
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyZoomTransitionAsync(Executor executor, String input1, String input2, String output, double duration, double offset, double zoomFactor, TransitionProgressListener listener, TransitionBackend backend) {
+        return JavaTransitionEngine.submitTransition(executor, input1, input2, output, duration, offset,
+                effect(backend, "zoom", () -> JavaTransitionEngine.zoomEffect(zoomFactor), () -> FilterGraphEngine.zoomEffect(zoomFactor)), listener);
+    }
+
+    /**
+     * Starts a blur transition between two videos on an executor
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param maxBlur Maximum blur amount (5-50 recommended)
+     * @param listener Listener for progress updates, or null
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyBlurTransitionAsync(Executor executor, String input1, String input2, String output, double duration, int maxBlur, TransitionProgressListener listener) {
+        return applyBlurTransitionAsync(executor, input1, input2, output, duration, maxBlur, listener, backend);
+    }
+
+    /**
+     * Starts a blur transition between two videos on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param maxBlur Maximum blur amount (5-50 recommended)
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyBlurTransitionAsync(Executor executor, String input1, String input2, String output, double duration, int maxBlur, TransitionProgressListener listener, TransitionBackend backend) {
+        return applyBlurTransitionAsync(executor, input1, input2, output, duration, JavaTransitionEngine.AT_END, maxBlur, listener, backend);
+    }
+
+    /**
+     * Starts a blur transition at a given time of the first video on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param maxBlur Maximum blur amount (5-50 recommended)
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyBlurTransitionAsync(Executor executor, String input1, String input2, String output, double duration, double offset, int maxBlur, TransitionProgressListener listener, TransitionBackend backend) {
+        return JavaTransitionEngine.submitTransition(executor, input1, input2, output, duration, offset,
+                effect(backend, "blur", () -> JavaTransitionEngine.blurEffect(maxBlur), () -> FilterGraphEngine.blurEffect(maxBlur)), listener);
+    }
+
+    /**
+     * Starts a whip pan transition between two videos on an executor
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction of the whip ("left", "right", "up", "down")
+     * @param blurStrength Strength of the motion blur (10-100 recommended)
+     * @param listener Listener for progress updates, or null
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyWhipPanTransitionAsync(Executor executor, String input1, String input2, String output, double duration, String direction, int blurStrength, TransitionProgressListener listener) {
+        return applyWhipPanTransitionAsync(executor, input1, input2, output, duration, direction, blurStrength, listener, backend);
+    }
+
+    /**
+     * Starts a whip pan transition between two videos on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction of the whip ("left", "right", "up", "down")
+     * @param blurStrength Strength of the motion blur (10-100 recommended)
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyWhipPanTransitionAsync(Executor executor, String input1, String input2, String output, double duration, String direction, int blurStrength, TransitionProgressListener listener, TransitionBackend backend) {
+        return applyWhipPanTransitionAsync(executor, input1, input2, output, duration, JavaTransitionEngine.AT_END, direction, blurStrength, listener, backend);
+    }
+
+    /**
+     * Starts a whip pan transition at a given time of the first video on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param direction Direction of the whip ("left", "right", "up", "down")
+     * @param blurStrength Strength of the motion blur (10-100 recommended)
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyWhipPanTransitionAsync(Executor executor, String input1, String input2, String output, double duration, double offset, String direction, int blurStrength, TransitionProgressListener listener, TransitionBackend backend) {
+        return JavaTransitionEngine.submitTransition(executor, input1, input2, output, duration, offset,
+                effect(backend, "whip", () -> JavaTransitionEngine.whipPanEffect(direction, blurStrength), () -> FilterGraphEngine.whipPanEffect(direction, blurStrength)), listener);
+    }
+
+    /**
+     * Starts a spin transition between two videos on an executor
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param listener Listener for progress updates, or null
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applySpinTransitionAsync(Executor executor, String input1, String input2, String output, double duration, TransitionProgressListener listener) {
+        return applySpinTransitionAsync(executor, input1, input2, output, duration, listener, backend);
+    }
+
+    /**
+     * Starts a spin transition between two videos on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applySpinTransitionAsync(Executor executor, String input1, String input2, String output, double duration, TransitionProgressListener listener, TransitionBackend backend) {
+        return applySpinTransitionAsync(executor, input1, input2, output, duration, JavaTransitionEngine.AT_END, listener, backend);
+    }
+
+    /**
+     * Starts a spin transition at a given time of the first video on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applySpinTransitionAsync(Executor executor, String input1, String input2, String output, double duration, double offset, TransitionProgressListener listener, TransitionBackend backend) {
+        return JavaTransitionEngine.submitTransition(executor, input1, input2, output, duration, offset,
+                effect(backend, "spin", JavaTransitionEngine::spinEffect, FilterGraphEngine::spinEffect), listener);
+    }
+
+    /**
+     * Starts a light flash transition between two videos on an executor
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param listener Listener for progress updates, or null
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyLightFlashTransitionAsync(Executor executor, String input1, String input2, String output, double duration, TransitionProgressListener listener) {
+        return applyLightFlashTransitionAsync(executor, input1, input2, output, duration, listener, backend);
+    }
+
+    /**
+     * Starts a light flash transition between two videos on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyLightFlashTransitionAsync(Executor executor, String input1, String input2, String output, double duration, TransitionProgressListener listener, TransitionBackend backend) {
+        return applyLightFlashTransitionAsync(executor, input1, input2, output, duration, JavaTransitionEngine.AT_END, listener, backend);
+    }
+
+    /**
+     * Starts a light flash transition at a given time of the first video on an executor with the given backend
+     *
+     * @param executor Executor running the job, e.g. a single-thread executor
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param output Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param listener Listener for progress updates, or null
+     * @param backend Backend rendering the transition, AUTO to pick the faster one
+     * @return Handle to follow or cancel the job
+     */
+    public static TransitionJob applyLightFlashTransitionAsync(Executor executor, String input1, String input2, String output, double duration, double offset, TransitionProgressListener listener, TransitionBackend backend) {
+        return JavaTransitionEngine.submitTransition(executor, input1, input2, output, duration, offset,
+                effect(backend, "flash", JavaTransitionEngine::lightFlashEffect, FilterGraphEngine::lightFlashEffect), listener);
+    }
+
+    /**
+     * Sets the backend of the methods that do not take one
+     *
+     * @param backend OPENCV, FILTER_GRAPH or AUTO
+     */
+    public static void setBackend(TransitionBackend backend) {
+        TransitionEngine.backend = backend;
+    }
+
+    /**
+     * @return The backend of the methods that do not take one
+     */
+    public static TransitionBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Creates the effect of the backend that renders the job
+     */
+    private static FrameEffect effect(TransitionBackend backend, String name,
+                                      Supplier<FrameEffect> opencv, Supplier<FrameEffect> filterGraph) {
+        return backend.resolve(name) == TransitionBackend.FILTER_GRAPH ? filterGraph.get() : opencv.get();
+    }
+
     /**
      * For backward compatibility with old code
      * @deprecated Use applyFadeTransition instead
@@ -0,0 +1,178 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * TransitionEvents - Java Flight Recorder events for transition jobs
+ *
+ * Only TransitionMetrics calls into this class, and only after checking that
+ * the JVM has jdk.jfr, so the engine still loads where Flight Recorder is
+ * missing (Android). The events cost next to nothing unless a recording with
+ * them enabled is running, for example:
+ *
+ *   java -XX:StartFlightRecording=filename=transitions.jfr ...
+ *   jfr print --events videotransitions.TransitionFrame transitions.jfr
+ *
+ * Events are passed around as Object so callers never link against jdk.jfr.
+ */
+final class TransitionEvents {
+
+    private TransitionEvents() {
+    }
+
+    @Name("videotransitions.TransitionJob")
+    @Label("Transition Job")
+    @Category("Video Transitions")
+    @Description("A complete transition job, from opening the inputs to closing the output")
+    static final class JobEvent extends Event {
+        @Label("Effect")
+        String effect;
+
+        @Label("Output")
+        String output;
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Frames Written")
+        long frames;
+
+        @Label("Transition Frames Written")
+        long transitionFrames;
+
+        @Label("Frames per Second")
+        double framesPerSecond;
+
+        @Label("Decode p99")
+        @Timespan(Timespan.NANOSECONDS)
+        long decodeP99;
+
+        @Label("Convert p99")
+        @Timespan(Timespan.NANOSECONDS)
+        long convertP99;
+
+        @Label("Effect p99")
+        @Timespan(Timespan.NANOSECONDS)
+        long effectP99;
+
+        @Label("Encode p99")
+        @Timespan(Timespan.NANOSECONDS)
+        long encodeP99;
+
+        @Label("Job Native Memory High-Water")
+        @DataAmount
+        long jobBytesHighWater;
+
+        @Label("Native Memory High-Water")
+        @DataAmount
+        long nativeBytesHighWater;
+
+        @Label("Resident Memory High-Water")
+        @DataAmount
+        long physicalBytesHighWater;
+
+        @Label("Max Queue Depth")
+        int maxQueueDepth;
+
+        @Label("Frame Copies")
+        long frameCopies;
+    }
+
+    @Name("videotransitions.TransitionFrame")
+    @Label("Transition Frame")
+    @Category("Video Transitions")
+    @Description("One output frame of a transition job with the time spent in each stage")
+    static final class FrameEvent extends Event {
+        @Label("Effect")
+        String effect;
+
+        @Label("Frame")
+        long frame;
+
+        @Label("Rendered by Effect")
+        boolean transition;
+
+        @Label("Decode")
+        @Timespan(Timespan.NANOSECONDS)
+        long decode;
+
+        @Label("Convert")
+        @Timespan(Timespan.NANOSECONDS)
+        long convert;
+
+        @Label("Effect Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long effectTime;
+
+        @Label("Encode")
+        @Timespan(Timespan.NANOSECONDS)
+        long encode;
+
+        @Label("Frame Copies")
+        int frameCopies;
+    }
+
+    static Object beginJob() {
+        JobEvent event = new JobEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitJob(Object jobEvent, TransitionMetrics metrics) {
+        JobEvent event = (JobEvent) jobEvent;
+        if (event == null) return;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.effect = metrics.getEffectName();
+            event.output = metrics.getOutputPath();
+            event.width = metrics.getWidth();
+            event.height = metrics.getHeight();
+            event.frames = metrics.getFramesWritten();
+            event.transitionFrames = metrics.getTransitionFramesWritten();
+            event.framesPerSecond = metrics.getFramesPerSecond();
+            event.decodeP99 = metrics.getHistogram(TransitionMetrics.Stage.DECODE).getPercentileNanos(99);
+            event.convertP99 = metrics.getHistogram(TransitionMetrics.Stage.CONVERT).getPercentileNanos(99);
+            event.effectP99 = metrics.getHistogram(TransitionMetrics.Stage.EFFECT).getPercentileNanos(99);
+            event.encodeP99 = metrics.getHistogram(TransitionMetrics.Stage.ENCODE).getPercentileNanos(99);
+            event.jobBytesHighWater = metrics.getJobBytesHighWater();
+            event.nativeBytesHighWater = metrics.getNativeBytesHighWater();
+            event.physicalBytesHighWater = metrics.getPhysicalBytesHighWater();
+            event.maxQueueDepth = metrics.getMaxQueueDepth();
+            event.frameCopies = metrics.getFrameCopies();
+            event.commit();
+        }
+    }
+
+    static Object beginFrame() {
+        FrameEvent event = new FrameEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitFrame(Object frameEvent, TransitionMetrics metrics, boolean transition, long[] stageNanos,
+                            int frameCopies) {
+        FrameEvent event = (FrameEvent) frameEvent;
+        if (event == null) return;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.effect = metrics.getEffectName();
+            event.frame = metrics.getFramesWritten() - 1;
+            event.transition = transition;
+            event.decode = stageNanos[TransitionMetrics.Stage.DECODE.ordinal()];
+            event.convert = stageNanos[TransitionMetrics.Stage.CONVERT.ordinal()];
+            event.effectTime = stageNanos[TransitionMetrics.Stage.EFFECT.ordinal()];
+            event.encode = stageNanos[TransitionMetrics.Stage.ENCODE.ordinal()];
+            event.frameCopies = frameCopies;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,367 @@
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.EOFException;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * TransitionFanOut - Renders several effects over the same pair of videos in one pass
+ *
+ * Trying out transitions for a pair (a fade, a glitch and a zoom, say)
+ * through the apply* methods decodes both videos once per effect and
+ * encodes the same first and last parts of the output every time, although
+ * only the transition differs between the outputs. The fan-out cuts the
+ * output timeline like ChunkedTransitionEncoder does, into the head before
+ * the transition, the transition window and the tail after it:
+ *
+ *   head, tail  encoded once each, in parallel with the window
+ *   window      decoded once; every frame pair goes to all effects, each
+ *               rendering into its own Mat and encoding with its own
+ *               recorder, in parallel on the executor
+ *
+ * Every output is then joined from the head, its own window and the tail by
+ * copying their packets. Each output has the same frames that
+ * ChunkedTransitionEncoder writes for its effect alone, and like it the
+ * fan-out renders each effect in a single pass instead when an input has
+ * fewer frames than its header says.
+ *
+ * The effects read the same decoded frames at the same time, which is safe
+ * as effects never write to their inputs (see FrameEffect). They must all
+ * work in the same pixel format.
+ */
+public class TransitionFanOut {
+
+    /**
+     * Renders one output per effect with one worker per available processor, up to one per effect
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param duration Duration of the transition in seconds
+     * @param effects Effects rendering the overlapping frames, owned by the fan-out
+     * @param outputPaths Path for the output of each effect, in the same order
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyTransitions(String input1, String input2, double duration, List<FrameEffect> effects,
+                                        List<String> outputPaths) throws Exception {
+        // A constrained host renders the effects one after the other, still from one decode
+        int threads = JavaTransitionEngine.getExecutionProfile().isStreamingOnly() ? 1
+                : Math.min(effects.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            applyTransitions(executor, input1, input2, duration, effects, outputPaths);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Renders one output per effect, running the effects and the shared parts on an executor
+     *
+     * The calling thread decodes the transition window and joins the
+     * outputs, so it must not be one of the executor's threads if the
+     * executor is bounded.
+     *
+     * @param executor Executor running the effects and encoding the shared parts
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param duration Duration of the transition in seconds
+     * @param effects Effects rendering the overlapping frames, owned by the fan-out
+     * @param outputPaths Path for the output of each effect, in the same order
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyTransitions(Executor executor, String input1, String input2, double duration,
+                                        List<FrameEffect> effects, List<String> outputPaths) throws Exception {
+        applyTransitions(executor, input1, input2, duration, JavaTransitionEngine.AT_END, effects, outputPaths);
+    }
+
+    /**
+     * Renders one output per effect with the transition starting at a given time of the first video
+     *
+     * The calling thread decodes the transition window and joins the
+     * outputs, so it must not be one of the executor's threads if the
+     * executor is bounded.
+     *
+     * @param executor Executor running the effects and encoding the shared parts
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param effects Effects rendering the overlapping frames, owned by the fan-out
+     * @param outputPaths Path for the output of each effect, in the same order
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyTransitions(Executor executor, String input1, String input2, double duration, double offset,
+                                        List<FrameEffect> effects, List<String> outputPaths) throws Exception {
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<FutureTask<Void>> tasks = new ArrayList<>();
+        File chunkDir = null;
+        boolean singlePass = false;
+        try {
+            if (effects.isEmpty() || effects.size() != outputPaths.size()) {
+                throw new IllegalArgumentException("Expected one output path per effect, got "
+                        + effects.size() + " effects and " + outputPaths.size() + " paths");
+            }
+            int pixelFormat = effects.get(0).pixelFormat();
+            for (FrameEffect effect : effects) {
+                if (effect.pixelFormat() != pixelFormat) {
+                    throw new IllegalArgumentException("The effects of a fan-out must share a pixel format, "
+                            + effect.name() + " differs from " + effects.get(0).name());
+                }
+            }
+
+            ChunkedTransitionEncoder.Timeline timeline = ChunkedTransitionEncoder.Timeline.probe(input1, input2, duration, offset);
+            int transitionStart = Math.max(0, timeline.firstVideoFramesToKeep);
+            int transitionEnd = Math.min(timeline.totalFrames, transitionStart + Math.max(0, timeline.transitionFrames));
+
+            File output = new File(outputPaths.get(0)).getAbsoluteFile();
+            chunkDir = Files.createTempDirectory(output.getParentFile().toPath(), output.getName() + ".fanout").toFile();
+
+            // The head and tail only copy frames, so they are the same for every effect
+            List<ChunkedTransitionEncoder.Chunk> shared = new ArrayList<>();
+            if (transitionStart > 0) {
+                shared.add(new ChunkedTransitionEncoder.Chunk(0, 0, transitionStart));
+            }
+            if (transitionEnd < timeline.totalFrames) {
+                shared.add(new ChunkedTransitionEncoder.Chunk(2, transitionEnd, timeline.totalFrames));
+            }
+            for (ChunkedTransitionEncoder.Chunk chunk : shared) {
+                chunk.file = new File(chunkDir, String.format("shared%d.mp4", chunk.index));
+                FutureTask<Void> task = new FutureTask<>(() -> {
+                    ChunkedTransitionEncoder.renderChunk(timeline, chunk, effects.get(0), aborted, null);
+                    return null;
+                });
+                tasks.add(task);
+                executor.execute(task);
+            }
+
+            List<File> windows = new ArrayList<>();
+            for (int k = 0; k < effects.size(); k++) {
+                windows.add(new File(chunkDir, String.format("window%03d.mp4", k)));
+            }
+            Exception failure = null;
+            if (transitionEnd > transitionStart) {
+                try {
+                    renderWindows(executor, timeline, effects, windows, pixelFormat);
+                } catch (EOFException e) {
+                    // The head and tail still run, so they are stopped and collected before falling back
+                    aborted.set(true);
+                    failure = e;
+                }
+            }
+
+            for (FutureTask<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    // Parts stopped by another part's failure report a CancellationException; keep the cause
+                    if (failure == null || failure instanceof CancellationException) {
+                        aborted.set(true);
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            }
+            if (failure instanceof EOFException) {
+                // An input is shorter than its header says, so every effect renders in one pass
+                // like ChunkedTransitionEncoder does, where the frame loop stops with the input
+                singlePass = true;
+            } else if (failure != null) {
+                throw failure;
+            } else {
+                for (int k = 0; k < effects.size(); k++) {
+                    List<File> files = new ArrayList<>();
+                    if (transitionStart > 0) {
+                        files.add(shared.get(0).file);
+                    }
+                    if (transitionEnd > transitionStart) {
+                        files.add(windows.get(k));
+                    }
+                    if (transitionEnd < timeline.totalFrames) {
+                        files.add(shared.get(shared.size() - 1).file);
+                    }
+                    ChunkedTransitionEncoder.concatenate(files, new File(chunkDir, "chunks" + k + ".txt"), outputPaths.get(k));
+                }
+            }
+        } catch (Exception e) {
+            // Stop the head and tail after their current frame
+            aborted.set(true);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw e;
+        } finally {
+            for (FutureTask<Void> task : tasks) {
+                // Parts that have not started yet are dropped
+                task.cancel(false);
+            }
+            if (!singlePass) {
+                for (FrameEffect effect : effects) {
+                    effect.release();
+                }
+            }
+            if (chunkDir != null) {
+                File[] files = chunkDir.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                chunkDir.delete();
+            }
+        }
+
+        if (singlePass) {
+            for (int k = 0; k < effects.size(); k++) {
+                try {
+                    JavaTransitionEngine.applyTransition(input1, input2, outputPaths.get(k), duration,
+                            offset, effects.get(k));
+                } catch (Exception e) {
+                    // The pass releases its own effect; the effects still waiting are released here
+                    for (int rest = k + 1; rest < effects.size(); rest++) {
+                        effects.get(rest).release();
+                    }
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the transition window once and renders every effect's version of it into its own file
+     */
+    private static void renderWindows(Executor executor, ChunkedTransitionEncoder.Timeline timeline,
+                                      List<FrameEffect> effects, List<File> files, int pixelFormat) throws Exception {
+        int count = effects.size();
+        NativeMemoryBudget budget = JavaTransitionEngine.getMemoryBudget();
+        long bytes = JavaTransitionEngine.pipelineBytes(timeline.width, timeline.height, pixelFormat)
+                + (count - 1) * JavaTransitionEngine.encoderBytes(timeline.width, timeline.height, pixelFormat);
+        long reservedBytes = JavaTransitionEngine.reserveMemory(budget, bytes, files.get(0).getPath(), null);
+
+        FFmpegFrameGrabber grabber1 = null;
+        FFmpegFrameGrabber grabber2 = null;
+        FFmpegFrameRecorder[] recorders = new FFmpegFrameRecorder[count];
+        Mat[] outputs = new Mat[count];
+        OpenCVFrameConverter.ToMat[] converters = new OpenCVFrameConverter.ToMat[count];
+        Mat packed1 = new Mat();
+        Mat packed2 = new Mat();
+        boolean finished = false;
+        try {
+            grabber1 = ChunkedTransitionEncoder.openGrabber(timeline.input1, pixelFormat, timeline.width,
+                    timeline.height, Math.max(0, timeline.firstVideoFramesToKeep));
+            grabber2 = ChunkedTransitionEncoder.openGrabber(timeline.input2, pixelFormat, timeline.width,
+                    timeline.height, 0);
+            for (int k = 0; k < count; k++) {
+                outputs[k] = new Mat();
+                converters[k] = new OpenCVFrameConverter.ToMat();
+                recorders[k] = ChunkedTransitionEncoder.openRecorder(timeline, files.get(k));
+                effects.get(k).prepare(timeline.frameRate, timeline.transitionFrames);
+            }
+
+            List<FutureTask<Void>> pipelines = new ArrayList<>(count);
+            for (int i = 0; i < timeline.transitionFrames; i++) {
+                Frame frame1 = grabber1.grabImage();
+                Frame frame2 = grabber2.grabImage();
+                if (frame1 == null || frame2 == null) {
+                    throw ChunkedTransitionEncoder.shortRead(frame1 == null ? timeline.input1 : timeline.input2,
+                            timeline.firstVideoFramesToKeep + i);
+                }
+                double progress = (double) i / timeline.transitionFrames;
+
+                // The decoded frames stay valid until every effect is done with them
+                try (PointerScope scope = new PointerScope()) {
+                    Mat mat1 = JavaTransitionEngine.toMat(frame1, pixelFormat, packed1);
+                    Mat mat2 = JavaTransitionEngine.toMat(frame2, pixelFormat, packed2);
+
+                    pipelines.clear();
+                    for (int k = 0; k < count; k++) {
+                        FrameEffect effect = effects.get(k);
+                        Mat output = outputs[k];
+                        FFmpegFrameRecorder recorder = recorders[k];
+                        OpenCVFrameConverter.ToMat converter = converters[k];
+                        FutureTask<Void> pipeline = new FutureTask<>(() -> {
+                            // Scopes belong to a thread, so the worker needs its own for the effect's temporaries
+                            try (PointerScope effectScope = new PointerScope()) {
+                                output.create(mat1.rows(), mat1.cols(), mat1.type());
+                                effect.apply(mat1, mat2, output, progress);
+                            }
+                            JavaTransitionEngine.recordMat(recorder, converter, output, pixelFormat);
+                            return null;
+                        });
+                        pipelines.add(pipeline);
+                        executor.execute(pipeline);
+                    }
+                    awaitAll(pipelines);
+                }
+            }
+            finished = true;
+        } finally {
+            budget.release(reservedBytes);
+            packed1.release();
+            packed2.release();
+            if (grabber1 != null) {
+                grabber1.release();
+            }
+            if (grabber2 != null) {
+                grabber2.release();
+            }
+            for (int k = 0; k < count; k++) {
+                if (recorders[k] != null) {
+                    if (finished) {
+                        recorders[k].stop();
+                    }
+                    recorders[k].release();
+                }
+                if (outputs[k] != null) {
+                    outputs[k].release();
+                }
+                if (converters[k] != null) {
+                    converters[k].close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for every task, even after one fails, as they share the frames being rendered
+     */
+    static void awaitAll(List<FutureTask<Void>> tasks) throws Exception {
+        Exception failure = null;
+        boolean interrupted = false;
+        for (FutureTask<Void> task : tasks) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    // The workers still read the frames, so they must finish before the frames are freed
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedException("Fan-out interrupted");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * TransitionJob - Handle of a transition running on an executor
+ *
+ * Created by JavaTransitionEngine.submitTransition, TransitionSession.submitTransition
+ * and the *Async methods of TransitionEngine. The job reports its progress and an estimate of the time
+ * left to an optional TransitionProgressListener, and can be cancelled at any
+ * time: a queued job never opens its inputs, and a running job stops after
+ * the frame it is working on, releases its decoders, encoder and effect
+ * buffers, deletes the partial output and returns its worker thread to the
+ * executor.
+ */
+public class TransitionJob implements Runnable, Future<Void> {
+
+    /**
+     * Lifecycle of a job
+     */
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    // Progress is reported to the listener in steps of at least this fraction
+    private static final double PROGRESS_STEP = 0.01;
+
+    private final String input1;
+    private final String input2;
+    private final String outputPath;
+    private final double duration;
+    private final double offset;
+    private final FrameEffect effect;
+    private final TransitionProgressListener listener;
+    private final TransitionSession session;
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private volatile State state = State.QUEUED;
+    private volatile double progress;
+    private volatile long remainingMillis = -1;
+    private volatile TransitionMetrics metrics;
+    private double reportedProgress;
+    private Exception error;
+
+    /**
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param effect Effect rendering the overlapping frames, owned by the job
+     * @param listener Listener for progress updates, or null
+     * @param session Session providing the job's buffers
+     */
+    TransitionJob(String input1, String input2, String outputPath, double duration, double offset,
+                  FrameEffect effect, TransitionProgressListener listener, TransitionSession session) {
+        this.input1 = input1;
+        this.input2 = input2;
+        this.outputPath = outputPath;
+        this.duration = duration;
+        this.offset = offset;
+        this.effect = effect;
+        this.listener = listener;
+        this.session = session;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            // Cancelled while queued: nothing was opened, so the worker is free right away
+            if (state != State.QUEUED) return;
+            state = State.RUNNING;
+        }
+
+        try {
+            JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, offset, effect, this, session);
+            finish(State.COMPLETED, null);
+        } catch (CancellationException e) {
+            // The frame loop has already stopped the grabbers and released the recorder
+            finish(State.CANCELLED, null);
+        } catch (Exception e) {
+            finish(State.FAILED, e);
+        }
+    }
+
+    /**
+     * Called by the frame loop once it has opened the inputs
+     */
+    void started(TransitionMetrics metrics) {
+        this.metrics = metrics;
+        checkCancelled();
+    }
+
+    /**
+     * Called by the frame loop after every output frame
+     *
+     * @throws CancellationException If the job was cancelled, to unwind the frame loop
+     */
+    void frameWritten(TransitionMetrics metrics) {
+        checkCancelled();
+
+        long expected = metrics.getExpectedFrames();
+        if (expected <= 0) return;
+
+        // The frame count is an estimate from the container, so never report completion early
+        double fraction = Math.min(0.99, (double) metrics.getFramesWritten() / expected);
+        long elapsedMillis = metrics.getElapsedNanos() / 1_000_000;
+        progress = fraction;
+        remainingMillis = fraction > 0 ? (long) (elapsedMillis * (1.0 - fraction) / fraction) : -1;
+
+        if (listener != null && fraction - reportedProgress >= PROGRESS_STEP) {
+            reportedProgress = fraction;
+            listener.onProgress(this, fraction, remainingMillis);
+        }
+    }
+
+    /**
+     * @throws CancellationException If the job was cancelled
+     */
+    void checkCancelled() {
+        if (state == State.CANCELLED) {
+            throw new CancellationException("Transition to " + outputPath + " was cancelled");
+        }
+    }
+
+    private void finish(State finalState, Exception failure) {
+        State result;
+        synchronized (this) {
+            if (state == State.RUNNING) {
+                state = finalState;
+            }
+            result = state;
+            error = failure;
+            if (result == State.COMPLETED) {
+                progress = 1.0;
+                remainingMillis = 0;
+            }
+        }
+        if (result == State.CANCELLED) {
+            // Also covers a job cancelled after its last frame: the output is dropped all the same
+            new File(outputPath).delete();
+        }
+        terminated.countDown();
+
+        if (listener == null) return;
+        switch (result) {
+            case COMPLETED:
+                listener.onProgress(this, 1.0, 0);
+                listener.onComplete(this);
+                break;
+            case FAILED:
+                listener.onError(this, failure);
+                break;
+            default:
+                listener.onCancelled(this);
+                break;
+        }
+    }
+
+    /**
+     * Cancels the job
+     *
+     * A queued job will not start. A running job stops after its current
+     * frame; onCancelled is called once its resources are released.
+     *
+     * @param mayInterruptIfRunning Ignored, running jobs always stop at the next frame
+     * @return false if the job had already finished
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean wasQueued;
+        synchronized (this) {
+            if (state != State.QUEUED && state != State.RUNNING) return false;
+            wasQueued = state == State.QUEUED;
+            state = State.CANCELLED;
+        }
+
+        if (wasQueued) {
+            // The frame loop never ran, so release the effect here
+            effect.release();
+            terminated.countDown();
+            if (listener != null) {
+                listener.onCancelled(this);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the job, see cancel(boolean)
+     *
+     * @return false if the job had already finished
+     */
+    public boolean cancel() {
+        return cancel(false);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state == State.CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        State current = state;
+        return current != State.QUEUED && current != State.RUNNING;
+    }
+
+    /**
+     * Waits until the job has finished and, if it was cancelled, released its resources
+     *
+     * @throws CancellationException If the job was cancelled
+     * @throws ExecutionException If the job failed
+     */
+    @Override
+    public Void get() throws InterruptedException, ExecutionException {
+        terminated.await();
+        return result();
+    }
+
+    @Override
+    public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!terminated.await(timeout, unit)) {
+            throw new TimeoutException("Transition to " + outputPath + " is still running");
+        }
+        return result();
+    }
+
+    private synchronized Void result() throws ExecutionException {
+        if (state == State.CANCELLED) {
+            throw new CancellationException("Transition to " + outputPath + " was cancelled");
+        }
+        if (state == State.FAILED) {
+            throw new ExecutionException(error);
+        }
+        return null;
+    }
+
+    /**
+     * @return Current state of the job
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return Fraction of the output written, from 0.0 to 1.0
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return Estimated time left in milliseconds, -1 while unknown
+     */
+    public long getRemainingMillis() {
+        return remainingMillis;
+    }
+
+    /**
+     * @return Metrics of the job, null until it has opened its inputs
+     */
+    public TransitionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return Path of the output video
+     */
+    public String getOutputPath() {
+        return outputPath;
+    }
+}
@@ -0,0 +1,324 @@
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * TransitionLadder - Renders a transition once into every rendition of an adaptive bitrate ladder
+ *
+ * Streaming wants the same output at several sizes and bitrates (1080p,
+ * 720p, 480p and 360p, say). Running the transition once per rendition
+ * decodes both videos and renders the effect every time, and transcoding
+ * the finished output decodes and encodes it twice. The ladder does it in
+ * one pass over the output timeline:
+ *
+ *   decode    both videos once, scaled by the decoder to the top rung
+ *   render    the effect once per transition frame, at the top rung
+ *   scale     every frame down the ladder as a cascade, each rung from the
+ *             one above it, which is cheaper than scaling every rung from
+ *             the top and looks the same with area interpolation
+ *   encode    one recorder per rung, all fed the same frame in parallel on
+ *             the executor
+ *
+ * Every rendition has the same frames and its keyframes at the same
+ * frames, so players can switch renditions at any GOP boundary. The GOP is
+ * two seconds, and encoders that honour keyint_min and sc_threshold (x264,
+ * x265) add no keyframes at scene changes. OpenH264 cannot be told to stop,
+ * but as it sees the same pictures in every rung, it adds them at the same
+ * frames everywhere. Rungs keep the aspect ratio of the first video at
+ * their height; rungs taller than the video are upscaled like the top rung.
+ */
+public class TransitionLadder {
+
+    /**
+     * One rendition of the ladder: its height and video bitrate
+     */
+    public static final class Rung {
+        private final int height;
+        private final int videoBitrate;
+
+        /**
+         * @param height Height of the rendition in pixels, even
+         * @param videoBitrate Video bitrate in bits per second
+         */
+        public Rung(int height, int videoBitrate) {
+            if (height < 16 || height % 2 != 0 || videoBitrate <= 0) {
+                throw new IllegalArgumentException("Rung needs an even height of at least 16 and a positive bitrate: "
+                        + height + "p at " + videoBitrate + " bps");
+            }
+            this.height = height;
+            this.videoBitrate = videoBitrate;
+        }
+
+        /**
+         * @return Height of the rendition in pixels
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return Video bitrate in bits per second
+         */
+        public int getVideoBitrate() {
+            return videoBitrate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%dp@%.1fMbps", height, videoBitrate / 1e6);
+        }
+    }
+
+    /**
+     * @return 1080p at 5 Mbps, 720p at 2.8 Mbps, 480p at 1.4 Mbps and 360p at 0.8 Mbps
+     */
+    public static List<Rung> defaultRungs() {
+        return Arrays.asList(new Rung(1080, 5_000_000), new Rung(720, 2_800_000),
+                new Rung(480, 1_400_000), new Rung(360, 800_000));
+    }
+
+    /**
+     * Renders every rendition of a transition at the end of the first video, with one worker per rung up to one per processor
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param duration Duration of the transition in seconds
+     * @param effect Effect rendering the overlapping frames, owned by the ladder
+     * @param rungs Renditions to write, in any order
+     * @param outputPaths Path for the output of each rung, in the same order
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyTransition(String input1, String input2, double duration, FrameEffect effect,
+                                       List<Rung> rungs, List<String> outputPaths) throws Exception {
+        // A constrained host encodes the rungs one after the other, still from one render
+        int threads = JavaTransitionEngine.getExecutionProfile().isStreamingOnly() ? 1
+                : Math.min(rungs.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            applyTransition(executor, input1, input2, duration, JavaTransitionEngine.AT_END, effect, rungs, outputPaths);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Renders every rendition of a transition, encoding the rungs on an executor
+     *
+     * The calling thread decodes, renders and scales, so it must not be one
+     * of the executor's threads if the executor is bounded.
+     *
+     * @param executor Executor running the rungs' encoders
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param effect Effect rendering the overlapping frames, owned by the ladder
+     * @param rungs Renditions to write, in any order
+     * @param outputPaths Path for the output of each rung, in the same order
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyTransition(Executor executor, String input1, String input2, double duration, double offset,
+                                       FrameEffect effect, List<Rung> rungs, List<String> outputPaths) throws Exception {
+        try {
+            if (rungs.isEmpty() || rungs.size() != outputPaths.size()) {
+                throw new IllegalArgumentException("Expected one output path per rung, got "
+                        + rungs.size() + " rungs and " + outputPaths.size() + " paths");
+            }
+            // The cascade runs from the tallest rung down
+            Integer[] order = new Integer[rungs.size()];
+            for (int k = 0; k < order.length; k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(rungs.get(b).getHeight(), rungs.get(a).getHeight()));
+            List<Rung> sorted = new ArrayList<>();
+            List<String> paths = new ArrayList<>();
+            for (int k : order) {
+                sorted.add(rungs.get(k));
+                paths.add(outputPaths.get(k));
+            }
+
+            ChunkedTransitionEncoder.Timeline timeline = ChunkedTransitionEncoder.Timeline.probe(input1, input2, duration, offset);
+            render(executor, timeline, effect, sorted, paths);
+        } finally {
+            effect.release();
+        }
+    }
+
+    /**
+     * The single pass: decodes and renders at the top rung, scales down the cascade and encodes every rung
+     */
+    private static void render(Executor executor, ChunkedTransitionEncoder.Timeline timeline, FrameEffect effect,
+                               List<Rung> rungs, List<String> paths) throws Exception {
+        int count = rungs.size();
+        int pixelFormat = effect.pixelFormat();
+        double aspect = (double) timeline.width / timeline.height;
+        int[][] sizes = new int[count][];
+        for (int k = 0; k < count; k++) {
+            int height = rungs.get(k).getHeight();
+            sizes[k] = new int[] {Math.max(2, (int) Math.round(height * aspect / 2) * 2), height};
+        }
+        int width = sizes[0][0];
+        int height = sizes[0][1];
+
+        NativeMemoryBudget budget = JavaTransitionEngine.getMemoryBudget();
+        long bytes = JavaTransitionEngine.pipelineBytes(width, height, pixelFormat);
+        for (int k = 1; k < count; k++) {
+            // Every lower rung holds its scaled frame besides its encoder
+            bytes += JavaTransitionEngine.encoderBytes(sizes[k][0], sizes[k][1], pixelFormat)
+                    + JavaTransitionEngine.frameBytes(sizes[k][0], sizes[k][1], pixelFormat);
+        }
+        long reservedBytes = JavaTransitionEngine.reserveMemory(budget, bytes, paths.get(0), null);
+
+        FFmpegFrameGrabber grabber1 = null;
+        FFmpegFrameGrabber grabber2 = null;
+        FFmpegFrameRecorder[] recorders = new FFmpegFrameRecorder[count];
+        OpenCVFrameConverter.ToMat[] converters = new OpenCVFrameConverter.ToMat[count];
+        Mat[] scaled = new Mat[count];
+        Mat rendered = new Mat();
+        Mat packed1 = new Mat();
+        Mat packed2 = new Mat();
+        boolean finished = false;
+        try {
+            grabber1 = ChunkedTransitionEncoder.openGrabber(timeline.input1, pixelFormat, width, height, 0);
+            grabber2 = ChunkedTransitionEncoder.openGrabber(timeline.input2, pixelFormat, width, height, 0);
+            for (int k = 0; k < count; k++) {
+                converters[k] = new OpenCVFrameConverter.ToMat();
+                scaled[k] = new Mat();
+                recorders[k] = openRecorder(timeline, rungs.get(k), sizes[k], paths.get(k));
+            }
+
+            List<FutureTask<Void>> encodes = new ArrayList<>(count);
+            int transitionEnd = timeline.firstVideoFramesToKeep + timeline.transitionFrames;
+            effect.prepare(timeline.frameRate, timeline.transitionFrames);
+            for (int f = 0; ; f++) {
+                // The decoded frames and their views stay valid until every rung has encoded them
+                try (PointerScope scope = new PointerScope()) {
+                    Mat top;
+                    if (f < timeline.firstVideoFramesToKeep) {
+                        Frame frame = grabber1.grabImage();
+                        if (frame == null) break;
+                        top = JavaTransitionEngine.toMat(frame, pixelFormat, packed1);
+                    } else if (f < transitionEnd) {
+                        Frame frame1 = grabber1.grabImage();
+                        Frame frame2 = grabber2.grabImage();
+                        if (frame1 == null || frame2 == null) break;
+                        Mat mat1 = JavaTransitionEngine.toMat(frame1, pixelFormat, packed1);
+                        Mat mat2 = JavaTransitionEngine.toMat(frame2, pixelFormat, packed2);
+                        rendered.create(mat1.rows(), mat1.cols(), mat1.type());
+                        effect.apply(mat1, mat2, rendered, (double) (f - timeline.firstVideoFramesToKeep) / timeline.transitionFrames);
+                        top = rendered;
+                    } else {
+                        Frame frame = grabber2.grabImage();
+                        if (frame == null) break;
+                        top = JavaTransitionEngine.toMat(frame, pixelFormat, packed2);
+                    }
+
+                    Mat[] frames = new Mat[count];
+                    frames[0] = top;
+                    for (int k = 1; k < count; k++) {
+                        scale(frames[k - 1], scaled[k], sizes[k][0], sizes[k][1], pixelFormat);
+                        frames[k] = scaled[k];
+                    }
+
+                    encodes.clear();
+                    for (int k = 0; k < count; k++) {
+                        FFmpegFrameRecorder recorder = recorders[k];
+                        OpenCVFrameConverter.ToMat converter = converters[k];
+                        Mat mat = frames[k];
+                        FutureTask<Void> encode = new FutureTask<>(() -> {
+                            JavaTransitionEngine.recordMat(recorder, converter, mat, pixelFormat);
+                            return null;
+                        });
+                        encodes.add(encode);
+                        executor.execute(encode);
+                    }
+                    TransitionFanOut.awaitAll(encodes);
+                }
+            }
+            finished = true;
+        } finally {
+            budget.release(reservedBytes);
+            rendered.release();
+            packed1.release();
+            packed2.release();
+            if (grabber1 != null) {
+                grabber1.release();
+            }
+            if (grabber2 != null) {
+                grabber2.release();
+            }
+            for (int k = 0; k < count; k++) {
+                if (recorders[k] != null) {
+                    if (finished) {
+                        recorders[k].stop();
+                    }
+                    recorders[k].release();
+                }
+                if (scaled[k] != null) {
+                    scaled[k].release();
+                }
+                if (converters[k] != null) {
+                    converters[k].close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Scales a frame to the next rung with area interpolation, plane by plane for I420
+     */
+    private static void scale(Mat source, Mat target, int width, int height, int pixelFormat) {
+        if (pixelFormat == AV_PIX_FMT_YUV420P) {
+            target.create(height * 3 / 2, width, CV_8UC1);
+            for (int p = 0; p < 3; p++) {
+                Mat to = YuvTransitionEngine.plane(target, p);
+                resize(YuvTransitionEngine.plane(source, p), to, to.size(), 0, 0, INTER_AREA);
+            }
+        } else {
+            resize(source, target, new Size(width, height), 0, 0, INTER_AREA);
+        }
+    }
+
+    /**
+     * Opens the recorder of one rung, with keyframes every GOP and nowhere else
+     */
+    private static FFmpegFrameRecorder openRecorder(ChunkedTransitionEncoder.Timeline timeline, Rung rung, int[] size,
+                                                    String path) throws Exception {
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(path, size[0], size[1]);
+        recorder.setVideoCodec(timeline.videoCodec);
+        recorder.setFormat("mp4");
+        recorder.setFrameRate(timeline.frameRate);
+        recorder.setVideoBitrate(rung.getVideoBitrate());
+        recorder.setGopSize(timeline.gopFrames);
+        // Keyframes the encoder adds at scene changes would differ between rungs
+        recorder.setVideoOption("keyint_min", String.valueOf(timeline.gopFrames));
+        recorder.setVideoOption("sc_threshold", "0");
+        int threads = JavaTransitionEngine.getExecutionProfile().getCodecThreads();
+        if (threads > 0) {
+            recorder.setVideoOption("threads", String.valueOf(threads));
+        }
+        recorder.setPixelFormat(AV_PIX_FMT_YUV420P);
+        try {
+            recorder.start();
+        } catch (Exception e) {
+            recorder.release();
+            throw e;
+        }
+        return recorder;
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * TransitionListener - Receives the metrics of transition jobs
+ *
+ * Register with JavaTransitionEngine.addTransitionListener. Callbacks run on
+ * the thread executing the job, so implementations should return quickly.
+ */
+public interface TransitionListener {
+
+    /**
+     * Called once the inputs are open and the output is about to be written
+     *
+     * @param metrics Metrics of the job, updated while it runs
+     */
+    default void jobStarted(TransitionMetrics metrics) {
+    }
+
+    /**
+     * Called when the output has been written completely
+     *
+     * @param metrics Final metrics of the job
+     */
+    default void jobFinished(TransitionMetrics metrics) {
+    }
+
+    /**
+     * Called when the job stops with an error
+     *
+     * @param metrics Metrics up to the failure
+     * @param error The error that stopped the job
+     */
+    default void jobFailed(TransitionMetrics metrics, Exception error) {
+    }
+}
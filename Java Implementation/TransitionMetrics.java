@@ -0,0 +1,389 @@
+import org.bytedeco.javacpp.Pointer;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * TransitionMetrics - Per-job measurements of the transition frame loop
+ *
+ * The frame loop reports how long each stage takes for every output frame:
+ * decoding, wrapping frames as Mats, the effect and encoding. Each stage has
+ * its own latency histogram. The metrics also track frame counts and
+ * throughput, the high-water marks of the native memory accounted to the job
+ * and of the whole process, and the deepest job queue reported by whoever
+ * scheduled the job. They also count the full-frame copies the frame loop
+ * makes on its way from the decoder to the encoder, such as packing padded
+ * YUV420P frames or storing frames in the DecodedFrameCache; the decoder's
+ * and the encoder's pixel format conversions are not counted.
+ *
+ * Recording costs a few System.nanoTime() calls per frame. When the JVM
+ * supports Java Flight Recorder, every frame and every job is also emitted as
+ * a JFR event (see TransitionEvents), which is a no-op unless a recording is
+ * running.
+ */
+public class TransitionMetrics {
+
+    /**
+     * Stages of the frame loop
+     */
+    public enum Stage {
+        /** Grabbing decoded frames from the input videos */
+        DECODE,
+        /** Wrapping decoded frames as Mats, or packing padded ones */
+        CONVERT,
+        /** Running the effect */
+        EFFECT,
+        /** Wrapping rendered Mats as frames and handing them to the recorder, including its pixel format conversion */
+        ENCODE
+    }
+
+    // Physical memory is read from the OS, so it is sampled every few frames only
+    private static final int PHYSICAL_SAMPLE_INTERVAL = 30;
+
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+    private final String effectName;
+    private final String outputPath;
+    // Whether the job shows up as Flight Recorder events
+    private final boolean recorded;
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final long[] frameStageNanos = new long[Stage.values().length];
+
+    private int width;
+    private int height;
+    private double frameRate;
+    private int plannedTransitionFrames;
+    private int expectedFrames;
+
+    private long startNanos;
+    private long endNanos;
+    private Object jobEvent;
+    private Object frameEvent;
+    private long framesWritten;
+    private long transitionFramesWritten;
+    private long frameCopies;
+    private int frameCopiesInFrame;
+    private int maxFrameCopies;
+
+    private long jobBytesHighWater;
+    private long nativeBytesHighWater;
+    private long physicalBytesHighWater;
+    private volatile int queueDepth;
+    private volatile int maxQueueDepth;
+
+    /**
+     * @param effectName Name of the effect rendering the transition
+     * @param outputPath Path of the output video
+     */
+    public TransitionMetrics(String effectName, String outputPath) {
+        this(effectName, outputPath, true);
+    }
+
+    /**
+     * @param effectName Name of the effect rendering the transition
+     * @param outputPath Path of the output video
+     * @param recorded false for jobs that must not show up as Flight Recorder events, such as warm-up
+     */
+    TransitionMetrics(String effectName, String outputPath, boolean recorded) {
+        this.effectName = effectName;
+        this.outputPath = outputPath;
+        this.recorded = recorded;
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Marks the start of the job
+     */
+    void start(int width, int height, double frameRate, int transitionFrames, int expectedFrames) {
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.plannedTransitionFrames = transitionFrames;
+        this.expectedFrames = expectedFrames;
+        this.startNanos = System.nanoTime();
+        sampleNativeMemory(true);
+        if (JFR_AVAILABLE && recorded) {
+            jobEvent = TransitionEvents.beginJob();
+        }
+    }
+
+    /**
+     * Marks the end of the job, successful or not
+     */
+    void finish() {
+        endNanos = System.nanoTime();
+        sampleNativeMemory(true);
+        if (JFR_AVAILABLE && recorded) {
+            TransitionEvents.commitJob(jobEvent, this);
+            jobEvent = null;
+        }
+    }
+
+    /**
+     * Starts timing a new output frame
+     */
+    void beginFrame() {
+        for (int i = 0; i < frameStageNanos.length; i++) {
+            frameStageNanos[i] = 0;
+        }
+        frameCopiesInFrame = 0;
+        if (JFR_AVAILABLE && recorded) {
+            frameEvent = TransitionEvents.beginFrame();
+        }
+    }
+
+    /**
+     * Adds time spent in a stage to the current frame
+     *
+     * @param stage Stage the time was spent in
+     * @param startNanos System.nanoTime() when the stage started
+     * @return System.nanoTime() now, so consecutive stages can be chained
+     */
+    long stage(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        frameStageNanos[stage.ordinal()] += now - startNanos;
+        return now;
+    }
+
+    /**
+     * Counts full-frame copies made for the current output frame
+     *
+     * @param copies Number of frames copied
+     */
+    void recordFrameCopies(int copies) {
+        frameCopiesInFrame += copies;
+    }
+
+    /**
+     * Finishes the current output frame and records its stage times
+     *
+     * @param transition true if the frame was rendered by the effect, false if it was copied
+     */
+    void endFrame(boolean transition) {
+        for (Stage stage : Stage.values()) {
+            long nanos = frameStageNanos[stage.ordinal()];
+            // Copied frames never pass through the effect or Mat conversion
+            if (transition || stage == Stage.DECODE || stage == Stage.ENCODE) {
+                histograms.get(stage).record(nanos);
+            }
+        }
+
+        framesWritten++;
+        frameCopies += frameCopiesInFrame;
+        maxFrameCopies = Math.max(maxFrameCopies, frameCopiesInFrame);
+        if (transition) {
+            transitionFramesWritten++;
+        }
+        sampleNativeMemory(framesWritten % PHYSICAL_SAMPLE_INTERVAL == 0);
+
+        if (JFR_AVAILABLE && recorded) {
+            TransitionEvents.commitFrame(frameEvent, this, transition, frameStageNanos, frameCopiesInFrame);
+            frameEvent = null;
+        }
+    }
+
+    /**
+     * Reports the current depth of the queue the job waited in
+     *
+     * @param depth Number of jobs waiting
+     */
+    public void recordQueueDepth(int depth) {
+        queueDepth = depth;
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+    }
+
+    /**
+     * Records the native memory accounted to this job
+     *
+     * @param bytes Bytes held by the job's frame buffers, codecs and effect
+     */
+    void recordJobBytes(long bytes) {
+        jobBytesHighWater = Math.max(jobBytesHighWater, bytes);
+    }
+
+    private void sampleNativeMemory(boolean includePhysical) {
+        nativeBytesHighWater = Math.max(nativeBytesHighWater, Pointer.totalBytes());
+        if (includePhysical) {
+            physicalBytesHighWater = Math.max(physicalBytesHighWater, Pointer.physicalBytes());
+        }
+    }
+
+    /**
+     * @return Name of the effect rendering the transition
+     */
+    public String getEffectName() {
+        return effectName;
+    }
+
+    /**
+     * @return Path of the output video
+     */
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    /**
+     * @return Output width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Output height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Output frame rate
+     */
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * @return Number of transition frames the job planned to render
+     */
+    public int getPlannedTransitionFrames() {
+        return plannedTransitionFrames;
+    }
+
+    /**
+     * @return Number of frames the job expects to write, estimated from the input containers
+     */
+    public int getExpectedFrames() {
+        return expectedFrames;
+    }
+
+    /**
+     * @return Latency histogram of the given stage, per output frame
+     */
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    /**
+     * @return Number of frames written so far
+     */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * @return Number of frames rendered by the effect so far
+     */
+    public long getTransitionFramesWritten() {
+        return transitionFramesWritten;
+    }
+
+    /**
+     * @return Full-frame copies made between decoder and encoder so far
+     */
+    public long getFrameCopies() {
+        return frameCopies;
+    }
+
+    /**
+     * @return Full-frame copies per frame written
+     */
+    public double getFrameCopiesPerFrame() {
+        return framesWritten == 0 ? 0.0 : (double) frameCopies / framesWritten;
+    }
+
+    /**
+     * @return Most full-frame copies made for a single output frame
+     */
+    public int getMaxFrameCopies() {
+        return maxFrameCopies;
+    }
+
+    /**
+     * @return Wall time of the job in nanoseconds, up to now if it is still running
+     */
+    public long getElapsedNanos() {
+        if (startNanos == 0) return 0;
+        return (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+    }
+
+    /**
+     * @return Frames written per second of wall time
+     */
+    public double getFramesPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed == 0 ? 0.0 : framesWritten * 1e9 / elapsed;
+    }
+
+    /**
+     * @return Most native memory accounted to this job, in bytes
+     */
+    public long getJobBytesHighWater() {
+        return jobBytesHighWater;
+    }
+
+    /**
+     * @return Most native memory tracked by JavaCPP at any sample, in bytes
+     */
+    public long getNativeBytesHighWater() {
+        return nativeBytesHighWater;
+    }
+
+    /**
+     * @return Largest resident set size of the process at any sample, in bytes
+     */
+    public long getPhysicalBytesHighWater() {
+        return physicalBytesHighWater;
+    }
+
+    /**
+     * @return Last reported depth of the job queue
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return Deepest reported job queue
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return A multi-line summary of the job
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s -> %s (%dx%d @ %.2f fps)%n", effectName, outputPath, width, height, frameRate));
+        sb.append(String.format("  frames: %d (%d transition) in %.2fs, %.1f frames/s%n",
+                framesWritten, transitionFramesWritten, getElapsedNanos() / 1e9, getFramesPerSecond()));
+        for (Stage stage : Stage.values()) {
+            sb.append(String.format("  %-8s %s%n", stage.name().toLowerCase(), histograms.get(stage)));
+        }
+        sb.append(String.format("  frame copies: %d, %.2f per frame, at most %d in one frame%n",
+                frameCopies, getFrameCopiesPerFrame(), maxFrameCopies));
+        sb.append(String.format("  native high-water: %.1f MB job, %.1f MB tracked, %.1f MB resident; max queue depth: %d",
+                jobBytesHighWater / 1e6, nativeBytesHighWater / 1e6, physicalBytesHighWater / 1e6, maxQueueDepth));
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            // Not present on Android or JVMs without Flight Recorder
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
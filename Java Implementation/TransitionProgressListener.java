@@ -0,0 +1,44 @@
+/**
+ * TransitionProgressListener - Receives progress updates of an asynchronous transition job
+ *
+ * Callbacks run on the thread executing the job (or, for a job cancelled
+ * before it started, on the thread calling cancel), so UI code must post
+ * them to its own thread. Exactly one of onComplete, onError and
+ * onCancelled is called per job.
+ */
+public interface TransitionProgressListener {
+
+    /**
+     * Called whenever the job advances by at least one percent
+     *
+     * @param job The job reporting progress
+     * @param progress Fraction of the output written, from 0.0 to 1.0
+     * @param remainingMillis Estimated time left in milliseconds, -1 while unknown
+     */
+    void onProgress(TransitionJob job, double progress, long remainingMillis);
+
+    /**
+     * Called when the output has been written completely
+     *
+     * @param job The finished job
+     */
+    default void onComplete(TransitionJob job) {
+    }
+
+    /**
+     * Called when the job stops with an error
+     *
+     * @param job The failed job
+     * @param error The error that stopped the job
+     */
+    default void onError(TransitionJob job, Exception error) {
+    }
+
+    /**
+     * Called once a cancelled job has released its inputs, encoder and buffers
+     *
+     * @param job The cancelled job
+     */
+    default void onCancelled(TransitionJob job) {
+    }
+}
@@ -0,0 +1,301 @@
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avfilter;
+import org.bytedeco.ffmpeg.global.avformat;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.ffmpeg.global.swresample;
+import org.bytedeco.ffmpeg.global.swscale;
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacv.FFmpegFrameFilter;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+
+/**
+ * TransitionSession - A long-lived engine that keeps natives loaded and buffers warm
+ *
+ * The first transition on a cold JVM loads the FFmpeg and OpenCV natives,
+ * initialises the codecs and runs the frame loop in the interpreter before it
+ * writes a single frame. A session pays those costs once, up front:
+ *
+ *   preload() loads the native libraries and the JavaCV classes,
+ *   warmUp() renders every effect over two small synthetic clips, so the
+ *   codecs are initialised and the frame loop is JIT-compiled.
+ *
+ * A session also pools the output Mats and their frame converters between
+ * jobs instead of allocating them per job. The static JavaTransitionEngine and
+ * TransitionEngine methods share the session returned by shared(), so warming
+ * that one up speeds up every later call in the process.
+ *
+ * For the CLI entry points, running this class's main method with
+ * -XX:ArchiveClassesAtExit writes a class-data-sharing archive of every class
+ * the engine loads; start later runs with -XX:SharedArchiveFile to map it
+ * instead of loading the classes again (see README).
+ */
+public class TransitionSession implements AutoCloseable {
+
+    // Size and length of the synthetic warm-up clips
+    private static final int WARM_UP_WIDTH = 320;
+    private static final int WARM_UP_HEIGHT = 180;
+    private static final int WARM_UP_FRAMES = 45;
+    private static final double WARM_UP_FRAME_RATE = 30.0;
+
+    private static final TransitionSession SHARED = new TransitionSession();
+
+    private final Deque<OutputBuffer> pool = new ArrayDeque<>();
+    private boolean closed;
+    private volatile long preloadMillis = -1;
+    private volatile long warmUpMillis = -1;
+
+    /**
+     * The output Mat of a job, the converter wrapping it as a Frame and the
+     * Mats padded YUV420P frames of both inputs are packed into, reused together
+     */
+    static final class OutputBuffer {
+        final Mat mat = new Mat();
+        final OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        final Mat packed1 = new Mat();
+        final Mat packed2 = new Mat();
+
+        void release() {
+            mat.release();
+            packed1.release();
+            packed2.release();
+        }
+    }
+
+    /**
+     * @return The session used by the static JavaTransitionEngine and TransitionEngine methods
+     */
+    public static TransitionSession shared() {
+        return SHARED;
+    }
+
+    /**
+     * Loads the FFmpeg and OpenCV native libraries and the JavaCV classes using them
+     *
+     * @return This session
+     * @throws Exception If a native library cannot be loaded
+     */
+    public TransitionSession preload() throws Exception {
+        long start = System.nanoTime();
+
+        Loader.load(avutil.class);
+        Loader.load(avcodec.class);
+        Loader.load(avformat.class);
+        Loader.load(avfilter.class);
+        Loader.load(swscale.class);
+        Loader.load(swresample.class);
+        Loader.load(opencv_core.class);
+        Loader.load(opencv_imgproc.class);
+        // Initialising the JavaCV classes loads the rest; their optional libraries (avdevice) may be missing
+        Class.forName(FFmpegFrameGrabber.class.getName());
+        Class.forName(FFmpegFrameRecorder.class.getName());
+        Class.forName(FFmpegFrameFilter.class.getName());
+        Class.forName(OpenCVFrameConverter.ToMat.class.getName());
+
+        preloadMillis = (System.nanoTime() - start) / 1_000_000;
+        return this;
+    }
+
+    /**
+     * Renders every effect over two small synthetic clips
+     *
+     * This initialises the decoder, encoder and scaler code paths and lets
+     * the JIT compile the frame loop and the effects. The warm-up jobs bypass
+     * the frame cache and are not reported to TransitionListeners or Flight
+     * Recorder. Loads the natives first if preload has not been called.
+     *
+     * @return This session
+     * @throws Exception If a warm-up transition fails
+     */
+    public TransitionSession warmUp() throws Exception {
+        if (preloadMillis < 0) {
+            preload();
+        }
+        long start = System.nanoTime();
+
+        // Keep FFmpeg from logging the warm-up streams
+        int logLevel = avutil.av_log_get_level();
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+
+        File dir = Files.createTempDirectory("transition-warmup").toFile();
+        File clip1 = new File(dir, "warmup_a.mp4");
+        File clip2 = new File(dir, "warmup_b.mp4");
+        File output = new File(dir, "warmup_out.mp4");
+        try {
+            new SyntheticClip(WARM_UP_WIDTH, WARM_UP_HEIGHT, WARM_UP_FRAME_RATE, WARM_UP_FRAMES, 0).write(clip1.getPath());
+            new SyntheticClip(WARM_UP_WIDTH, WARM_UP_HEIGHT, WARM_UP_FRAME_RATE, WARM_UP_FRAMES, 1).write(clip2.getPath());
+
+            FrameEffect[] effects = {
+                    JavaTransitionEngine.fadeEffect(),
+                    JavaTransitionEngine.glitchEffect(25),
+                    JavaTransitionEngine.zoomEffect(1.5),
+                    JavaTransitionEngine.blurEffect(25),
+                    JavaTransitionEngine.whipPanEffect("left", 50),
+                    JavaTransitionEngine.spinEffect(),
+                    JavaTransitionEngine.lightFlashEffect(),
+                    YuvTransitionEngine.fadeEffect(),
+                    YuvTransitionEngine.dipToColorEffect(255, 255, 255),
+                    YuvTransitionEngine.zoomEffect(1.5),
+                    YuvTransitionEngine.spinEffect(),
+                    YuvTransitionEngine.whipPanEffect("left", 50),
+                    FilterGraphEngine.fadeEffect()
+            };
+            for (FrameEffect effect : effects) {
+                JavaTransitionEngine.warmUpTransition(clip1.getPath(), clip2.getPath(), output.getPath(), 1.0, effect, this);
+            }
+        } finally {
+            clip1.delete();
+            clip2.delete();
+            output.delete();
+            dir.delete();
+            avutil.av_log_set_level(logLevel);
+        }
+
+        warmUpMillis = (System.nanoTime() - start) / 1_000_000;
+        return this;
+    }
+
+    /**
+     * Creates a transition between two videos using this session's buffers
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param effect Effect rendering the overlapping frames
+     * @throws Exception If an error occurs during processing
+     */
+    public void applyTransition(String input1, String input2, String outputPath, double duration, FrameEffect effect) throws Exception {
+        JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, JavaTransitionEngine.AT_END, effect, null, this);
+    }
+
+    /**
+     * Creates a transition starting at a given time of the first video using this session's buffers
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param effect Effect rendering the overlapping frames
+     * @throws Exception If an error occurs during processing
+     */
+    public void applyTransition(String input1, String input2, String outputPath, double duration, double offset,
+                                FrameEffect effect) throws Exception {
+        JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, offset, effect, null, this);
+    }
+
+    /**
+     * Starts a transition on an executor using this session's buffers
+     *
+     * @param executor Executor running the job
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param effect Effect rendering the overlapping frames, owned by the job
+     * @param listener Listener for progress updates, or null
+     * @return The queued job
+     */
+    public TransitionJob submitTransition(Executor executor, String input1, String input2, String outputPath,
+                                          double duration, FrameEffect effect, TransitionProgressListener listener) {
+        return submitTransition(executor, input1, input2, outputPath, duration, JavaTransitionEngine.AT_END, effect, listener);
+    }
+
+    /**
+     * Starts a transition at a given time of the first video on an executor using this session's buffers
+     *
+     * @param executor Executor running the job
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param offset Start of the transition in the first video in seconds, negative for its end
+     * @param effect Effect rendering the overlapping frames, owned by the job
+     * @param listener Listener for progress updates, or null
+     * @return The queued job
+     */
+    public TransitionJob submitTransition(Executor executor, String input1, String input2, String outputPath,
+                                          double duration, double offset, FrameEffect effect,
+                                          TransitionProgressListener listener) {
+        TransitionJob job = new TransitionJob(input1, input2, outputPath, duration, offset, effect, listener, this);
+        executor.execute(job);
+        return job;
+    }
+
+    /**
+     * Takes an output buffer from the pool, or creates one
+     */
+    synchronized OutputBuffer acquireOutput() {
+        OutputBuffer buffer = pool.pollFirst();
+        return buffer != null ? buffer : new OutputBuffer();
+    }
+
+    /**
+     * Returns an output buffer to the pool, releasing it if the pool is full or closed
+     */
+    synchronized void recycle(OutputBuffer buffer) {
+        // One buffer per concurrently running job is enough; the execution profile sets how many are kept
+        if (closed || pool.size() >= JavaTransitionEngine.getExecutionProfile().getPooledBuffers()) {
+            buffer.release();
+        } else {
+            pool.addFirst(buffer);
+        }
+    }
+
+    /**
+     * @return Time preload took in milliseconds, -1 if it has not run
+     */
+    public long getPreloadMillis() {
+        return preloadMillis;
+    }
+
+    /**
+     * @return Time warmUp took in milliseconds, -1 if it has not run
+     */
+    public long getWarmUpMillis() {
+        return warmUpMillis;
+    }
+
+    /**
+     * Releases the pooled buffers but keeps pooling the ones returned later, e.g. under memory pressure
+     */
+    synchronized void trim() {
+        for (OutputBuffer buffer : pool) {
+            buffer.release();
+        }
+        pool.clear();
+    }
+
+    /**
+     * Releases the pooled buffers. Jobs still running return theirs when they finish.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        trim();
+    }
+
+    /**
+     * Preloads and warms up a session, e.g. to record a class-data-sharing archive:
+     *
+     *   java -XX:ArchiveClassesAtExit=transitions.jsa -cp "transitions.jar:javacv/*" TransitionSession
+     */
+    public static void main(String[] args) throws Exception {
+        TransitionSession session = shared();
+        session.preload();
+        System.out.println("Native libraries loaded in " + session.getPreloadMillis() + " ms");
+        session.warmUp();
+        System.out.println("Warm-up finished in " + session.getWarmUpMillis() + " ms");
+    }
+}
@@ -0,0 +1,510 @@
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * YuvTransitionEngine - Planar YUV implementation of the colour-agnostic transitions
+ *
+ * The grabbers decode straight to YUV420P and the recorder is fed YUV420P, so
+ * transition frames never pass through packed BGR. Each frame is handled as a
+ * single I420 buffer (a full resolution Y plane followed by the half resolution
+ * U and V planes) and every effect works on the three planes directly.
+ *
+ * The effects run through JavaTransitionEngine.applyTransition, which picks
+ * the pixel format from the effect. Only effects that do not need RGB are
+ * provided here: fade, dip-to-colour (including the light flash), zoom, spin,
+ * whip pan, and the wipes, slides and pushes of RegionTransition. Glitch
+ * shifts the red and blue channels and stays on the BGR path in
+ * JavaTransitionEngine.
+ */
+public class YuvTransitionEngine {
+
+    // BT.601 limited range black, used for the areas uncovered by spin and whip
+    private static final double BLACK_LUMA = 16.0;
+    private static final double NEUTRAL_CHROMA = 128.0;
+
+    /**
+     * Creates a crossfade between two videos on the YUV planes
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyFade(String input1, String input2, String outputPath, double duration) throws Exception {
+        JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, fadeEffect());
+    }
+
+    /**
+     * Creates a dip-to-colour transition: the first video fades into a solid
+     * colour, which then fades into the second video
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param red Red component of the colour (0-255)
+     * @param green Green component of the colour (0-255)
+     * @param blue Blue component of the colour (0-255)
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyDipToColor(String input1, String input2, String outputPath, double duration,
+                                       int red, int green, int blue) throws Exception {
+        JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, dipToColorEffect(red, green, blue));
+    }
+
+    /**
+     * Creates a light flash transition (dip to white) on the YUV planes
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyLightFlash(String input1, String input2, String outputPath, double duration) throws Exception {
+        JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, lightFlashEffect());
+    }
+
+    /**
+     * Creates a zoom transition on the YUV planes
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param zoomFactor Maximum zoom factor (1.0-2.0 recommended)
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyZoom(String input1, String input2, String outputPath, double duration, double zoomFactor) throws Exception {
+        JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, zoomEffect(zoomFactor));
+    }
+
+    /**
+     * Creates a spin transition on the YUV planes
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applySpin(String input1, String input2, String outputPath, double duration) throws Exception {
+        JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, spinEffect());
+    }
+
+    /**
+     * Creates a whip pan transition on the YUV planes
+     *
+     * The second video slides in and pushes the first one out while a
+     * directional motion blur peaks in the middle of the transition. Frames are
+     * placed with region copies into an output-sized buffer instead of a larger canvas.
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction of the whip ("left", "right", "up", "down")
+     * @param blurStrength Strength of the motion blur (10-100 recommended)
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyWhipPan(String input1, String input2, String outputPath, double duration,
+                                    String direction, int blurStrength) throws Exception {
+        JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, whipPanEffect(direction, blurStrength));
+    }
+
+    /**
+     * Creates a planar wipe transition between two videos: the edge moves over the first
+     * video and reveals the second one in place
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction the edge moves in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @param feather Width in pixels of the blended edge (0 for a hard edge)
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyWipe(String input1, String input2, String outputPath, double duration,
+                                 String direction, int feather) throws Exception {
+        JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, wipeEffect(direction, feather));
+    }
+
+    /**
+     * Creates a planar slide transition between two videos: the second video slides in
+     * over the first one
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction the edge moves in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @param feather Width in pixels of the blended edge (0 for a hard edge)
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applySlide(String input1, String input2, String outputPath, double duration,
+                                  String direction, int feather) throws Exception {
+        JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, slideEffect(direction, feather));
+    }
+
+    /**
+     * Creates a planar push transition between two videos: the second video pushes the
+     * first one out of the frame
+     *
+     * @param input1 Path to the first video
+     * @param input2 Path to the second video
+     * @param outputPath Path for the output video
+     * @param duration Duration of the transition in seconds
+     * @param direction Direction the frames move in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @throws Exception If an error occurs during processing
+     */
+    public static void applyPush(String input1, String input2, String outputPath, double duration,
+                                 String direction) throws Exception {
+        JavaTransitionEngine.applyTransition(input1, input2, outputPath, duration, pushEffect(direction));
+    }
+
+    /**
+     * Creates the planar crossfade effect
+     *
+     * @return A new fade effect working on I420 frames
+     */
+    public static FrameEffect fadeEffect() {
+        // A linear blend is the same operation on luma and chroma, so the whole buffer is blended at once
+        return planar("yuv-fade", (frame1, frame2, output, progress) ->
+                JavaTransitionEngine.getBlendBackend().crossfade(frame1, frame2, output, progress));
+    }
+
+    /**
+     * Creates the planar dip-to-colour effect
+     *
+     * @param red Red component of the colour (0-255)
+     * @param green Green component of the colour (0-255)
+     * @param blue Blue component of the colour (0-255)
+     * @return A new dip-to-colour effect working on I420 frames
+     */
+    public static FrameEffect dipToColorEffect(int red, int green, int blue) {
+        double[] color = rgbToYuv(red, green, blue);
+
+        return planar("yuv-dip", (frame1, frame2, output, progress) -> {
+            // First half dips the first video into the colour, second half comes out of it into the second video
+            Mat source = progress < 0.5 ? frame1 : frame2;
+            double amount = progress < 0.5 ? progress * 2.0 : 2.0 - progress * 2.0;
+
+            BlendBackend blend = JavaTransitionEngine.getBlendBackend();
+            for (int p = 0; p < 3; p++) {
+                // out = src * (1 - amount) + color * amount, in one pass without a solid colour buffer
+                blend.dipToColor(plane(source, p), plane(output, p), amount, color[p]);
+            }
+        });
+    }
+
+    /**
+     * Creates the planar light flash effect (dip to white)
+     *
+     * @return A new light flash effect working on I420 frames
+     */
+    public static FrameEffect lightFlashEffect() {
+        return dipToColorEffect(255, 255, 255);
+    }
+
+    /**
+     * Creates the planar zoom effect
+     *
+     * @param zoomFactor Maximum zoom factor (1.0-2.0 recommended)
+     * @return A new zoom effect working on I420 frames
+     */
+    public static FrameEffect zoomEffect(double zoomFactor) {
+        // Same bounds as the BGR implementation
+        double zoom = Math.min(3.0, Math.max(1.1, zoomFactor));
+        Mat zoomed1 = new Mat();
+        Mat zoomed2 = new Mat();
+
+        return planar("yuv-zoom", (frame1, frame2, output, progress) -> {
+            zoomed1.create(output.rows(), output.cols(), CV_8UC1);
+            zoomed2.create(output.rows(), output.cols(), CV_8UC1);
+
+            zoomCenter(frame1, zoomed1, 1.0 + (zoom - 1.0) * progress);
+            zoomCenter(frame2, zoomed2, zoom - (zoom - 1.0) * progress);
+
+            JavaTransitionEngine.getBlendBackend().crossfade(zoomed1, zoomed2, output, progress);
+        }, zoomed1, zoomed2);
+    }
+
+    /**
+     * Creates the planar spin effect
+     *
+     * @return A new spin effect working on I420 frames
+     */
+    public static FrameEffect spinEffect() {
+        Mat rotated1 = new Mat();
+        Mat rotated2 = new Mat();
+
+        return planar("yuv-spin", (frame1, frame2, output, progress) -> {
+            rotated1.create(output.rows(), output.cols(), CV_8UC1);
+            rotated2.create(output.rows(), output.cols(), CV_8UC1);
+
+            // First video rotates 0 to 90 degrees, second video rotates -90 to 0 degrees
+            rotatePlanes(frame1, rotated1, progress * 90.0);
+            rotatePlanes(frame2, rotated2, (1.0 - progress) * -90.0);
+
+            JavaTransitionEngine.getBlendBackend().crossfade(rotated1, rotated2, output, progress);
+        }, rotated1, rotated2);
+    }
+
+    /**
+     * Creates the planar whip pan effect
+     *
+     * @param direction Direction of the whip ("left", "right", "up", "down")
+     * @param blurStrength Strength of the motion blur (10-100 recommended)
+     * @return A new whip pan effect working on I420 frames
+     */
+    public static FrameEffect whipPanEffect(String direction, int blurStrength) {
+        // Validate direction
+        String whipDirection = direction;
+        if (!"left".equals(whipDirection) && !"right".equals(whipDirection) &&
+            !"up".equals(whipDirection) && !"down".equals(whipDirection)) {
+            whipDirection = "left"; // Default to left if invalid
+        }
+        boolean horizontal = whipDirection.equals("left") || whipDirection.equals("right");
+        boolean forward = whipDirection.equals("left") || whipDirection.equals("up");
+
+        // Ensure blur strength is within reasonable bounds
+        int maxBlur = Math.min(100, Math.max(10, blurStrength));
+        Mat composed = new Mat();
+
+        return planar("yuv-whip", (frame1, frame2, output, progress) -> {
+            composed.create(output.rows(), output.cols(), CV_8UC1);
+
+            // Blur is strongest in the middle of the transition
+            double blurFactor = 1.0 - Math.abs(progress - 0.5) * 2.0;
+            int radius = (int) (maxBlur * blurFactor);
+
+            for (int p = 0; p < 3; p++) {
+                Mat plane1 = plane(frame1, p);
+                Mat plane2 = plane(frame2, p);
+                Mat composedPlane = plane(composed, p);
+                Mat outputPlane = plane(output, p);
+
+                slidePlanes(plane1, plane2, composedPlane, progress, horizontal, forward);
+
+                // Chroma planes are half resolution, so the blur radius is halved as well
+                int planeRadius = p == 0 ? radius : radius / 2;
+                if (planeRadius > 0) {
+                    int kernelSize = planeRadius * 2 + 1;
+                    Size ksize = horizontal ? new Size(kernelSize, 1) : new Size(1, kernelSize);
+                    blur(composedPlane, outputPlane, ksize);
+                } else {
+                    composedPlane.copyTo(outputPlane);
+                }
+            }
+        }, composed);
+    }
+
+    /**
+     * Creates the planar wipe effect, built from region copies of the two frames
+     *
+     * @param direction Direction the edge moves in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @param feather Width in pixels of the blended edge (0 for a hard edge)
+     * @return A new wipe effect working on I420 frames
+     */
+    public static FrameEffect wipeEffect(String direction, int feather) {
+        return new RegionTransition(RegionTransition.Kind.WIPE, direction, feather, true);
+    }
+
+    /**
+     * Creates the planar slide effect, built from region copies of the two frames
+     *
+     * @param direction Direction the edge moves in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @param feather Width in pixels of the blended edge (0 for a hard edge)
+     * @return A new slide effect working on I420 frames
+     */
+    public static FrameEffect slideEffect(String direction, int feather) {
+        return new RegionTransition(RegionTransition.Kind.SLIDE, direction, feather, true);
+    }
+
+    /**
+     * Creates the planar push effect, built from region copies of the two frames
+     *
+     * @param direction Direction the frames move in ("left", "right", "up", "down", "up-left", "up-right",
+     *                  "down-left", "down-right")
+     * @return A new push effect working on I420 frames
+     */
+    public static FrameEffect pushEffect(String direction) {
+        return new RegionTransition(RegionTransition.Kind.PUSH, direction, 0, true);
+    }
+
+    /**
+     * Estimates the bytes read and written per transition frame by each path
+     *
+     * This is a model, not a measurement: it counts the pixel buffers each
+     * stage has to touch and ignores caches, codec internals and effects that
+     * read more than a blend does.
+     *
+     * Counted for one output frame blended from two input frames: the decoder
+     * side pixel format conversion, the effect itself (modelled as a two input
+     * blend) and the encoder side conversion. Decoding and x264's own reads are
+     * the same for both paths and are left out.
+     *
+     * BGR path: 2 x (1.5 read + 3 write) + (6 read + 3 write) + (3 read + 1.5 write) = 22.5 bytes per pixel.
+     * YUV path: 2 x (1.5 read + 1.5 write) + (3 read + 1.5 write) + 0 = 10.5 bytes per pixel.
+     *
+     * @param width Frame width in pixels
+     * @param height Frame height in pixels
+     * @param planar true for the YUV path, false for the BGR path
+     * @return Modelled bytes moved per transition frame
+     */
+    public static long estimatedBytesMovedPerFrame(int width, int height, boolean planar) {
+        long pixels = (long) width * height;
+        // Kept in half bytes per pixel to stay in integer arithmetic
+        long halfBytesPerPixel = planar ? 21 : 45;
+        return pixels * halfBytesPerPixel / 2;
+    }
+
+    /**
+     * Marks an effect as working on I420 frames, names it and releases its scratch buffers with it
+     */
+    private static FrameEffect planar(String name, FrameEffect effect, Mat... scratch) {
+        return new FrameEffect() {
+            @Override
+            public void apply(Mat frame1, Mat frame2, Mat output, double progress) {
+                effect.apply(frame1, frame2, output, progress);
+            }
+
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public int pixelFormat() {
+                return AV_PIX_FMT_YUV420P;
+            }
+
+            @Override
+            public long nativeBytes() {
+                return JavaTransitionEngine.matBytes(scratch);
+            }
+
+            @Override
+            public void release() {
+                for (Mat mat : scratch) {
+                    mat.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a view of one plane of an I420 Mat (0 = Y, 1 = U, 2 = V)
+     *
+     * The Mat must be one contiguous I420 buffer of even width and height, as
+     * toMat, packI420 and Mat.create(height * 3 / 2, width, CV_8UC1) make them:
+     * the chroma planes are found by their offset from the start of the data,
+     * which a view into a larger Mat does not have, and an odd size has chroma
+     * planes that do not fit the rows of the Mat.
+     *
+     * @throws IllegalArgumentException If the Mat is not a contiguous I420 buffer of even size
+     */
+    static Mat plane(Mat i420, int index) {
+        int width = i420.cols();
+        int height = i420.rows() * 2 / 3;
+        if (!i420.isContinuous() || i420.rows() % 3 != 0 || width % 2 != 0 || height % 2 != 0) {
+            throw new IllegalArgumentException("Not a contiguous I420 frame of even size: " + width + "x" + i420.rows()
+                    + (i420.isContinuous() ? "" : " with a row step of " + i420.step()));
+        }
+
+        if (index == 0) {
+            return new Mat(i420, new Rect(0, 0, width, height));
+        }
+
+        // Chroma planes are stored back to back after the luma plane at half resolution
+        long offset = (long) width * height + (index == 2 ? (long) (width / 2) * (height / 2) : 0);
+        return new Mat(height / 2, width / 2, CV_8UC1, new BytePointer(i420.data()).position(offset));
+    }
+
+    /**
+     * Converts an RGB colour to BT.601 limited range Y, U and V values
+     */
+    static double[] rgbToYuv(int red, int green, int blue) {
+        double y = 16.0 + 0.257 * red + 0.504 * green + 0.098 * blue;
+        double u = 128.0 - 0.148 * red - 0.291 * green + 0.439 * blue;
+        double v = 128.0 + 0.439 * red - 0.368 * green - 0.071 * blue;
+        return new double[] {y, u, v};
+    }
+
+    /**
+     * Zooms into the centre of each plane. Resizing the centre crop directly
+     * avoids building the full size zoomed image and cropping it afterwards.
+     */
+    private static void zoomCenter(Mat src, Mat dst, double zoom) {
+        for (int p = 0; p < 3; p++) {
+            Mat in = plane(src, p);
+            Mat out = plane(dst, p);
+
+            int cropWidth = Math.max(1, (int) (in.cols() / zoom));
+            int cropHeight = Math.max(1, (int) (in.rows() / zoom));
+            Rect crop = new Rect((in.cols() - cropWidth) / 2, (in.rows() - cropHeight) / 2, cropWidth, cropHeight);
+
+            resize(new Mat(in, crop), out, out.size());
+        }
+    }
+
+    /**
+     * Rotates each plane around its own centre
+     */
+    private static void rotatePlanes(Mat src, Mat dst, double angle) {
+        for (int p = 0; p < 3; p++) {
+            Mat in = plane(src, p);
+            Mat out = plane(dst, p);
+
+            Point2f center = new Point2f(in.cols() / 2.0f, in.rows() / 2.0f);
+            Mat rotationMatrix = getRotationMatrix2D(center, angle, 1.0);
+            double border = p == 0 ? BLACK_LUMA : NEUTRAL_CHROMA;
+
+            warpAffine(in, out, rotationMatrix, out.size(), INTER_LINEAR, BORDER_CONSTANT, new Scalar(border));
+            rotationMatrix.release();
+        }
+    }
+
+    /**
+     * Places the outgoing and incoming planes side by side with region copies.
+     * 'forward' means the frames move towards the left (or up).
+     */
+    private static void slidePlanes(Mat plane1, Mat plane2, Mat dst, double progress, boolean horizontal, boolean forward) {
+        int size = horizontal ? dst.cols() : dst.rows();
+        int offset = Math.min(size, (int) (size * progress));
+        int remaining = size - offset;
+
+        // Part of the first plane that is still visible and where it lands
+        Rect keepSrc = region(horizontal, forward ? offset : 0, remaining, dst);
+        Rect keepDst = region(horizontal, forward ? 0 : offset, remaining, dst);
+
+        // Part of the second plane that has entered and where it lands
+        Rect enterSrc = region(horizontal, forward ? 0 : remaining, offset, dst);
+        Rect enterDst = region(horizontal, forward ? remaining : 0, offset, dst);
+
+        if (remaining > 0) {
+            new Mat(plane1, keepSrc).copyTo(new Mat(dst, keepDst));
+        }
+        if (offset > 0) {
+            new Mat(plane2, enterSrc).copyTo(new Mat(dst, enterDst));
+        }
+    }
+
+    /**
+     * Builds a full width (or full height) band of the given plane
+     */
+    private static Rect region(boolean horizontal, int start, int length, Mat plane) {
+        return horizontal
+                ? new Rect(start, 0, length, plane.rows())
+                : new Rect(0, start, plane.cols(), length);
+    }
+}
@@ -0,0 +1,250 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * VectorBlendBackend - BlendBackend in pure Java on the Vector API
+ *
+ * The weights are 8-bit fixed point: alpha = round(weight * 256), from 0 to
+ * 256, and every sample becomes (a * (256 - alpha) + b * alpha + 128) >> 8.
+ * Bytes are widened to 16-bit lanes for the multiply; the sum never exceeds
+ * 65535, so it is exact in 16 bits read as unsigned and a logical shift
+ * brings it back to 0-255 without any saturation. Quantising the weight to
+ * 1/256 keeps every sample within +/-1 of OpenCV's floating point result.
+ *
+ * The kernels read and write the Mats' native buffers through direct
+ * ByteBuffers, row by row for Mats with padded rows or ROIs, so no pixel is
+ * copied to the Java heap. For multi-channel frames a lane shuffle spreads
+ * each mask byte over the samples of its pixel.
+ *
+ * Uses the JDK 17/18 incubator API (ByteBuffer loads were replaced by memory
+ * segments in 19). Compile and run with --add-modules jdk.incubator.vector:
+ *
+ *   javac --release 17 --add-modules jdk.incubator.vector -cp ".;javacv/*" -d . vector/VectorBlendBackend.java
+ */
+public final class VectorBlendBackend implements BlendBackend {
+
+    // 16-bit lanes of the preferred width, and byte vectors with the same number of lanes
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(SHORTS.vectorBitSize() / 2));
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+    private static final short ONE = 256;
+    private static final short ROUND = 128;
+
+    // SPREAD[channels][phase] repeats every mask byte for each sample of its pixel,
+    // for a vector starting at sample 'phase' of a pixel
+    private static final VectorShuffle<Byte>[][] SPREAD = spreadShuffles(4);
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+
+    @Override
+    public void crossfade(Mat frame1, Mat frame2, Mat output, double progress) {
+        checkShape(frame1, frame2);
+        output.create(frame1.rows(), frame1.cols(), frame1.type());
+
+        short alpha = alpha(progress);
+        short inverse = (short) (ONE - alpha);
+        int rowBytes = rowBytes(frame1);
+        ByteBuffer a = buffer(frame1);
+        ByteBuffer b = buffer(frame2);
+        ByteBuffer o = buffer(output);
+
+        if (continuous(frame1, frame2, output)) {
+            blend(a, 0, b, 0, o, 0, rowBytes * frame1.rows(), inverse, alpha);
+            return;
+        }
+        for (int row = 0; row < frame1.rows(); row++) {
+            blend(a, offset(frame1, row), b, offset(frame2, row), o, offset(output, row), rowBytes, inverse, alpha);
+        }
+    }
+
+    @Override
+    public void dipToColor(Mat source, Mat output, double amount, double... color) {
+        output.create(source.rows(), source.cols(), source.type());
+
+        short alpha = alpha(amount);
+        short inverse = (short) (ONE - alpha);
+        int channels = source.channels();
+
+        // color * alpha + rounding for every lane, starting at any channel of a pixel
+        short[] colorTerms = new short[SHORTS.length() + channels];
+        for (int i = 0; i < colorTerms.length; i++) {
+            colorTerms[i] = (short) (Math.round(color[i % channels] * alpha) + ROUND);
+        }
+
+        int rowBytes = rowBytes(source);
+        ByteBuffer s = buffer(source);
+        ByteBuffer o = buffer(output);
+        if (continuous(source, source, output)) {
+            dip(s, 0, o, 0, rowBytes * source.rows(), inverse, colorTerms, channels);
+            return;
+        }
+        for (int row = 0; row < source.rows(); row++) {
+            dip(s, offset(source, row), o, offset(output, row), rowBytes, inverse, colorTerms, channels);
+        }
+    }
+
+    @Override
+    public void maskedBlend(Mat frame1, Mat frame2, Mat mask, Mat output) {
+        checkShape(frame1, frame2);
+        if (mask.rows() != frame1.rows() || mask.cols() != frame1.cols() || mask.elemSize() != 1) {
+            throw new IllegalArgumentException("The mask must be CV_8UC1 with the size of the frames");
+        }
+        if (frame1.channels() > SPREAD.length - 1) {
+            throw new IllegalArgumentException("Masked blends handle up to " + (SPREAD.length - 1) + " channels");
+        }
+        output.create(frame1.rows(), frame1.cols(), frame1.type());
+
+        int channels = frame1.channels();
+        int rowBytes = rowBytes(frame1);
+        ByteBuffer a = buffer(frame1);
+        ByteBuffer b = buffer(frame2);
+        ByteBuffer m = buffer(mask);
+        ByteBuffer o = buffer(output);
+
+        for (int row = 0; row < frame1.rows(); row++) {
+            maskedRow(a, offset(frame1, row), b, offset(frame2, row), m, offset(mask, row),
+                    o, offset(output, row), rowBytes, channels);
+        }
+    }
+
+    /**
+     * out = (a * inverse + b * alpha + 128) >> 8 over a run of bytes
+     */
+    private static void blend(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, ByteBuffer o, int oOffset,
+                              int length, short inverse, short alpha) {
+        int i = 0;
+        for (int upper = BYTES.loopBound(length); i < upper; i += BYTES.length()) {
+            ShortVector va = widen(ByteVector.fromByteBuffer(BYTES, a, aOffset + i, ORDER));
+            ShortVector vb = widen(ByteVector.fromByteBuffer(BYTES, b, bOffset + i, ORDER));
+            ShortVector sum = va.mul(inverse).add(vb.mul(alpha)).add(ROUND);
+            narrow(sum).intoByteBuffer(o, oOffset + i, ORDER);
+        }
+        for (; i < length; i++) {
+            int sum = (a.get(aOffset + i) & 0xFF) * inverse + (b.get(bOffset + i) & 0xFF) * alpha + ROUND;
+            o.put(oOffset + i, (byte) (sum >> 8));
+        }
+    }
+
+    /**
+     * out = (s * inverse + colorTerm) >> 8 over a run of whole pixels
+     */
+    private static void dip(ByteBuffer s, int sOffset, ByteBuffer o, int oOffset, int length,
+                            short inverse, short[] colorTerms, int channels) {
+        int i = 0;
+        for (int upper = BYTES.loopBound(length); i < upper; i += BYTES.length()) {
+            ShortVector vs = widen(ByteVector.fromByteBuffer(BYTES, s, sOffset + i, ORDER));
+            ShortVector terms = ShortVector.fromArray(SHORTS, colorTerms, i % channels);
+            narrow(vs.mul(inverse).add(terms)).intoByteBuffer(o, oOffset + i, ORDER);
+        }
+        for (; i < length; i++) {
+            int sum = (s.get(sOffset + i) & 0xFF) * inverse + (colorTerms[i % channels] & 0xFFFF);
+            o.put(oOffset + i, (byte) (sum >> 8));
+        }
+    }
+
+    /**
+     * out = (a * (256 - alpha) + b * alpha + 128) >> 8 over a row, with the
+     * alpha of each pixel taken from its mask byte (0-255 mapped to 0-256)
+     */
+    private static void maskedRow(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, ByteBuffer m, int mOffset,
+                                  ByteBuffer o, int oOffset, int length, int channels) {
+        int i = 0;
+        for (int upper = BYTES.loopBound(length); i < upper; i += BYTES.length()) {
+            int pixel = i / channels;
+            if (mOffset + pixel + BYTES.length() > m.limit()) break;
+
+            // Spread the mask bytes of the covered pixels over their samples
+            ByteVector mask = ByteVector.fromByteBuffer(BYTES, m, mOffset + pixel, ORDER);
+            if (channels > 1) {
+                mask = mask.rearrange(SPREAD[channels][i % channels]);
+            }
+            ShortVector weight = widen(mask);
+            ShortVector alpha = weight.add(weight.lanewise(VectorOperators.LSHR, 7));
+
+            ShortVector va = widen(ByteVector.fromByteBuffer(BYTES, a, aOffset + i, ORDER));
+            ShortVector vb = widen(ByteVector.fromByteBuffer(BYTES, b, bOffset + i, ORDER));
+            ShortVector sum = va.mul(alpha.neg().add(ONE)).add(vb.mul(alpha)).add(ROUND);
+            narrow(sum).intoByteBuffer(o, oOffset + i, ORDER);
+        }
+        for (; i < length; i++) {
+            int weight = m.get(mOffset + i / channels) & 0xFF;
+            int alpha = weight + (weight >> 7);
+            int sum = (a.get(aOffset + i) & 0xFF) * (ONE - alpha) + (b.get(bOffset + i) & 0xFF) * alpha + ROUND;
+            o.put(oOffset + i, (byte) (sum >> 8));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static VectorShuffle<Byte>[][] spreadShuffles(int maxChannels) {
+        VectorShuffle<Byte>[][] shuffles = new VectorShuffle[maxChannels + 1][];
+        for (int channels = 2; channels <= maxChannels; channels++) {
+            int c = channels;
+            shuffles[c] = new VectorShuffle[c];
+            for (int phase = 0; phase < c; phase++) {
+                int p = phase;
+                shuffles[c][p] = VectorShuffle.fromOp(BYTES, lane -> (p + lane) / c);
+            }
+        }
+        return shuffles;
+    }
+
+    /**
+     * Unsigned bytes to 16-bit lanes
+     */
+    private static ShortVector widen(ByteVector bytes) {
+        return ((ShortVector) bytes.convertShape(VectorOperators.B2S, SHORTS, 0)).and((short) 0xFF);
+    }
+
+    /**
+     * Shifts the 16-bit sums down to 0-255 and packs them back into bytes
+     */
+    private static ByteVector narrow(ShortVector sums) {
+        return (ByteVector) sums.lanewise(VectorOperators.LSHR, 8).convertShape(VectorOperators.S2B, BYTES, 0);
+    }
+
+    private static short alpha(double weight) {
+        return (short) Math.round(Math.max(0.0, Math.min(1.0, weight)) * ONE);
+    }
+
+    private static void checkShape(Mat frame1, Mat frame2) {
+        if (frame1.rows() != frame2.rows() || frame1.cols() != frame2.cols() || frame1.type() != frame2.type()) {
+            throw new IllegalArgumentException("The frames must have the same size and type");
+        }
+        if (frame1.elemSize1() != 1) {
+            throw new IllegalArgumentException("The vector blend backend only handles 8-bit frames");
+        }
+    }
+
+    private static boolean continuous(Mat a, Mat b, Mat c) {
+        return a.isContinuous() && b.isContinuous() && c.isContinuous();
+    }
+
+    private static int rowBytes(Mat mat) {
+        return mat.cols() * (int) mat.elemSize();
+    }
+
+    private static int offset(Mat mat, int row) {
+        return (int) (row * mat.step());
+    }
+
+    /**
+     * Direct buffer over the Mat's pixels, from the first sample to the last
+     */
+    private static ByteBuffer buffer(Mat mat) {
+        long span = (mat.rows() - 1) * mat.step() + rowBytes(mat);
+        return new BytePointer(mat.data()).capacity(span).asByteBuffer();
+    }
+}
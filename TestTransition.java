@@ -10,13 +10,13 @@ public class TestTransition {
             String output = "../output_videos/fade_output.mp4";
             
             // Generate a fade transition command
-            String fadeCommand = TransitionEngine.getFadeCommand(input1, input2, output, 1.0);
+            FFmpegCommand fadeCommand = FFmpegCommand.fade(input1, input2, output, 1.0);
             
             System.out.println("Executing FFmpeg command:");
             System.out.println(fadeCommand);
             
             // Execute the command
-            int exitCode = FFmpegExecutor.executeCommand(fadeCommand);
+            int exitCode = FFmpegExecutor.execute(fadeCommand.getArguments());
             
             if (exitCode == 0) {
                 System.out.println("\nTransition created successfully!");
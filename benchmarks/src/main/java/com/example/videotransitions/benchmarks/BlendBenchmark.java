@@ -0,0 +1,88 @@
+package com.example.videotransitions.benchmarks;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+
+/**
+ * BlendBenchmark - Per-frame cost of the blend kernels of each BlendBackend
+ *
+ * Compares the OpenCV backend with the Vector API backend on crossfades,
+ * dips to a colour and masked blends, over BGR frames and I420 buffers. The
+ * vector backend is only built by the vector-blend profile (JDK 17 or 18),
+ * and the forks run with --add-modules jdk.incubator.vector.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BlendBenchmark {
+
+    private static final int STEPS = 30;
+
+    @Param({"720p", "1080p", "2160p"})
+    public String resolution;
+
+    @Param({"opencv", "vector"})
+    public String backend;
+
+    @Param({"crossfade", "dip", "masked"})
+    public String operation;
+
+    @Param({"bgr", "i420"})
+    public String format;
+
+    private Object blendBackend;
+    private Mat frame1;
+    private Mat frame2;
+    private Mat mask;
+    private Mat output;
+    private double[] color;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        int[] size = Frames.size(resolution);
+        boolean planar = format.equals("i420");
+        int rows = planar ? size[1] * 3 / 2 : size[1];
+        int type = planar ? CV_8UC1 : CV_8UC3;
+        frame1 = Frames.noise(rows, size[0], type, 1);
+        frame2 = Frames.noise(rows, size[0], type, 2);
+        mask = Frames.noise(rows, size[0], CV_8UC1, 3);
+        output = new Mat(rows, size[0], type);
+        color = planar ? new double[] {235.0} : new double[] {40.0, 120.0, 250.0};
+        blendBackend = Engine.blendBackend(backend);
+    }
+
+    @Benchmark
+    public Mat blend() throws Throwable {
+        double progress = (double) step / STEPS;
+        step = (step + 1) % STEPS;
+        switch (operation) {
+            case "crossfade":
+                Engine.CROSSFADE.invokeExact(blendBackend, frame1, frame2, output, progress);
+                break;
+            case "dip":
+                Engine.DIP_TO_COLOR.invokeExact(blendBackend, frame1, output, progress, color);
+                break;
+            default:
+                Engine.MASKED_BLEND.invokeExact(blendBackend, frame1, frame2, mask, output);
+                break;
+        }
+        return output;
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame1.release();
+        frame2.release();
+        mask.release();
+        output.release();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.videotransitions.benchmarks;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+
+/**
+ * EffectBenchmark - Per-frame cost of each packed BGR effect kernel
+ *
+ * Measures FrameEffect.apply only: no decoding, conversion or encoding. The
+ * progress steps through one second of a 30 fps transition so every phase of
+ * an effect (for example both halves of the light flash) is covered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EffectBenchmark {
+
+    private static final int STEPS = 30;
+
+    @Param({"720p", "1080p", "2160p"})
+    public String resolution;
+
+    @Param({"fade", "glitch", "zoom", "blur", "whip", "spin", "flash"})
+    public String effect;
+
+    private Object frameEffect;
+    private Mat frame1;
+    private Mat frame2;
+    private Mat output;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        int[] size = Frames.size(resolution);
+        frame1 = Frames.noise(size[1], size[0], CV_8UC3, 1);
+        frame2 = Frames.noise(size[1], size[0], CV_8UC3, 2);
+        output = new Mat(size[1], size[0], CV_8UC3);
+        frameEffect = Engine.bgrEffect(effect);
+    }
+
+    @Benchmark
+    public Mat apply() throws Throwable {
+        double progress = (double) step / STEPS;
+        step = (step + 1) % STEPS;
+        Engine.APPLY_EFFECT.invokeExact(frameEffect, frame1, frame2, output, progress);
+        return output;
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        Engine.RELEASE_EFFECT.invokeExact(frameEffect);
+        frame1.release();
+        frame2.release();
+        output.release();
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.videotransitions.benchmarks;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Engine - Bridge to the transition engine classes
+ *
+ * The engine lives in the default package, which JMH does not accept for
+ * benchmarks and which classes in a named package cannot refer to by name.
+ * The engine is therefore reached through method handles held in static final
+ * fields, which the JIT treats as constants.
+ */
+final class Engine {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    /** FrameEffect.apply as (Object effect, Mat frame1, Mat frame2, Mat output, double progress) void */
+    static final MethodHandle APPLY_EFFECT;
+
+    /** FrameEffect.release as (Object effect) void */
+    static final MethodHandle RELEASE_EFFECT;
+
+    /** JavaTransitionEngine.applyTransition as (String, String, String, double, Object effect) void */
+    static final MethodHandle APPLY_TRANSITION;
+
+    /** BlendBackend.crossfade as (Object backend, Mat frame1, Mat frame2, Mat output, double progress) void */
+    static final MethodHandle CROSSFADE;
+
+    /** BlendBackend.dipToColor as (Object backend, Mat source, Mat output, double amount, double[] color) void */
+    static final MethodHandle DIP_TO_COLOR;
+
+    /** BlendBackend.maskedBlend as (Object backend, Mat frame1, Mat frame2, Mat mask, Mat output) void */
+    static final MethodHandle MASKED_BLEND;
+
+    private static final Class<?> FRAME_EFFECT = load("FrameEffect");
+    private static final Class<?> BLEND_BACKEND = load("BlendBackend");
+    private static final Class<?> JAVA_ENGINE = load("JavaTransitionEngine");
+    private static final Class<?> YUV_ENGINE = load("YuvTransitionEngine");
+    private static final Class<?> SYNTHETIC_CLIP = load("SyntheticClip");
+
+    static {
+        try {
+            APPLY_EFFECT = LOOKUP.findVirtual(FRAME_EFFECT, "apply",
+                            MethodType.methodType(void.class, Mat.class, Mat.class, Mat.class, double.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Mat.class, Mat.class, Mat.class, double.class));
+            RELEASE_EFFECT = LOOKUP.findVirtual(FRAME_EFFECT, "release", MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(void.class, Object.class));
+            APPLY_TRANSITION = LOOKUP.findStatic(JAVA_ENGINE, "applyTransition",
+                            MethodType.methodType(void.class, String.class, String.class, String.class, double.class, FRAME_EFFECT))
+                    .asType(MethodType.methodType(void.class, String.class, String.class, String.class, double.class, Object.class));
+            CROSSFADE = LOOKUP.findVirtual(BLEND_BACKEND, "crossfade",
+                            MethodType.methodType(void.class, Mat.class, Mat.class, Mat.class, double.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Mat.class, Mat.class, Mat.class, double.class));
+            DIP_TO_COLOR = LOOKUP.findVirtual(BLEND_BACKEND, "dipToColor",
+                            MethodType.methodType(void.class, Mat.class, Mat.class, double.class, double[].class))
+                    .asFixedArity()
+                    .asType(MethodType.methodType(void.class, Object.class, Mat.class, Mat.class, double.class, double[].class));
+            MASKED_BLEND = LOOKUP.findVirtual(BLEND_BACKEND, "maskedBlend",
+                            MethodType.methodType(void.class, Mat.class, Mat.class, Mat.class, Mat.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Mat.class, Mat.class, Mat.class, Mat.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Engine() {
+    }
+
+    /**
+     * Creates a packed BGR effect from JavaTransitionEngine with the demo parameters
+     *
+     * @param name One of fade, glitch, zoom, blur, whip, spin, flash
+     * @return A FrameEffect instance
+     */
+    static Object bgrEffect(String name) {
+        return newEffect(JAVA_ENGINE, name);
+    }
+
+    /**
+     * Creates a planar I420 effect from YuvTransitionEngine with the demo parameters
+     *
+     * @param name One of fade, zoom, whip, spin, flash
+     * @return A FrameEffect instance
+     */
+    static Object yuvEffect(String name) {
+        return newEffect(YUV_ENGINE, name);
+    }
+
+    /**
+     * Looks up a blend backend by name
+     *
+     * @param name opencv or vector
+     * @return A BlendBackend instance
+     */
+    static Object blendBackend(String name) {
+        try {
+            return BLEND_BACKEND.getMethod("forName", String.class).invoke(null, name);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create blend backend " + name, e);
+        }
+    }
+
+    /**
+     * Encodes a SyntheticClip test pattern
+     *
+     * @param path Path of the output, e.g. a ".mp4" file
+     * @param width Width in pixels
+     * @param height Height in pixels
+     * @param frameRate Frames per second
+     * @param frames Number of frames
+     * @param codec FFmpeg name of the video codec
+     * @param gopFrames Frames from one keyframe to the next
+     * @param seed Seed of the pattern
+     */
+    static void writeSyntheticClip(String path, int width, int height, double frameRate, int frames, String codec,
+                                   int gopFrames, long seed) throws Exception {
+        Object clip;
+        try {
+            clip = SYNTHETIC_CLIP.getConstructor(int.class, int.class, double.class, int.class, String.class, int.class, long.class)
+                    .newInstance(width, height, frameRate, frames, codec, gopFrames, seed);
+            SYNTHETIC_CLIP.getMethod("write", String.class).invoke(clip, path);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private static Object newEffect(Class<?> engine, String name) {
+        try {
+            switch (name) {
+                case "fade":
+                    return engine.getMethod("fadeEffect").invoke(null);
+                case "glitch":
+                    return engine.getMethod("glitchEffect", int.class).invoke(null, 25);
+                case "zoom":
+                    return engine.getMethod("zoomEffect", double.class).invoke(null, 1.5);
+                case "blur":
+                    return engine.getMethod("blurEffect", int.class).invoke(null, 25);
+                case "whip":
+                    return engine.getMethod("whipPanEffect", String.class, int.class).invoke(null, "left", 50);
+                case "spin":
+                    return engine.getMethod("spinEffect").invoke(null);
+                case "flash":
+                    return engine.getMethod("lightFlashEffect").invoke(null);
+                default:
+                    throw new IllegalArgumentException("Unknown effect: " + name);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create effect " + name + " from " + engine.getName(), e);
+        }
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
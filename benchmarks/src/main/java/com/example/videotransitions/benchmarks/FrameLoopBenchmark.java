@@ -0,0 +1,60 @@
+package com.example.videotransitions.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FrameLoopBenchmark - End-to-end decode, effect and encode on the bundled clips
+ *
+ * Runs JavaTransitionEngine.applyTransition on input_videos/clip_a.mp4 and
+ * clip_b.mp4, one full job per invocation. Set -Dtransition.inputDir to use
+ * other clips; the directory defaults to ../input_videos, relative to the
+ * benchmarks module.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class FrameLoopBenchmark {
+
+    @Param({"fade", "glitch", "zoom", "blur", "whip", "spin", "flash",
+            "yuv-fade", "yuv-zoom", "yuv-whip", "yuv-spin", "yuv-flash"})
+    public String effect;
+
+    @Param({"1.0"})
+    public double duration;
+
+    private String input1;
+    private String input2;
+    private File output;
+
+    @Setup
+    public void setUp() throws IOException {
+        File inputDir = new File(System.getProperty("transition.inputDir", "../input_videos"));
+        input1 = new File(inputDir, "clip_a.mp4").getAbsolutePath();
+        input2 = new File(inputDir, "clip_b.mp4").getAbsolutePath();
+        if (!new File(input1).isFile() || !new File(input2).isFile()) {
+            throw new IOException("Input clips not found in " + inputDir.getAbsolutePath());
+        }
+        output = File.createTempFile("transition-bench-", ".mp4");
+    }
+
+    @Benchmark
+    public long transition() throws Throwable {
+        Object frameEffect = effect.startsWith("yuv-")
+                ? Engine.yuvEffect(effect.substring(4))
+                : Engine.bgrEffect(effect);
+        Engine.APPLY_TRANSITION.invokeExact(input1, input2, output.getAbsolutePath(), duration, frameEffect);
+        return output.length();
+    }
+
+    @TearDown
+    public void tearDown() {
+        output.delete();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.videotransitions.benchmarks;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+
+import static org.bytedeco.opencv.global.opencv_core.*;
+
+/**
+ * Frames - Synthetic frames for the effect kernel benchmarks
+ */
+final class Frames {
+
+    private Frames() {
+    }
+
+    /**
+     * @param resolution 360p, 480p, 720p, 1080p or 2160p
+     * @return {width, height}
+     */
+    static int[] size(String resolution) {
+        switch (resolution) {
+            case "360p":
+                return new int[] {640, 360};
+            case "480p":
+                return new int[] {854, 480};
+            case "720p":
+                return new int[] {1280, 720};
+            case "1080p":
+                return new int[] {1920, 1080};
+            case "2160p":
+                return new int[] {3840, 2160};
+            default:
+                throw new IllegalArgumentException("Unknown resolution: " + resolution);
+        }
+    }
+
+    /**
+     * Creates a frame filled with seeded noise so every run blends the same pixels
+     *
+     * @param rows Number of rows
+     * @param cols Number of columns
+     * @param type OpenCV type, CV_8UC3 for BGR or CV_8UC1 for I420
+     * @param seed Seed for the noise
+     * @return A new Mat
+     */
+    static Mat noise(int rows, int cols, int type, long seed) {
+        Mat mat = new Mat(rows, cols, type);
+        theRNG().state(seed);
+        randu(mat, new Mat(1, 1, CV_64F, new Scalar(0.0)), new Mat(1, 1, CV_64F, new Scalar(255.0)));
+        return mat;
+    }
+}
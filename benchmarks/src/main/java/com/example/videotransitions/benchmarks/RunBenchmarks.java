@@ -0,0 +1,40 @@
+package com.example.videotransitions.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * RunBenchmarks - Entry point of benchmarks.jar
+ *
+ * Accepts the usual JMH command line (benchmark regex, -p, -f, -wi ...) and
+ * always adds the GC profiler for allocation rates and writes the results as
+ * JSON to results/jmh-&lt;label&gt;.json. The label comes from -Dbench.label,
+ * e.g. the current commit, so runs can be compared across commits.
+ */
+public class RunBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        String label = System.getProperty("bench.label", String.valueOf(System.currentTimeMillis()));
+        File resultDir = new File(System.getProperty("bench.resultDir", "results"));
+        resultDir.mkdirs();
+        File resultFile = new File(resultDir, "jmh-" + label + ".json");
+
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile.getPath())
+                .build();
+
+        new Runner(options).run();
+        System.out.println("Results written to " + resultFile.getAbsolutePath());
+    }
+}
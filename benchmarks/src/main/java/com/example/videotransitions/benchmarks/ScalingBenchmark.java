@@ -0,0 +1,289 @@
+package com.example.videotransitions.benchmarks;
+
+import org.bytedeco.javacpp.Pointer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ScalingBenchmark - End-to-end transition jobs swept over clip size, length, GOP, codec and concurrency
+ *
+ * The JMH benchmarks time single effects or one job on the bundled clips.
+ * This runner generates SyntheticClip pairs for every combination of the
+ * dimensions below, runs a batch of full transition jobs on them with a
+ * given number of jobs in flight, and measures each batch:
+ *
+ *   throughput    output frames and jobs per second of wall time
+ *   latency       job latency percentiles
+ *   CPU           process CPU time over wall time, per core available
+ *   memory        peak resident set and peak native memory tracked by
+ *                 JavaCPP, sampled every 10 ms
+ *
+ * The dimensions are comma-separated lists in system properties:
+ *
+ *   bench.resolutions   360p, 480p, 720p, 1080p, 2160p or WxH   (360p,720p,1080p)
+ *   bench.clipSeconds   length of each input clip               (5)
+ *   bench.gops          frames between keyframes                (60)
+ *   bench.codecs        FFmpeg codec names                      (h264)
+ *   bench.frameRates    frames per second                       (30)
+ *   bench.concurrency   jobs in flight                          (1,2,4)
+ *
+ * and bench.effect (fade; yuv-* for the planar effects), bench.transition
+ * (1.0 s), bench.jobs (jobs per batch, at least the concurrency; 4) and
+ * bench.clipDir (target/synthetic-clips, where clips are kept between runs).
+ * Every batch starts with one job that is not measured. Results are written
+ * as JSON to results/scaling-&lt;label&gt;.json, like RunBenchmarks does.
+ */
+public class ScalingBenchmark {
+
+    private static final long SAMPLE_MILLIS = 10;
+
+    public static void main(String[] args) throws Exception {
+        List<String> resolutions = list("bench.resolutions", "360p,720p,1080p");
+        List<String> clipSeconds = list("bench.clipSeconds", "5");
+        List<String> gops = list("bench.gops", "60");
+        List<String> codecs = list("bench.codecs", "h264");
+        List<String> frameRates = list("bench.frameRates", "30");
+        List<String> concurrency = list("bench.concurrency", "1,2,4");
+        String effect = System.getProperty("bench.effect", "fade");
+        double transition = Double.parseDouble(System.getProperty("bench.transition", "1.0"));
+        int jobs = Integer.parseInt(System.getProperty("bench.jobs", "4"));
+        File clipDir = new File(System.getProperty("bench.clipDir", "target/synthetic-clips"));
+        clipDir.mkdirs();
+
+        String label = System.getProperty("bench.label", String.valueOf(System.currentTimeMillis()));
+        File resultDir = new File(System.getProperty("bench.resultDir", "results"));
+        resultDir.mkdirs();
+        File resultFile = new File(resultDir, "scaling-" + label + ".json");
+
+        List<String> results = new ArrayList<>();
+        for (String resolution : resolutions) {
+            int[] size = parseSize(resolution);
+            for (String frameRateText : frameRates) {
+                double frameRate = Double.parseDouble(frameRateText);
+                for (String secondsText : clipSeconds) {
+                    int frames = (int) Math.round(Double.parseDouble(secondsText) * frameRate);
+                    for (String codec : codecs) {
+                        for (String gopText : gops) {
+                            int gop = Integer.parseInt(gopText);
+                            String clip1 = clip(clipDir, size, frameRate, frames, codec, gop, 1);
+                            String clip2 = clip(clipDir, size, frameRate, frames, codec, gop, 2);
+                            for (String concurrencyText : concurrency) {
+                                Batch batch = new Batch(size[0], size[1], frameRate, frames, codec, gop,
+                                        Integer.parseInt(concurrencyText), effect, transition, jobs);
+                                batch.run(clip1, clip2, clipDir);
+                                System.out.println(batch);
+                                results.add(batch.toJson());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        try (PrintWriter out = new PrintWriter(resultFile, StandardCharsets.UTF_8.name())) {
+            out.println("{");
+            out.printf(Locale.ROOT, "  \"label\": \"%s\",%n", label);
+            out.printf(Locale.ROOT, "  \"processors\": %d,%n", Runtime.getRuntime().availableProcessors());
+            out.printf(Locale.ROOT, "  \"java\": \"%s\",%n", System.getProperty("java.version"));
+            out.println("  \"results\": [");
+            for (int i = 0; i < results.size(); i++) {
+                out.println("    " + results.get(i) + (i < results.size() - 1 ? "," : ""));
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+        System.out.println("Results written to " + resultFile.getAbsolutePath());
+    }
+
+    /**
+     * One measured batch of jobs with a fixed set of dimensions
+     */
+    private static final class Batch {
+        final int width;
+        final int height;
+        final double frameRate;
+        final int clipFrames;
+        final String codec;
+        final int gop;
+        final int concurrency;
+        final String effect;
+        final double transition;
+        final int jobs;
+
+        long[] latencies;
+        long wallNanos;
+        long cpuNanos;
+        long peakResidentBytes;
+        long peakNativeBytes;
+
+        Batch(int width, int height, double frameRate, int clipFrames, String codec, int gop, int concurrency,
+              String effect, double transition, int jobs) {
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+            this.clipFrames = clipFrames;
+            this.codec = codec;
+            this.gop = gop;
+            this.concurrency = concurrency;
+            this.effect = effect;
+            this.transition = transition;
+            this.jobs = Math.max(jobs, concurrency);
+        }
+
+        void run(String clip1, String clip2, File clipDir) throws Exception {
+            // Compiles the loop and opens the codecs for this size before measuring
+            runJob(clip1, clip2, new File(clipDir, "warmup-out.mp4"));
+
+            ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            AtomicLong peakResident = new AtomicLong();
+            AtomicLong peakNative = new AtomicLong();
+            latencies = new long[jobs];
+            try {
+                sampler.scheduleAtFixedRate(() -> {
+                    peakResident.accumulateAndGet(Pointer.physicalBytes(), Math::max);
+                    peakNative.accumulateAndGet(Pointer.totalBytes(), Math::max);
+                }, 0, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+                long cpuStart = processCpuNanos();
+                long start = System.nanoTime();
+                List<Future<?>> futures = new ArrayList<>();
+                for (int j = 0; j < jobs; j++) {
+                    int index = j;
+                    File output = new File(clipDir, "out-" + j + ".mp4");
+                    futures.add(workers.submit(() -> {
+                        long jobStart = System.nanoTime();
+                        runJob(clip1, clip2, output);
+                        latencies[index] = System.nanoTime() - jobStart;
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                wallNanos = System.nanoTime() - start;
+                cpuNanos = processCpuNanos() - cpuStart;
+            } finally {
+                workers.shutdown();
+                sampler.shutdown();
+                sampler.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            peakResidentBytes = peakResident.get();
+            peakNativeBytes = peakNative.get();
+            Arrays.sort(latencies);
+        }
+
+        private void runJob(String clip1, String clip2, File output) throws Exception {
+            Object frameEffect = effect.startsWith("yuv-") ? Engine.yuvEffect(effect.substring(4)) : Engine.bgrEffect(effect);
+            try {
+                Engine.APPLY_TRANSITION.invokeExact(clip1, clip2, output.getPath(), transition, frameEffect);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            } finally {
+                output.delete();
+            }
+        }
+
+        /**
+         * Frames of one output: both clips less the overlap, as the engine counts them
+         */
+        long outputFrames() {
+            return 2L * clipFrames - (int) (transition * frameRate);
+        }
+
+        double framesPerSecond() {
+            return jobs * outputFrames() * 1e9 / wallNanos;
+        }
+
+        double cpuUtilization() {
+            return (double) cpuNanos / wallNanos / Runtime.getRuntime().availableProcessors();
+        }
+
+        double percentileMillis(double percentile) {
+            int index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1e6;
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"width\": %d, \"height\": %d, \"frameRate\": %.3f, \"clipFrames\": %d, \"codec\": \"%s\", "
+                            + "\"gop\": %d, \"concurrency\": %d, \"effect\": \"%s\", \"transition\": %.3f, \"jobs\": %d, "
+                            + "\"wallSeconds\": %.3f, \"framesPerSecond\": %.2f, \"jobsPerSecond\": %.4f, "
+                            + "\"latencyMs\": {\"p50\": %.1f, \"p90\": %.1f, \"p99\": %.1f, \"max\": %.1f}, "
+                            + "\"cpuUtilization\": %.3f, \"peakResidentBytes\": %d, \"peakNativeBytes\": %d}",
+                    width, height, frameRate, clipFrames, codec, gop, concurrency, effect, transition, jobs,
+                    wallNanos / 1e9, framesPerSecond(), jobs * 1e9 / wallNanos,
+                    percentileMillis(50), percentileMillis(90), percentileMillis(99), percentileMillis(100),
+                    cpuUtilization(), peakResidentBytes, peakNativeBytes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%dx%d %.0ffps %d frames %s gop %d x%d: %.1f frames/s, p50 %.0f ms, p99 %.0f ms, cpu %.0f%%, peak %.0f MB rss, %.0f MB native",
+                    width, height, frameRate, clipFrames, codec, gop, concurrency, framesPerSecond(),
+                    percentileMillis(50), percentileMillis(99), cpuUtilization() * 100,
+                    peakResidentBytes / 1e6, peakNativeBytes / 1e6);
+        }
+    }
+
+    /**
+     * Returns the path of a synthetic clip, generating it unless an earlier run did
+     */
+    private static String clip(File dir, int[] size, double frameRate, int frames, String codec, int gop, long seed)
+            throws Exception {
+        File file = new File(dir, String.format(Locale.ROOT, "clip-%dx%d-%.3f-%d-%s-g%d-s%d.mp4",
+                size[0], size[1], frameRate, frames, codec, gop, seed));
+        if (!file.isFile()) {
+            File partial = new File(dir, file.getName() + ".part.mp4");
+            Engine.writeSyntheticClip(partial.getPath(), size[0], size[1], frameRate, frames, codec, gop, seed);
+            if (!partial.renameTo(file)) {
+                throw new IOException("Cannot move " + partial + " to " + file);
+            }
+        }
+        return file.getAbsolutePath();
+    }
+
+    private static int[] parseSize(String resolution) {
+        int x = resolution.indexOf('x');
+        if (x > 0) {
+            return new int[] {Integer.parseInt(resolution.substring(0, x)), Integer.parseInt(resolution.substring(x + 1))};
+        }
+        return Frames.size(resolution);
+    }
+
+    private static List<String> list(String property, String defaultValue) {
+        List<String> values = new ArrayList<>();
+        for (String value : System.getProperty(property, defaultValue).split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+}
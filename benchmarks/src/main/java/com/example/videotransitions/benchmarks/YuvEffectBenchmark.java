@@ -0,0 +1,63 @@
+package com.example.videotransitions.benchmarks;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+
+/**
+ * YuvEffectBenchmark - Per-frame cost of each planar I420 effect kernel
+ *
+ * Same setup as EffectBenchmark, on I420 buffers, for comparison with the
+ * packed BGR kernels. Glitch and blur have no planar version.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class YuvEffectBenchmark {
+
+    private static final int STEPS = 30;
+
+    @Param({"720p", "1080p", "2160p"})
+    public String resolution;
+
+    @Param({"fade", "zoom", "whip", "spin", "flash"})
+    public String effect;
+
+    private Object frameEffect;
+    private Mat frame1;
+    private Mat frame2;
+    private Mat output;
+    private int step;
+
+    @Setup
+    public void setUp() {
+        int[] size = Frames.size(resolution);
+        int rows = size[1] * 3 / 2;
+        frame1 = Frames.noise(rows, size[0], CV_8UC1, 1);
+        frame2 = Frames.noise(rows, size[0], CV_8UC1, 2);
+        output = new Mat(rows, size[0], CV_8UC1);
+        frameEffect = Engine.yuvEffect(effect);
+    }
+
+    @Benchmark
+    public Mat apply() throws Throwable {
+        double progress = (double) step / STEPS;
+        step = (step + 1) % STEPS;
+        Engine.APPLY_EFFECT.invokeExact(frameEffect, frame1, frame2, output, progress);
+        return output;
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        Engine.RELEASE_EFFECT.invokeExact(frameEffect);
+        frame1.release();
+        frame2.release();
+        output.release();
+    }
+}
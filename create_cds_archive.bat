@@ -0,0 +1,18 @@
+@echo off
+echo Creating class-data-sharing archive for the Java transition engine...
+
+rem Set JAVACV_JARS to the directory holding the JavaCV jars
+if "%JAVACV_JARS%"=="" set JAVACV_JARS=path\to\javacv-jars
+
+cd "Java Implementation"
+javac -cp "%JAVACV_JARS%\*" *.java
+jar cf ..\transitions.jar *.class
+cd ..
+
+rem Runs the engine warm-up once and records every class it loads
+java -XX:ArchiveClassesAtExit=transitions.jsa -cp "transitions.jar;%JAVACV_JARS%\*" TransitionSession
+
+echo.
+echo If the command was successful, the archive is saved at: transitions.jsa
+echo.
+echo Run the demos with: java -XX:SharedArchiveFile=transitions.jsa -cp "transitions.jar;%JAVACV_JARS%\*" TransitionEngineDemo